@@ -0,0 +1 @@
+mvn clean verify -P dev,benchmarks
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.AccountLedger.LedgerEntry;
+import com.apollocurrency.aplwallet.apl.AccountLedger.LedgerEvent;
+import com.apollocurrency.aplwallet.apl.AccountLedger.LedgerHolding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ledger entries logged and committed for a block of asset dividend payments.  Each holder is credited
+ * the confirmed and unconfirmed balance for every dividend, and each payer is debited one entry per
+ * holder, which is combined with its earlier entries for the same dividend.  The entries are inserted
+ * into the in-memory database and the database transaction is rolled back after each block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountLedgerBenchmark {
+
+    /** Identifier of the first holder account */
+    private static final long FIRST_HOLDER_ID = 1000000;
+
+    /** Identifier of the first payer account */
+    private static final long FIRST_PAYER_ID = 2000000;
+
+    /** Identifier of the first dividend transaction */
+    private static final long FIRST_TRANSACTION_ID = 3000000;
+
+    @Param({"1000", "10000"})
+    private int holderCount;
+
+    @Param({"5"})
+    private int dividendCount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.initDb();
+        BlockImpl lastBlock = AplGlobalObjects.getBlockDb().findLastBlock();
+        if (lastBlock == null) {
+            throw new IllegalStateException("The test data set has no blocks");
+        }
+        BlockchainImpl.getInstance().setLastBlock(lastBlock);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.shutdown();
+    }
+
+    @Benchmark
+    public void dividendBlock() {
+        Db.getDb().beginTransaction();
+        try {
+            for (int d = 0; d < dividendCount; d++) {
+                long transactionId = FIRST_TRANSACTION_ID + d;
+                long payerId = FIRST_PAYER_ID + d;
+                long payerBalance = 1000000 * Constants.ONE_APL;
+                for (int h = 0; h < holderCount; h++) {
+                    long holderId = FIRST_HOLDER_ID + h;
+                    AccountLedger.logEntry(new LedgerEntry(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, holderId,
+                            LedgerHolding.UNCONFIRMED_APL_BALANCE, null, Constants.ONE_APL, (d + 1) * Constants.ONE_APL));
+                    AccountLedger.logEntry(new LedgerEntry(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, holderId,
+                            LedgerHolding.APL_BALANCE, null, Constants.ONE_APL, (d + 1) * Constants.ONE_APL));
+                    payerBalance -= Constants.ONE_APL;
+                    AccountLedger.logEntry(new LedgerEntry(LedgerEvent.ASSET_DIVIDEND_PAYMENT, transactionId, payerId,
+                            LedgerHolding.APL_BALANCE, null, -Constants.ONE_APL, payerBalance));
+                }
+            }
+            AccountLedger.commitEntries();
+        } finally {
+            AccountLedger.clearEntries();
+            Db.getDb().rollbackTransaction();
+            Db.getDb().endTransaction();
+        }
+    }
+}
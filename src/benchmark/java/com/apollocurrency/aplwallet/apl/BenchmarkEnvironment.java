@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.crypto.Curve25519Backend;
+import util.DbPopulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Minimal node environment shared by the benchmarks.  Only the parts of Apl.Init needed by the
+ * measured code are initialized, the node itself is never started.
+ */
+final class BenchmarkEnvironment {
+
+    /** In-memory database used by the database benchmarks */
+    private static final String DB_URL = "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+
+    private static boolean chainInitialized;
+    private static boolean dbInitialized;
+
+    /** Directory of the file database or null if the in-memory database is used */
+    private static Path dbDir;
+
+    private BenchmarkEnvironment() {} //never
+
+    /**
+     * Load the properties and the configuration of the active chain
+     */
+    static synchronized void initChain() {
+        if (chainInitialized) {
+            return;
+        }
+        // Apl creates the properties loader when the class is loaded
+        Apl.getRuntimeMode();
+        PropertiesLoader propertiesLoader = AplGlobalObjects.getPropertiesLoader();
+        AplGlobalObjects.createChainIdService(propertiesLoader.getStringProperty("apl.chainIdFilePath", "chains.json"));
+        try {
+            AplGlobalObjects.createBlockchainConfig(AplGlobalObjects.getChainIdService().getActiveChain(), propertiesLoader, false);
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        AplGlobalObjects.getChainConfig().init();
+        Crypto.setCurve25519Backend(Curve25519Backend.getBackend(propertiesLoader.getStringProperty("apl.curve25519Backend", "reference")));
+        chainInitialized = true;
+    }
+
+    /**
+     * Create the in-memory database and load the test data set
+     */
+    static synchronized void initDb() {
+        initDb(DB_URL);
+    }
+
+    /**
+     * Create a database in a temporary directory and load the test data set
+     *
+     * @param   mvStore             TRUE to use the MVStore engine, FALSE to use the PageStore engine
+     */
+    static synchronized void initDb(boolean mvStore) {
+        if (dbInitialized) {
+            return;
+        }
+        try {
+            dbDir = Files.createTempDirectory("apl-benchmark");
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        initDb(String.format("jdbc:h2:%s/apl;DB_CLOSE_ON_EXIT=FALSE;MVCC=TRUE;MV_STORE=%s",
+                dbDir.toAbsolutePath(), mvStore ? "TRUE" : "FALSE"));
+    }
+
+    private static void initDb(String dbUrl) {
+        if (dbInitialized) {
+            return;
+        }
+        initChain();
+        Db.init(dbUrl);
+        AplGlobalObjects.createBlockDb(new ConnectionProviderImpl());
+        AplGlobalObjects.getChainConfig().updateToLatestConfig();
+        new DbPopulator(Db.getDb(), "db/schema.sql", "db/data.sql").populateDb();
+        dbInitialized = true;
+    }
+
+    /**
+     * Insert genesis accounts with sequential identifiers
+     *
+     * @param   firstId             First account identifier
+     * @param   count               Number of accounts
+     * @param   balanceATM          Balance of each account
+     */
+    static void insertAccounts(long firstId, int count, long balanceATM) {
+        try (Connection con = Db.getDb().getConnection();
+             PreparedStatement pstmt = con.prepareStatement("MERGE INTO account (id, balance, unconfirmed_balance, "
+                     + "forged_balance, active_lessee_id, height, latest) KEY (id, height) VALUES (?, ?, ?, 0, null, 0, TRUE)")) {
+            for (int i = 0; i < count; i++) {
+                pstmt.setLong(1, firstId + i);
+                pstmt.setLong(2, balanceATM);
+                pstmt.setLong(3, balanceATM);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            con.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Create a signed payment with a message
+     *
+     * @param   random              Source of the key seed, recipient and message
+     * @return                      Signed transaction
+     * @throws  AplException.NotValidException Transaction is not valid
+     */
+    static TransactionImpl newTransaction(Random random) throws AplException.NotValidException {
+        byte[] keySeed = new byte[32];
+        random.nextBytes(keySeed);
+        byte[] message = new byte[160];
+        random.nextBytes(message);
+        return new TransactionImpl.BuilderImpl((byte) 1, Crypto.getPublicKey(keySeed),
+                100 * Constants.ONE_APL, Constants.ONE_APL, (short) 1440, Attachment.ORDINARY_PAYMENT)
+                .recipientId(random.nextLong())
+                .appendix(new Appendix.Message(message))
+                .timestamp(Apl.getEpochTime())
+                .ecBlockHeight(0)
+                .ecBlockId(0)
+                .build(keySeed);
+    }
+
+    /**
+     * Shut down the database
+     */
+    static synchronized void shutdown() {
+        if (dbInitialized) {
+            Db.shutdown();
+            dbInitialized = false;
+        }
+        if (dbDir != null) {
+            try (Stream<Path> paths = Files.walk(dbDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            dbDir = null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.AccountLedger.LedgerEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account balance updates for a block of payments.  Each payment debits the sender and credits the
+ * recipient, inserting a new version of both accounts into the account table.  A write buffer size of
+ * 0 writes each version when it is inserted, otherwise the versions are written using batch updates
+ * when the buffer is flushed.  The database transaction is rolled back after each block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockApplyBenchmark {
+
+    /** Identifier of the first benchmark account */
+    private static final long FIRST_ACCOUNT_ID = 1000000;
+
+    /** Identifier of the first payment transaction */
+    private static final long FIRST_TRANSACTION_ID = 3000000;
+
+    @Param({"10000"})
+    private int accountCount;
+
+    @Param({"255"})
+    private int transactionsPerBlock;
+
+    @Param({"0", "1000"})
+    private int writeBufferSize;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.initDb();
+        BenchmarkEnvironment.insertAccounts(FIRST_ACCOUNT_ID, accountCount, 1000000 * Constants.ONE_APL);
+        BlockImpl lastBlock = AplGlobalObjects.getBlockDb().findLastBlock();
+        if (lastBlock == null) {
+            throw new IllegalStateException("The test data set has no blocks");
+        }
+        BlockchainImpl.getInstance().setLastBlock(lastBlock);
+        Db.getDb().setWriteBufferSize(writeBufferSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.shutdown();
+    }
+
+    @Benchmark
+    public void paymentBlock() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Db.getDb().beginTransaction();
+        try {
+            for (int i = 0; i < transactionsPerBlock; i++) {
+                long transactionId = FIRST_TRANSACTION_ID + i;
+                long amountATM = (1 + random.nextInt(100)) * Constants.ONE_APL;
+                Account sender = Account.getAccount(FIRST_ACCOUNT_ID + random.nextInt(accountCount));
+                Account recipient = Account.getAccount(FIRST_ACCOUNT_ID + random.nextInt(accountCount));
+                sender.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ORDINARY_PAYMENT, transactionId, -amountATM);
+                recipient.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ORDINARY_PAYMENT, transactionId, amountATM);
+            }
+            Db.getDb().flushWriteBuffers();
+        } finally {
+            AccountLedger.clearEntries();
+            Db.getDb().rollbackTransaction();
+            Db.getDb().endTransaction();
+        }
+    }
+}
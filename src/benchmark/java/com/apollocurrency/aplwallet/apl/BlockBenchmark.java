@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block generation signature verification and forging hit calculation.  The previous block
+ * comes from the test data set and the generator is a genesis account, so the block is valid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBenchmark {
+
+    /** Block with height 104595 in the test data set */
+    private static final long PREVIOUS_BLOCK_ID = -468651855371775066L;
+
+    /** Effective balance of the generator */
+    private static final long EFFECTIVE_BALANCE_APL = 1000000;
+
+    private BlockImpl previousBlock;
+    private BlockImpl block;
+    private byte[] generatorPublicKey;
+    private BigInteger hit;
+    private BigInteger effectiveBalance;
+
+    @Setup
+    public void setup() throws BlockchainProcessor.BlockOutOfOrderException {
+        BenchmarkEnvironment.initDb();
+        Random random = new Random(25519);
+        byte[] keySeed = new byte[32];
+        random.nextBytes(keySeed);
+        generatorPublicKey = Crypto.getPublicKey(keySeed);
+        BenchmarkEnvironment.insertAccounts(Account.getId(generatorPublicKey), 1, EFFECTIVE_BALANCE_APL * Constants.ONE_APL);
+        previousBlock = BlockchainImpl.getInstance().getBlock(PREVIOUS_BLOCK_ID);
+        if (previousBlock == null) {
+            throw new IllegalStateException("Block " + Long.toUnsignedString(PREVIOUS_BLOCK_ID) + " is not in the test data set");
+        }
+        MessageDigest digest = Crypto.sha256();
+        digest.update(previousBlock.getGenerationSignature());
+        byte[] generationSignature = digest.digest(generatorPublicKey);
+        hit = Generator.getHit(generatorPublicKey, previousBlock);
+        effectiveBalance = BigInteger.valueOf(EFFECTIVE_BALANCE_APL);
+        int timestamp = (int) Generator.getHitTime(effectiveBalance, hit, previousBlock) + 1;
+        block = new BlockImpl(previousBlock.getVersion(), timestamp, PREVIOUS_BLOCK_ID, 0, 0, 0, new byte[32],
+                generatorPublicKey, generationSignature, new byte[64], new byte[32], 0, Collections.emptyList());
+        if (!block.verifyGenerationSignature()) {
+            throw new IllegalStateException("Generation signature of the benchmark block is not valid");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkEnvironment.shutdown();
+    }
+
+    @Benchmark
+    public boolean verifyGenerationSignature() throws BlockchainProcessor.BlockOutOfOrderException {
+        return block.verifyGenerationSignature();
+    }
+
+    @Benchmark
+    public BigInteger getHit() {
+        return Generator.getHit(generatorPublicKey, previousBlock);
+    }
+
+    @Benchmark
+    public long getHitTime() {
+        return Generator.getHitTime(effectiveBalance, hit, previousBlock);
+    }
+
+    @Benchmark
+    public boolean verifyHit() {
+        return Generator.verifyHit(hit, effectiveBalance, previousBlock, block.getTimestamp());
+    }
+}
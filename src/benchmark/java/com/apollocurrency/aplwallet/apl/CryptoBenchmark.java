@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.crypto.Curve25519Backend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signature generation and verification for each Curve25519 backend
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    @Param({"reference", "optimized"})
+    private String backend;
+
+    @Param({"256"})
+    private int messageLength;
+
+    private byte[] keySeed;
+    private byte[] publicKey;
+    private byte[] message;
+    private byte[] signature;
+
+    @Setup
+    public void setup() {
+        Crypto.setCurve25519Backend(Curve25519Backend.getBackend(backend));
+        Random random = new Random(25519);
+        keySeed = new byte[32];
+        random.nextBytes(keySeed);
+        message = new byte[messageLength];
+        random.nextBytes(message);
+        publicKey = Crypto.getPublicKey(keySeed);
+        signature = Crypto.sign(message, keySeed);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return Crypto.sign(message, keySeed);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return Crypto.verify(signature, message, publicKey);
+    }
+
+    @Benchmark
+    public byte[] getPublicKey() {
+        return Crypto.getPublicKey(keySeed);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.AccountLedger.LedgerEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API reads while blocks are applied, using the PageStore or the MVStore database engine.  One thread
+ * applies and commits blocks of payments while the other threads read account balances and the latest
+ * transactions of an account, as the account API requests do.  The database is created in a temporary
+ * directory.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbEngineBenchmark {
+
+    /** Identifier of the first benchmark account */
+    private static final long FIRST_ACCOUNT_ID = 1000000;
+
+    /** Identifier of the first payment transaction */
+    private static final long FIRST_TRANSACTION_ID = 3000000;
+
+    @Param({"false", "true"})
+    private boolean mvStore;
+
+    @Param({"10000"})
+    private int accountCount;
+
+    @Param({"255"})
+    private int transactionsPerBlock;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.initDb(mvStore);
+        BenchmarkEnvironment.insertAccounts(FIRST_ACCOUNT_ID, accountCount, 1000000 * Constants.ONE_APL);
+        BlockImpl lastBlock = AplGlobalObjects.getBlockDb().findLastBlock();
+        if (lastBlock == null) {
+            throw new IllegalStateException("The test data set has no blocks");
+        }
+        BlockchainImpl.getInstance().setLastBlock(lastBlock);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.shutdown();
+    }
+
+    private long randomAccountId() {
+        return FIRST_ACCOUNT_ID + ThreadLocalRandom.current().nextInt(accountCount);
+    }
+
+    @Benchmark
+    @Group("applyAndRead")
+    @GroupThreads(1)
+    public void applyBlock() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Db.getDb().beginTransaction();
+        try {
+            for (int i = 0; i < transactionsPerBlock; i++) {
+                long transactionId = FIRST_TRANSACTION_ID + i;
+                long amountATM = (1 + random.nextInt(100)) * Constants.ONE_APL;
+                Account sender = Account.getAccount(randomAccountId());
+                Account recipient = Account.getAccount(randomAccountId());
+                sender.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ORDINARY_PAYMENT, transactionId, -amountATM);
+                recipient.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ORDINARY_PAYMENT, transactionId, amountATM);
+            }
+            Db.getDb().commitTransaction();
+        } catch (RuntimeException e) {
+            Db.getDb().rollbackTransaction();
+            throw e;
+        } finally {
+            AccountLedger.clearEntries();
+            Db.getDb().endTransaction();
+        }
+    }
+
+    @Benchmark
+    @Group("applyAndRead")
+    @GroupThreads(4)
+    public void readAccount(Blackhole blackhole) throws SQLException {
+        long accountId = randomAccountId();
+        try (Connection con = Db.getDb().getConnection()) {
+            try (PreparedStatement pstmt = con.prepareStatement("SELECT balance FROM account WHERE id = ? AND latest = TRUE")) {
+                pstmt.setLong(1, accountId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    blackhole.consume(rs.next() ? rs.getLong(1) : 0);
+                }
+            }
+            try (PreparedStatement pstmt = con.prepareStatement("SELECT * FROM transaction WHERE sender_id = ? "
+                    + "UNION ALL SELECT * FROM transaction WHERE recipient_id = ? AND sender_id <> ? "
+                    + "ORDER BY block_timestamp DESC, transaction_index DESC LIMIT 10")) {
+                pstmt.setLong(1, accountId);
+                pstmt.setLong(2, accountId);
+                pstmt.setLong(3, accountId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        blackhole.consume(rs.getLong("id"));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hex, text and JSON encoding used by the API and the peer protocol
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private byte[] bytes;
+    private String hexString;
+    private String text;
+    private JSONObject transactionJSON;
+    private String transactionJSONString;
+
+    @Setup
+    public void setup() throws AplException.NotValidException {
+        BenchmarkEnvironment.initChain();
+        Random random = new Random(25519);
+        bytes = new byte[256];
+        random.nextBytes(bytes);
+        hexString = Convert.toHexString(bytes);
+        text = hexString.substring(0, 160);
+        transactionJSON = BenchmarkEnvironment.newTransaction(random).getJSONObject();
+        transactionJSONString = JSON.toJSONString(transactionJSON);
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return Convert.toHexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] parseHexString() {
+        return Convert.parseHexString(hexString);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return Convert.toBytes(text);
+    }
+
+    @Benchmark
+    public String encodeJSON() {
+        return JSON.toJSONString(transactionJSON);
+    }
+
+    @Benchmark
+    public Object parseJSON() {
+        return JSONValue.parse(transactionJSONString);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account lookups through the account EntityDbTable.  The in-memory database is loaded with the
+ * test data set and the requested number of additional accounts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityDbTableBenchmark {
+
+    /** Identifier of the first benchmark account */
+    private static final long FIRST_ACCOUNT_ID = 1000000;
+
+    @Param({"10000"})
+    private int accountCount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.initDb();
+        BenchmarkEnvironment.insertAccounts(FIRST_ACCOUNT_ID, accountCount, Constants.ONE_APL);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.shutdown();
+    }
+
+    private long randomAccountId() {
+        return FIRST_ACCOUNT_ID + ThreadLocalRandom.current().nextInt(accountCount);
+    }
+
+    @Benchmark
+    public Account get() {
+        return Account.getAccount(randomAccountId());
+    }
+
+    @Benchmark
+    public Account getMissing() {
+        return Account.getAccount(-randomAccountId());
+    }
+
+    /**
+     * Lookups within a database transaction are served by the table cache after the first read
+     */
+    @State(Scope.Thread)
+    public static class DbTransaction {
+
+        @Setup(Level.Iteration)
+        public void beginTransaction() {
+            Db.getDb().beginTransaction();
+        }
+
+        @TearDown(Level.Iteration)
+        public void endTransaction() {
+            Db.getDb().rollbackTransaction();
+            Db.getDb().endTransaction();
+        }
+    }
+
+    @Benchmark
+    public Account getInTransaction(DbTransaction dbTransaction) {
+        return Account.getAccount(randomAccountId());
+    }
+}
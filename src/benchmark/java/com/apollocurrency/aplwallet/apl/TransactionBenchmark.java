@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction byte parsing and serialization
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private TransactionImpl.BuilderImpl builder;
+    private TransactionImpl transaction;
+    private byte[] transactionBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws AplException.NotValidException {
+        BenchmarkEnvironment.initChain();
+        TransactionImpl signedTransaction = BenchmarkEnvironment.newTransaction(new Random(25519));
+        transactionBytes = signedTransaction.getBytes();
+        builder = TransactionImpl.newTransactionBuilder(transactionBytes);
+    }
+
+    /**
+     * Serialization is cached by the transaction, so each invocation gets a new instance
+     */
+    @Setup(Level.Invocation)
+    public void newTransaction() throws AplException.NotValidException {
+        transaction = builder.build();
+    }
+
+    @Benchmark
+    public TransactionImpl parse() throws AplException.NotValidException {
+        return TransactionImpl.newTransactionBuilder(transactionBytes).build();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return transaction.bytes();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-block collection churn of a rescan.  Each invocation processes one block: the accounts touched
+ * by the block are looked up in the transaction cache and added when missing, the transaction
+ * identifiers are tracked in an id set, and both are cleared for the next block as done by
+ * {@link TransactionalDb#clearCache()}.
+ * <p>
+ * Run with the GC profiler (enabled by the benchmarks profile) and compare gc.alloc.rate.norm of the
+ * JDK collections with the primitive ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionCacheBenchmark {
+
+    /** Number of distinct accounts */
+    private static final int ACCOUNT_COUNT = 100000;
+
+    private static final DbKey.LongKeyFactory<Object> accountDbKeyFactory = new DbKey.LongKeyFactory<Object>("id") {
+        @Override
+        public DbKey newKey(Object account) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Param({"255"})
+    private int transactionsPerBlock;
+
+    private long[] accountIds;
+    private long[] transactionIds;
+    private int next;
+    private final Object entity = new Object();
+
+    private final Map<DbKey, Object> hashMapCache = new HashMap<>();
+    private final DbKeyMap<Object> dbKeyMapCache = new DbKeyMap<>();
+    private final Set<Long> hashSet = new HashSet<>();
+    private final LongHashSet longHashSet = new LongHashSet();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(25519);
+        accountIds = new long[ACCOUNT_COUNT];
+        for (int i = 0; i < ACCOUNT_COUNT; i++) {
+            accountIds[i] = random.nextLong();
+        }
+        transactionIds = new long[1 << 16];
+        for (int i = 0; i < transactionIds.length; i++) {
+            transactionIds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Get the starting point of the next block so that successive blocks touch different accounts
+     */
+    private int nextBlock() {
+        int start = next;
+        next = (next + transactionsPerBlock * 2) % (ACCOUNT_COUNT - transactionsPerBlock * 2);
+        return start;
+    }
+
+    @Benchmark
+    public int hashMapCache() {
+        int start = nextBlock();
+        // Sender and recipient of each transaction, both looked up twice
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = start; i < start + transactionsPerBlock * 2; i++) {
+                DbKey dbKey = accountDbKeyFactory.newKey(accountIds[i]);
+                if (hashMapCache.get(dbKey) == null) {
+                    hashMapCache.put(dbKey, entity);
+                }
+            }
+        }
+        int size = hashMapCache.size();
+        hashMapCache.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int dbKeyMapCache() {
+        int start = nextBlock();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = start; i < start + transactionsPerBlock * 2; i++) {
+                DbKey dbKey = accountDbKeyFactory.newKey(accountIds[i]);
+                if (dbKeyMapCache.get(dbKey) == null) {
+                    dbKeyMapCache.put(dbKey, entity);
+                }
+            }
+        }
+        int size = dbKeyMapCache.size();
+        dbKeyMapCache.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int hashSet() {
+        int start = nextBlock() & (transactionIds.length - 1);
+        for (int i = 0; i < transactionsPerBlock; i++) {
+            hashSet.add(transactionIds[(start + i) & (transactionIds.length - 1)]);
+        }
+        int size = hashSet.size();
+        hashSet.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int longHashSet() {
+        int start = nextBlock() & (transactionIds.length - 1);
+        for (int i = 0; i < transactionsPerBlock; i++) {
+            longHashSet.add(transactionIds[(start + i) & (transactionIds.length - 1)]);
+        }
+        int size = longHashSet.size();
+        longHashSet.clear();
+        return size;
+    }
+}
@@ -261,7 +261,7 @@ public final class Account {
                 int count;
                 do {
                     count = pstmtDelete.executeUpdate();
-                    Db.getDb().commitTransaction();
+                    commitTrim();
                 } while (count >= Constants.BATCH_COMMIT_SIZE);
             }
             catch (SQLException e) {
@@ -28,8 +28,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
@@ -70,8 +72,43 @@ public class AccountLedger {
     /** Blockchain processor */
     private static final BlockchainProcessor blockchainProcessor = Apl.getBlockchainProcessor();
 
-    /** Pending ledger entries */
-    private static final List<LedgerEntry> pendingEntries = new ArrayList<>();
+    /** Number of heights deleted for each commit when trimming */
+    private static final int TRIM_HEIGHTS = 100;
+
+    /** Pending ledger entries in insert order */
+    private static final Map<LedgerEntry, LedgerEntry> pendingEntries = new LinkedHashMap<>();
+
+    /** Pending ledger entries in insert order for each account holding */
+    private static final Map<HoldingKey, List<LedgerEntry>> pendingHoldingEntries = new HashMap<>();
+
+    /**
+     * Account holding of a pending ledger entry
+     */
+    private static final class HoldingKey {
+
+        private final long accountId;
+        private final LedgerHolding holding;
+        private final Long holdingId;
+
+        private HoldingKey(LedgerEntry ledgerEntry) {
+            this.accountId = ledgerEntry.getAccountId();
+            this.holding = ledgerEntry.getHolding();
+            this.holdingId = ledgerEntry.getHoldingId();
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(accountId) ^ (holding != null ? holding.getCode() : 0) ^
+                    (holdingId != null ? Long.hashCode(holdingId) : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof HoldingKey) && accountId == ((HoldingKey)obj).accountId &&
+                    holding == ((HoldingKey)obj).holding &&
+                    (holdingId != null ? holdingId.equals(((HoldingKey)obj).holdingId) : ((HoldingKey)obj).holdingId == null);
+        }
+    }
 
     /**
      * Process apl.ledgerAccounts
@@ -113,13 +150,48 @@ public class AccountLedger {
         }
 
         /**
-         * Insert an entry into the table
+         * Insert entries into the table
+         *
+         * The entries are inserted in a single batch and the ledger identifiers are then read back in
+         * insert order.  Entries are only inserted while holding the blockchain write lock, so the
+         * identifiers following the current maximum identifier belong to this batch.
          *
-         * @param   ledgerEntry             Ledger entry
+         * @param   ledgerEntries           Ledger entries in insert order
          */
-        public void insert(LedgerEntry ledgerEntry) {
+        public void insert(Collection<LedgerEntry> ledgerEntries) {
             try (Connection con = db.getConnection()) {
-                ledgerEntry.save(con);
+                long maxLedgerId;
+                try (Statement stmt = con.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT MAX(db_id) FROM account_ledger")) {
+                    maxLedgerId = rs.next() ? rs.getLong(1) : 0;
+                }
+                try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO account_ledger "
+                        + "(account_id, event_type, event_id, holding_type, holding_id, change, balance, "
+                        + "block_id, height, timestamp) "
+                        + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                    int count = 0;
+                    for (LedgerEntry ledgerEntry : ledgerEntries) {
+                        ledgerEntry.setParameters(pstmt);
+                        pstmt.addBatch();
+                        if (++count % Constants.BATCH_COMMIT_SIZE == 0) {
+                            pstmt.executeBatch();
+                        }
+                    }
+                    if (count % Constants.BATCH_COMMIT_SIZE != 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                try (PreparedStatement pstmt = con.prepareStatement("SELECT db_id FROM account_ledger WHERE db_id > ? ORDER BY db_id")) {
+                    pstmt.setLong(1, maxLedgerId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        for (LedgerEntry ledgerEntry : ledgerEntries) {
+                            if (!rs.next()) {
+                                break;
+                            }
+                            ledgerEntry.setLedgerId(rs.getLong(1));
+                        }
+                    }
+                }
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
             }
@@ -128,20 +200,36 @@ public class AccountLedger {
         /**
          * Trim the account ledger table
          *
+         * Entries are deleted a range of heights at a time so each commit is bounded
+         * by the number of entries logged for those heights
+         *
          * @param   height                  Trim height
          */
         @Override
         public void trim(int height) {
             if (trimKeep <= 0)
                 return;
-            try (Connection con = db.getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("DELETE FROM account_ledger WHERE height <= ? LIMIT " + Constants.BATCH_COMMIT_SIZE)) {
-                pstmt.setInt(1, Math.max(blockchain.getHeight() - trimKeep, 0));
-                int trimmed;
-                do {
-                    trimmed = pstmt.executeUpdate();
-                    Db.getDb().commitTransaction();
-                } while (trimmed >= Constants.BATCH_COMMIT_SIZE);
+            int trimHeight = Math.max(blockchain.getHeight() - trimKeep, 0);
+            try (Connection con = db.getConnection()) {
+                int minHeight;
+                try (Statement stmt = con.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT MIN(height) FROM account_ledger")) {
+                    if (!rs.next()) {
+                        return;
+                    }
+                    minHeight = rs.getInt(1);
+                    if (rs.wasNull()) {
+                        return;
+                    }
+                }
+                try (PreparedStatement pstmt = con.prepareStatement("DELETE FROM account_ledger WHERE height >= ? AND height < ?")) {
+                    for (int fromHeight = minHeight; fromHeight <= trimHeight; fromHeight += TRIM_HEIGHTS) {
+                        pstmt.setInt(1, fromHeight);
+                        pstmt.setInt(2, Math.min(fromHeight + TRIM_HEIGHTS, trimHeight + 1));
+                        pstmt.executeUpdate();
+                        commitTrim();
+                    }
+                }
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
             }
@@ -243,35 +331,51 @@ public class AccountLedger {
         //
         // Combine multiple ledger entries
         //
-        int index = pendingEntries.indexOf(ledgerEntry);
-        if (index >= 0) {
-            LedgerEntry existingEntry = pendingEntries.remove(index);
+        List<LedgerEntry> holdingEntries = pendingHoldingEntries.computeIfAbsent(new HoldingKey(ledgerEntry), k -> new ArrayList<>());
+        LedgerEntry existingEntry = pendingEntries.remove(ledgerEntry);
+        if (existingEntry != null) {
+            int index = indexOf(holdingEntries, existingEntry);
+            holdingEntries.remove(index);
             ledgerEntry.updateChange(existingEntry.getChange());
             long adjustedBalance = existingEntry.getBalance() - existingEntry.getChange();
-            for (; index < pendingEntries.size(); index++) {
-                existingEntry = pendingEntries.get(index);
-                if (existingEntry.getAccountId() == ledgerEntry.getAccountId() &&
-                        existingEntry.getHolding() == ledgerEntry.getHolding() &&
-                        ((existingEntry.getHoldingId() == null && ledgerEntry.getHoldingId() == null) ||
-                        (existingEntry.getHoldingId() != null && existingEntry.getHoldingId().equals(ledgerEntry.getHoldingId())))) {
-                    adjustedBalance += existingEntry.getChange();
-                    existingEntry.setBalance(adjustedBalance);
-                }
+            for (; index < holdingEntries.size(); index++) {
+                existingEntry = holdingEntries.get(index);
+                adjustedBalance += existingEntry.getChange();
+                existingEntry.setBalance(adjustedBalance);
             }
         }
-        pendingEntries.add(ledgerEntry);
+        pendingEntries.put(ledgerEntry, ledgerEntry);
+        holdingEntries.add(ledgerEntry);
+    }
+
+    /**
+     * Find a pending entry in the entries for its holding
+     *
+     * @param   holdingEntries              Pending entries for the holding
+     * @param   ledgerEntry                 Pending entry
+     * @return                              Entry index
+     */
+    private static int indexOf(List<LedgerEntry> holdingEntries, LedgerEntry ledgerEntry) {
+        for (int i = holdingEntries.size() - 1; i >= 0; i--) {
+            if (holdingEntries.get(i) == ledgerEntry) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Pending ledger entry not found");
     }
 
     /**
      * Commit pending ledger entries
      */
     static void commitEntries() {
-        int count = 0;
-        for (LedgerEntry ledgerEntry : pendingEntries) {
-            accountLedgerTable.insert(ledgerEntry);
-            listeners.notify(ledgerEntry, Event.ADD_ENTRY);
+        if (!pendingEntries.isEmpty()) {
+            Collection<LedgerEntry> ledgerEntries = pendingEntries.values();
+            accountLedgerTable.insert(ledgerEntries);
+            for (LedgerEntry ledgerEntry : ledgerEntries) {
+                listeners.notify(ledgerEntry, Event.ADD_ENTRY);
+            }
         }
-        pendingEntries.clear();
+        clearEntries();
     }
 
     /**
@@ -279,6 +383,7 @@ public class AccountLedger {
      */
     static void clearEntries() {
         pendingEntries.clear();
+        pendingHoldingEntries.clear();
     }
 
     /**
@@ -883,38 +988,36 @@ public class AccountLedger {
         }
 
         /**
-         * Save the ledger entry
+         * Set the ledger identifier assigned when the entry was inserted
          *
-         * @param   con                     Database connection
+         * @param   ledgerId                Ledger identifier
+         */
+        private void setLedgerId(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+
+        /**
+         * Set the insert statement parameters for the ledger entry
+         *
+         * @param   stmt                    Insert statement
          * @throws  SQLException            Database error occurred
          */
-        private void save(Connection con) throws SQLException {
-            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO account_ledger "
-                    + "(account_id, event_type, event_id, holding_type, holding_id, change, balance, "
-                    + "block_id, height, timestamp) "
-                    + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-                int i=0;
-                stmt.setLong(++i, accountId);
-                stmt.setByte(++i, (byte) event.getCode());
-                stmt.setLong(++i, eventId);
-                if (holding != null) {
-                    stmt.setByte(++i, (byte)holding.getCode());
-                } else {
-                    stmt.setByte(++i, (byte)-1);
-                }
-                DbUtils.setLong(stmt, ++i, holdingId);
-                stmt.setLong(++i, change);
-                stmt.setLong(++i, balance);
-                stmt.setLong(++i, blockId);
-                stmt.setInt(++i, height);
-                stmt.setInt(++i, timestamp);
-                stmt.executeUpdate();
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        ledgerId = rs.getLong(1);
-                    }
-                }
+        private void setParameters(PreparedStatement stmt) throws SQLException {
+            int i=0;
+            stmt.setLong(++i, accountId);
+            stmt.setByte(++i, (byte) event.getCode());
+            stmt.setLong(++i, eventId);
+            if (holding != null) {
+                stmt.setByte(++i, (byte)holding.getCode());
+            } else {
+                stmt.setByte(++i, (byte)-1);
             }
+            DbUtils.setLong(stmt, ++i, holdingId);
+            stmt.setLong(++i, change);
+            stmt.setLong(++i, balance);
+            stmt.setLong(++i, blockId);
+            stmt.setInt(++i, height);
+            stmt.setInt(++i, timestamp);
         }
     }
 }
@@ -52,6 +52,7 @@ import com.apollocurrency.aplwallet.apl.chainid.DbInfoExtractor;
 import com.apollocurrency.aplwallet.apl.chainid.DbMigrator;
 import com.apollocurrency.aplwallet.apl.chainid.H2DbInfoExtractor;
 import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.crypto.Curve25519Backend;
 import com.apollocurrency.aplwallet.apl.db.FullTextTrigger;
 import com.apollocurrency.aplwallet.apl.dbmodel.Option;
 import com.apollocurrency.aplwallet.apl.env.DirProvider;
@@ -295,6 +296,7 @@ public final class Apl {
                                 "socksProxyPort",
                                 "apl.enablePeerUPnP"));
                 logSystemProperties();
+                Crypto.setCurve25519Backend(Curve25519Backend.getBackend(propertiesLoader.getStringProperty("apl.curve25519Backend", "reference")));
                 runtimeMode.init();
                 Thread secureRandomInitThread = initSecureRandom();
                 runtimeMode.updateAppStatus("Database initialization...");
@@ -308,7 +310,9 @@ public final class Apl {
                 AplGlobalObjects.getChainConfig().updateToLatestConfig();
                 TransactionProcessorImpl.getInstance();
                 BlockchainProcessorImpl.getInstance();
+                AplGlobalObjects.getBlockDb().attachCacheListener();
                 Account.init();
+                EffectiveBalanceIndex.init();
                 AccountRestrictions.init();
                 runtimeMode.updateAppStatus("Account ledger initialization...");
                 AccountLedger.init();
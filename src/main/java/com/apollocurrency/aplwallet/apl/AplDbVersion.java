@@ -687,6 +687,14 @@ public class AplDbVersion extends DbVersion {
             case 248:
                 apply("ALTER TABLE currency_supply ALTER COLUMN current_reserve_per_unit_nqt RENAME TO current_reserve_per_unit_atm");
             case 249:
+                apply("ALTER TABLE peer ADD latency DOUBLE");
+            case 250:
+                apply("ALTER TABLE peer ADD throughput DOUBLE");
+            case 251:
+                apply("ALTER TABLE peer ADD error_rate DOUBLE");
+            case 252:
+                apply("ALTER TABLE peer ADD fork_penalty DOUBLE");
+            case 253:
                 return;
             default:
                 throw new RuntimeException("Blockchain database inconsistent with code, at update " + nextUpdate
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the most recent blocks and their transactions.
+ * <p>
+ * Lookups do not lock: the blocks are kept in concurrent maps and readers see either the old or the
+ * new state of an update.  Updates are made by the block pusher and are serialized on the cache.
+ * Blocks are evicted when they fall out of the height window or when the estimated size of the
+ * cached blocks exceeds the byte limit, oldest blocks first.
+ */
+public final class BlockCache {
+
+    /** Estimated size of a block excluding the payload */
+    private static final int BLOCK_OVERHEAD = 512;
+
+    /** Maximum number of cached blocks */
+    private final int maxBlocks;
+
+    /** Maximum estimated size of the cached blocks */
+    private final long maxBytes;
+
+    /** Blocks by identifier */
+    private final Map<Long, BlockImpl> blocks = new ConcurrentHashMap<>();
+
+    /** Blocks by height */
+    private final ConcurrentNavigableMap<Integer, BlockImpl> heights = new ConcurrentSkipListMap<>();
+
+    /** Transactions of the cached blocks */
+    private final Map<Long, TransactionImpl> transactions = new ConcurrentHashMap<>();
+
+    /** Estimated size of the cached blocks, updated while holding the cache lock */
+    private volatile long size;
+
+    /** Cache statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create the block cache
+     *
+     * @param   maxBlocks           Maximum number of cached blocks
+     * @param   maxBytes            Maximum estimated size of the cached blocks
+     */
+    public BlockCache(int maxBlocks, long maxBytes) {
+        this.maxBlocks = maxBlocks;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a cached block
+     *
+     * @param   blockId             Block identifier
+     * @return                      Block or null if the block is not cached
+     */
+    BlockImpl getBlock(long blockId) {
+        return count(blocks.get(blockId));
+    }
+
+    /**
+     * Get a cached block
+     *
+     * @param   height              Block height
+     * @return                      Block or null if the block is not cached
+     */
+    BlockImpl getBlockAtHeight(int height) {
+        return count(heights.get(height));
+    }
+
+    /**
+     * Get the cached blocks following a block
+     *
+     * @param   blockId             Block identifier
+     * @param   limit               Maximum number of blocks to return
+     * @return                      Blocks in height order or null if the block is not cached
+     */
+    List<BlockImpl> getBlocksAfter(long blockId, int limit) {
+        BlockImpl block = getBlock(blockId);
+        if (block == null) {
+            return null;
+        }
+        List<BlockImpl> result = new ArrayList<>(Math.min(limit, maxBlocks));
+        int height = block.getHeight();
+        for (BlockImpl cacheBlock : heights.tailMap(height + 1).values()) {
+            // Stop at a gap left by a concurrent update
+            if (result.size() >= limit || cacheBlock.getHeight() != ++height) {
+                break;
+            }
+            result.add(cacheBlock);
+        }
+        return result;
+    }
+
+    /**
+     * Get a cached transaction
+     *
+     * @param   transactionId       Transaction identifier
+     * @return                      Transaction or null if the transaction is not cached
+     */
+    TransactionImpl getTransaction(long transactionId) {
+        return count(transactions.get(transactionId));
+    }
+
+    /**
+     * Remove a transaction from the cache
+     *
+     * @param   transactionId       Transaction identifier
+     */
+    void removeTransaction(long transactionId) {
+        transactions.remove(transactionId);
+    }
+
+    /**
+     * Add a pushed block to the cache.  Blocks at or above the height of the new block are
+     * replaced and blocks outside the height window are evicted.
+     *
+     * @param   block               Pushed block
+     */
+    synchronized void add(BlockImpl block) {
+        int height = block.getHeight();
+        Iterator<BlockImpl> it = heights.values().iterator();
+        while (it.hasNext()) {
+            BlockImpl cacheBlock = it.next();
+            int cacheHeight = cacheBlock.getHeight();
+            if (cacheHeight <= height - maxBlocks || cacheHeight >= height) {
+                it.remove();
+                remove(cacheBlock);
+            }
+        }
+        block.getTransactions().forEach(transaction -> transactions.put(transaction.getId(), transaction));
+        heights.put(height, block);
+        blocks.put(block.getId(), block);
+        size += getSize(block);
+        while (size > maxBytes && heights.size() > 1) {
+            remove(heights.pollFirstEntry().getValue());
+        }
+    }
+
+    /**
+     * Remove all blocks from the cache
+     */
+    synchronized void clear() {
+        heights.clear();
+        blocks.clear();
+        transactions.clear();
+        size = 0;
+    }
+
+    private void remove(BlockImpl block) {
+        blocks.remove(block.getId());
+        block.getTransactions().forEach(transaction -> transactions.remove(transaction.getId()));
+        size -= getSize(block);
+        evictions.incrementAndGet();
+    }
+
+    private static long getSize(BlockImpl block) {
+        return BLOCK_OVERHEAD + block.getPayloadLength();
+    }
+
+    private <T> T count(T cached) {
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    public int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the cache statistics
+     *
+     * @return                      JSON object
+     */
+    public JSONObject getJSONObject() {
+        JSONObject json = new JSONObject();
+        json.put("blocks", getBlockCount());
+        json.put("transactions", transactions.size());
+        json.put("size", size);
+        json.put("maxBlocks", maxBlocks);
+        json.put("maxBytes", maxBytes);
+        json.put("hits", hits.get());
+        json.put("misses", misses.get());
+        json.put("evictions", evictions.get());
+        return json;
+    }
+}
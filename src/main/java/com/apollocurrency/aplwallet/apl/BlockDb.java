@@ -28,33 +28,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import com.apollocurrency.aplwallet.apl.db.DbUtils;
 import com.apollocurrency.aplwallet.apl.updater.ConnectionProvider;
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
 import org.slf4j.Logger;
 public final class BlockDb {
     private static final Logger LOG = getLogger(BlockDb.class);
 
     /** Block cache */
     private static final int DEFAULT_BLOCK_CACHE_SIZE = 10;
-    private int blockCacheSize;
-    private final Map<Long, BlockImpl> blockCache;             
-    private final SortedMap<Integer, BlockImpl> heightMap;     
-    private final Map<Long, TransactionImpl> transactionCache;
+    private static final long DEFAULT_BLOCK_CACHE_BYTES = 16 * 1024 * 1024;
+    private final BlockCache blockCache;
     private final ConnectionProvider connectionProvider;
-    public BlockDb(int blockCacheSize, Map<Long, BlockImpl> blockCache, SortedMap<Integer, BlockImpl> heightMap,
-                   Map<Long, TransactionImpl> transactionCache, ConnectionProvider connectionProvider) {
-        this.blockCacheSize = blockCacheSize;
-        this.blockCache = blockCache == null ? new HashMap<>() : blockCache;
-        this.heightMap = heightMap == null ? new TreeMap<>() : heightMap;
-        this.transactionCache = transactionCache == null ? new HashMap<>() : transactionCache;
+    public BlockDb(BlockCache blockCache, ConnectionProvider connectionProvider) {
+        this.blockCache = blockCache == null ? new BlockCache(DEFAULT_BLOCK_CACHE_SIZE, DEFAULT_BLOCK_CACHE_BYTES) : blockCache;
         if (connectionProvider == null) {
             throw new IllegalArgumentException("Connection provider is null");
         }
@@ -62,46 +50,23 @@ public final class BlockDb {
     }
 
     public BlockDb(ConnectionProvider connectionProvider) {
-        this(DEFAULT_BLOCK_CACHE_SIZE, null, null, null, connectionProvider);
+        this(new BlockCache(Apl.getIntProperty("apl.blockCacheSize", DEFAULT_BLOCK_CACHE_SIZE),
+                Apl.getIntProperty("apl.blockCacheMaxKB", (int) (DEFAULT_BLOCK_CACHE_BYTES / 1024)) * 1024L), connectionProvider);
     }
 
     public void attachCacheListener() {
-        Apl.getBlockchainProcessor().addListener((block) -> {
-            synchronized (blockCache) {
-                int height = block.getHeight();
-                Iterator<BlockImpl> it = blockCache.values().iterator();
-                while (it.hasNext()) {
-                    Block cacheBlock = it.next();
-                    int cacheHeight = cacheBlock.getHeight();
-                    if (cacheHeight <= height - blockCacheSize || cacheHeight >= height) {
-                        cacheBlock.getTransactions().forEach((tx) -> transactionCache.remove(tx.getId()));
-                        heightMap.remove(cacheHeight);
-                        it.remove();
-                    }
-                }
-                block.getTransactions().forEach((tx) -> transactionCache.put(tx.getId(), (TransactionImpl)tx));
-                heightMap.put(height, (BlockImpl)block);
-                blockCache.put(block.getId(), (BlockImpl)block);
-            }
-        }, BlockchainProcessor.Event.BLOCK_PUSHED);
+        Apl.getBlockchainProcessor().addListener((block) -> blockCache.add((BlockImpl) block), BlockchainProcessor.Event.BLOCK_PUSHED);
     }
-    
 
      private void clearBlockCache() {
-        synchronized (blockCache) {
-            blockCache.clear();
-            heightMap.clear();
-            transactionCache.clear();
-        }
+        blockCache.clear();
     }
 
     public BlockImpl findBlock(long blockId) {
         // Check the block cache
-        synchronized (blockCache) {
-            BlockImpl block = blockCache.get(blockId);
-            if (block != null) {
-                return block;
-            }
+        BlockImpl cachedBlock = blockCache.getBlock(blockId);
+        if (cachedBlock != null) {
+            return cachedBlock;
         }
         // Search the database
         try (Connection con = connectionProvider.getConnection();
@@ -125,11 +90,9 @@ public final class BlockDb {
 
     boolean hasBlock(long blockId, int height) {
         // Check the block cache
-        synchronized(blockCache) {
-            BlockImpl block = blockCache.get(blockId);
-            if (block != null) {
-                return block.getHeight() <= height;
-            }
+        BlockImpl block = blockCache.getBlock(blockId);
+        if (block != null) {
+            return block.getHeight() <= height;
         }
         // Search the database
         try (Connection con = connectionProvider.getConnection();
@@ -145,11 +108,9 @@ public final class BlockDb {
 
     long findBlockIdAtHeight(int height) {
         // Check the cache
-        synchronized(blockCache) {
-            BlockImpl block = heightMap.get(height);
-            if (block != null) {
-                return block.getId();
-            }
+        BlockImpl block = blockCache.getBlockAtHeight(height);
+        if (block != null) {
+            return block.getId();
         }
         // Search the database
         try (Connection con = connectionProvider.getConnection();
@@ -166,21 +127,15 @@ public final class BlockDb {
         }
     }
 
-    public Map<Long, BlockImpl> getBlockCache() {
+    public BlockCache getBlockCache() {
         return blockCache;
     }
 
-    public SortedMap<Integer, BlockImpl> getHeightMap() {
-        return heightMap;
-    }
-
     BlockImpl findBlockAtHeight(int height) {
         // Check the cache
-        synchronized(blockCache) {
-            BlockImpl block = heightMap.get(height);
-            if (block != null) {
-                return block;
-            }
+        BlockImpl cachedBlock = blockCache.getBlockAtHeight(height);
+        if (cachedBlock != null) {
+            return cachedBlock;
         }
         // Search the database
         try (Connection con = connectionProvider.getConnection();
@@ -200,14 +155,6 @@ public final class BlockDb {
         }
     }
 
-    public int getBlockCacheSize() {
-        return blockCacheSize;
-    }
-
-    public Map<Long, TransactionImpl> getTransactionCache() {
-        return transactionCache;
-    }
-
     public BlockImpl findLastBlock() {
         try (Connection con = connectionProvider.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block WHERE next_block_id <> 0 OR next_block_id IS NULL ORDER BY timestamp DESC LIMIT 1")) {
@@ -281,8 +228,8 @@ public final class BlockDb {
         }
     }
 
-    Set<Long> getBlockGenerators(int startHeight) {
-        Set<Long> generators = new HashSet<>();
+    LongHashSet getBlockGenerators(int startHeight) {
+        LongHashSet generators = new LongHashSet();
         try (Connection con = connectionProvider.getConnection();
                 PreparedStatement pstmt = con.prepareStatement(
                         "SELECT generator_id, COUNT(generator_id) AS count FROM block WHERE height >= ? GROUP BY generator_id")) {
@@ -369,10 +316,7 @@ public final class BlockDb {
                     pstmt.setLong(2, block.getPreviousBlockId());
                     pstmt.executeUpdate();
                 }
-                BlockImpl previousBlock;
-                synchronized (blockCache) {
-                    previousBlock = blockCache.get(block.getPreviousBlockId());
-                }
+                BlockImpl previousBlock = blockCache.getBlock(block.getPreviousBlockId());
                 if (previousBlock != null) {
                     previousBlock.setNextBlockId(block.getId());
                 }
@@ -301,10 +301,7 @@ public final class BlockImpl implements Block {
             byte[] previousBlockHash = version == 1 ? null : Convert.parseHexString((String) blockData.get("previousBlockHash"));
             Object timeoutJsonValue = blockData.get("timeout");
             int timeout =  !requireTimeout(version) ? 0 : ((Long) timeoutJsonValue).intValue();
-            List<TransactionImpl> blockTransactions = new ArrayList<>();
-            for (Object transactionData : (JSONArray) blockData.get("transactions")) {
-                blockTransactions.add(TransactionImpl.parseTransaction((JSONObject) transactionData));
-            }
+            List<TransactionImpl> blockTransactions = TransactionImpl.parseTransactions((JSONArray) blockData.get("transactions"));
             BlockImpl block = new BlockImpl(version, timestamp, previousBlock, totalAmountATM, totalFeeATM, payloadLength, payloadHash, generatorPublicKey,
                     generationSignature, blockSignature, previousBlockHash, timeout, blockTransactions);
             if (!block.checkSignature()) {
@@ -380,8 +377,7 @@ public final class BlockImpl implements Block {
                 throw new BlockchainProcessor.BlockOutOfOrderException("Can't verify signature because previous block is missing", this);
             }
 
-            Account account = Account.getAccount(getGeneratorId());
-            long effectiveBalance = account == null ? 0 : account.getEffectiveBalanceAPL();
+            long effectiveBalance = EffectiveBalanceIndex.get(getGeneratorId(), Apl.getBlockchain().getHeight());
             if (effectiveBalance <= 0) {
                 return false;
             }
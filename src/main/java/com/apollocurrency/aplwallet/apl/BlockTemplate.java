@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transactions for the next generated block.
+ * <p>
+ * The template is built for the current last block and is then maintained as transactions are added to
+ * the unconfirmed pool: a new transaction is appended when it passes the same checks used to select the
+ * block transactions, and the payload length, totals, duplicates and the SHA-256 state of the payload are
+ * updated as it is appended.  Generating a block then only needs to finish the payload hash.
+ * <p>
+ * The template is rebuilt from the unconfirmed pool as soon as a new block is pushed and the requeued
+ * transactions have been processed, so it is ready before the next block is generated.  It is rebuilt when it
+ * is next used after a block is popped, when an included transaction is removed from the pool, or when the
+ * payload is full and a transaction arrives with a higher priority than an included transaction.
+ * <p>
+ * The template is built for a block timestamp.  It is reused for a different block timestamp as long as the
+ * included transactions are valid for that timestamp and no transaction was left out because of its timestamp
+ * or expiration, otherwise it is rebuilt for the new block timestamp.
+ */
+final class BlockTemplate {
+
+    /**
+     * Block payload
+     */
+    static final class Payload {
+
+        private final List<UnconfirmedTransaction> transactions;
+        private final byte[] payloadHash;
+        private final int payloadLength;
+        private final long totalAmountATM;
+        private final long totalFeeATM;
+
+        private Payload(List<UnconfirmedTransaction> transactions, byte[] payloadHash, int payloadLength,
+                        long totalAmountATM, long totalFeeATM) {
+            this.transactions = transactions;
+            this.payloadHash = payloadHash;
+            this.payloadLength = payloadLength;
+            this.totalAmountATM = totalAmountATM;
+            this.totalFeeATM = totalFeeATM;
+        }
+
+        /**
+         * Create the payload for a set of transactions
+         *
+         * @param   transactions        Block transactions in block order
+         * @return                      Block payload
+         */
+        static Payload create(Iterable<UnconfirmedTransaction> transactions) {
+            List<UnconfirmedTransaction> list = new ArrayList<>();
+            MessageDigest digest = Crypto.sha256();
+            int payloadLength = 0;
+            long totalAmountATM = 0;
+            long totalFeeATM = 0;
+            for (UnconfirmedTransaction unconfirmedTransaction : transactions) {
+                TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+                list.add(unconfirmedTransaction);
+                digest.update(transaction.bytes());
+                payloadLength += transaction.getFullSize();
+                totalAmountATM += transaction.getAmountATM();
+                totalFeeATM += transaction.getFeeATM();
+            }
+            return new Payload(list, digest.digest(), payloadLength, totalAmountATM, totalFeeATM);
+        }
+
+        List<UnconfirmedTransaction> getTransactions() {
+            return transactions;
+        }
+
+        byte[] getPayloadHash() {
+            return payloadHash;
+        }
+
+        int getPayloadLength() {
+            return payloadLength;
+        }
+
+        long getTotalAmountATM() {
+            return totalAmountATM;
+        }
+
+        long getTotalFeeATM() {
+            return totalFeeATM;
+        }
+    }
+
+    private final BlockchainProcessorImpl blockchainProcessor;
+
+    /** The template must be rebuilt before it is used */
+    private boolean invalid = true;
+
+    /** Last block when the template was built */
+    private long previousBlockId;
+    private int previousBlockHeight;
+
+    /** Included transactions in block order */
+    private final List<UnconfirmedTransaction> transactions = new ArrayList<>();
+    private final LongHashSet transactionIds = new LongHashSet();
+
+    private Map<TransactionType, Map<String, Integer>> duplicates;
+    private MessageDigest digest;
+    private int payloadLength;
+    private long totalAmountATM;
+    private long totalFeeATM;
+
+    /** Latest timestamp and earliest expiration of the included transactions */
+    private int maxTimestamp;
+    private int minExpiration;
+
+    /** Block timestamp used to select the transactions */
+    private int blockTimestamp;
+
+    /** A transaction was left out because of its timestamp or expiration */
+    private boolean timestampExcluded;
+
+    BlockTemplate(BlockchainProcessorImpl blockchainProcessor) {
+        this.blockchainProcessor = blockchainProcessor;
+    }
+
+    /**
+     * Rebuild the template before it is used again
+     */
+    synchronized void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Append transactions added to the unconfirmed pool
+     *
+     * @param   addedTransactions   Added transactions
+     */
+    synchronized void transactionsAdded(List<? extends Transaction> addedTransactions) {
+        if (invalid) {
+            return;
+        }
+        for (Transaction transaction : addedTransactions) {
+            UnconfirmedTransaction unconfirmedTransaction = TransactionProcessorImpl.getInstance().getUnconfirmedTransaction(transaction);
+            if (unconfirmedTransaction != null && !append(unconfirmedTransaction)) {
+                invalid = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rebuild the template when an included transaction is removed from the unconfirmed pool
+     *
+     * @param   removedTransactions Removed transactions
+     */
+    synchronized void transactionsRemoved(List<? extends Transaction> removedTransactions) {
+        if (invalid) {
+            return;
+        }
+        for (Transaction transaction : removedTransactions) {
+            if (transactionIds.contains(transaction.getId())) {
+                invalid = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the payload of the next block
+     *
+     * @param   previousBlock       Last block
+     * @param   blockTimestamp      Block timestamp
+     * @return                      Block payload
+     */
+    synchronized Payload getPayload(Block previousBlock, int blockTimestamp) {
+        if (invalid || previousBlock.getId() != previousBlockId
+                || (blockTimestamp != this.blockTimestamp && (timestampExcluded || !isIncludedValid(blockTimestamp)))) {
+            rebuild(previousBlock, blockTimestamp);
+        }
+        byte[] payloadHash;
+        try {
+            payloadHash = ((MessageDigest) digest.clone()).digest();
+        } catch (CloneNotSupportedException e) {
+            return Payload.create(transactions);
+        }
+        return new Payload(new ArrayList<>(transactions), payloadHash, payloadLength, totalAmountATM, totalFeeATM);
+    }
+
+    /**
+     * Rebuild the template from the unconfirmed pool.  The caller must hold the blockchain lock.
+     *
+     * @param   previousBlock       Last block
+     * @param   blockTimestamp      Block timestamp
+     */
+    synchronized void rebuild(Block previousBlock, int blockTimestamp) {
+        invalid = false;
+        previousBlockId = previousBlock.getId();
+        previousBlockHeight = previousBlock.getHeight();
+        this.blockTimestamp = blockTimestamp;
+        transactions.clear();
+        transactionIds.clear();
+        digest = Crypto.sha256();
+        payloadLength = 0;
+        totalAmountATM = 0;
+        totalFeeATM = 0;
+        maxTimestamp = 0;
+        minExpiration = Integer.MAX_VALUE;
+        duplicates = blockchainProcessor.getPhasedDuplicates(previousBlockHeight + 1);
+        for (UnconfirmedTransaction unconfirmedTransaction :
+                blockchainProcessor.selectUnconfirmedTransactions(duplicates, previousBlock, blockTimestamp)) {
+            add(unconfirmedTransaction);
+        }
+        timestampExcluded = false;
+        Iterator<UnconfirmedTransaction> unconfirmedTransactions = TransactionProcessorImpl.getInstance().getUnconfirmedTransactionIterator();
+        while (unconfirmedTransactions.hasNext()) {
+            if (isOutsideTimestamp(unconfirmedTransactions.next(), blockTimestamp)) {
+                timestampExcluded = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Check if the included transactions can be used for a block timestamp
+     *
+     * @param   blockTimestamp      Block timestamp
+     * @return                      TRUE if the included transactions are valid for the block timestamp
+     */
+    private boolean isIncludedValid(int blockTimestamp) {
+        return blockTimestamp > 0 && maxTimestamp <= blockTimestamp + Constants.MAX_TIMEDRIFT && minExpiration >= blockTimestamp;
+    }
+
+    /**
+     * Check if a transaction is left out because of the block timestamp, using the same check as
+     * {@link BlockchainProcessorImpl#selectUnconfirmedTransactions(Map, Block, int)}
+     *
+     * @param   unconfirmedTransaction  Unconfirmed transaction
+     * @param   blockTimestamp          Block timestamp
+     * @return                          TRUE if the transaction can't be included in a block with the timestamp
+     */
+    private static boolean isOutsideTimestamp(UnconfirmedTransaction unconfirmedTransaction, int blockTimestamp) {
+        return blockTimestamp > 0 && (unconfirmedTransaction.getTimestamp() > blockTimestamp + Constants.MAX_TIMEDRIFT
+                || unconfirmedTransaction.getExpiration() < blockTimestamp);
+    }
+
+    /**
+     * Append a transaction if it passes the checks done by
+     * {@link BlockchainProcessorImpl#selectUnconfirmedTransactions(Map, Block, int)}
+     *
+     * @param   unconfirmedTransaction  Unconfirmed transaction
+     * @return                          FALSE if the template must be rebuilt
+     */
+    private boolean append(UnconfirmedTransaction unconfirmedTransaction) {
+        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+        if (transactionIds.contains(transaction.getId())) {
+            return true;
+        }
+        if (isOutsideTimestamp(unconfirmedTransaction, blockTimestamp)) {
+            timestampExcluded = true;
+            return true;
+        }
+        if (payloadLength + transaction.getFullSize() > AplGlobalObjects.getChainConfig().getCurrentConfig().getMaxPayloadLength()
+                || transactions.size() >= AplGlobalObjects.getChainConfig().getCurrentConfig().getMaxNumberOfTransactions()) {
+            // The selection would prefer the new transaction over a lower priority one that is included
+            if (transactions.isEmpty()) {
+                return true;
+            }
+            UnconfirmedTransaction lowest = Collections.max(transactions, TransactionProcessorImpl.cachedUnconfirmedTransactionComparator);
+            return TransactionProcessorImpl.cachedUnconfirmedTransactionComparator.compare(unconfirmedTransaction, lowest) > 0;
+        }
+        if (unconfirmedTransaction.getVersion() != blockchainProcessor.getTransactionVersion(previousBlockHeight)) {
+            return true;
+        }
+        try {
+            transaction.validate();
+        } catch (AplException.ValidationException e) {
+            return true;
+        }
+        if (!blockchainProcessor.hasAllReferencedTransactions(transaction, transaction.getTimestamp(), 0)) {
+            return true;
+        }
+        if (transaction.attachmentIsDuplicate(duplicates, true)) {
+            return true;
+        }
+        add(unconfirmedTransaction);
+        return true;
+    }
+
+    private void add(UnconfirmedTransaction unconfirmedTransaction) {
+        TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+        transactions.add(unconfirmedTransaction);
+        transactionIds.add(transaction.getId());
+        digest.update(transaction.bytes());
+        payloadLength += transaction.getFullSize();
+        totalAmountATM += transaction.getAmountATM();
+        totalFeeATM += transaction.getFeeATM();
+        maxTimestamp = Math.max(maxTimestamp, transaction.getTimestamp());
+        minExpiration = Math.min(minExpiration, transaction.getExpiration());
+    }
+}
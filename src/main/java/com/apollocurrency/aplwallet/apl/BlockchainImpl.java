@@ -25,7 +25,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -85,6 +84,8 @@ final class BlockchainImpl implements Blockchain {
     }
 
     void setLastBlock(BlockImpl block) {
+        // Buffered entities are saved at the current height
+        Db.getDb().flushWriteBuffers();
         lastBlock.set(block);
     }
 
@@ -200,20 +201,13 @@ final class BlockchainImpl implements Blockchain {
     @Override
     public List<Long> getBlockIdsAfter(long blockId, int limit) {
         // Check the block cache
-        List<Long> result = new ArrayList<>(AplGlobalObjects.getBlockDb().getBlockCacheSize());
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            BlockImpl block = AplGlobalObjects.getBlockDb().getBlockCache().get(blockId);
-            if (block != null) {
-                Collection<BlockImpl> cacheMap = AplGlobalObjects.getBlockDb().getHeightMap().tailMap(block.getHeight() + 1).values();
-                for (BlockImpl cacheBlock : cacheMap) {
-                    if (result.size() >= limit) {
-                        break;
-                    }
-                    result.add(cacheBlock.getId());
-                }
-                return result;
-            }
+        List<BlockImpl> cachedBlocks = AplGlobalObjects.getBlockDb().getBlockCache().getBlocksAfter(blockId, limit);
+        if (cachedBlocks != null) {
+            List<Long> result = new ArrayList<>(cachedBlocks.size());
+            cachedBlocks.forEach(cacheBlock -> result.add(cacheBlock.getId()));
+            return result;
         }
+        List<Long> result = new ArrayList<>();
         // Search the database
         try (Connection con = Db.getDb().getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT id FROM block "
@@ -238,20 +232,11 @@ final class BlockchainImpl implements Blockchain {
             return Collections.emptyList();
         }
         // Check the block cache
-        List<BlockImpl> result = new ArrayList<>(AplGlobalObjects.getBlockDb().getBlockCacheSize());
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            BlockImpl block = AplGlobalObjects.getBlockDb().getBlockCache().get(blockId);
-            if (block != null) {
-                Collection<BlockImpl> cacheMap = AplGlobalObjects.getBlockDb().getHeightMap().tailMap(block.getHeight() + 1).values();
-                for (BlockImpl cacheBlock : cacheMap) {
-                    if (result.size() >= limit) {
-                        break;
-                    }
-                    result.add(cacheBlock);
-                }
-                return result;
-            }
+        List<BlockImpl> cachedBlocks = AplGlobalObjects.getBlockDb().getBlockCache().getBlocksAfter(blockId, limit);
+        if (cachedBlocks != null) {
+            return cachedBlocks;
         }
+        List<BlockImpl> result = new ArrayList<>();
         // Search the database
         try (Connection con = Db.getDb().getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
@@ -276,21 +261,18 @@ final class BlockchainImpl implements Blockchain {
             return Collections.emptyList();
         }
         // Check the block cache
-        List<BlockImpl> result = new ArrayList<>(AplGlobalObjects.getBlockDb().getBlockCacheSize());
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            BlockImpl block = AplGlobalObjects.getBlockDb().getBlockCache().get(blockId);
-            if (block != null) {
-                Collection<BlockImpl> cacheMap = AplGlobalObjects.getBlockDb().getHeightMap().tailMap(block.getHeight() + 1).values();
-                int index = 0;
-                for (BlockImpl cacheBlock : cacheMap) {
-                    if (result.size() >= blockList.size() || cacheBlock.getId() != blockList.get(index++)) {
-                        break;
-                    }
-                    result.add(cacheBlock);
+        List<BlockImpl> cachedBlocks = AplGlobalObjects.getBlockDb().getBlockCache().getBlocksAfter(blockId, blockList.size());
+        if (cachedBlocks != null) {
+            List<BlockImpl> result = new ArrayList<>(cachedBlocks.size());
+            for (BlockImpl cacheBlock : cachedBlocks) {
+                if (cacheBlock.getId() != blockList.get(result.size())) {
+                    break;
                 }
-                return result;
+                result.add(cacheBlock);
             }
+            return result;
         }
+        List<BlockImpl> result = new ArrayList<>();
         // Search the database
         try (Connection con = Db.getDb().getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
@@ -46,6 +46,8 @@ public interface BlockchainProcessor extends Observable<Block,BlockchainProcesso
 
     boolean isProcessingBlock();
 
+    JSONObject getDownloadStatistics();
+
     int getMinRollbackHeight();
 
     int getInitialScanHeight();
@@ -58,6 +60,8 @@ public interface BlockchainProcessor extends Observable<Block,BlockchainProcesso
 
     void fullScanWithShutdown();
 
+    JSONObject verifyRescanSnapshot(int height);
+
     void setGetMoreBlocks(boolean getMoreBlocks);
 
     List<? extends Block> popOffTo(int height);
@@ -34,11 +34,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
@@ -47,19 +45,26 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.apollocurrency.aplwallet.apl.crypto.Crypto;
 import com.apollocurrency.aplwallet.apl.db.DbIterator;
 import com.apollocurrency.aplwallet.apl.db.DerivedDbTable;
-import com.apollocurrency.aplwallet.apl.db.FilteringIterator;
 import com.apollocurrency.aplwallet.apl.db.FullTextTrigger;
+import com.apollocurrency.aplwallet.apl.db.TrimLock;
 import com.apollocurrency.aplwallet.apl.peer.Peer;
 import com.apollocurrency.aplwallet.apl.peer.Peers;
 import com.apollocurrency.aplwallet.apl.util.Convert;
 import com.apollocurrency.aplwallet.apl.util.JSON;
 import com.apollocurrency.aplwallet.apl.util.Listener;
 import com.apollocurrency.aplwallet.apl.util.Listeners;
+import com.apollocurrency.aplwallet.apl.util.LongHashMap;
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
 import com.apollocurrency.aplwallet.apl.util.ThreadPool;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -85,7 +90,18 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
     private final BlockchainImpl blockchain = BlockchainImpl.getInstance();
 
     private final ExecutorService networkService = Executors.newCachedThreadPool(new ThreadFactoryImpl("BlockchainProcessor:networkService"));
+    private final int blockParseThreads = Apl.getIntProperty("apl.blockParseThreads") > 0 ? Apl.getIntProperty("apl.blockParseThreads")
+            : Runtime.getRuntime().availableProcessors();
+    private final ThreadPoolExecutor parseService = new ThreadPoolExecutor(blockParseThreads, blockParseThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new ThreadFactoryImpl("BlockchainProcessor:parseService"));
+    private final DownloadStatistics downloadStatistics = new DownloadStatistics(parseService);
+    private final int trimThreads = Math.max(Apl.getIntProperty("apl.trimThreads", 2), 1);
+    private final long trimMaxLockTime = Math.max(Apl.getIntProperty("apl.trimMaxLockTime", 500), 0);
+    private final ExecutorService trimService = Executors.newFixedThreadPool(trimThreads, new ThreadFactoryImpl("BlockchainProcessor:trimService"));
     private final List<DerivedDbTable> derivedTables = new CopyOnWriteArrayList<>();
+    private final RescanSnapshots rescanSnapshots = new RescanSnapshots(this, derivedTables);
+
+    private final BlockTemplate blockTemplate = new BlockTemplate(this);
     private final boolean trimDerivedTables = Apl.getBooleanProperty("apl.trimDerivedTables");
     private final int defaultNumberOfForkConfirmations = Apl.getIntProperty(AplGlobalObjects.getChainConfig().isTestnet()
             ? "apl.testnetNumberOfForkConfirmations" : "apl.numberOfForkConfirmations");
@@ -94,7 +110,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
     private int initialScanHeight;
     private volatile int lastTrimHeight;
     private volatile int lastRestoreTime = 0;
-    private final Set<Long> prunableTransactions = new HashSet<>();
+    private final LongHashSet prunableTransactions = new LongHashSet();
     private BlockValidator validator;
     private final Listeners<Block, Event> blockListeners = new Listeners<>();
     private volatile Peer lastBlockchainFeeder;
@@ -168,7 +184,11 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 long startTime = System.currentTimeMillis();
                 int numberOfForkConfirmations = blockchain.getHeight() > Constants.LAST_CHECKSUM_BLOCK - 720 ?
                         defaultNumberOfForkConfirmations : Math.min(1, defaultNumberOfForkConfirmations);
-                connectedPublicPeers = Peers.getPublicPeers(Peer.State.CONNECTED, true);
+                //
+                // The peers are sorted by score, so the fork confirmations and the download
+                // segments are requested from the best peers first
+                //
+                connectedPublicPeers = Peers.sortByScore(Peers.getPublicPeers(Peer.State.CONNECTED, true));
                 if (connectedPublicPeers.size() <= numberOfForkConfirmations) {
                     return;
                 }
@@ -221,6 +241,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 if (commonBlock == null || blockchain.getHeight() - commonBlock.getHeight() >= 720) {
                     if (commonBlock != null) {
                         LOG.debug(peer + " advertised chain with better difficulty, but the last common block is at height " + commonBlock.getHeight());
+                        peer.getScore().forkDetected();
                     }
                     return;
                 }
@@ -231,6 +252,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 if (!isDownloading && lastBlockchainFeederHeight - commonBlock.getHeight() > 10) {
                     LOG.info("Blockchain download in progress");
                     isDownloading = true;
+                    downloadStatistics.reset();
                 }
 
                 blockchain.updateLock();
@@ -286,8 +308,10 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                         LOG.info("Downloaded " + numBlocks + " blocks in "
                                 + time / 1000 + " s, " + (totalBlocks * 1000) / totalTime + " per s, "
                                 + totalTime * (lastBlockchainFeederHeight - blockchain.getHeight()) / ((long) totalBlocks * 1000 * 60) + " min left");
+                        LOG.info("Download pipeline: " + downloadStatistics);
                     } else {
                         LOG.debug("Did not accept peer's blocks, back to our own fork");
+                        peer.getScore().forkDetected();
                     }
                 } finally {
                     blockchain.updateUnlock();
@@ -420,7 +444,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
          * @throws  InterruptedException    Download interrupted
          */
         private void downloadBlockchain(final Peer feederPeer, final Block commonBlock, final int startHeight) throws InterruptedException {
-            Map<Long, PeerBlock> blockMap = new HashMap<>();
+            LongHashMap<PeerBlock> blockMap = new LongHashMap<>();
             //
             // Break the download into multiple segments.  The first block in each segment
             // is the common block for that segment.
@@ -429,12 +453,19 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             int segSize = 36;
             int stop = chainBlockIds.size() - 1;
             for (int start = 0; start < stop; start += segSize) {
-                getList.add(new GetNextBlocks(chainBlockIds, start, Math.min(start + segSize, stop), startHeight));
+                getList.add(new GetNextBlocks(chainBlockIds, start, Math.min(start + segSize, stop), startHeight, parseService, downloadStatistics));
             }
-            int nextPeerIndex = ThreadLocalRandom.current().nextInt(connectedPublicPeers.size());
+            int nextPeerIndex = 0;
             long maxResponseTime = 0;
             Peer slowestPeer = null;
             //
+            // Blocks extending our last block are pushed as soon as their segment has been
+            // downloaded and verified, while the remaining segments are still in progress.
+            // Blocks on a different fork are pushed after the download is complete.
+            //
+            boolean pushWhileDownloading = blockchain.getLastBlock().getId() == commonBlock.getId();
+            int nextPushIndex = 1;
+            //
             // Issue the getNextBlocks requests and get the results.  We will repeat
             // a request if the peer didn't respond or returned a partial block list.
             // The download will be aborted if we are unable to get a segment after
@@ -489,6 +520,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                     int index = nextBlocks.getStart() + 1;
                     for (BlockImpl block : blockList) {
                         if (block.getId() != chainBlockIds.get(index)) {
+                            peer.getScore().forkDetected();
                             break;
                         }
                         blockMap.put(block.getId(), new PeerBlock(peer, block));
@@ -503,6 +535,12 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                         maxResponseTime = nextBlocks.getResponseTime();
                         slowestPeer = nextBlocks.getPeer();
                     }
+                    downloadStatistics.setPendingBlocks(blockMap.size());
+                    if (pushWhileDownloading) {
+                        int pushIndex = pushDownloadedBlocks(blockMap, nextPushIndex, startHeight);
+                        pushWhileDownloading = pushIndex > 0;
+                        nextPushIndex = Math.abs(pushIndex);
+                    }
                 }
 
             }
@@ -518,7 +556,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             blockchain.writeLock();
             try {
                 List<BlockImpl> forkBlocks = new ArrayList<>();
-                for (int index = 1; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                for (int index = nextPushIndex; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
                     PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
                     if (peerBlock == null) {
                         break;
@@ -526,7 +564,9 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                     BlockImpl block = peerBlock.getBlock();
                     if (blockchain.getLastBlock().getId() == block.getPreviousBlockId()) {
                         try {
+                            long startTime = System.currentTimeMillis();
                             pushBlock(block);
+                            downloadStatistics.blocksPushed(1, System.currentTimeMillis() - startTime);
                         } catch (BlockNotAcceptedException e) {
                             peerBlock.getPeer().blacklist(e);
                         }
@@ -544,10 +584,54 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
             } finally {
                 blockchain.writeUnlock();
+                downloadStatistics.setPendingBlocks(0);
             }
 
         }
 
+        /**
+         * Push the downloaded blocks which extend our last block, in block identifier order
+         *
+         * @param   blockMap            Downloaded blocks, pushed blocks are removed from the map
+         * @param   index               Index of the next block to push within the block identifier list
+         * @param   startHeight         Height of the common block
+         * @return                      Index of the next block to push, or its negative value if
+         *                              the remaining blocks must be pushed after the download is complete
+         */
+        private int pushDownloadedBlocks(LongHashMap<PeerBlock> blockMap, int index, int startHeight) {
+            blockchain.writeLock();
+            try {
+                long startTime = System.currentTimeMillis();
+                int pushed = 0;
+                try {
+                    for (; index < chainBlockIds.size() && blockchain.getHeight() - startHeight < 720; index++) {
+                        PeerBlock peerBlock = blockMap.get(chainBlockIds.get(index));
+                        if (peerBlock == null) {
+                            return index;
+                        }
+                        BlockImpl block = peerBlock.getBlock();
+                        if (blockchain.getLastBlock().getId() != block.getPreviousBlockId()) {
+                            return -index;
+                        }
+                        try {
+                            pushBlock(block);
+                            blockMap.remove(block.getId());
+                            pushed++;
+                        } catch (BlockNotAcceptedException e) {
+                            peerBlock.getPeer().blacklist(e);
+                            return -(index + 1);
+                        }
+                    }
+                    return -index;
+                } finally {
+                    downloadStatistics.blocksPushed(pushed, System.currentTimeMillis() - startTime);
+                    downloadStatistics.setPendingBlocks(blockMap.size());
+                }
+            } finally {
+                blockchain.writeUnlock();
+            }
+        }
+
         private void processFork(final Peer peer, final List<BlockImpl> forkBlocks, final Block commonBlock) {
 
             BigInteger curCumulativeDifficulty = blockchain.getLastBlock().getCumulativeDifficulty();
@@ -632,6 +716,12 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
          */
         private int startHeight;
 
+        /** Executor used to parse and verify the downloaded blocks */
+        private final ExecutorService parseService;
+
+        /** Download pipeline statistics */
+        private final DownloadStatistics statistics;
+
         /**
          * Create the callable future
          *
@@ -639,12 +729,17 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
          * @param   start               Start index within the list
          * @param   stop                Stop index within the list
          * @param   startHeight         Height of the block from which we will start to download blockchain
+         * @param   parseService        Executor used to parse and verify the downloaded blocks
+         * @param   statistics          Download pipeline statistics
          */
-        public GetNextBlocks(List<Long> blockIds, int start, int stop, int startHeight) {
+        public GetNextBlocks(List<Long> blockIds, int start, int stop, int startHeight, ExecutorService parseService,
+                             DownloadStatistics statistics) {
             this.blockIds = blockIds;
             this.start = start;
             this.stop = stop;
             this.startHeight = startHeight;
+            this.parseService = parseService;
+            this.statistics = statistics;
             this.requestCount = 0;
         }
 
@@ -688,19 +783,36 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 peer.blacklist("Too many nextBlocks");
                 return null;
             }
-            List<BlockImpl> blockList = new ArrayList<>(nextBlocks.size());
+            statistics.blocksDownloaded(nextBlocks.size(), responseTime);
+            //
+            // Parse the blocks and verify the block and transaction signatures in parallel.
+            // The verified signatures are cached by the blocks and transactions, so they
+            // are not checked again when the blocks are pushed.
+            //
+            long parseStartTime = System.currentTimeMillis();
+            List<Future<BlockImpl>> parsedBlocks = new ArrayList<>(nextBlocks.size());
+            int count = stop - start;
+            for (JSONObject blockData : nextBlocks) {
+                parsedBlocks.add(parseService.submit(() -> BlockImpl.parseBlock(blockData)));
+                if (--count <= 0)
+                    break;
+            }
+            List<BlockImpl> blockList = new ArrayList<>(parsedBlocks.size());
             try {
-                int count = stop - start;
-                for (JSONObject blockData : nextBlocks) {
-                    blockList.add(BlockImpl.parseBlock(blockData));
-                    if (--count <= 0)
-                        break;
+                for (Future<BlockImpl> parsedBlock : parsedBlocks) {
+                    blockList.add(parsedBlock.get());
                 }
-            } catch (RuntimeException | AplException.NotValidException e) {
-                LOG.debug("Failed to parse block: " + e.toString(), e);
-                peer.blacklist(e);
+            } catch (ExecutionException e) {
+                LOG.debug("Failed to parse block: " + e.getCause().toString(), e.getCause());
+                peer.blacklist(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                stop = start + blockList.size();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 stop = start + blockList.size();
+            } finally {
+                parsedBlocks.forEach(parsedBlock -> parsedBlock.cancel(false));
             }
+            statistics.blocksParsed(blockList.size(), System.currentTimeMillis() - parseStartTime);
             return blockList;
         }
 
@@ -827,6 +939,97 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Throughput of the blockchain download stages
+     */
+    static class DownloadStatistics {
+
+        /** Executor used to parse and verify the downloaded blocks */
+        private final ThreadPoolExecutor parseService;
+
+        /** Number of blocks returned by peers */
+        private final AtomicLong downloadedBlocks = new AtomicLong();
+
+        /** Time spent waiting for peer responses */
+        private final AtomicLong downloadTime = new AtomicLong();
+
+        /** Number of blocks parsed and verified */
+        private final AtomicLong parsedBlocks = new AtomicLong();
+
+        /** Time spent parsing and verifying blocks */
+        private final AtomicLong parseTime = new AtomicLong();
+
+        /** Number of blocks pushed to the blockchain */
+        private final AtomicLong pushedBlocks = new AtomicLong();
+
+        /** Time spent pushing blocks */
+        private final AtomicLong pushTime = new AtomicLong();
+
+        /** Number of verified blocks waiting to be pushed */
+        private final AtomicInteger pendingBlocks = new AtomicInteger();
+
+        /**
+         * Create the download statistics
+         *
+         * @param   parseService        Executor used to parse and verify the downloaded blocks
+         */
+        DownloadStatistics(ThreadPoolExecutor parseService) {
+            this.parseService = parseService;
+        }
+
+        void reset() {
+            downloadedBlocks.set(0);
+            downloadTime.set(0);
+            parsedBlocks.set(0);
+            parseTime.set(0);
+            pushedBlocks.set(0);
+            pushTime.set(0);
+        }
+
+        void blocksDownloaded(int count, long time) {
+            downloadedBlocks.addAndGet(count);
+            downloadTime.addAndGet(time);
+        }
+
+        void blocksParsed(int count, long time) {
+            parsedBlocks.addAndGet(count);
+            parseTime.addAndGet(time);
+        }
+
+        void blocksPushed(int count, long time) {
+            pushedBlocks.addAndGet(count);
+            pushTime.addAndGet(time);
+        }
+
+        void setPendingBlocks(int count) {
+            pendingBlocks.set(count);
+        }
+
+        private static long perSecond(long count, long time) {
+            return time > 0 ? count * 1000 / time : 0;
+        }
+
+        JSONObject getJSONObject() {
+            JSONObject json = new JSONObject();
+            json.put("downloadedBlocks", downloadedBlocks.get());
+            json.put("downloadBlocksPerSecond", perSecond(downloadedBlocks.get(), downloadTime.get()));
+            json.put("parsedBlocks", parsedBlocks.get());
+            json.put("parseBlocksPerSecond", perSecond(parsedBlocks.get(), parseTime.get()));
+            json.put("parseQueueSize", parseService.getQueue().size());
+            json.put("pushedBlocks", pushedBlocks.get());
+            json.put("pushBlocksPerSecond", perSecond(pushedBlocks.get(), pushTime.get()));
+            json.put("pendingBlocks", pendingBlocks.get());
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return "download " + perSecond(downloadedBlocks.get(), downloadTime.get()) + " blocks/s"
+                    + ", parse " + perSecond(parsedBlocks.get(), parseTime.get()) + " blocks/s (queue " + parseService.getQueue().size() + ")"
+                    + ", push " + perSecond(pushedBlocks.get(), pushTime.get()) + " blocks/s (pending " + pendingBlocks.get() + ")";
+        }
+    }
+
     /**
      * Task to restore prunable data for downloaded blocks
      */
@@ -857,34 +1060,26 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
                 LOG.debug("Connected to archive peer " + peer.getHost());
                 //
-                // Make a copy of the prunable transaction list so we can remove entries
-                // as we process them while still retaining the entry if we need to
-                // retry later using a different archive peer
+                // Make a copy of the prunable transaction list so we can process it in
+                // batches while still retaining the entry if we need to retry later
+                // using a different archive peer
                 //
-                Set<Long> processing;
+                long[] processing;
                 synchronized (prunableTransactions) {
-                    processing = new HashSet<>(prunableTransactions.size());
-                    processing.addAll(prunableTransactions);
+                    processing = prunableTransactions.toArray();
                 }
-                LOG.debug("Need to restore " + processing.size() + " pruned data");
+                LOG.debug("Need to restore " + processing.length + " pruned data");
                 //
                 // Request transactions in batches of 100 until all transactions have been processed
                 //
-                while (!processing.isEmpty()) {
+                for (int start = 0; start < processing.length; start += 100) {
                     //
                     // Get the pruned transactions from the archive peer
                     //
                     JSONObject request = new JSONObject();
                     JSONArray requestList = new JSONArray();
-                    synchronized (prunableTransactions) {
-                        Iterator<Long> it = processing.iterator();
-                        while (it.hasNext()) {
-                            long id = it.next();
-                            requestList.add(Long.toUnsignedString(id));
-                            it.remove();
-                            if (requestList.size() == 100)
-                                break;
-                        }
+                    for (int i = start; i < Math.min(start + 100, processing.length); i++) {
+                        requestList.add(Long.toUnsignedString(processing[i]));
                     }
                     request.put("requestType", "getTransactions");
                     request.put("transactionIds", requestList);
@@ -960,6 +1155,35 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
 
         blockListeners.addListener(checksumListener, Event.BLOCK_PUSHED);
 
+        blockListeners.addListener(rescanSnapshots::blockPushed, Event.BLOCK_PUSHED);
+
+        blockListeners.addListener(rescanSnapshots::blockPopped, Event.BLOCK_POPPED);
+
+        blockListeners.addListener(block -> {
+            if (isDownloading) {
+                blockTemplate.invalidate();
+                return;
+            }
+            // The unconfirmed transactions were requeued when the block was pushed
+            TransactionProcessorImpl.getInstance().processWaitingTransactions();
+            blockchain.writeLock();
+            try {
+                if (blockchain.getLastBlock().getId() == block.getId()) {
+                    blockTemplate.rebuild(block, Apl.getEpochTime());
+                }
+            } finally {
+                blockchain.writeUnlock();
+            }
+        }, Event.BLOCK_PUSHED);
+
+        blockListeners.addListener(block -> blockTemplate.invalidate(), Event.BLOCK_POPPED);
+
+        TransactionProcessorImpl.getInstance().addListener(blockTemplate::transactionsAdded,
+                TransactionProcessor.Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+
+        TransactionProcessorImpl.getInstance().addListener(blockTemplate::transactionsRemoved,
+                TransactionProcessor.Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+
         blockListeners.addListener(block -> Db.getDb().analyzeTables(), Event.RESCAN_END);
 
         ThreadPool.runBeforeStart("Blockchain init", () -> {
@@ -1011,17 +1235,56 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         derivedTables.add(table);
     }
 
+    /**
+     * Trim the derived tables in the background.  The tables are trimmed in parallel by the trim
+     * service, each table in its own database transaction.  A table is trimmed in chunks and the
+     * blockchain read lock is released between chunks once it has been held for apl.trimMaxLockTime
+     * milliseconds, so a trim does not hold up block processing.
+     */
     @Override
     public void trimDerivedTables() {
+        long startTime = System.currentTimeMillis();
+        int height = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
+        lastTrimHeight = height;
+        if (height == 0) {
+            return;
+        }
+        List<Future<?>> trims = new ArrayList<>(derivedTables.size());
+        derivedTables.forEach(table -> trims.add(trimService.submit(() -> trimTable(table, height))));
+        RuntimeException failure = null;
+        for (Future<?> trim : trims) {
+            try {
+                trim.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new RuntimeException(e.getCause().toString(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+        LOG.debug("Total trim time: " + (System.currentTimeMillis() - startTime));
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Trim a derived table in a database transaction of the current thread
+     *
+     * @param   table               Derived table
+     * @param   height              Trim height
+     */
+    private void trimTable(DerivedDbTable table, int height) {
         try {
             Db.getDb().beginTransaction();
             long startTime = System.currentTimeMillis();
-            doTrimDerivedTables();
-            LOG.debug("Total trim time: " + (System.currentTimeMillis() - startTime));
+            int yieldCount = TrimLock.run(trimMaxLockTime, () -> table.trim(height));
             Db.getDb().commitTransaction();
-
-        } catch (Exception e) {
-            LOG.info(e.toString(), e);
+            logTrimTime(table, System.currentTimeMillis() - startTime, yieldCount);
+        } catch (RuntimeException e) {
+            LOG.info("Unable to trim table " + table + ": " + e.toString(), e);
             Db.getDb().rollbackTransaction();
             throw e;
         } finally {
@@ -1029,6 +1292,10 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Trim the derived tables in the current database transaction.  This is done during a rescan,
+     * where the scanning thread already holds the blockchain write lock.
+     */
     private void doTrimDerivedTables() {
         lastTrimHeight = Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0);
         long onlyTrimTime = 0;
@@ -1039,7 +1306,9 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                     long startTime = System.currentTimeMillis();
                     table.trim(lastTrimHeight);
                     Db.getDb().commitTransaction();
-                    onlyTrimTime += (System.currentTimeMillis() - startTime);
+                    long trimTime = System.currentTimeMillis() - startTime;
+                    logTrimTime(table, trimTime, 0);
+                    onlyTrimTime += trimTime;
                 } finally {
                     blockchain.readUnlock();
                 }
@@ -1048,6 +1317,14 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         LOG.debug("Only trim time: " + onlyTrimTime);
     }
 
+    private static void logTrimTime(DerivedDbTable table, long trimTime, int yieldCount) {
+        if (trimTime > Constants.TRIM_TRANSACTION_TIME_THRESHHOLD) {
+            LOG.debug("Trim of table {} took {} ms, lock released {} times", table, trimTime, yieldCount);
+        } else {
+            LOG.trace("Trim of table {} took {} ms, lock released {} times", table, trimTime, yieldCount);
+        }
+    }
+
     List<DerivedDbTable> getDerivedTables() {
         return derivedTables;
     }
@@ -1082,6 +1359,11 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         return isProcessingBlock;
     }
 
+    @Override
+    public JSONObject getDownloadStatistics() {
+        return downloadStatistics.getJSONObject();
+    }
+
     @Override
     public int getMinRollbackHeight() {
         return trimDerivedTables ? (lastTrimHeight > 0 ? lastTrimHeight : Math.max(blockchain.getHeight() - Constants.MAX_ROLLBACK, 0)) : 0;
@@ -1272,6 +1554,9 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
 
     void shutdown() {
         ThreadPool.shutdownExecutor("networkService", networkService, 5);
+        ThreadPool.shutdownExecutor("parseService", parseService, 5);
+        ThreadPool.shutdownExecutor("trimService", trimService, 5);
+        rescanSnapshots.shutdown();
         getMoreBlocks = false;
     }
 
@@ -1406,6 +1691,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         long calculatedTotalFee = 0;
         MessageDigest digest = Crypto.sha256();
         boolean hasPrunedTransactions = false;
+        TransactionImpl.checkSignatures(block.getTransactions());
         for (TransactionImpl transaction : block.getTransactions()) {
             if (transaction.getTimestamp() > curTime + Constants.MAX_TIMEDRIFT) {
                 throw new BlockOutOfOrderException("Invalid transaction timestamp: " + transaction.getTimestamp()
@@ -1572,7 +1858,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
             }
             if (commonBlock.getHeight() < getMinRollbackHeight()) {
-                LOG.info("Rollback to height " + commonBlock.getHeight() + " not supported, will do a full rescan");
+                LOG.info("Rollback to height " + commonBlock.getHeight() + " not supported, will do a rescan");
                 popOffWithRescan(commonBlock.getHeight() + 1);
                 return Collections.emptyList();
             }
@@ -1592,7 +1878,12 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
                 long rollbackStartTime = System.currentTimeMillis();
                 for (DerivedDbTable table : derivedTables) {
+                    long tableStartTime = System.currentTimeMillis();
                     table.rollback(commonBlock.getHeight());
+                    long rollbackTime = System.currentTimeMillis() - tableStartTime;
+                    if (rollbackTime > Constants.TRIM_TRANSACTION_TIME_THRESHHOLD) {
+                        LOG.debug("Rollback of table {} took {} ms", table, rollbackTime);
+                    }
                 }
                 LOG.debug("Total rollback time: {} ms", System.currentTimeMillis() - rollbackStartTime);
                 Db.getDb().clearCache();
@@ -1627,13 +1918,13 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         blockchain.writeLock();
         try {
             try {
-                scheduleScan(0, false);
+                scheduleScan(height, false);
                 BlockImpl lastBLock = AplGlobalObjects.getBlockDb().deleteBlocksFrom(AplGlobalObjects.getBlockDb().findBlockIdAtHeight(height));
                 blockchain.setLastBlock(lastBLock);
                 AplGlobalObjects.getChainConfig().rollback(lastBLock.getHeight());
                 LOG.debug("Deleted blocks starting from height %s", height);
             } finally {
-                scan(0, false);
+                scan(height, false);
             }
         } finally {
             blockchain.writeUnlock();
@@ -1645,7 +1936,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         return 3;
     }
 
-    private int getTransactionVersion(int previousBlockHeight) {
+    int getTransactionVersion(int previousBlockHeight) {
         return 1;
     }
 
@@ -1678,20 +1969,15 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
     }
 
     SortedSet<UnconfirmedTransaction> selectUnconfirmedTransactions(Map<TransactionType, Map<String, Integer>> duplicates, Block previousBlock, int blockTimestamp) {
-        List<UnconfirmedTransaction> orderedUnconfirmedTransactions = new ArrayList<>();
-        try (FilteringIterator<UnconfirmedTransaction> unconfirmedTransactions = new FilteringIterator<>(
-                TransactionProcessorImpl.getInstance().getAllUnconfirmedTransactions(),
-                transaction -> hasAllReferencedTransactions(transaction.getTransaction(), transaction.getTimestamp(), 0))) {
-            for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                orderedUnconfirmedTransactions.add(unconfirmedTransaction);
-            }
-        }
         SortedSet<UnconfirmedTransaction> sortedTransactions = new TreeSet<>(transactionArrivalComparator);
         int payloadLength = 0;
         int maxPayloadLength = AplGlobalObjects.getChainConfig().getCurrentConfig().getMaxPayloadLength();
         while (payloadLength <= maxPayloadLength && sortedTransactions.size() <= AplGlobalObjects.getChainConfig().getCurrentConfig().getMaxNumberOfTransactions()) {
             int prevNumberOfNewTransactions = sortedTransactions.size();
-            for (UnconfirmedTransaction unconfirmedTransaction : orderedUnconfirmedTransactions) {
+            // Read the unconfirmed pool index in priority order without copying it
+            Iterator<UnconfirmedTransaction> unconfirmedTransactions = TransactionProcessorImpl.getInstance().getUnconfirmedTransactionIterator();
+            while (unconfirmedTransactions.hasNext()) {
+                UnconfirmedTransaction unconfirmedTransaction = unconfirmedTransactions.next();
                 int transactionLength = unconfirmedTransaction.getTransaction().getFullSize();
                 if (sortedTransactions.contains(unconfirmedTransaction) || payloadLength + transactionLength > maxPayloadLength) {
                     continue;
@@ -1708,6 +1994,9 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 } catch (AplException.ValidationException e) {
                     continue;
                 }
+                if (!hasAllReferencedTransactions(unconfirmedTransaction.getTransaction(), unconfirmedTransaction.getTimestamp(), 0)) {
+                    continue;
+                }
                 if (unconfirmedTransaction.getTransaction().attachmentIsDuplicate(duplicates, true)) {
                     continue;
                 }
@@ -1727,9 +2016,15 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             .thenComparingInt(UnconfirmedTransaction::getHeight)
             .thenComparingLong(UnconfirmedTransaction::getId);
 
-    public SortedSet<UnconfirmedTransaction> getUnconfirmedTransactions(Block previousBlock, int blockTimestamp) {
+    /**
+     * Get the duplicates map pre-populated with the phased transactions finishing at a height
+     *
+     * @param   height                  Block height
+     * @return                          Duplicates map
+     */
+    Map<TransactionType, Map<String, Integer>> getPhasedDuplicates(int height) {
         Map<TransactionType, Map<String, Integer>> duplicates = new HashMap<>();
-        try (DbIterator<TransactionImpl> phasedTransactions = PhasingPoll.getFinishingTransactions(blockchain.getHeight() + 1)) {
+        try (DbIterator<TransactionImpl> phasedTransactions = PhasingPoll.getFinishingTransactions(height)) {
             for (TransactionImpl phasedTransaction : phasedTransactions) {
                 try {
                     phasedTransaction.validate();
@@ -1738,9 +2033,25 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 }
             }
         }
+        return duplicates;
+    }
+
+    /**
+     * Get the payload of a new block from the incrementally maintained block template
+     *
+     * @param   previousBlock           Last block
+     * @param   blockTimestamp          Block timestamp
+     * @return                          Block payload
+     */
+    BlockTemplate.Payload getBlockPayload(Block previousBlock, int blockTimestamp) {
 //        validate and insert in unconfirmed_transaction db table all waiting transaction
         TransactionProcessorImpl.getInstance().processWaitingTransactions();
-        SortedSet<UnconfirmedTransaction> sortedTransactions = selectUnconfirmedTransactions(duplicates, previousBlock, blockTimestamp);
+        return blockTemplate.getPayload(previousBlock, blockTimestamp);
+    }
+
+    public SortedSet<UnconfirmedTransaction> getUnconfirmedTransactions(Block previousBlock, int blockTimestamp) {
+        SortedSet<UnconfirmedTransaction> sortedTransactions = new TreeSet<>(transactionArrivalComparator);
+        sortedTransactions.addAll(getBlockPayload(previousBlock, blockTimestamp).getTransactions());
         return sortedTransactions;
     }
 
@@ -1748,28 +2059,19 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
     void generateBlock(byte[] keySeed, int blockTimestamp, int timeout, int blockVersion) throws BlockNotAcceptedException {
 
         BlockImpl previousBlock = blockchain.getLastBlock();
-        SortedSet<UnconfirmedTransaction> sortedTransactions = getUnconfirmedTransactions(previousBlock, blockTimestamp);
-        List<TransactionImpl> blockTransactions = new ArrayList<>();
-        MessageDigest digest = Crypto.sha256();
-        long totalAmountATM = 0;
-        long totalFeeATM = 0;
-        int payloadLength = 0;
-        for (UnconfirmedTransaction unconfirmedTransaction : sortedTransactions) {
-            TransactionImpl transaction = unconfirmedTransaction.getTransaction();
-            blockTransactions.add(transaction);
-            digest.update(transaction.bytes());
-            totalAmountATM += transaction.getAmountATM();
-            totalFeeATM += transaction.getFeeATM();
-            payloadLength += transaction.getFullSize();
+        BlockTemplate.Payload payload = getBlockPayload(previousBlock, blockTimestamp);
+        List<TransactionImpl> blockTransactions = new ArrayList<>(payload.getTransactions().size());
+        for (UnconfirmedTransaction unconfirmedTransaction : payload.getTransactions()) {
+            blockTransactions.add(unconfirmedTransaction.getTransaction());
         }
-        byte[] payloadHash = digest.digest();
+        MessageDigest digest = Crypto.sha256();
         digest.update(previousBlock.getGenerationSignature());
         final byte[] publicKey = Crypto.getPublicKey(keySeed);
         byte[] generationSignature = digest.digest(publicKey);
         byte[] previousBlockHash = Crypto.sha256().digest(previousBlock.bytes());
 
-        BlockImpl block = new BlockImpl(blockVersion, blockTimestamp, previousBlock.getId(), totalAmountATM, totalFeeATM, payloadLength,
-                payloadHash, publicKey, generationSignature, previousBlockHash, timeout, blockTransactions, keySeed);
+        BlockImpl block = new BlockImpl(blockVersion, blockTimestamp, previousBlock.getId(), payload.getTotalAmountATM(), payload.getTotalFeeATM(),
+                payload.getPayloadLength(), payload.getPayloadHash(), publicKey, generationSignature, previousBlockHash, timeout, blockTransactions, keySeed);
 
         try {
             pushBlock(block);
@@ -1826,7 +2128,94 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         scan(0, true, true);
     }
 
+    /**
+     * Verify a rescan snapshot.  The blockchain is rescanned from the snapshot and then from the
+     * genesis block, and the derived table digests of both rescans are compared.
+     *
+     * @param   height              Snapshot height
+     * @return                      Verification result
+     */
+    @Override
+    public JSONObject verifyRescanSnapshot(int height) {
+        JSONObject response = new JSONObject();
+        blockchain.writeLock();
+        try {
+            RescanSnapshots.Snapshot snapshot;
+            try (Connection con = Db.getDb().getConnection()) {
+                snapshot = rescanSnapshots.get(con, height);
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            if (snapshot == null) {
+                response.put("error", "No valid rescan snapshot at height " + height);
+                return response;
+            }
+            Map<String, String> snapshotDigests;
+            int snapshotScanHeight;
+            long startTime = System.currentTimeMillis();
+            try {
+                scan(snapshot.getHeight() + 1, false, false, snapshot);
+                snapshotScanHeight = blockchain.getHeight();
+                snapshotDigests = digestDerivedTables();
+                response.put("snapshotScanTime", System.currentTimeMillis() - startTime);
+            } finally {
+                startTime = System.currentTimeMillis();
+                scan(0, false);
+            }
+            response.put("fullScanTime", System.currentTimeMillis() - startTime);
+            Map<String, String> fullDigests = digestDerivedTables();
+            JSONArray mismatches = new JSONArray();
+            fullDigests.forEach((table, digest) -> {
+                if (!digest.equals(snapshotDigests.get(table))) {
+                    JSONObject mismatch = new JSONObject();
+                    mismatch.put("table", table);
+                    mismatch.put("snapshotScan", snapshotDigests.get(table));
+                    mismatch.put("fullScan", digest);
+                    mismatches.add(mismatch);
+                }
+            });
+            response.put("height", snapshot.getHeight());
+            response.put("snapshotScanHeight", snapshotScanHeight);
+            response.put("fullScanHeight", blockchain.getHeight());
+            response.put("tables", fullDigests.size());
+            response.put("mismatches", mismatches);
+            response.put("verified", mismatches.isEmpty() && snapshotScanHeight == blockchain.getHeight());
+            return response;
+        } finally {
+            blockchain.writeUnlock();
+        }
+    }
+
+    private Map<String, String> digestDerivedTables() {
+        try (Connection con = Db.getDb().getConnection()) {
+            return rescanSnapshots.digest(con);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private RescanSnapshots.Snapshot findRescanSnapshot(int maxHeight) {
+        try (Connection con = Db.getDb().getConnection()) {
+            return rescanSnapshots.find(con, maxHeight);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
     private void scan(int height, boolean validate, boolean shutdown) {
+        scan(height, validate, shutdown, null);
+    }
+
+    /**
+     * Rescan the blockchain
+     *
+     * @param   height              Rescan height
+     * @param   validate            TRUE to validate the blocks and transactions
+     * @param   shutdown            TRUE to shutdown once the derived tables have been rolled back
+     * @param   snapshot            Rescan snapshot to restore, or null to restore the most recent valid
+     *                              snapshot when the height is below the minimum rollback height
+     */
+    private void scan(int height, boolean validate, boolean shutdown, RescanSnapshots.Snapshot snapshot) {
         blockchain.writeLock();
         try {
             if (!Db.getDb().isInTransaction()) {
@@ -1835,7 +2224,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                     if (validate) {
                         blockListeners.addListener(checksumListener, Event.BLOCK_SCANNED);
                     }
-                    scan(height, validate, shutdown);
+                    scan(height, validate, shutdown, snapshot);
                     Db.getDb().commitTransaction();
                 } catch (Exception e) {
                     Db.getDb().rollbackTransaction();
@@ -1847,13 +2236,23 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                 return;
             }
             scheduleScan(height, validate);
-            if (height > 0 && height < getMinRollbackHeight()) {
-                LOG.info("Rollback to height less than " + getMinRollbackHeight() + " not supported, will do a full scan");
-                height = 0;
+            if (height > 0 && height < getMinRollbackHeight() && snapshot == null) {
+                snapshot = findRescanSnapshot(height - 1);
+                if (snapshot == null) {
+                    LOG.info("Rollback to height less than " + getMinRollbackHeight() + " not supported, will do a full scan");
+                    height = 0;
+                } else {
+                    LOG.info("Rollback to height less than " + getMinRollbackHeight() + " not supported, will scan from "
+                            + "rescan snapshot at height " + snapshot.getHeight());
+                }
+            }
+            if (snapshot != null) {
+                height = snapshot.getHeight() + 1;
             }
             if (height < 0) {
                 height = 0;
             }
+            boolean rebuildSearchIndexes = height == 0 || snapshot != null;
             LOG.info("Scanning blockchain starting from height " + height + "...");
             if (validate) {
                 LOG.debug("Also verifying signatures and validating transactions...");
@@ -1870,10 +2269,15 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                     Db.getDb().commitTransaction();
                     return;
                 }
-                if (height == 0) {
+                rescanSnapshots.rescanStarted();
+                if (rebuildSearchIndexes) {
                     LOG.debug("Dropping all full text search indexes");
                     FullTextTrigger.dropAll(con);
                 }
+                if (snapshot != null) {
+                    rescanSnapshots.restore(con, snapshot);
+                    LOG.debug("Restored rescan snapshot at height " + snapshot.getHeight());
+                }
                 for (DerivedDbTable table : derivedTables) {
                     if (height == 0) {
                         table.truncate();
@@ -1969,7 +2373,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
                         dbId = dbId + 1;
                     }
                 }
-                if (height == 0) {
+                if (rebuildSearchIndexes) {
                     for (DerivedDbTable table : derivedTables) {
                         table.createSearchIndex(con);
                     }
@@ -37,6 +37,7 @@ public final class Constants {
     public static final int FORGING_DELAY = AplGlobalObjects.getPropertiesLoader().getIntProperty("apl.forgingDelay");
     public static final int FORGING_SPEEDUP = AplGlobalObjects.getPropertiesLoader().getIntProperty("apl.forgingSpeedup");
     public static final int BATCH_COMMIT_SIZE = AplGlobalObjects.getPropertiesLoader().getIntProperty("apl.batchCommitSize", Integer.MAX_VALUE);
+    public static final int ROLLBACK_BATCH_SIZE = Math.max(AplGlobalObjects.getPropertiesLoader().getIntProperty("apl.rollbackBatchSize", 1000), 1);
     public static final int TRIM_TRANSACTION_TIME_THRESHHOLD = AplGlobalObjects.getPropertiesLoader().getIntProperty("apl.trimOperationsLogThreshold", 1000);
 
     public static final byte MAX_PHASING_VOTE_TRANSACTIONS = 10;
@@ -64,8 +64,13 @@ public final class Db {
                 .maxConnections(maxConnections)
                 .loginTimeout(loginTimeout)
                 .defaultLockTimeout(defaultLockTimeout)
-                .maxMemoryRows(maxMemoryRows);
+                .maxMemoryRows(maxMemoryRows)
+                .writerConnections(Apl.getIntProperty("apl.dbWriterConnections"))
+                .queryCacheSize(Apl.getIntProperty("apl.dbQueryCacheSize"))
+                .leakedConnectionTimeout(Apl.getIntProperty("apl.dbLeakedConnectionTimeout"))
+                .mvStore(Apl.getBooleanProperty("apl.dbMvStore"));
         db = new TransactionalDb(dbProperties);
+        db.setWriteBufferSize(Apl.getIntProperty("apl.dbWriteBufferSize"));
         db.init(new AplDbVersion());
     }
 
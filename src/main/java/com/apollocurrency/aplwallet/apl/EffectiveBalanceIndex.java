@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.util.LongHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Effective balances of the forging accounts by height.
+ * <p>
+ * The effective balance of an account at a height depends only on the blocks up to that height.  The
+ * accounts that have been looked up within the last KEEP_HEIGHTS blocks are tracked, and their balances at
+ * the new height are computed once when a block has been pushed and committed, outside the block push
+ * transaction.  An account that is no longer looked up, such as a forger that has stopped, is dropped.  The generator loop and
+ * the verification of the next block then find the balances in the index.  An account that is not tracked
+ * yet is computed when it is first looked up and is stored if the block at that height has been committed.
+ * <p>
+ * The balances at or above a popped block are removed.  Only the most recent heights are kept.  The
+ * balances are not precomputed while the blockchain is downloading, since each block is then only
+ * verified once.
+ */
+final class EffectiveBalanceIndex {
+
+    /** Number of heights below the blockchain height to keep balances and tracked accounts */
+    private static final int KEEP_HEIGHTS = 10;
+
+    /** Effective balances in APL by height and account */
+    private static final Map<Integer, LongHashMap<Long>> balances = new HashMap<>();
+
+    /** Accounts with precomputed balances and the blockchain height when they were last looked up */
+    private static final LongHashMap<Integer> trackedAccounts = new LongHashMap<>();
+
+    private EffectiveBalanceIndex() {} //never
+
+    static {
+
+        Apl.getBlockchainProcessor().addListener(block -> {
+            int height = block.getHeight();
+            synchronized (balances) {
+                balances.keySet().removeIf(h -> h < height - KEEP_HEIGHTS);
+                for (long accountId : trackedAccounts.keys()) {
+                    if (trackedAccounts.get(accountId) < height - KEEP_HEIGHTS) {
+                        trackedAccounts.remove(accountId);
+                    }
+                }
+            }
+            if (!Apl.getBlockchainProcessor().isDownloading()) {
+                precompute(height);
+            }
+        }, BlockchainProcessor.Event.BLOCK_PUSHED);
+
+        Apl.getBlockchainProcessor().addListener(block -> {
+            int height = block.getHeight();
+            synchronized (balances) {
+                balances.keySet().removeIf(h -> h >= height);
+            }
+        }, BlockchainProcessor.Event.BLOCK_POPPED);
+
+        Apl.getBlockchainProcessor().addListener(block -> {
+            synchronized (balances) {
+                balances.clear();
+                trackedAccounts.clear();
+            }
+        }, BlockchainProcessor.Event.RESCAN_BEGIN);
+
+    }
+
+    static void init() {}
+
+    /**
+     * Compute the effective balances of the tracked accounts at the blockchain height
+     *
+     * @param   height              Height of the pushed block
+     */
+    private static void precompute(int height) {
+        Apl.getBlockchain().readLock();
+        try {
+            if (height != Apl.getBlockchain().getHeight() || Db.getDb().isInTransaction() || Apl.getBlockchainProcessor().isScanning()) {
+                return;
+            }
+            long[] accountIds;
+            synchronized (balances) {
+                accountIds = trackedAccounts.keys();
+            }
+            LongHashMap<Long> heightBalances = new LongHashMap<>(accountIds.length);
+            for (long accountId : accountIds) {
+                heightBalances.put(accountId, getEffectiveBalance(accountId, height));
+            }
+            synchronized (balances) {
+                LongHashMap<Long> existing = balances.putIfAbsent(height, heightBalances);
+                if (existing != null) {
+                    heightBalances.forEach((accountId, balance) -> existing.put(accountId, balance));
+                }
+            }
+        } finally {
+            Apl.getBlockchain().readUnlock();
+        }
+    }
+
+    private static long getEffectiveBalance(long accountId, int height) {
+        Account account = Account.getAccount(accountId, height);
+        return account == null ? 0 : account.getEffectiveBalanceAPL(height);
+    }
+
+    /**
+     * Get the effective balance of an account
+     *
+     * @param   accountId           Account identifier
+     * @param   height              Blockchain height
+     * @return                      Effective balance in APL
+     */
+    static long get(long accountId, int height) {
+        Apl.getBlockchain().readLock();
+        try {
+            Long balance;
+            int blockchainHeight = Apl.getBlockchain().getHeight();
+            boolean scanning = Apl.getBlockchainProcessor().isScanning();
+            synchronized (balances) {
+                if (!scanning) {
+                    trackedAccounts.put(accountId, blockchainHeight);
+                }
+                LongHashMap<Long> heightBalances = balances.get(height);
+                balance = heightBalances != null ? heightBalances.get(accountId) : null;
+            }
+            if (balance != null) {
+                return balance;
+            }
+            long effectiveBalance = getEffectiveBalance(accountId, height);
+            // The balance at the blockchain height can still change while a block is being pushed
+            if (!scanning && (height < blockchainHeight || (height == blockchainHeight && !Db.getDb().isInTransaction()))) {
+                synchronized (balances) {
+                    balances.computeIfAbsent(height, h -> new LongHashMap<>()).put(accountId, effectiveBalance);
+                }
+            }
+            return effectiveBalance;
+        } finally {
+            Apl.getBlockchain().readUnlock();
+        }
+    }
+}
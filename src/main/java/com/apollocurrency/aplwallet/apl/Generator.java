@@ -28,10 +28,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +38,7 @@ import com.apollocurrency.aplwallet.apl.crypto.Crypto;
 import com.apollocurrency.aplwallet.apl.util.Convert;
 import com.apollocurrency.aplwallet.apl.util.Listener;
 import com.apollocurrency.aplwallet.apl.util.Listeners;
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
 import com.apollocurrency.aplwallet.apl.util.ThreadPool;
 import org.slf4j.Logger;
 
@@ -337,12 +336,7 @@ public final class Generator implements Comparable<Generator> {
 
     private void setLastBlock(Block lastBlock) {
         int height = lastBlock.getHeight();
-        Account account = Account.getAccount(accountId, height);
-        if (account == null) {
-            effectiveBalance = BigInteger.ZERO;
-        } else {
-            effectiveBalance = BigInteger.valueOf(Math.max(account.getEffectiveBalanceAPL(height), 0));
-        }
+        effectiveBalance = BigInteger.valueOf(Math.max(EffectiveBalanceIndex.get(accountId, height), 0));
         if (effectiveBalance.signum() == 0) {
             hitTime = 0;
             hit = BigInteger.ZERO;
@@ -440,7 +434,7 @@ public final class Generator implements Comparable<Generator> {
     }
 
     /** Active block generators */
-    private static final Set<Long> activeGeneratorIds = new HashSet<>();
+    private static final LongHashSet activeGeneratorIds = new LongHashSet();
 
     /** Active block identifier */
     private static long activeBlockId;
@@ -462,7 +456,7 @@ public final class Generator implements Comparable<Generator> {
         Blockchain blockchain = Apl.getBlockchain();
         synchronized(activeGenerators) {
             if (!generatorsInitialized) {
-                activeGeneratorIds.addAll(AplGlobalObjects.getBlockDb().getBlockGenerators(Math.max(1, blockchain.getHeight() - 10000)));
+                AplGlobalObjects.getBlockDb().getBlockGenerators(Math.max(1, blockchain.getHeight() - 10000)).forEach(activeGeneratorIds::add);
                 activeGeneratorIds.forEach(activeGeneratorId -> activeGenerators.add(new ActiveGenerator(activeGeneratorId)));
                 LOG.debug(activeGeneratorIds.size() + " block generators found");
                 Apl.getBlockchainProcessor().addListener(block -> {
@@ -525,12 +519,7 @@ public final class Generator implements Comparable<Generator> {
                 }
             }
             int height = lastBlock.getHeight();
-            Account account = Account.getAccount(accountId, height);
-            if (account == null) {
-                hitTime = Long.MAX_VALUE;
-                return;
-            }
-            effectiveBalanceAPL = Math.max(account.getEffectiveBalanceAPL(height), 0);
+            effectiveBalanceAPL = Math.max(EffectiveBalanceIndex.get(accountId, height), 0);
             if (effectiveBalanceAPL == 0) {
                 hitTime = Long.MAX_VALUE;
                 return;
@@ -30,6 +30,11 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 public abstract class Order {
 
@@ -63,38 +68,68 @@ public abstract class Order {
         this.transactionHeight = rs.getInt("transaction_height");
     }
 
+    private Order(OrderBook.Entry entry) {
+        this.id = entry.getId();
+        this.accountId = entry.getAccountId();
+        this.assetId = entry.getAssetId();
+        this.priceATM = entry.getPriceATM();
+        this.quantityATU = entry.getQuantityATU();
+        this.creationHeight = entry.getCreationHeight();
+        this.transactionIndex = entry.getTransactionIndex();
+        this.transactionHeight = entry.getTransactionHeight();
+    }
+
     private static void matchOrders(long assetId) {
+        match(assetId, Ask.askOrderBook::getFirst, Bid.bidOrderBook::getFirst,
+                (askEntry, bidEntry) -> trade(assetId, Ask.getOrder(askEntry), Bid.getOrder(bidEntry)));
+    }
+
+    /**
+     * Match the ask and bid orders of an asset until the best orders no longer cross.  The trade
+     * must reduce the quantities of the orders, so the next orders are read after each trade.
+     *
+     * @param   assetId             Asset identifier
+     * @param   askOrders           Return the next ask order of an asset
+     * @param   bidOrders           Return the next bid order of an asset
+     * @param   trade               Execute a trade between the ask and bid orders
+     */
+    static void match(long assetId, LongFunction<OrderBook.Entry> askOrders, LongFunction<OrderBook.Entry> bidOrders,
+                      BiConsumer<OrderBook.Entry, OrderBook.Entry> trade) {
 
-        Order.Ask askOrder;
-        Order.Bid bidOrder;
+        OrderBook.Entry askOrder;
+        OrderBook.Entry bidOrder;
 
-        while ((askOrder = Ask.getNextOrder(assetId)) != null
-                && (bidOrder = Bid.getNextOrder(assetId)) != null) {
+        while ((askOrder = askOrders.apply(assetId)) != null
+                && (bidOrder = bidOrders.apply(assetId)) != null) {
 
             if (askOrder.getPriceATM() > bidOrder.getPriceATM()) {
                 break;
             }
 
-            Trade trade = Trade.addTrade(assetId, askOrder, bidOrder);
-
-            askOrder.updateQuantityATU(Math.subtractExact(askOrder.getQuantityATU(), trade.getQuantityATU()));
-            Account askAccount = Account.getAccount(askOrder.getAccountId());
-            askAccount.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ASSET_TRADE, askOrder.getId(),
-                    Math.multiplyExact(trade.getQuantityATU(), trade.getPriceATM()));
-            askAccount.addToAssetBalanceATU(LedgerEvent.ASSET_TRADE, askOrder.getId(), assetId, -trade.getQuantityATU());
-
-            bidOrder.updateQuantityATU(Math.subtractExact(bidOrder.getQuantityATU(), trade.getQuantityATU()));
-            Account bidAccount = Account.getAccount(bidOrder.getAccountId());
-            bidAccount.addToAssetAndUnconfirmedAssetBalanceATU(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
-                    assetId, trade.getQuantityATU());
-            bidAccount.addToBalanceATM(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
-                    -Math.multiplyExact(trade.getQuantityATU(), trade.getPriceATM()));
-            bidAccount.addToUnconfirmedBalanceATM(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
-                    Math.multiplyExact(trade.getQuantityATU(), (bidOrder.getPriceATM() - trade.getPriceATM())));
+            trade.accept(askOrder, bidOrder);
         }
 
     }
 
+    private static void trade(long assetId, Ask askOrder, Bid bidOrder) {
+        Trade trade = Trade.addTrade(assetId, askOrder, bidOrder);
+
+        askOrder.updateQuantityATU(Math.subtractExact(askOrder.getQuantityATU(), trade.getQuantityATU()));
+        Account askAccount = Account.getAccount(askOrder.getAccountId());
+        askAccount.addToBalanceAndUnconfirmedBalanceATM(LedgerEvent.ASSET_TRADE, askOrder.getId(),
+                Math.multiplyExact(trade.getQuantityATU(), trade.getPriceATM()));
+        askAccount.addToAssetBalanceATU(LedgerEvent.ASSET_TRADE, askOrder.getId(), assetId, -trade.getQuantityATU());
+
+        bidOrder.updateQuantityATU(Math.subtractExact(bidOrder.getQuantityATU(), trade.getQuantityATU()));
+        Account bidAccount = Account.getAccount(bidOrder.getAccountId());
+        bidAccount.addToAssetAndUnconfirmedAssetBalanceATU(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
+                assetId, trade.getQuantityATU());
+        bidAccount.addToBalanceATM(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
+                -Math.multiplyExact(trade.getQuantityATU(), trade.getPriceATM()));
+        bidAccount.addToUnconfirmedBalanceATM(LedgerEvent.ASSET_TRADE, bidOrder.getId(),
+                Math.multiplyExact(trade.getQuantityATU(), (bidOrder.getPriceATM() - trade.getPriceATM())));
+    }
+
     static void init() {
         Ask.init();
         Bid.init();
@@ -129,6 +164,39 @@ public abstract class Order {
         }
     }
 
+    /**
+     * Get the sorted orders for an asset from the order book
+     *
+     * @param   orderBook           Order book
+     * @param   assetId             Asset identifier
+     * @param   from                First index, inclusive
+     * @param   to                  Last index, inclusive
+     * @param   creator             Create an order from an order book entry
+     * @return                      Orders
+     */
+    static <T extends Order> DbIterator<T> getSortedOrders(OrderBook orderBook, long assetId, int from, int to,
+                                                           Function<OrderBook.Entry, T> creator) {
+        List<OrderBook.Entry> entries;
+        Apl.getBlockchain().readLock();
+        try {
+            entries = orderBook.getOrders(assetId, from, to);
+        } finally {
+            Apl.getBlockchain().readUnlock();
+        }
+        Iterator<OrderBook.Entry> it = entries.iterator();
+        return new DbIterator<>(new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return creator.apply(it.next());
+            }
+        });
+    }
+
     private void save(Connection con, String table) throws SQLException {
         try (PreparedStatement pstmt = con.prepareStatement("MERGE INTO " + table + " (id, account_id, asset_id, "
                 + "price, quantity, creation_height, transaction_index, transaction_height, height, latest) KEY (id, height) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE)")) {
@@ -216,7 +284,33 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            protected void inserted(Ask ask) {
+                askOrderBook.put(new OrderBook.Entry(ask));
+            }
+
+            @Override
+            protected void deleted(Ask ask) {
+                askOrderBook.remove(new OrderBook.Entry(ask));
+            }
+
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                askOrderBook.invalidate();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                askOrderBook.invalidate();
+            }
+
         };
+
+        private static final OrderBook askOrderBook = new OrderBook(Db.getDb(), "ask_order", OrderBook.ASK_ORDER_COMPARATOR,
+                OrderBook.ASK_ORDER_SORT);
+
         private final DbKey dbKey;
 
         private Ask(Transaction transaction, Attachment.ColoredCoinsAskOrderPlacement attachment) {
@@ -229,6 +323,11 @@ public abstract class Order {
             this.dbKey = dbKey;
         }
 
+        private Ask(OrderBook.Entry entry, DbKey dbKey) {
+            super(entry);
+            this.dbKey = dbKey;
+        }
+
         public static int getCount() {
             return askOrderTable.getCount();
         }
@@ -255,22 +354,12 @@ public abstract class Order {
         }
 
         public static DbIterator<Ask> getSortedOrders(long assetId, int from, int to) {
-            return askOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                    " ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
-        }
-
-        private static Ask getNextOrder(long assetId) {
-            try (Connection con = Db.getDb().getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM ask_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
-                pstmt.setLong(1, assetId);
-                try (DbIterator<Ask> askOrders = askOrderTable.getManyBy(con, pstmt, true)) {
-                    return askOrders.hasNext() ? askOrders.next() : null;
-                }
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            return Order.getSortedOrders(askOrderBook, assetId, from, to,
+                    entry -> new Ask(entry, askOrderDbKeyFactory.newKey(entry.getId())));
+        }
+
+        private static Ask getOrder(OrderBook.Entry entry) {
+            return askOrderTable.get(askOrderDbKeyFactory.newKey(entry.getId()), dbKey -> new Ask(entry, dbKey));
         }
 
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsAskOrderPlacement attachment) {
@@ -337,7 +426,33 @@ public abstract class Order {
                 return " ORDER BY creation_height DESC ";
             }
 
+            @Override
+            protected void inserted(Bid bid) {
+                bidOrderBook.put(new OrderBook.Entry(bid));
+            }
+
+            @Override
+            protected void deleted(Bid bid) {
+                bidOrderBook.remove(new OrderBook.Entry(bid));
+            }
+
+            @Override
+            public void rollback(int height) {
+                super.rollback(height);
+                bidOrderBook.invalidate();
+            }
+
+            @Override
+            public void truncate() {
+                super.truncate();
+                bidOrderBook.invalidate();
+            }
+
         };
+
+        private static final OrderBook bidOrderBook = new OrderBook(Db.getDb(), "bid_order", OrderBook.BID_ORDER_COMPARATOR,
+                OrderBook.BID_ORDER_SORT);
+
         private final DbKey dbKey;
 
         private Bid(Transaction transaction, Attachment.ColoredCoinsBidOrderPlacement attachment) {
@@ -350,6 +465,11 @@ public abstract class Order {
             this.dbKey = dbKey;
         }
 
+        private Bid(OrderBook.Entry entry, DbKey dbKey) {
+            super(entry);
+            this.dbKey = dbKey;
+        }
+
         public static int getCount() {
             return bidOrderTable.getCount();
         }
@@ -376,22 +496,12 @@ public abstract class Order {
         }
 
         public static DbIterator<Bid> getSortedOrders(long assetId, int from, int to) {
-            return bidOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                    " ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ");
-        }
-
-        private static Bid getNextOrder(long assetId) {
-            try (Connection con = Db.getDb().getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM bid_order WHERE asset_id = ? "
-                         + "AND latest = TRUE ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC LIMIT 1")) {
-                pstmt.setLong(1, assetId);
-                try (DbIterator<Bid> bidOrders = bidOrderTable.getManyBy(con, pstmt, true)) {
-                    return bidOrders.hasNext() ? bidOrders.next() : null;
-                }
-            }
-            catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            return Order.getSortedOrders(bidOrderBook, assetId, from, to,
+                    entry -> new Bid(entry, bidOrderDbKeyFactory.newKey(entry.getId())));
+        }
+
+        private static Bid getOrder(OrderBook.Entry entry) {
+            return bidOrderTable.get(bidOrderDbKeyFactory.newKey(entry.getId()), dbKey -> new Bid(entry, dbKey));
         }
 
         static void addOrder(Transaction transaction, Attachment.ColoredCoinsBidOrderPlacement attachment) {
@@ -0,0 +1,335 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.db.TransactionalDb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory price-time order book for the ask or bid orders of all assets.
+ * <p>
+ * The book holds the latest version of each open order and is loaded from the order table when it
+ * is first used.  It is kept in sync by the order table: inserted and deleted orders are applied as
+ * they are written, and the book is reloaded after the table is rolled back to a height or truncated.
+ * Changes made by a database transaction are recorded and undone when the transaction is rolled back.
+ * <p>
+ * The orders of an asset are sorted in the order used by the SQL queries of the order table, so the
+ * first order of an asset is the next order to be matched.  Changes are only made while holding the
+ * blockchain write lock, and the orders must be read while holding the blockchain read lock when
+ * they are not read within a database transaction.
+ */
+final class OrderBook implements TransactionalDb.TransactionCallback {
+
+    /**
+     * Order book entry
+     */
+    static final class Entry {
+
+        private final long id;
+        private final long accountId;
+        private final long assetId;
+        private final long priceATM;
+        private final long quantityATU;
+        private final int creationHeight;
+        private final short transactionIndex;
+        private final int transactionHeight;
+
+        Entry(long id, long accountId, long assetId, long priceATM, long quantityATU,
+                int creationHeight, short transactionIndex, int transactionHeight) {
+            this.id = id;
+            this.accountId = accountId;
+            this.assetId = assetId;
+            this.priceATM = priceATM;
+            this.quantityATU = quantityATU;
+            this.creationHeight = creationHeight;
+            this.transactionIndex = transactionIndex;
+            this.transactionHeight = transactionHeight;
+        }
+
+        Entry(Order order) {
+            this(order.getId(), order.getAccountId(), order.getAssetId(), order.getPriceATM(), order.getQuantityATU(),
+                    order.getHeight(), (short) order.getTransactionIndex(), order.getTransactionHeight());
+        }
+
+        private Entry(ResultSet rs) throws SQLException {
+            this(rs.getLong("id"), rs.getLong("account_id"), rs.getLong("asset_id"), rs.getLong("price"),
+                    rs.getLong("quantity"), rs.getInt("creation_height"), rs.getShort("transaction_index"),
+                    rs.getInt("transaction_height"));
+        }
+
+        long getId() {
+            return id;
+        }
+
+        long getAccountId() {
+            return accountId;
+        }
+
+        long getAssetId() {
+            return assetId;
+        }
+
+        long getPriceATM() {
+            return priceATM;
+        }
+
+        long getQuantityATU() {
+            return quantityATU;
+        }
+
+        int getCreationHeight() {
+            return creationHeight;
+        }
+
+        short getTransactionIndex() {
+            return transactionIndex;
+        }
+
+        int getTransactionHeight() {
+            return transactionHeight;
+        }
+    }
+
+    /** Time priority, the same for ask and bid orders */
+    private static final Comparator<Entry> timeComparator = Comparator
+            .comparingInt(Entry::getCreationHeight)
+            .thenComparingInt(Entry::getTransactionHeight)
+            .thenComparingInt(Entry::getTransactionIndex)
+            .thenComparingLong(Entry::getId);
+
+    /** Ask orders: price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC */
+    static final Comparator<Entry> ASK_ORDER_COMPARATOR = Comparator
+            .comparingLong(Entry::getPriceATM)
+            .thenComparing(timeComparator);
+
+    /** Bid orders: price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC */
+    static final Comparator<Entry> BID_ORDER_COMPARATOR = Comparator
+            .comparingLong(Entry::getPriceATM).reversed()
+            .thenComparing(timeComparator);
+
+    /** SQL sort of the ask orders */
+    static final String ASK_ORDER_SORT = " ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ";
+
+    /** SQL sort of the bid orders */
+    static final String BID_ORDER_SORT = " ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ";
+
+    private final TransactionalDb db;
+    private final String table;
+    private final Comparator<Entry> comparator;
+    private final String sort;
+
+    /** Orders by asset or null if the book must be loaded from the database */
+    private Map<Long, TreeSet<Entry>> orders;
+
+    /** Changes made by the current database transaction, undone in reverse order on rollback */
+    private final ThreadLocal<List<Runnable>> undoLog = new ThreadLocal<>();
+
+    /**
+     * Create the order book
+     *
+     * @param   db                  Database
+     * @param   table               Order table
+     * @param   comparator          Order priority
+     * @param   sort                SQL sort with the same order priority
+     */
+    OrderBook(TransactionalDb db, String table, Comparator<Entry> comparator, String sort) {
+        this.db = db;
+        this.table = table;
+        this.comparator = comparator;
+        this.sort = sort;
+    }
+
+    /**
+     * Get the next order to be matched
+     *
+     * @param   assetId             Asset identifier
+     * @return                      Order or null if there are no orders for the asset
+     */
+    synchronized Entry getFirst(long assetId) {
+        TreeSet<Entry> assetOrders = getOrders().get(assetId);
+        return assetOrders != null && !assetOrders.isEmpty() ? assetOrders.first() : null;
+    }
+
+    /**
+     * Get the next order to be matched from the order table.  This is the query replaced by the
+     * order book, and is used to check that the book matches the same orders as the table.
+     *
+     * @param   assetId             Asset identifier
+     * @return                      Order or null if there are no orders for the asset
+     */
+    Entry getFirstFromTable(long assetId) {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " WHERE asset_id = ? AND latest = TRUE"
+                     + sort + "LIMIT 1")) {
+            pstmt.setLong(1, assetId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new Entry(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Get the orders for an asset in priority order.  The indexes are applied in the same way as
+     * {@link com.apollocurrency.aplwallet.apl.db.DbUtils#limitsClause(int, int)}.
+     *
+     * @param   assetId             Asset identifier
+     * @param   from                First index, inclusive
+     * @param   to                  Last index, inclusive
+     * @return                      Orders
+     */
+    synchronized List<Entry> getOrders(long assetId, int from, int to) {
+        TreeSet<Entry> assetOrders = getOrders().get(assetId);
+        if (assetOrders == null) {
+            return Collections.emptyList();
+        }
+        int limit = to >= 0 && to >= from && to < Integer.MAX_VALUE ? to - from + 1 : 0;
+        int skip = Math.max(from, 0);
+        List<Entry> result = new ArrayList<>(limit > 0 ? Math.min(limit, assetOrders.size()) : assetOrders.size());
+        Iterator<Entry> it = assetOrders.iterator();
+        while (it.hasNext() && (limit == 0 || result.size() < limit)) {
+            Entry entry = it.next();
+            if (skip > 0) {
+                skip--;
+            } else {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add an order or replace the current version of the order
+     *
+     * @param   entry               Order
+     */
+    synchronized void put(Entry entry) {
+        Map<Long, TreeSet<Entry>> bookOrders = getOrders();
+        TreeSet<Entry> assetOrders = bookOrders.computeIfAbsent(entry.getAssetId(), id -> new TreeSet<>(comparator));
+        Entry previous = assetOrders.ceiling(entry);
+        if (previous != null && comparator.compare(previous, entry) == 0) {
+            assetOrders.remove(previous);
+        } else {
+            previous = null;
+        }
+        assetOrders.add(entry);
+        Entry restored = previous;
+        logUndo(() -> {
+            removeEntry(entry);
+            if (restored != null) {
+                orders.computeIfAbsent(restored.getAssetId(), id -> new TreeSet<>(comparator)).add(restored);
+            }
+        });
+    }
+
+    /**
+     * Remove an order
+     *
+     * @param   entry               Order
+     */
+    synchronized void remove(Entry entry) {
+        getOrders();
+        Entry removed = removeEntry(entry);
+        if (removed != null) {
+            logUndo(() -> orders.computeIfAbsent(removed.getAssetId(), id -> new TreeSet<>(comparator)).add(removed));
+        }
+    }
+
+    /**
+     * Reload the book from the database when it is next used
+     */
+    synchronized void invalidate() {
+        setOrders(null);
+    }
+
+    private Entry removeEntry(Entry entry) {
+        TreeSet<Entry> assetOrders = orders.get(entry.getAssetId());
+        if (assetOrders == null) {
+            return null;
+        }
+        Entry removed = assetOrders.ceiling(entry);
+        if (removed == null || comparator.compare(removed, entry) != 0) {
+            return null;
+        }
+        assetOrders.remove(removed);
+        if (assetOrders.isEmpty()) {
+            orders.remove(entry.getAssetId());
+        }
+        return removed;
+    }
+
+    private Map<Long, TreeSet<Entry>> getOrders() {
+        if (orders == null) {
+            setOrders(load());
+        }
+        return orders;
+    }
+
+    private void setOrders(Map<Long, TreeSet<Entry>> newOrders) {
+        Map<Long, TreeSet<Entry>> previous = orders;
+        orders = newOrders;
+        logUndo(() -> orders = previous);
+    }
+
+    private Map<Long, TreeSet<Entry>> load() {
+        Map<Long, TreeSet<Entry>> loaded = new HashMap<>();
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " WHERE latest = TRUE");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Entry entry = new Entry(rs);
+                loaded.computeIfAbsent(entry.getAssetId(), id -> new TreeSet<>(comparator)).add(entry);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return loaded;
+    }
+
+    private void logUndo(Runnable undo) {
+        if (!db.isInTransaction()) {
+            return;
+        }
+        List<Runnable> log = undoLog.get();
+        if (log == null) {
+            log = new ArrayList<>();
+            undoLog.set(log);
+        }
+        log.add(undo);
+        db.registerCallback(this);
+    }
+
+    @Override
+    public void commit() {
+        undoLog.remove();
+    }
+
+    @Override
+    public void rollback() {
+        List<Runnable> log = undoLog.get();
+        undoLog.remove();
+        if (log == null) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = log.size() - 1; i >= 0; i--) {
+                log.get(i).run();
+            }
+        }
+    }
+}
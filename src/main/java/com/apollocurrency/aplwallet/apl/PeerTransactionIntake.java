@@ -0,0 +1,236 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import com.apollocurrency.aplwallet.apl.util.LongHashSet;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Staged intake of the transactions received from peers.
+ * <p>
+ * Transactions that have already been accepted are remembered by the first 8 bytes of their signature,
+ * so a rebroadcast of a known transaction is dropped before it is parsed.  The remaining transactions are
+ * parsed, size checked, signature checked and validated in parallel without holding the blockchain lock.
+ * Only the transactions that pass these checks are added to the unconfirmed pool, which is done in
+ * batches while holding the blockchain write lock.
+ * <p>
+ * A transaction is only remembered once its signature has been verified, so an invalid copy with the
+ * same signature can't prevent the valid transaction from being accepted.  A transaction is forgotten
+ * when it is removed from the unconfirmed pool without being included in a block.
+ */
+final class PeerTransactionIntake {
+
+    /** Maximum number of known transactions to remember */
+    private static final int KNOWN_TRANSACTIONS_SIZE = 50000;
+
+    /** Number of transactions pre-validated by a single task */
+    private static final int TASK_SIZE = 4;
+
+    /** Number of transactions added to the unconfirmed pool for each blockchain write lock */
+    static final int LOCK_BATCH_SIZE = 25;
+
+    /** Pool used to pre-validate transactions */
+    private static final ForkJoinPool intakePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Signature prefixes of the known transactions */
+    private static final LongHashSet knownTransactions = new LongHashSet(KNOWN_TRANSACTIONS_SIZE);
+
+    /** Known transactions in the order they were added, used to remove the oldest entry */
+    private static final long[] knownTransactionQueue = new long[KNOWN_TRANSACTIONS_SIZE];
+    private static int knownTransactionIndex;
+    private static boolean knownTransactionQueueFull;
+
+    private PeerTransactionIntake() {} //never
+
+    /**
+     * Pre-validated transaction
+     */
+    static final class Result {
+
+        private final JSONObject transactionData;
+        private TransactionImpl transaction;
+        private boolean existing;
+        private Exception exception;
+
+        private Result(JSONObject transactionData) {
+            this.transactionData = transactionData;
+        }
+
+        /**
+         * Get the transaction data received from the peer
+         *
+         * @return                      Transaction JSON
+         */
+        JSONObject getTransactionData() {
+            return transactionData;
+        }
+
+        /**
+         * Get the parsed transaction
+         *
+         * @return                      Transaction or null if the transaction could not be parsed
+         */
+        TransactionImpl getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * Check if the transaction is already in the unconfirmed pool or in the blockchain
+         *
+         * @return                      TRUE if the transaction is already known
+         */
+        boolean isExisting() {
+            return existing;
+        }
+
+        /**
+         * Get the validation exception
+         *
+         * @return                      Exception or null if the transaction passed the checks
+         */
+        Exception getException() {
+            return exception;
+        }
+
+        private void prevalidate(TransactionProcessorImpl transactionProcessor) {
+            try {
+                transaction = TransactionImpl.parseTransaction(transactionData);
+                if (transaction.getFullSize() > AplGlobalObjects.getChainConfig().getCurrentConfig().getMaxPayloadLength()) {
+                    throw new AplException.NotValidException("Transaction size " + transaction.getFullSize() + " exceeds maximum payload size");
+                }
+                if (transactionProcessor.isUnconfirmedTransaction(transaction) || TransactionDb.hasTransaction(transaction.getId())) {
+                    existing = true;
+                    return;
+                }
+                transaction.validate();
+            } catch (AplException.ValidationException | RuntimeException e) {
+                exception = e;
+            }
+        }
+    }
+
+    /**
+     * Remove the known transactions
+     *
+     * @param   transactionsData    Transactions received from the peer
+     * @return                      Transactions that are not known
+     */
+    static List<JSONObject> filterKnown(List<?> transactionsData) {
+        List<JSONObject> result = new ArrayList<>(transactionsData.size());
+        synchronized (knownTransactions) {
+            for (Object transactionData : transactionsData) {
+                Object signature = ((JSONObject) transactionData).get("signature");
+                if (signature instanceof String && ((String) signature).length() >= 16) {
+                    try {
+                        if (knownTransactions.contains(Long.parseUnsignedLong(((String) signature).substring(0, 16), 16))) {
+                            continue;
+                        }
+                    } catch (NumberFormatException ignore) {
+                        // Rejected when the transaction is parsed
+                    }
+                }
+                result.add((JSONObject) transactionData);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remember an accepted transaction.  The transaction signature must have been verified.
+     *
+     * @param   transaction         Transaction
+     */
+    static void setKnown(Transaction transaction) {
+        byte[] signature = transaction.getSignature();
+        if (signature == null) {
+            return;
+        }
+        long key = Convert.bytesToLong(signature);
+        synchronized (knownTransactions) {
+            if (!knownTransactions.add(key)) {
+                return;
+            }
+            if (knownTransactionQueueFull) {
+                knownTransactions.remove(knownTransactionQueue[knownTransactionIndex]);
+            }
+            knownTransactionQueue[knownTransactionIndex] = key;
+            knownTransactionIndex = (knownTransactionIndex + 1) % KNOWN_TRANSACTIONS_SIZE;
+            if (knownTransactionIndex == 0) {
+                knownTransactionQueueFull = true;
+            }
+        }
+    }
+
+    /**
+     * Forget a transaction that has left the unconfirmed pool without being confirmed.  The transaction
+     * was evicted, expired or became invalid, so a later rebroadcast must be processed again.
+     *
+     * @param   transaction         Transaction
+     */
+    static void removeKnown(Transaction transaction) {
+        byte[] signature = transaction.getSignature();
+        if (signature == null) {
+            return;
+        }
+        synchronized (knownTransactions) {
+            knownTransactions.remove(Convert.bytesToLong(signature));
+        }
+    }
+
+    /**
+     * Parse and check the transactions in parallel
+     *
+     * @param   transactionProcessor    Transaction processor
+     * @param   transactionsData        Transactions received from the peer
+     * @return                          Result for each transaction in the order received
+     */
+    static List<Result> prevalidate(TransactionProcessorImpl transactionProcessor, List<JSONObject> transactionsData) {
+        List<Result> results = new ArrayList<>(transactionsData.size());
+        transactionsData.forEach(transactionData -> results.add(new Result(transactionData)));
+        if (results.size() <= TASK_SIZE) {
+            results.forEach(result -> result.prevalidate(transactionProcessor));
+        } else {
+            intakePool.invoke(new PrevalidateTask(transactionProcessor, results, 0, results.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Pre-validate a range of the transactions, splitting it between the pool threads
+     */
+    private static final class PrevalidateTask extends RecursiveAction {
+
+        private final TransactionProcessorImpl transactionProcessor;
+        private final List<Result> results;
+        private final int from;
+        private final int to;
+
+        private PrevalidateTask(TransactionProcessorImpl transactionProcessor, List<Result> results, int from, int to) {
+            this.transactionProcessor = transactionProcessor;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results.get(i).prevalidate(transactionProcessor);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PrevalidateTask(transactionProcessor, results, from, middle),
+                        new PrevalidateTask(transactionProcessor, results, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.db.DerivedDbTable;
+import com.apollocurrency.aplwallet.apl.util.ThreadPool;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Snapshots of the derived tables used to shorten a rescan.
+ * <p>
+ * A snapshot is taken every apl.rescanSnapshotFrequency blocks and is stored in database schema
+ * SNAPSHOT_&lt;height&gt;, with one copy of each derived table and a SNAPSHOT_INFO table identifying
+ * the snapshot block.  The copy is made by a background thread without holding the blockchain lock,
+ * so blocks may be pushed while the tables are copied and a table copy can include rows for heights
+ * above the snapshot height.  This is resolved when the snapshot is restored: the copied rows replace
+ * the derived table rows and the tables are then rolled back to the snapshot height, the same way as
+ * for a regular rollback.
+ * <p>
+ * A rescan to a height below the minimum rollback height restores the most recent valid snapshot below
+ * that height instead of starting from the genesis block.  A snapshot is valid if its block is still in
+ * the blockchain and each derived table has the same columns as its snapshot copy.
+ * <p>
+ * Persistent tables are not copied since they are not rolled back or truncated by a rescan.
+ */
+final class RescanSnapshots {
+    private static final Logger LOG = getLogger(RescanSnapshots.class);
+
+    /** Snapshot schema name prefix */
+    private static final String SCHEMA_PREFIX = "SNAPSHOT_";
+
+    /** Snapshot identification table */
+    private static final String INFO_TABLE = "SNAPSHOT_INFO";
+
+    /** Derived table column excluded from the table digest since it depends on the insert order */
+    private static final String DB_ID_COLUMN = "DB_ID";
+
+    /** Derived table column identifying the current version of a versioned entity */
+    private static final String LATEST_COLUMN = "LATEST";
+
+    private final int snapshotFrequency = Math.max(Apl.getIntProperty("apl.rescanSnapshotFrequency", 0), 0);
+    private final int maxSnapshots = Math.max(Apl.getIntProperty("apl.maxRescanSnapshots", 2), 1);
+    private final ExecutorService snapshotService = Executors.newSingleThreadExecutor(new ThreadFactoryImpl("BlockchainProcessor:snapshotService"));
+    private final BlockchainProcessorImpl blockchainProcessor;
+    private final List<DerivedDbTable> derivedTables;
+
+    /** Snapshot creation is in progress */
+    private final AtomicBoolean isCreating = new AtomicBoolean();
+
+    /** Height of the snapshot being created */
+    private volatile int creatingHeight = -1;
+
+    /** Snapshot being created is no longer consistent with the blockchain */
+    private volatile boolean isAborted;
+
+    /**
+     * Rescan snapshot
+     */
+    static final class Snapshot {
+        private final int height;
+        private final String schema;
+
+        private Snapshot(int height) {
+            this.height = height;
+            this.schema = SCHEMA_PREFIX + height;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return schema;
+        }
+    }
+
+    /**
+     * Create the snapshot manager
+     *
+     * @param   blockchainProcessor Blockchain processor
+     * @param   derivedTables       Registered derived tables
+     */
+    RescanSnapshots(BlockchainProcessorImpl blockchainProcessor, List<DerivedDbTable> derivedTables) {
+        this.blockchainProcessor = blockchainProcessor;
+        this.derivedTables = derivedTables;
+    }
+
+    /**
+     * Start a snapshot in the background when a block at a snapshot height has been pushed
+     *
+     * @param   block               Pushed block
+     */
+    void blockPushed(Block block) {
+        int height = block.getHeight();
+        if (snapshotFrequency == 0 || height == 0 || height % snapshotFrequency != 0) {
+            return;
+        }
+        if (!isCreating.compareAndSet(false, true)) {
+            LOG.debug("Snapshot at height " + creatingHeight + " is still in progress, skipping snapshot at height " + height);
+            return;
+        }
+        isAborted = false;
+        creatingHeight = height;
+        snapshotService.submit(() -> {
+            try {
+                create(height, block.getId());
+            } catch (RuntimeException e) {
+                LOG.error("Unable to create rescan snapshot at height " + height, e);
+            } finally {
+                creatingHeight = -1;
+                isCreating.set(false);
+            }
+        });
+    }
+
+    /**
+     * Abort the snapshot in progress when its block has been popped off
+     *
+     * @param   block               Popped block
+     */
+    void blockPopped(Block block) {
+        if (block.getHeight() <= creatingHeight) {
+            isAborted = true;
+        }
+    }
+
+    /**
+     * Abort the snapshot in progress when a rescan is started
+     */
+    void rescanStarted() {
+        if (creatingHeight >= 0) {
+            isAborted = true;
+        }
+    }
+
+    /**
+     * Stop the snapshot service
+     */
+    void shutdown() {
+        ThreadPool.shutdownExecutor("snapshotService", snapshotService, 5);
+    }
+
+    /**
+     * Copy the derived tables to a new snapshot schema
+     *
+     * @param   height              Snapshot height
+     * @param   blockId             Snapshot block identifier
+     */
+    private void create(int height, long blockId) {
+        Snapshot snapshot = new Snapshot(height);
+        long startTime = System.currentTimeMillis();
+        boolean success = false;
+        try (Connection con = Db.getDb().getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("DROP SCHEMA IF EXISTS " + snapshot.schema);
+            stmt.executeUpdate("CREATE SCHEMA " + snapshot.schema);
+            for (DerivedDbTable table : derivedTables) {
+                if (isAborted) {
+                    break;
+                }
+                if (!isSnapshotTable(table)) {
+                    continue;
+                }
+                long tableTime = System.currentTimeMillis();
+                stmt.executeUpdate("CREATE TABLE " + snapshot.schema + "." + table + " AS SELECT * FROM PUBLIC." + table);
+                LOG.trace("Snapshot of table {} took {} ms", table, System.currentTimeMillis() - tableTime);
+            }
+            if (isAborted) {
+                LOG.info("Blockchain changed below height " + height + ", rescan snapshot aborted");
+            } else if (blockchainProcessor.getMinRollbackHeight() > height) {
+                LOG.info("Derived tables trimmed above height " + height + ", rescan snapshot aborted");
+            } else {
+                stmt.executeUpdate("CREATE TABLE " + snapshot.schema + "." + INFO_TABLE
+                        + " (height INT NOT NULL, block_id BIGINT NOT NULL)");
+                try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO " + snapshot.schema + "." + INFO_TABLE
+                        + " (height, block_id) VALUES (?, ?)")) {
+                    pstmt.setInt(1, height);
+                    pstmt.setLong(2, blockId);
+                    pstmt.executeUpdate();
+                }
+                success = true;
+                LOG.info("Created rescan snapshot at height " + height + " in " + (System.currentTimeMillis() - startTime) + " ms");
+            }
+            if (!success) {
+                stmt.executeUpdate("DROP SCHEMA " + snapshot.schema);
+            }
+            prune(con);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Drop the oldest snapshots when there are more than apl.maxRescanSnapshots
+     *
+     * @param   con                 Database connection
+     * @throws  SQLException        Database error
+     */
+    private void prune(Connection con) throws SQLException {
+        TreeSet<Integer> heights = getSnapshotHeights(con);
+        try (Statement stmt = con.createStatement()) {
+            while (heights.size() > maxSnapshots) {
+                int height = heights.pollFirst();
+                stmt.executeUpdate("DROP SCHEMA " + SCHEMA_PREFIX + height);
+                LOG.debug("Dropped rescan snapshot at height " + height);
+            }
+        }
+    }
+
+    /**
+     * Find the most recent valid snapshot
+     *
+     * @param   con                 Database connection
+     * @param   maxHeight           Maximum snapshot height
+     * @return                      Snapshot or null if there is no valid snapshot
+     * @throws  SQLException        Database error
+     */
+    Snapshot find(Connection con, int maxHeight) throws SQLException {
+        for (int height : getSnapshotHeights(con).descendingSet()) {
+            if (height <= maxHeight && height != creatingHeight && isValid(con, height)) {
+                return new Snapshot(height);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a snapshot at a specific height
+     *
+     * @param   con                 Database connection
+     * @param   height              Snapshot height
+     * @return                      Snapshot or null if there is no valid snapshot at the height
+     * @throws  SQLException        Database error
+     */
+    Snapshot get(Connection con, int height) throws SQLException {
+        if (height != creatingHeight && getSnapshotHeights(con).contains(height) && isValid(con, height)) {
+            return new Snapshot(height);
+        }
+        return null;
+    }
+
+    /**
+     * Replace the derived table rows with the snapshot copies.  The caller must be in a database
+     * transaction and must roll back the derived tables to the snapshot height afterwards.
+     *
+     * @param   con                 Database connection
+     * @param   snapshot            Snapshot
+     * @throws  SQLException        Database error
+     */
+    void restore(Connection con, Snapshot snapshot) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            for (DerivedDbTable table : derivedTables) {
+                if (!isSnapshotTable(table)) {
+                    continue;
+                }
+                long startTime = System.currentTimeMillis();
+                table.truncate();
+                String columns = String.join(", ", getColumns(con, "PUBLIC", table.toString()));
+                stmt.executeUpdate("INSERT INTO PUBLIC." + table + " (" + columns + ") SELECT " + columns
+                        + " FROM " + snapshot.schema + "." + table);
+                LOG.trace("Restore of table {} took {} ms", table, System.currentTimeMillis() - startTime);
+            }
+        }
+    }
+
+    /**
+     * Compute a digest of each snapshot table.  The digest does not depend on the row order or the
+     * database identifier and only includes the latest version of a versioned entity, so it can be
+     * compared between a rescan from a snapshot and a full rescan.
+     *
+     * @param   con                 Database connection
+     * @return                      Map of table name to row count and digest
+     * @throws  SQLException        Database error
+     */
+    Map<String, String> digest(Connection con) throws SQLException {
+        Map<String, String> digests = new LinkedHashMap<>();
+        MessageDigest md = Crypto.sha256();
+        for (DerivedDbTable table : derivedTables) {
+            if (!isSnapshotTable(table)) {
+                continue;
+            }
+            List<String> columns = getColumns(con, "PUBLIC", table.toString());
+            boolean versioned = columns.remove(LATEST_COLUMN);
+            columns.remove(DB_ID_COLUMN);
+            long count = 0;
+            long sum = 0;
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", columns) + " FROM PUBLIC." + table
+                         + (versioned ? " WHERE latest = TRUE" : ""))) {
+                int columnCount = columns.size();
+                while (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        String value = rs.getString(i);
+                        md.update(value == null ? new byte[] {0} : value.getBytes(StandardCharsets.UTF_8));
+                        md.update((byte) 0xff);
+                    }
+                    byte[] hash = md.digest();
+                    long rowHash = 0;
+                    for (int i = 0; i < 8; i++) {
+                        rowHash = (rowHash << 8) | (hash[i] & 0xff);
+                    }
+                    sum += rowHash;
+                    count++;
+                }
+            }
+            digests.put(table.toString(), count + ":" + Long.toUnsignedString(sum, 16));
+        }
+        return digests;
+    }
+
+    private static boolean isSnapshotTable(DerivedDbTable table) {
+        return !table.isPersistent() && table.supportsSnapshot();
+    }
+
+    /**
+     * Check that a snapshot block is in the blockchain and the table columns have not changed
+     *
+     * @param   con                 Database connection
+     * @param   height              Snapshot height
+     * @return                      TRUE if the snapshot is valid
+     * @throws  SQLException        Database error
+     */
+    private boolean isValid(Connection con, int height) throws SQLException {
+        String schema = SCHEMA_PREFIX + height;
+        if (getColumns(con, schema, INFO_TABLE).isEmpty()) {
+            LOG.debug("Rescan snapshot at height " + height + " is incomplete");
+            return false;
+        }
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT height, block_id FROM " + schema + "." + INFO_TABLE)) {
+            if (!rs.next() || rs.getInt("height") != height) {
+                return false;
+            }
+            long blockId = rs.getLong("block_id");
+            if (height > Apl.getBlockchain().getHeight() || Apl.getBlockchain().getBlockIdAtHeight(height) != blockId) {
+                LOG.debug("Rescan snapshot at height " + height + " is not on the current blockchain");
+                return false;
+            }
+        }
+        for (DerivedDbTable table : derivedTables) {
+            if (isSnapshotTable(table)
+                    && !getColumns(con, schema, table.toString()).equals(getColumns(con, "PUBLIC", table.toString()))) {
+                LOG.debug("Rescan snapshot at height " + height + " does not match table " + table);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the heights of the snapshot schemas
+     *
+     * @param   con                 Database connection
+     * @return                      Snapshot heights
+     * @throws  SQLException        Database error
+     */
+    private static TreeSet<Integer> getSnapshotHeights(Connection con) throws SQLException {
+        TreeSet<Integer> heights = new TreeSet<>();
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT schema_name FROM INFORMATION_SCHEMA.SCHEMATA")) {
+            while (rs.next()) {
+                String schema = rs.getString(1);
+                if (schema.startsWith(SCHEMA_PREFIX)) {
+                    try {
+                        heights.add(Integer.parseInt(schema.substring(SCHEMA_PREFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a snapshot schema
+                    }
+                }
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Get the columns of a table
+     *
+     * @param   con                 Database connection
+     * @param   schema              Schema name
+     * @param   table               Table name
+     * @return                      Column names in table order, empty if the table does not exist
+     * @throws  SQLException        Database error
+     */
+    private static List<String> getColumns(Connection con, String schema, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement pstmt = con.prepareStatement("SELECT column_name FROM INFORMATION_SCHEMA.COLUMNS "
+                + "WHERE table_schema = ? AND table_name = ? ORDER BY ordinal_position")) {
+            pstmt.setString(1, schema.toUpperCase());
+            pstmt.setString(2, table.toUpperCase());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    columns.add(rs.getString(1));
+                }
+            }
+        }
+        return columns;
+    }
+}
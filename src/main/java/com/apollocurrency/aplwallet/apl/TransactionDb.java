@@ -42,11 +42,9 @@ final class TransactionDb {
 
     static TransactionImpl findTransaction(long transactionId, int height) {
         // Check the block cache
-        synchronized (AplGlobalObjects.getBlockDb().getBlockCache()) {
-            TransactionImpl transaction = AplGlobalObjects.getBlockDb().getTransactionCache().get(transactionId);
-            if (transaction != null) {
-                return transaction.getHeight() <= height ? transaction : null;
-            }
+        TransactionImpl transaction = AplGlobalObjects.getBlockDb().getBlockCache().getTransaction(transactionId);
+        if (transaction != null) {
+            return transaction.getHeight() <= height ? transaction : null;
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection();
@@ -72,12 +70,10 @@ final class TransactionDb {
     static TransactionImpl findTransactionByFullHash(byte[] fullHash, int height) {
         long transactionId = Convert.fullHashToId(fullHash);
         // Check the cache
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            TransactionImpl transaction = AplGlobalObjects.getBlockDb().getTransactionCache().get(transactionId);
-            if (transaction != null) {
-                return (transaction.getHeight() <= height &&
-                        Arrays.equals(transaction.fullHash(), fullHash) ? transaction : null);
-            }
+        TransactionImpl transaction = AplGlobalObjects.getBlockDb().getBlockCache().getTransaction(transactionId);
+        if (transaction != null) {
+            return (transaction.getHeight() <= height &&
+                    Arrays.equals(transaction.fullHash(), fullHash) ? transaction : null);
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection();
@@ -103,11 +99,9 @@ final class TransactionDb {
 
     static boolean hasTransaction(long transactionId, int height) {
         // Check the block cache
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            TransactionImpl transaction = AplGlobalObjects.getBlockDb().getTransactionCache().get(transactionId);
-            if (transaction != null) {
-                return (transaction.getHeight() <= height);
-            }
+        TransactionImpl transaction = AplGlobalObjects.getBlockDb().getBlockCache().getTransaction(transactionId);
+        if (transaction != null) {
+            return (transaction.getHeight() <= height);
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection();
@@ -128,12 +122,10 @@ final class TransactionDb {
     static boolean hasTransactionByFullHash(byte[] fullHash, int height) {
         long transactionId = Convert.fullHashToId(fullHash);
         // Check the block cache
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            TransactionImpl transaction = AplGlobalObjects.getBlockDb().getTransactionCache().get(transactionId);
-            if (transaction != null) {
-                return (transaction.getHeight() <= height &&
-                        Arrays.equals(transaction.fullHash(), fullHash));
-            }
+        TransactionImpl transaction = AplGlobalObjects.getBlockDb().getBlockCache().getTransaction(transactionId);
+        if (transaction != null) {
+            return (transaction.getHeight() <= height &&
+                    Arrays.equals(transaction.fullHash(), fullHash));
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection();
@@ -149,11 +141,9 @@ final class TransactionDb {
 
     static byte[] getFullHash(long transactionId) {
         // Check the block cache
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            TransactionImpl transaction = AplGlobalObjects.getBlockDb().getTransactionCache().get(transactionId);
-            if (transaction != null) {
-                return transaction.fullHash();
-            }
+        TransactionImpl transaction = AplGlobalObjects.getBlockDb().getBlockCache().getTransaction(transactionId);
+        if (transaction != null) {
+            return transaction.fullHash();
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection();
@@ -247,11 +237,9 @@ final class TransactionDb {
 
     static List<TransactionImpl> findBlockTransactions(long blockId) {
         // Check the block cache
-        synchronized(AplGlobalObjects.getBlockDb().getBlockCache()) {
-            BlockImpl block = AplGlobalObjects.getBlockDb().getBlockCache().get(blockId);
-            if (block != null) {
-                return block.getTransactions();
-            }
+        BlockImpl block = AplGlobalObjects.getBlockDb().getBlockCache().getBlock(blockId);
+        if (block != null) {
+            return block.getTransactions();
         }
         // Search the database
         try (Connection con = Db.getDb().getConnection()) {
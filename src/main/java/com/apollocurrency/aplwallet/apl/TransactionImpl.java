@@ -31,9 +31,11 @@ import java.util.List;
 import java.util.Map;
 
 import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.crypto.SignatureVerifier;
 import com.apollocurrency.aplwallet.apl.db.DbKey;
 import com.apollocurrency.aplwallet.apl.util.Convert;
 import com.apollocurrency.aplwallet.apl.util.Filter;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -806,6 +808,20 @@ final class TransactionImpl implements Transaction {
         return transaction;
     }
 
+    static List<TransactionImpl> parseTransactions(JSONArray transactionsData) throws AplException.NotValidException {
+        List<TransactionImpl> transactions = new ArrayList<>(transactionsData.size());
+        for (Object transactionData : transactionsData) {
+            transactions.add(newTransactionBuilder((JSONObject) transactionData).build());
+        }
+        checkSignatures(transactions);
+        for (TransactionImpl transaction : transactions) {
+            if (transaction.getSignature() != null && !transaction.checkSignature()) {
+                throw new AplException.NotValidException("Invalid transaction signature for transaction " + transaction.getJSONObject().toJSONString());
+            }
+        }
+        return transactions;
+    }
+
     static TransactionImpl.BuilderImpl newTransactionBuilder(JSONObject transactionData) throws AplException.NotValidException {
         try {
             byte type = ((Long) transactionData.get("type")).byteValue();
@@ -888,11 +904,39 @@ final class TransactionImpl implements Transaction {
 
     private boolean checkSignature() {
         if (!hasValidSignature) {
-            hasValidSignature = signature != null && Crypto.verify(signature, zeroSignature(getBytes()), getSenderPublicKey());
+            hasValidSignature = signature != null && SignatureVerifier.verify(getSignedData());
         }
         return hasValidSignature;
     }
 
+    private SignatureVerifier.SignedData getSignedData() {
+        return new SignatureVerifier.SignedData(fullHash(), signature, zeroSignature(getBytes()), getSenderPublicKey());
+    }
+
+    /**
+     * Verify the signatures of the transactions in parallel.  The verification result is
+     * remembered by each transaction, so a subsequent {@link #verifySignature()} only needs
+     * to check the sender public key.
+     *
+     * @param   transactions        Transactions to verify
+     */
+    static void checkSignatures(List<TransactionImpl> transactions) {
+        List<TransactionImpl> uncheckedTransactions = new ArrayList<>(transactions.size());
+        List<SignatureVerifier.SignedData> batch = new ArrayList<>(transactions.size());
+        for (TransactionImpl transaction : transactions) {
+            if (!transaction.hasValidSignature && transaction.signature != null) {
+                uncheckedTransactions.add(transaction);
+                batch.add(transaction.getSignedData());
+            }
+        }
+        boolean[] results = SignatureVerifier.verify(batch);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                uncheckedTransactions.get(i).hasValidSignature = true;
+            }
+        }
+    }
+
     private int getSize() {
         return signatureOffset() + 64  + 4 + 4 + 8 + appendagesSize;
     }
@@ -44,10 +44,6 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
 
     DbIterator<? extends Transaction> getAllUnconfirmedTransactions(int from, int to);
 
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions(String sort);
-
-    DbIterator<? extends Transaction> getAllUnconfirmedTransactions(int from, int to, String sort);
-
     Transaction getUnconfirmedTransaction(long transactionId);
 
     Transaction[] getAllWaitingTransactions();
@@ -70,6 +66,8 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
 
     List<Transaction> restorePrunableData(JSONArray transactions) throws AplException.NotValidException;
 
+    JSONObject getUnconfirmedPoolStatistics();
+
     @Override
     boolean addListener(Listener<List<? extends Transaction>> listener, Event eventType);
 
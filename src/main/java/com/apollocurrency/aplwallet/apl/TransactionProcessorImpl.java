@@ -36,6 +36,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -43,7 +44,6 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
-import com.apollocurrency.aplwallet.apl.db.DbClause;
 import com.apollocurrency.aplwallet.apl.db.DbIterator;
 import com.apollocurrency.aplwallet.apl.db.DbKey;
 import com.apollocurrency.aplwallet.apl.db.EntityDbTable;
@@ -69,6 +69,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         int n = Apl.getIntProperty("apl.maxUnconfirmedTransactions");
         maxUnconfirmedTransactions = n <= 0 ? Integer.MAX_VALUE : n;
     }
+    private static final int maxUnconfirmedTransactionsPerSender;
+    static {
+        int n = Apl.getIntProperty("apl.maxUnconfirmedTransactionsPerSender", 0);
+        maxUnconfirmedTransactionsPerSender = n <= 0 ? Integer.MAX_VALUE : n;
+    }
 
     private static final TransactionProcessorImpl instance = new TransactionProcessorImpl();
 
@@ -76,8 +81,8 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         return instance;
     }
 
-    private final Map<DbKey, UnconfirmedTransaction> transactionCache = new HashMap<>();
-    private volatile boolean cacheInitialized = false;
+    private final UnconfirmedTransactionPool unconfirmedTransactionPool = new UnconfirmedTransactionPool(Db.getDb(),
+            maxUnconfirmedTransactions, Apl.getIntProperty("apl.unconfirmedPoolShards", 16));
 
     final DbKey.LongKeyFactory<UnconfirmedTransaction> unconfirmedTransactionDbKeyFactory = new DbKey.LongKeyFactory<UnconfirmedTransaction>("id") {
 
@@ -98,26 +103,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         @Override
         protected void save(Connection con, UnconfirmedTransaction unconfirmedTransaction) throws SQLException {
             unconfirmedTransaction.save(con);
-            if (transactionCache.size() < maxUnconfirmedTransactions) {
-                transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-            }
         }
 
         @Override
         public void rollback(int height) {
-            try (Connection con = Db.getDb().getConnection();
-                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM unconfirmed_transaction WHERE height > ?")) {
-                pstmt.setInt(1, height);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        UnconfirmedTransaction unconfirmedTransaction = load(con, rs, null);
-                        waitingTransactions.add(unconfirmedTransaction);
-                        transactionCache.remove(unconfirmedTransaction.getDbKey());
-                    }
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e.toString(), e);
-            }
+            waitingTransactions.addAll(unconfirmedTransactionPool.rollback(height));
             super.rollback(height);
             unconfirmedDuplicates.clear();
         }
@@ -126,6 +116,12 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         public void truncate() {
             super.truncate();
             clearCache();
+            unconfirmedTransactionPool.clear();
+        }
+
+        @Override
+        public boolean supportsSnapshot() {
+            return false;
         }
 
         @Override
@@ -182,13 +178,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 if (Apl.getBlockchainProcessor().isDownloading() && ! testUnconfirmedTransactions) {
                     return;
                 }
-                List<UnconfirmedTransaction> expiredTransactions = new ArrayList<>();
-                try (DbIterator<UnconfirmedTransaction> iterator = unconfirmedTransactionTable.getManyBy(
-                        new DbClause.IntClause("expiration", DbClause.Op.LT, Apl.getEpochTime()), 0, -1, "")) {
-                    while (iterator.hasNext()) {
-                        expiredTransactions.add(iterator.next());
-                    }
-                }
+                List<UnconfirmedTransaction> expiredTransactions = unconfirmedTransactionPool.getExpired(Apl.getEpochTime());
                 if (expiredTransactions.size() > 0) {
                     BlockchainImpl.getInstance().writeLock();
                     try {
@@ -198,6 +188,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                                 removeUnconfirmedTransaction(unconfirmedTransaction.getTransaction());
                             }
                             Db.getDb().commitTransaction();
+                            unconfirmedTransactionPool.expired(expiredTransactions.size());
                         } catch (Exception e) {
                             LOG.error(e.toString(), e);
                             Db.getDb().rollbackTransaction();
@@ -343,57 +334,64 @@ final class TransactionProcessorImpl implements TransactionProcessor {
 
     @Override
     public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions() {
-        return unconfirmedTransactionTable.getAll(0, -1);
+        return new DbIterator<>(unconfirmedTransactionPool.iterator());
     }
 
     @Override
     public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(int from, int to) {
-        return unconfirmedTransactionTable.getAll(from, to);
-    }
+        Iterator<UnconfirmedTransaction> iterator = unconfirmedTransactionPool.iterator();
+        for (int i = 0; i < from && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        if (to < 0) {
+            return new DbIterator<>(iterator);
+        }
+        return new DbIterator<>(new Iterator<UnconfirmedTransaction>() {
 
-    @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(String sort) {
-        return unconfirmedTransactionTable.getAll(0, -1, sort);
+            private int count = Math.max(to - from + 1, 0);
+
+            @Override
+            public boolean hasNext() {
+                return count > 0 && iterator.hasNext();
+            }
+
+            @Override
+            public UnconfirmedTransaction next() {
+                if (count <= 0) {
+                    throw new NoSuchElementException();
+                }
+                count--;
+                return iterator.next();
+            }
+        });
     }
 
-    @Override
-    public DbIterator<UnconfirmedTransaction> getAllUnconfirmedTransactions(int from, int to, String sort) {
-        return unconfirmedTransactionTable.getAll(from, to, sort);
+    /**
+     * Return the unconfirmed transactions in the order used to select the transactions for a new block.
+     * The transactions are read from the unconfirmed pool without copying.
+     *
+     * @return                                      Unconfirmed transaction iterator
+     */
+    Iterator<UnconfirmedTransaction> getUnconfirmedTransactionIterator() {
+        return unconfirmedTransactionPool.iterator();
     }
 
     @Override
     public Transaction getUnconfirmedTransaction(long transactionId) {
-        DbKey dbKey = unconfirmedTransactionDbKeyFactory.newKey(transactionId);
-        return getUnconfirmedTransaction(dbKey);
-    }
-
-    Transaction getUnconfirmedTransaction(DbKey dbKey) {
-        Apl.getBlockchain().readLock();
-        try {
-            Transaction transaction = transactionCache.get(dbKey);
-            if (transaction != null) {
-                return transaction;
-            }
-        } finally {
-            Apl.getBlockchain().readUnlock();
-        }
-        return unconfirmedTransactionTable.get(dbKey);
+        return unconfirmedTransactionPool.get(transactionId);
     }
 
     private List<Long> getAllUnconfirmedTransactionIds() {
         List<Long> result = new ArrayList<>();
-        try (Connection con = Db.getDb().getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT id FROM unconfirmed_transaction");
-             ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
-                result.add(rs.getLong("id"));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
-        }
+        unconfirmedTransactionPool.iterator().forEachRemaining(transaction -> result.add(transaction.getId()));
         return result;
     }
 
+    @Override
+    public JSONObject getUnconfirmedPoolStatistics() {
+        return unconfirmedTransactionPool.getJSONObject();
+    }
+
     @Override
     public UnconfirmedTransaction[] getAllWaitingTransactions() {
         UnconfirmedTransaction[] transactions;
@@ -429,7 +427,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 LOG.info("Transaction " + transaction.getStringId() + " already in blockchain, will not broadcast again");
                 return;
             }
-            if (getUnconfirmedTransaction(((TransactionImpl)transaction).getDbKey()) != null) {
+            if (unconfirmedTransactionPool.get(transaction) != null) {
                 if (enableTransactionRebroadcasting) {
                     broadcastedTransactions.add((TransactionImpl) transaction);
                     LOG.info("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will re-broadcast");
@@ -473,11 +471,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             List<Transaction> removed = new ArrayList<>();
             try {
                 Db.getDb().beginTransaction();
-                try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                    for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                        unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
+                Iterator<UnconfirmedTransaction> unconfirmedTransactions = unconfirmedTransactionPool.iterator();
+                while (unconfirmedTransactions.hasNext()) {
+                    UnconfirmedTransaction unconfirmedTransaction = unconfirmedTransactions.next();
+                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
                 unconfirmedTransactionTable.truncate();
                 Db.getDb().commitTransaction();
@@ -491,7 +489,6 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             unconfirmedDuplicates.clear();
             waitingTransactions.clear();
             broadcastedTransactions.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -517,18 +514,17 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 return;
             }
             List<Transaction> removed = new ArrayList<>();
-            try (DbIterator<UnconfirmedTransaction> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-                for (UnconfirmedTransaction unconfirmedTransaction : unconfirmedTransactions) {
-                    unconfirmedTransaction.getTransaction().undoUnconfirmed();
-                    if (removed.size() < maxUnconfirmedTransactions) {
-                        removed.add(unconfirmedTransaction.getTransaction());
-                    }
-                    waitingTransactions.add(unconfirmedTransaction);
+            Iterator<UnconfirmedTransaction> unconfirmedTransactions = unconfirmedTransactionPool.iterator();
+            while (unconfirmedTransactions.hasNext()) {
+                UnconfirmedTransaction unconfirmedTransaction = unconfirmedTransactions.next();
+                unconfirmedTransaction.getTransaction().undoUnconfirmed();
+                if (removed.size() < maxUnconfirmedTransactions) {
+                    removed.add(unconfirmedTransaction.getTransaction());
                 }
+                waitingTransactions.add(unconfirmedTransaction);
             }
             unconfirmedTransactionTable.truncate();
             unconfirmedDuplicates.clear();
-            transactionCache.clear();
             transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
@@ -574,7 +570,8 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             int deleted = pstmt.executeUpdate();
             if (deleted > 0) {
                 transaction.undoUnconfirmed();
-                transactionCache.remove(transaction.getDbKey());
+                unconfirmedTransactionPool.remove(transaction);
+                PeerTransactionIntake.removeKnown(transaction);
                 transactionListeners.notify(Collections.singletonList(transaction), Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
             }
         } catch (SQLException e) {
@@ -589,7 +586,7 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         BlockchainImpl.getInstance().writeLock();
         try {
             for (Transaction transaction : transactions) {
-                AplGlobalObjects.getBlockDb().getTransactionCache().remove(transaction.getId());
+                AplGlobalObjects.getBlockDb().getBlockCache().removeTransaction(transaction.getId());
                 if (TransactionDb.hasTransaction(transaction.getId())) {
                     continue;
                 }
@@ -621,9 +618,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                         if (unconfirmedTransaction.getExpiration() < currentTime
                                 || currentTime - Convert.toEpochTime(unconfirmedTransaction.getArrivalTimestamp()) > 3600) {
                             iterator.remove();
+                            PeerTransactionIntake.removeKnown(unconfirmedTransaction.getTransaction());
                         }
                     } catch (AplException.ValidationException|RuntimeException e) {
                         iterator.remove();
+                        PeerTransactionIntake.removeKnown(unconfirmedTransaction.getTransaction());
                     }
                 }
                 if (addedUnconfirmedTransactions.size() > 0) {
@@ -642,33 +641,62 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         if (transactionsData == null || transactionsData.isEmpty()) {
             return;
         }
+        List<JSONObject> newTransactionsData = PeerTransactionIntake.filterKnown(transactionsData);
+        if (newTransactionsData.isEmpty()) {
+            return;
+        }
         long arrivalTimestamp = NtpTime.getTime();
         List<TransactionImpl> receivedTransactions = new ArrayList<>();
         List<TransactionImpl> sendToPeersTransactions = new ArrayList<>();
         List<TransactionImpl> addedUnconfirmedTransactions = new ArrayList<>();
         List<Exception> exceptions = new ArrayList<>();
-        for (Object transactionData : transactionsData) {
-            try {
-                TransactionImpl transaction = TransactionImpl.parseTransaction((JSONObject) transactionData);
+        //
+        // Parse and validate the transactions in parallel without holding the blockchain lock
+        //
+        List<UnconfirmedTransaction> validTransactions = new ArrayList<>();
+        for (PeerTransactionIntake.Result result : PeerTransactionIntake.prevalidate(this, newTransactionsData)) {
+            TransactionImpl transaction = result.getTransaction();
+            if (transaction != null) {
                 receivedTransactions.add(transaction);
-                if (getUnconfirmedTransaction(transaction.getDbKey()) != null || TransactionDb.hasTransaction(transaction.getId())) {
-                    continue;
-                }
-                transaction.validate();
-                UnconfirmedTransaction unconfirmedTransaction = new UnconfirmedTransaction(transaction, arrivalTimestamp);
-                processTransaction(unconfirmedTransaction);
-                if (broadcastedTransactions.contains(transaction)) {
-                    LOG.debug("Received back transaction " + transaction.getStringId()
-                            + " that we broadcasted, will not forward again to peers");
-                } else {
-                    sendToPeersTransactions.add(transaction);
+            }
+            if (result.isExisting()) {
+                PeerTransactionIntake.setKnown(transaction);
+            } else if (result.getException() == null) {
+                validTransactions.add(new UnconfirmedTransaction(transaction, arrivalTimestamp));
+            } else if (!(result.getException() instanceof AplException.NotCurrentlyValidException)) {
+                LOG.debug(String.format("Invalid transaction from peer: %s", result.getTransactionData().toJSONString()), result.getException());
+                exceptions.add(result.getException());
+            }
+        }
+        //
+        // Add the valid transactions to the unconfirmed pool in batches
+        //
+        for (int from = 0; from < validTransactions.size(); from += PeerTransactionIntake.LOCK_BATCH_SIZE) {
+            int to = Math.min(from + PeerTransactionIntake.LOCK_BATCH_SIZE, validTransactions.size());
+            BlockchainImpl.getInstance().writeLock();
+            try {
+                for (UnconfirmedTransaction unconfirmedTransaction : validTransactions.subList(from, to)) {
+                    TransactionImpl transaction = unconfirmedTransaction.getTransaction();
+                    try {
+                        processTransaction(unconfirmedTransaction);
+                        if (broadcastedTransactions.contains(transaction)) {
+                            LOG.debug("Received back transaction " + transaction.getStringId()
+                                    + " that we broadcasted, will not forward again to peers");
+                        } else {
+                            sendToPeersTransactions.add(transaction);
+                        }
+                        addedUnconfirmedTransactions.add(transaction);
+                        PeerTransactionIntake.setKnown(transaction);
+                    } catch (AplException.ExistingTransactionException e) {
+                        PeerTransactionIntake.setKnown(transaction);
+                    } catch (AplException.NotCurrentlyValidException ignore) {
+                    } catch (AplException.ValidationException|RuntimeException e) {
+                        LOG.debug(String.format("Invalid transaction from peer: %s", transaction.getJSONObject().toJSONString()), e);
+                        exceptions.add(e);
+                    }
                 }
-                addedUnconfirmedTransactions.add(transaction);
-
-            } catch (AplException.NotCurrentlyValidException ignore) {
-            } catch (AplException.ValidationException|RuntimeException e) {
-                LOG.debug(String.format("Invalid transaction from peer: %s", ((JSONObject) transactionData).toJSONString()), e);
-                exceptions.add(e);
+            } finally {
+                BlockchainImpl.getInstance().writeUnlock();
             }
         }
         if (sendToPeersTransactions.size() > 0) {
@@ -683,6 +711,26 @@ final class TransactionProcessorImpl implements TransactionProcessor {
         }
     }
 
+    /**
+     * Check if a transaction is in the unconfirmed pool
+     *
+     * @param   transaction                         Transaction
+     * @return                                      TRUE if the transaction is in the pool
+     */
+    boolean isUnconfirmedTransaction(Transaction transaction) {
+        return unconfirmedTransactionPool.get(transaction) != null;
+    }
+
+    /**
+     * Get a transaction from the unconfirmed pool
+     *
+     * @param   transaction                         Transaction
+     * @return                                      Unconfirmed transaction or null if it is not in the pool
+     */
+    UnconfirmedTransaction getUnconfirmedTransaction(Transaction transaction) {
+        return unconfirmedTransactionPool.get(transaction);
+    }
+
     private void processTransaction(UnconfirmedTransaction unconfirmedTransaction) throws AplException.ValidationException {
         TransactionImpl transaction = unconfirmedTransaction.getTransaction();
         int curTime = Apl.getEpochTime();
@@ -698,16 +746,27 @@ final class TransactionProcessorImpl implements TransactionProcessor {
 
         BlockchainImpl.getInstance().writeLock();
         try {
+            boolean evicted = false;
             try {
                 Db.getDb().beginTransaction();
                 if (Apl.getBlockchain().getHeight() < AplGlobalObjects.getChainConfig().getLastKnownBlock() && !testUnconfirmedTransactions) {
                     throw new AplException.NotCurrentlyValidException("Blockchain not ready to accept transactions");
                 }
 
-                if (getUnconfirmedTransaction(transaction.getDbKey()) != null || TransactionDb.hasTransaction(transaction.getId())) {
+                if (unconfirmedTransactionPool.get(transaction) != null || TransactionDb.hasTransaction(transaction.getId())) {
                     throw new AplException.ExistingTransactionException("Transaction already processed");
                 }
 
+                if (unconfirmedTransactionPool.isFull() && unconfirmedTransactionPool.isLowestPriority(unconfirmedTransaction)) {
+                    unconfirmedTransactionPool.rejected();
+                    throw new AplException.NotCurrentlyValidException("Unconfirmed transaction pool is full");
+                }
+
+                if (unconfirmedTransactionPool.getSenderCount(transaction.getSenderId()) >= maxUnconfirmedTransactionsPerSender) {
+                    unconfirmedTransactionPool.rejected();
+                    throw new AplException.NotCurrentlyValidException("Too many unconfirmed transactions from sender");
+                }
+
                 if (! transaction.verifySignature()) {
                     if (Account.getAccount(transaction.getSenderId()) != null) {
                         throw new AplException.NotValidException("Transaction signature verification failed");
@@ -725,6 +784,12 @@ final class TransactionProcessorImpl implements TransactionProcessor {
                 }
 
                 unconfirmedTransactionTable.insert(unconfirmedTransaction);
+                unconfirmedTransactionPool.add(unconfirmedTransaction, Apl.getBlockchain().getHeight());
+
+                if (unconfirmedTransactionPool.size() > maxUnconfirmedTransactions) {
+                    removeUnconfirmedTransaction(unconfirmedTransactionPool.getLowestPriority().getTransaction());
+                    evicted = true;
+                }
 
                 Db.getDb().commitTransaction();
             } catch (Exception e) {
@@ -733,12 +798,16 @@ final class TransactionProcessorImpl implements TransactionProcessor {
             } finally {
                 Db.getDb().endTransaction();
             }
+            unconfirmedTransactionPool.admitted();
+            if (evicted) {
+                unconfirmedTransactionPool.evicted();
+            }
         } finally {
             BlockchainImpl.getInstance().writeUnlock();
         }
     }
 
-    private static final Comparator<UnconfirmedTransaction> cachedUnconfirmedTransactionComparator =
+    static final Comparator<UnconfirmedTransaction> cachedUnconfirmedTransactionComparator =
                     comparingInt(UnconfirmedTransaction::getHeight) // Sort by transaction_height ASC
                     .thenComparing(comparingLong(UnconfirmedTransaction::getFeePerByte).reversed()) // Sort by fee_per_byte DESC
                     .thenComparingLong(UnconfirmedTransaction::getArrivalTimestamp) // Sort by arrival_timestamp ASC
@@ -752,32 +821,11 @@ final class TransactionProcessorImpl implements TransactionProcessor {
     @Override
     public SortedSet<? extends Transaction> getCachedUnconfirmedTransactions(List<String> exclude) {
         SortedSet<UnconfirmedTransaction> transactionSet = new TreeSet<>(cachedUnconfirmedTransactionComparator);
-        Apl.getBlockchain().readLock();
-        try {
-            //
-            // Initialize the unconfirmed transaction cache if it hasn't been done yet
-            //
-            synchronized(transactionCache) {
-                if (!cacheInitialized) {
-                    DbIterator<UnconfirmedTransaction> it = getAllUnconfirmedTransactions();
-                    while (it.hasNext()) {
-                        UnconfirmedTransaction unconfirmedTransaction = it.next();
-                        transactionCache.put(unconfirmedTransaction.getDbKey(), unconfirmedTransaction);
-                    }
-                    cacheInitialized = true;
-                }
+        unconfirmedTransactionPool.iterator().forEachRemaining(transaction -> {
+            if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
+                transactionSet.add(transaction);
             }
-            //
-            // Build the result set
-            //
-            transactionCache.values().forEach(transaction -> {
-                if (Collections.binarySearch(exclude, transaction.getStringId()) < 0) {
-                    transactionSet.add(transaction);
-                }
-            });
-        } finally {
-            Apl.getBlockchain().readUnlock();
-        }
+        });
         return transactionSet;
     }
 
@@ -0,0 +1,471 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.db.TransactionalDb;
+import com.apollocurrency.aplwallet.apl.util.LongHashMap;
+import org.json.simple.JSONObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-resident pool of unconfirmed transactions.
+ * <p>
+ * The transactions are sharded by sender, each shard maps the transaction identifier to the pool entry and
+ * counts the transactions of each sender.  All transactions are also kept in a priority index ordered by
+ * transaction height, fee per byte (descending), arrival time and transaction identifier, which is the order
+ * used to select the transactions for a new block.  The index is a concurrent set and can be iterated
+ * without a lock and without copying.
+ * <p>
+ * The unconfirmed_transaction table is still updated in the same database transaction, since the
+ * unconfirmed balances changed by the transactions are committed to the same database, and is only read
+ * to load the pool on first use.  Changes made to the pool are visible immediately and are undone
+ * when the database transaction is rolled back.
+ * <p>
+ * The pool is modified while holding the blockchain write lock.
+ */
+final class UnconfirmedTransactionPool implements TransactionalDb.TransactionCallback {
+
+    /** Pool entry */
+    private static final class Entry {
+
+        private final UnconfirmedTransaction transaction;
+
+        /** Blockchain height when the transaction was added to the pool */
+        private final int height;
+
+        /** Sort keys, the transaction height and block are changed when it is included in a block */
+        private final int transactionHeight;
+        private final long feePerByte;
+        private final long arrivalTimestamp;
+        private final long id;
+
+        private Entry(UnconfirmedTransaction transaction, int height) {
+            this.transaction = transaction;
+            this.height = height;
+            this.transactionHeight = transaction.getHeight();
+            this.feePerByte = transaction.getFeePerByte();
+            this.arrivalTimestamp = transaction.getArrivalTimestamp();
+            this.id = transaction.getId();
+        }
+    }
+
+    /** Pool change recorded by the current database transaction */
+    private static final class Change {
+
+        private final Entry entry;
+        private final boolean added;
+
+        private Change(Entry entry, boolean added) {
+            this.entry = entry;
+            this.added = added;
+        }
+    }
+
+    /** Transactions of the senders assigned to the shard */
+    private static final class Shard {
+
+        private final LongHashMap<Entry> transactions = new LongHashMap<>();
+        private final LongHashMap<Integer> senderCounts = new LongHashMap<>();
+    }
+
+    private static int compare(Entry e1, Entry e2) {
+        int result;
+        if ((result = Integer.compare(e1.transactionHeight, e2.transactionHeight)) != 0) {
+            return result;
+        }
+        if ((result = Long.compare(e2.feePerByte, e1.feePerByte)) != 0) {
+            return result;
+        }
+        if ((result = Long.compare(e1.arrivalTimestamp, e2.arrivalTimestamp)) != 0) {
+            return result;
+        }
+        return Long.compare(e1.id, e2.id);
+    }
+
+    private final TransactionalDb db;
+    private final int maxSize;
+    private final Shard[] shards;
+    private final ConcurrentSkipListSet<Entry> index = new ConcurrentSkipListSet<>(UnconfirmedTransactionPool::compare);
+    private final AtomicInteger size = new AtomicInteger();
+    private final ThreadLocal<List<Change>> changes = new ThreadLocal<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * Create the pool
+     *
+     * @param   db                  Database
+     * @param   maxSize             Maximum number of transactions
+     * @param   shardCount          Number of shards
+     */
+    UnconfirmedTransactionPool(TransactionalDb db, int maxSize, int shardCount) {
+        this.db = db;
+        this.maxSize = maxSize;
+        this.shards = new Shard[Math.max(shardCount, 1)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    private Shard getShard(long senderId) {
+        return shards[Math.floorMod(Long.hashCode(senderId), shards.length)];
+    }
+
+    /**
+     * Load the pool from the unconfirmed_transaction table if it hasn't been done yet
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try (Connection con = db.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM unconfirmed_transaction");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    addEntry(new Entry(new UnconfirmedTransaction(rs), rs.getInt("height")));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Get the number of transactions in the pool
+     *
+     * @return                      Number of transactions
+     */
+    int size() {
+        ensureLoaded();
+        return size.get();
+    }
+
+    /**
+     * Check if the pool is full
+     *
+     * @return                      TRUE if the pool has reached its maximum size
+     */
+    boolean isFull() {
+        return size() >= maxSize;
+    }
+
+    /**
+     * Get an unconfirmed transaction.  All shards are searched since the sender is not known.
+     *
+     * @param   id                  Transaction identifier
+     * @return                      Unconfirmed transaction or null if not found
+     */
+    UnconfirmedTransaction get(long id) {
+        ensureLoaded();
+        for (Shard shard : shards) {
+            Entry entry;
+            synchronized (shard) {
+                entry = shard.transactions.get(id);
+            }
+            if (entry != null) {
+                return entry.transaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get an unconfirmed transaction
+     *
+     * @param   transaction         Transaction
+     * @return                      Unconfirmed transaction or null if not found
+     */
+    UnconfirmedTransaction get(Transaction transaction) {
+        ensureLoaded();
+        Shard shard = getShard(transaction.getSenderId());
+        Entry entry;
+        synchronized (shard) {
+            entry = shard.transactions.get(transaction.getId());
+        }
+        return entry != null ? entry.transaction : null;
+    }
+
+    /**
+     * Get the number of unconfirmed transactions of a sender
+     *
+     * @param   senderId            Sender account identifier
+     * @return                      Number of transactions
+     */
+    int getSenderCount(long senderId) {
+        ensureLoaded();
+        Shard shard = getShard(senderId);
+        synchronized (shard) {
+            Integer count = shard.senderCounts.get(senderId);
+            return count != null ? count : 0;
+        }
+    }
+
+    /**
+     * Get the lowest priority transaction, which is the first to be evicted when the pool is full
+     *
+     * @return                      Unconfirmed transaction or null if the pool is empty
+     */
+    UnconfirmedTransaction getLowestPriority() {
+        ensureLoaded();
+        try {
+            return index.last().transaction;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if a transaction has a lower priority than all transactions in the pool
+     *
+     * @param   transaction         Unconfirmed transaction
+     * @return                      TRUE if the transaction would be the first to be evicted
+     */
+    boolean isLowestPriority(UnconfirmedTransaction transaction) {
+        ensureLoaded();
+        try {
+            return compare(new Entry(transaction, 0), index.last()) > 0;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the transactions in priority order.  The iterator is weakly consistent and reflects
+     * changes made while it is in use.
+     *
+     * @return                      Transaction iterator
+     */
+    Iterator<UnconfirmedTransaction> iterator() {
+        ensureLoaded();
+        Iterator<Entry> entries = index.iterator();
+        return new Iterator<UnconfirmedTransaction>() {
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public UnconfirmedTransaction next() {
+                return entries.next().transaction;
+            }
+        };
+    }
+
+    /**
+     * Get the transactions that have expired
+     *
+     * @param   time                Current epoch time
+     * @return                      Expired transactions
+     */
+    List<UnconfirmedTransaction> getExpired(int time) {
+        ensureLoaded();
+        List<UnconfirmedTransaction> result = new ArrayList<>();
+        for (Entry entry : index) {
+            if (entry.transaction.getExpiration() < time) {
+                result.add(entry.transaction);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add a transaction to the pool.  The caller must be in a database transaction.
+     *
+     * @param   transaction         Unconfirmed transaction
+     * @param   height              Current blockchain height
+     */
+    void add(UnconfirmedTransaction transaction, int height) {
+        ensureLoaded();
+        Entry entry = new Entry(transaction, height);
+        addEntry(entry);
+        getChanges().add(new Change(entry, true));
+    }
+
+    /**
+     * Remove a transaction from the pool.  The caller must be in a database transaction.
+     *
+     * @param   transaction         Transaction
+     * @return                      TRUE if the transaction was in the pool
+     */
+    boolean remove(Transaction transaction) {
+        ensureLoaded();
+        Shard shard = getShard(transaction.getSenderId());
+        Entry entry;
+        synchronized (shard) {
+            entry = shard.transactions.get(transaction.getId());
+        }
+        if (entry == null) {
+            return false;
+        }
+        removeEntry(entry);
+        getChanges().add(new Change(entry, false));
+        return true;
+    }
+
+    /**
+     * Remove the transactions added above a blockchain height.  The caller must be in a database transaction.
+     *
+     * @param   height              Blockchain height
+     * @return                      Removed transactions
+     */
+    List<UnconfirmedTransaction> rollback(int height) {
+        ensureLoaded();
+        List<UnconfirmedTransaction> result = new ArrayList<>();
+        for (Entry entry : index) {
+            if (entry.height > height) {
+                removeEntry(entry);
+                getChanges().add(new Change(entry, false));
+                result.add(entry.transaction);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove all transactions from the pool.  The caller must be in a database transaction.
+     */
+    void clear() {
+        ensureLoaded();
+        for (Entry entry : index) {
+            removeEntry(entry);
+            getChanges().add(new Change(entry, false));
+        }
+    }
+
+    private void addEntry(Entry entry) {
+        long senderId = entry.transaction.getSenderId();
+        Shard shard = getShard(senderId);
+        synchronized (shard) {
+            if (shard.transactions.put(entry.id, entry) != null) {
+                return;
+            }
+            Integer count = shard.senderCounts.get(senderId);
+            shard.senderCounts.put(senderId, count != null ? count + 1 : 1);
+        }
+        index.add(entry);
+        size.incrementAndGet();
+    }
+
+    private void removeEntry(Entry entry) {
+        long senderId = entry.transaction.getSenderId();
+        Shard shard = getShard(senderId);
+        synchronized (shard) {
+            if (shard.transactions.remove(entry.id) == null) {
+                return;
+            }
+            int count = shard.senderCounts.get(senderId);
+            if (count > 1) {
+                shard.senderCounts.put(senderId, count - 1);
+            } else {
+                shard.senderCounts.remove(senderId);
+            }
+        }
+        index.remove(entry);
+        size.decrementAndGet();
+    }
+
+    private List<Change> getChanges() {
+        List<Change> pending = changes.get();
+        if (pending == null) {
+            pending = new ArrayList<>();
+            changes.set(pending);
+        }
+        db.registerCallback(this);
+        return pending;
+    }
+
+    @Override
+    public void commit() {
+        changes.remove();
+    }
+
+    /**
+     * Undo the changes made by the database transaction in reverse order
+     */
+    @Override
+    public void rollback() {
+        List<Change> pending = changes.get();
+        if (pending == null) {
+            return;
+        }
+        changes.remove();
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            Change change = pending.get(i);
+            if (change.added) {
+                removeEntry(change.entry);
+            } else {
+                addEntry(change.entry);
+            }
+        }
+    }
+
+    /**
+     * Record a transaction admitted to the pool
+     */
+    void admitted() {
+        admitted.incrementAndGet();
+    }
+
+    /**
+     * Record a transaction rejected because the pool is full or the sender has too many transactions
+     */
+    void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Record a transaction evicted to make room for a higher priority transaction
+     */
+    void evicted() {
+        evicted.incrementAndGet();
+    }
+
+    /**
+     * Record expired transactions removed from the pool
+     *
+     * @param   count               Number of transactions
+     */
+    void expired(int count) {
+        expired.addAndGet(count);
+    }
+
+    /**
+     * Get the pool statistics
+     *
+     * @return                      JSON object
+     */
+    JSONObject getJSONObject() {
+        JSONObject json = new JSONObject();
+        json.put("size", size());
+        json.put("maxSize", maxSize);
+        json.put("shards", shards.length);
+        json.put("admitted", admitted.get());
+        json.put("rejected", rejected.get());
+        json.put("evicted", evicted.get());
+        json.put("expired", expired.get());
+        return json;
+    }
+}
@@ -76,7 +76,8 @@ public class ChainIdDbMigrator implements DbMigrator {
             int height = oldDbInfo.height;
             if (height > 0) {
                 LOG.info("Db {} has blocks - {}. Do migration to {}", oldDbInfo.dbPath, height, targetDbDir);
-                Path targetDbDirPath = dbInfoExtractor.getPath(targetDbDir);
+                // Keep the file name of the old database, which depends on the database engine
+                Path targetDbDirPath = dbInfoExtractor.getPath(targetDbDir).resolveSibling(oldDbInfo.dbPath.getFileName());
                 Files.copy(oldDbInfo.dbPath, targetDbDirPath, StandardCopyOption.REPLACE_EXISTING);
             }
             int actualDbHeight = dbInfoExtractor.getHeight(targetDbDir);
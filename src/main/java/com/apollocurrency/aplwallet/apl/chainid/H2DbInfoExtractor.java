@@ -13,11 +13,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import com.apollocurrency.aplwallet.apl.db.BasicDb;
 import org.h2.jdbcx.JdbcDataSource;
 
 public class H2DbInfoExtractor implements DbInfoExtractor {
     private static final String DB_TYPE = "h2";
-    private static final String DB_SUFFIX = ".h2.db";
     private final String dbName;
     private final String user;
     private final String password;
@@ -29,11 +29,13 @@ public class H2DbInfoExtractor implements DbInfoExtractor {
     }
 
     private static String createDbUrl(String dbDir, String dbName, String type) {
-        return String.format("jdbc:%s:%s;MV_STORE=FALSE", type, dbDir + "/" + dbName);
+        String dbPath = dbDir + "/" + dbName;
+        return String.format("jdbc:%s:%s;MV_STORE=%s", type, dbPath, BasicDb.isMvStore(dbPath, false) ? "TRUE" : "FALSE");
     }
 
     private Path createDbPath(String dbDir) {
-        return Paths.get(dbDir, dbName + DB_SUFFIX);
+        Path mvStorePath = Paths.get(dbDir, dbName + BasicDb.MV_STORE_SUFFIX);
+        return Files.exists(mvStorePath) ? mvStorePath : Paths.get(dbDir, dbName + BasicDb.PAGE_STORE_SUFFIX);
     }
     @Override
     public int getHeight(String dbDir) {
@@ -59,8 +59,19 @@ public final class Crypto {
         }
     };
 
+    private static volatile Curve25519Backend curve25519 = Curve25519Backend.REFERENCE;
+
     private Crypto() {} //never
 
+    public static Curve25519Backend getCurve25519Backend() {
+        return curve25519;
+    }
+
+    public static void setCurve25519Backend(Curve25519Backend backend) {
+        curve25519 = backend;
+        LOG.info("Using " + backend + " Curve25519 backend");
+    }
+
     public static SecureRandom getSecureRandom() {
         return secureRandom.get();
     }
@@ -105,14 +116,14 @@ public final class Crypto {
 
     public static byte[] getPublicKey(byte[] keySeed) {
         byte[] publicKey = new byte[32];
-        Curve25519.keygen(publicKey, null, Arrays.copyOf(keySeed, keySeed.length));
+        curve25519.keygen(publicKey, null, Arrays.copyOf(keySeed, keySeed.length));
         return publicKey;
     }
 
 
     public static byte[] getPublicKey(String secretPhrase) {
         byte[] publicKey = new byte[32];
-        Curve25519.keygen(publicKey, null, Crypto.sha256().digest(Convert.toBytes(secretPhrase)));
+        curve25519.keygen(publicKey, null, Crypto.sha256().digest(Convert.toBytes(secretPhrase)));
         return publicKey;
     }
 
@@ -129,7 +140,7 @@ public final class Crypto {
     }
 
     public static void curve(byte[] Z, byte[] k, byte[] P) {
-        Curve25519.curve(Z, k, P);
+        curve25519.curve(Z, k, P);
     }
 
     public static byte[] sign(byte[] message, String secretPhrase) {
@@ -140,7 +151,7 @@ public final class Crypto {
         byte[] P = new byte[32];
         byte[] s = new byte[32];
         MessageDigest digest = Crypto.sha256();
-        Curve25519.keygen(P, s, keySeed);
+        curve25519.keygen(P, s, keySeed);
 
         byte[] m = digest.digest(message);
 
@@ -148,13 +159,13 @@ public final class Crypto {
         byte[] x = digest.digest(s);
 
         byte[] Y = new byte[32];
-        Curve25519.keygen(Y, null, x);
+        curve25519.keygen(Y, null, x);
 
         digest.update(m);
         byte[] h = digest.digest(Y);
 
         byte[] v = new byte[32];
-        Curve25519.sign(v, h, x, s);
+        curve25519.sign(v, h, x, s);
 
         byte[] signature = new byte[64];
         System.arraycopy(v, 0, signature, 0, 32);
@@ -167,12 +178,12 @@ public final class Crypto {
             if (signature.length != 64) {
                 return false;
             }
-            if (!Curve25519.isCanonicalSignature(signature)) {
+            if (!curve25519.isCanonicalSignature(signature)) {
                 LOG.debug("Rejecting non-canonical signature");
                 return false;
             }
 
-            if (!Curve25519.isCanonicalPublicKey(publicKey)) {
+            if (!curve25519.isCanonicalPublicKey(publicKey)) {
                 LOG.debug("Rejecting non-canonical public key");
                 return false;
             }
@@ -182,7 +193,7 @@ public final class Crypto {
             System.arraycopy(signature, 0, v, 0, 32);
             byte[] h = new byte[32];
             System.arraycopy(signature, 32, h, 0, 32);
-            Curve25519.verify(Y, v, h, publicKey);
+            curve25519.verify(Y, v, h, publicKey);
 
             MessageDigest digest = Crypto.sha256();
             byte[] m = digest.digest(message);
@@ -211,7 +222,7 @@ public final class Crypto {
     private static byte[] getSharedSecret(byte[] myPrivateKey, byte[] theirPublicKey) {
         try {
             byte[] sharedSecret = new byte[32];
-            Curve25519.curve(sharedSecret, myPrivateKey, theirPublicKey);
+            curve25519.curve(sharedSecret, myPrivateKey, theirPublicKey);
             return sharedSecret;
         } catch (RuntimeException e) {
             LOG.info("Error getting shared secret", e);
@@ -321,11 +332,11 @@ public final class Crypto {
     }
 
     public static boolean isCanonicalPublicKey(byte[] publicKey) {
-        return Curve25519.isCanonicalPublicKey(publicKey);
+        return curve25519.isCanonicalPublicKey(publicKey);
     }
 
     public static boolean isCanonicalSignature(byte[] signature) {
-        return Curve25519.isCanonicalSignature(signature);
+        return curve25519.isCanonicalSignature(signature);
     }
 
 }
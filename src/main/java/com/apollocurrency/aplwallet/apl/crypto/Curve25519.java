@@ -302,7 +302,7 @@ final class Curve25519 {
 
     /* sahn0:
      * Using this class instead of long[10] to avoid bounds checks. */
-    private static final class long10 {
+    static final class long10 {
         public long10() {}
         public long10(
                 long _0, long _1, long _2, long _3, long _4,
@@ -318,7 +318,7 @@ final class Curve25519 {
 
     /********************* radix 2^8 math *********************/
 
-    private static void cpy32(byte[] d, byte[] s) {
+    static void cpy32(byte[] d, byte[] s) {
         int i;
         for (i = 0; i < 32; i++)
             d[i] = s[i];
@@ -327,7 +327,7 @@ final class Curve25519 {
     /* p[m..n+m-1] = q[m..n+m-1] + z * x */
     /* n is the size of x */
     /* n+m is the size of p and q */
-    private static int mula_small(byte[] p,byte[] q,int m,byte[] x,int n,int z) {
+    static int mula_small(byte[] p,byte[] q,int m,byte[] x,int n,int z) {
         int v=0;
         for (int i=0;i<n;++i) {
             v+=(q[i+m] & 0xFF)+z*(x[i] & 0xFF);
@@ -340,7 +340,7 @@ final class Curve25519 {
     /* p += x * y * z  where z is a small integer
      * x is size 32, y is size t, p is size 32+t
      * y is allowed to overlap with p+32 if you don't care about the upper half  */
-    private static int mula32(byte[] p, byte[] x, byte[] y, int t, int z) {
+    static int mula32(byte[] p, byte[] x, byte[] y, int t, int z) {
         final int n = 31;
         int w = 0;
         int i = 0;
@@ -360,7 +360,7 @@ final class Curve25519 {
      * requires t > 0 && d[t-1] != 0
      * requires that r[-1] and d[-1] are valid memory locations
      * q may overlap with r+t */
-    private static void divmod(byte[] q, byte[] r, int n, byte[] d, int t) {
+    static void divmod(byte[] q, byte[] r, int n, byte[] d, int t) {
         int rn = 0;
         int dt = ((d[t-1] & 0xFF) << 8);
         if (t>1) {
@@ -381,7 +381,7 @@ final class Curve25519 {
         r[t-1] = (byte)rn;
     }
 
-    private static int numsize(byte[] x,int n) {
+    static int numsize(byte[] x,int n) {
         while (n--!=0 && x[n]==0)
             ;
         return n+1;
@@ -424,7 +424,7 @@ final class Curve25519 {
     private static final int P26=67108863;	/* (1 << 26) - 1 */
 
     /* Convert to internal format from little-endian byte format */
-    private static void unpack(long10 x,byte[] m) {
+    static void unpack(long10 x,byte[] m) {
         x._0 = ((m[0] & 0xFF))         | ((m[1] & 0xFF))<<8 |
                 (m[2] & 0xFF)<<16      | ((m[3] & 0xFF)& 3)<<24;
         x._1 = ((m[3] & 0xFF)&~ 3)>>2  | (m[4] & 0xFF)<<6 |
@@ -448,7 +448,7 @@ final class Curve25519 {
     }
 
     /* Check if reduced-form input >= 2^255-19 */
-    private static boolean is_overflow(long10 x) {
+    static boolean is_overflow(long10 x) {
         return (
                 ((x._0 > P26-19)) &&
                         ((x._1 & x._3 & x._5 & x._7 & x._9) == P25) &&
@@ -461,7 +461,7 @@ final class Curve25519 {
      *     unpack, mul, sqr
      *     set --  if input in range 0 .. P25
      * If you're unsure if the number is reduced, first multiply it by 1.  */
-    private static void pack(long10 x,byte[] m) {
+    static void pack(long10 x,byte[] m) {
         int ld = 0, ud = 0;
         long t;
         ld = (is_overflow(x)?1:0) - ((x._9 < 0)?1:0);
@@ -510,7 +510,7 @@ final class Curve25519 {
     }
 
     /* Copy a number */
-    private static void cpy(long10 out, long10 in) {
+    static void cpy(long10 out, long10 in) {
         out._0=in._0;	out._1=in._1;
         out._2=in._2;	out._3=in._3;
         out._4=in._4;	out._5=in._5;
@@ -519,7 +519,7 @@ final class Curve25519 {
     }
 
     /* Set a number to value, which must be in range -185861411 .. 185861411 */
-    private static void set(long10 out, int in) {
+    static void set(long10 out, int in) {
         out._0=in;	out._1=0;
         out._2=0;	out._3=0;
         out._4=0;	out._5=0;
@@ -530,14 +530,14 @@ final class Curve25519 {
     /* Add/subtract two numbers.  The inputs must be in reduced form, and the
      * output isn't, so to do another addition or subtraction on the output,
      * first multiply it by one to reduce it. */
-    private static void add(long10 xy, long10 x, long10 y) {
+    static void add(long10 xy, long10 x, long10 y) {
         xy._0 = x._0 + y._0;	xy._1 = x._1 + y._1;
         xy._2 = x._2 + y._2;	xy._3 = x._3 + y._3;
         xy._4 = x._4 + y._4;	xy._5 = x._5 + y._5;
         xy._6 = x._6 + y._6;	xy._7 = x._7 + y._7;
         xy._8 = x._8 + y._8;	xy._9 = x._9 + y._9;
     }
-    private static void sub(long10 xy, long10 x, long10 y) {
+    static void sub(long10 xy, long10 x, long10 y) {
         xy._0 = x._0 - y._0;	xy._1 = x._1 - y._1;
         xy._2 = x._2 - y._2;	xy._3 = x._3 - y._3;
         xy._4 = x._4 - y._4;	xy._5 = x._5 - y._5;
@@ -548,7 +548,7 @@ final class Curve25519 {
     /* Multiply a number by a small integer in range -185861411 .. 185861411.
      * The output is in reduced form, the input x need not be.  x and xy may point
      * to the same buffer. */
-    private static long10 mul_small(long10 xy, long10 x, long y) {
+    static long10 mul_small(long10 xy, long10 x, long y) {
         long t;
         t = (x._8*y);
         xy._8 = (t & ((1 << 26) - 1));
@@ -578,7 +578,7 @@ final class Curve25519 {
 
     /* Multiply two numbers.  The output is in reduced form, the inputs need not
      * be. */
-    private static long10 mul(long10 xy, long10 x, long10 y) {
+    static long10 mul(long10 xy, long10 x, long10 y) {
         /* sahn0:
          * Using local variables to avoid class access.
          * This seem to improve performance a bit...
@@ -647,7 +647,7 @@ final class Curve25519 {
     }
 
     /* Square a number.  Optimization of  mul25519(x2, x, x)  */
-    private static long10 sqr(long10 x2, long10 x) {
+    static long10 sqr(long10 x2, long10 x) {
         long
                 x_0=x._0,x_1=x._1,x_2=x._2,x_3=x._3,x_4=x._4,
                 x_5=x._5,x_6=x._6,x_7=x._7,x_8=x._8,x_9=x._9;
@@ -769,7 +769,7 @@ final class Curve25519 {
     }
 
     /* checks if x is "negative", requires reduced input */
-    private static int is_negative(long10 x) {
+    static int is_negative(long10 x) {
         return (int)(((is_overflow(x) || (x._9 < 0))?1:0) ^ (x._0 & 1));
     }
 
@@ -791,7 +791,7 @@ final class Curve25519 {
 
     /* t1 = ax + az
      * t2 = ax - az  */
-    private static void mont_prep(long10 t1, long10 t2, long10 ax, long10 az) {
+    static void mont_prep(long10 t1, long10 t2, long10 ax, long10 az) {
         add(t1, ax, az);
         sub(t2, ax, az);
     }
@@ -802,7 +802,7 @@ final class Curve25519 {
      *  X(Q) = (t3+t4)/(t3-t4)
      *  X(P-Q) = dx
      * clobbers t1 and t2, preserves t3 and t4  */
-    private static void mont_add(long10 t1, long10 t2, long10 t3, long10 t4,long10 ax, long10 az, long10 dx) {
+    static void mont_add(long10 t1, long10 t2, long10 t3, long10 t4,long10 ax, long10 az, long10 dx) {
         mul(ax, t2, t3);
         mul(az, t1, t4);
         add(t1, ax, az);
@@ -816,7 +816,7 @@ final class Curve25519 {
      *  X(B) = bx/bz
      *  X(Q) = (t3+t4)/(t3-t4)
      * clobbers t1 and t2, preserves t3 and t4  */
-    private static void mont_dbl(long10 t1, long10 t2, long10 t3, long10 t4,long10 bx, long10 bz) {
+    static void mont_dbl(long10 t1, long10 t2, long10 t3, long10 t4,long10 bx, long10 bz) {
         sqr(t1, t3);
         sqr(t2, t4);
         mul(bx, t1, t2);
@@ -828,7 +828,7 @@ final class Curve25519 {
 
     /* Y^2 = X^3 + 486662 X^2 + X
      * t is a temporary  */
-    private static void x_to_y2(long10 t, long10 y2, long10 x) {
+    static void x_to_y2(long10 t, long10 y2, long10 x) {
         sqr(t, x);
         mul_small(y2, x, 486662);
         add(t, t, y2);
@@ -923,7 +923,7 @@ final class Curve25519 {
     }
 
     /* smallest multiple of the order that's >= 2^255 */
-    private static final byte[] ORDER_TIMES_8 = {
+    static final byte[] ORDER_TIMES_8 = {
             (byte)104, (byte)159, (byte)174, (byte)231,
             (byte)210, (byte)24,  (byte)147, (byte)192,
             (byte)178, (byte)230, (byte)188, (byte)23,
@@ -935,11 +935,11 @@ final class Curve25519 {
     };
 
     /* constants 2Gy and 1/(2Gy) */
-    private static final long10 BASE_2Y = new long10(
+    static final long10 BASE_2Y = new long10(
             39999547, 18689728, 59995525, 1648697, 57546132,
             24010086, 19059592, 5425144, 63499247, 16420658
     );
-    private static final long10 BASE_R2Y = new long10(
+    static final long10 BASE_R2Y = new long10(
             5744, 8160848, 4790893, 13779497, 35730846,
             12541209, 49101323, 30047407, 40071253, 6226132
     );
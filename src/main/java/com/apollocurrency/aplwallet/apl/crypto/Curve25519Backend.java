@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.crypto;
+
+/**
+ * Curve25519 implementation used by {@link Crypto}.  All implementations produce identical results.
+ */
+public enum Curve25519Backend {
+
+    /**
+     * Use the original port of the Curve25519 reference implementation
+     */
+    REFERENCE {
+        void keygen(byte[] P, byte[] s, byte[] k) {
+            Curve25519.keygen(P, s, k);
+        }
+
+        void curve(byte[] Z, byte[] k, byte[] P) {
+            Curve25519.curve(Z, k, P);
+        }
+
+        boolean sign(byte[] v, byte[] h, byte[] x, byte[] s) {
+            return Curve25519.sign(v, h, x, s);
+        }
+
+        void verify(byte[] Y, byte[] v, byte[] h, byte[] P) {
+            Curve25519.verify(Y, v, h, P);
+        }
+
+        boolean isCanonicalSignature(byte[] v) {
+            return Curve25519.isCanonicalSignature(v);
+        }
+
+        boolean isCanonicalPublicKey(byte[] publicKey) {
+            return Curve25519.isCanonicalPublicKey(publicKey);
+        }
+    },
+    /**
+     * Use the allocation-free implementation with per-thread scratch buffers
+     */
+    OPTIMIZED {
+        void keygen(byte[] P, byte[] s, byte[] k) {
+            FastCurve25519.keygen(P, s, k);
+        }
+
+        void curve(byte[] Z, byte[] k, byte[] P) {
+            FastCurve25519.curve(Z, k, P);
+        }
+
+        boolean sign(byte[] v, byte[] h, byte[] x, byte[] s) {
+            return FastCurve25519.sign(v, h, x, s);
+        }
+
+        void verify(byte[] Y, byte[] v, byte[] h, byte[] P) {
+            FastCurve25519.verify(Y, v, h, P);
+        }
+
+        boolean isCanonicalSignature(byte[] v) {
+            return FastCurve25519.isCanonicalSignature(v);
+        }
+
+        boolean isCanonicalPublicKey(byte[] publicKey) {
+            return FastCurve25519.isCanonicalPublicKey(publicKey);
+        }
+    };
+
+    public static Curve25519Backend getBackend(String name) {
+        for (Curve25519Backend backend : values()) {
+            if (backend.name().equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException(String.format("illegal Curve25519 backend %s", name));
+    }
+
+    abstract void keygen(byte[] P, byte[] s, byte[] k);
+
+    abstract void curve(byte[] Z, byte[] k, byte[] P);
+
+    abstract boolean sign(byte[] v, byte[] h, byte[] x, byte[] s);
+
+    abstract void verify(byte[] Y, byte[] v, byte[] h, byte[] P);
+
+    abstract boolean isCanonicalSignature(byte[] v);
+
+    abstract boolean isCanonicalPublicKey(byte[] publicKey);
+}
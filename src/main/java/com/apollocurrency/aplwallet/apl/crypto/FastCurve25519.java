@@ -0,0 +1,424 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.crypto;
+
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.BASE_2Y;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.BASE_R2Y;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.ORDER;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.ORDER_TIMES_8;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.add;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.clamp;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.cpy;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.cpy32;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.divmod;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.is_negative;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mont_add;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mont_dbl;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mont_prep;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mul;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mul_small;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mula32;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.mula_small;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.numsize;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.pack;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.set;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.sqr;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.sub;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.unpack;
+import static com.apollocurrency.aplwallet.apl.crypto.Curve25519.x_to_y2;
+
+import java.util.Arrays;
+
+import com.apollocurrency.aplwallet.apl.crypto.Curve25519.long10;
+
+/**
+ * Allocation-free variant of {@link Curve25519}.
+ * <p>
+ * The field and scalar arithmetic is shared with {@link Curve25519}, so both classes produce
+ * identical output.  All temporaries used by key generation, signing and verification are
+ * taken from per-thread scratch buffers instead of being allocated on every call.
+ */
+final class FastCurve25519 {
+
+    private static final ThreadLocal<Scratch> threadScratch = ThreadLocal.withInitial(Scratch::new);
+
+    private FastCurve25519() {} //never
+
+    /**
+     * Per-thread temporaries.  Each function uses its own set of field elements, so a
+     * function may call another one without clobbering its caller's values.
+     */
+    private static final class Scratch {
+
+        /* sign */
+        private final byte[] h1 = new byte[32];
+        private final byte[] x1 = new byte[32];
+        private final byte[] product = new byte[64];
+        private final byte[] quotient = new byte[64];
+
+        /* verify */
+        private final byte[] d = new byte[32];
+        private final long10[] p = newElements(2);
+        private final long10[] s = newElements(2);
+        private final long10[] yx = newElements(3);
+        private final long10[] yz = newElements(3);
+        private final long10[] t1 = newElements(3);
+        private final long10[] t2 = newElements(3);
+
+        /* core */
+        private final long10[] coreT = newElements(5);
+        private final long10[] coreX = newElements(2);
+        private final long10[] coreZ = newElements(2);
+        private final byte[] order = new byte[32];
+        private final byte[] egcdX = new byte[64];
+        private final byte[] egcdY = new byte[64];
+        private final byte[] egcdQuotient = new byte[32];
+
+        /* recip */
+        private final long10[] recipT = newElements(5);
+
+        /* sqrt */
+        private final long10[] sqrtT = newElements(3);
+
+        /* canonical checks */
+        private final byte[] canonical = new byte[32];
+        private final byte[] canonicalQuotient = new byte[32];
+        private final long10 canonicalElement = new long10();
+
+        private static long10[] newElements(int count) {
+            long10[] elements = new long10[count];
+            for (int i = 0; i < count; i++) {
+                elements[i] = new long10();
+            }
+            return elements;
+        }
+    }
+
+    /* Key-pair generation, see Curve25519.keygen */
+    static void keygen(byte[] P, byte[] s, byte[] k) {
+        clamp(k);
+        core(threadScratch.get(), P, s, k, null);
+    }
+
+    /* Key agreement, see Curve25519.curve */
+    static void curve(byte[] Z, byte[] k, byte[] P) {
+        core(threadScratch.get(), Z, null, k, P);
+    }
+
+    /* Signature generation primitive, see Curve25519.sign */
+    static boolean sign(byte[] v, byte[] h, byte[] x, byte[] s) {
+        Scratch scratch = threadScratch.get();
+        byte[] h1 = scratch.h1, x1 = scratch.x1;
+        byte[] tmp1 = scratch.product, tmp2 = scratch.quotient;
+        int w, i;
+
+        cpy32(h1, h);
+        cpy32(x1, x);
+
+        divmod(tmp2, h1, 32, ORDER, 32);
+        divmod(tmp2, x1, 32, ORDER, 32);
+
+        mula_small(v, x1, 0, h1, 32, -1);
+        mula_small(v, v , 0, ORDER, 32, 1);
+
+        // mula32 accumulates into its output, which must start out as zero
+        Arrays.fill(tmp1, (byte) 0);
+        mula32(tmp1, v, s, 32, 1);
+        divmod(tmp2, tmp1, 64, ORDER, 32);
+
+        for (w = 0, i = 0; i < 32; i++)
+            w |= v[i] = tmp1[i];
+        return w != 0;
+    }
+
+    /* Signature verification primitive, see Curve25519.verify */
+    static void verify(byte[] Y, byte[] v, byte[] h, byte[] P) {
+        Scratch scratch = threadScratch.get();
+        byte[] d = scratch.d;
+        long10[] p = scratch.p, s = scratch.s, yx = scratch.yx, yz = scratch.yz, t1 = scratch.t1, t2 = scratch.t2;
+
+        int vi = 0, hi = 0, di = 0, nvh=0, i, j, k;
+
+        set(p[0], 9);
+        unpack(p[1], P);
+
+        x_to_y2(t1[0], t2[0], p[1]);
+        sqrt(scratch, t1[0], t2[0]);
+        j = is_negative(t1[0]);
+        t2[0]._0 += 39420360;
+        mul(t2[1], BASE_2Y, t1[0]);
+        sub(t1[j], t2[0], t2[1]);
+        add(t1[1-j], t2[0], t2[1]);
+        cpy(t2[0], p[1]);
+        t2[0]._0 -= 9;
+        sqr(t2[1], t2[0]);
+        recip(scratch, t2[0], t2[1], 0);
+        mul(s[0], t1[0], t2[0]);
+        sub(s[0], s[0], p[1]);
+        s[0]._0 -= 9 + 486662;
+        mul(s[1], t1[1], t2[0]);
+        sub(s[1], s[1], p[1]);
+        s[1]._0 -= 9 + 486662;
+        mul_small(s[0], s[0], 1);
+        mul_small(s[1], s[1], 1);
+
+        for (i = 0; i < 32; i++) {
+            vi = (vi >> 8) ^ (v[i] & 0xFF) ^ ((v[i] & 0xFF) << 1);
+            hi = (hi >> 8) ^ (h[i] & 0xFF) ^ ((h[i] & 0xFF) << 1);
+            nvh = ~(vi ^ hi);
+            di = (nvh & (di & 0x80) >> 7) ^ vi;
+            di ^= nvh & (di & 0x01) << 1;
+            di ^= nvh & (di & 0x02) << 1;
+            di ^= nvh & (di & 0x04) << 1;
+            di ^= nvh & (di & 0x08) << 1;
+            di ^= nvh & (di & 0x10) << 1;
+            di ^= nvh & (di & 0x20) << 1;
+            di ^= nvh & (di & 0x40) << 1;
+            d[i] = (byte)di;
+        }
+
+        di = ((nvh & (di & 0x80) << 1) ^ vi) >> 8;
+
+        set(yx[0], 1);
+        cpy(yx[1], p[di]);
+        cpy(yx[2], s[0]);
+        set(yz[0], 0);
+        set(yz[1], 1);
+        set(yz[2], 1);
+
+        vi = 0;
+        hi = 0;
+
+        for (i = 32; i--!=0; ) {
+            vi = (vi << 8) | (v[i] & 0xFF);
+            hi = (hi << 8) | (h[i] & 0xFF);
+            di = (di << 8) | (d[i] & 0xFF);
+
+            for (j = 8; j--!=0; ) {
+                mont_prep(t1[0], t2[0], yx[0], yz[0]);
+                mont_prep(t1[1], t2[1], yx[1], yz[1]);
+                mont_prep(t1[2], t2[2], yx[2], yz[2]);
+
+                k = ((vi ^ vi >> 1) >> j & 1)
+                        + ((hi ^ hi >> 1) >> j & 1);
+                mont_dbl(yx[2], yz[2], t1[k], t2[k], yx[0], yz[0]);
+
+                k = (di >> j & 2) ^ ((di >> j & 1) << 1);
+                mont_add(t1[1], t2[1], t1[k], t2[k], yx[1], yz[1],
+                        p[di >> j & 1]);
+
+                mont_add(t1[2], t2[2], t1[0], t2[0], yx[2], yz[2],
+                        s[((vi ^ hi) >> j & 2) >> 1]);
+            }
+        }
+
+        k = (vi & 1) + (hi & 1);
+        recip(scratch, t1[0], yz[k], 0);
+        mul(t1[1], yx[k], t1[0]);
+
+        pack(t1[1], Y);
+    }
+
+    static boolean isCanonicalSignature(byte[] v) {
+        Scratch scratch = threadScratch.get();
+        byte[] vCopy = scratch.canonical;
+        System.arraycopy(v, 0, vCopy, 0, 32);
+        divmod(scratch.canonicalQuotient, vCopy, 32, ORDER, 32);
+        for (int i = 0; i < 32; i++){
+            if (v[i] != vCopy[i])
+                return false;
+        }
+        return true;
+    }
+
+    static boolean isCanonicalPublicKey(byte[] publicKey) {
+        if ( publicKey.length != 32 ) {
+            return false;
+        }
+        Scratch scratch = threadScratch.get();
+        long10 publicKeyUnpacked = scratch.canonicalElement;
+        unpack(publicKeyUnpacked, publicKey);
+        byte[] publicKeyCopy = scratch.canonical;
+        pack(publicKeyUnpacked, publicKeyCopy);
+        for (int i = 0; i < 32; i++){
+            if (publicKeyCopy[i] != publicKey[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* See Curve25519.egcd32, temp is the quotient buffer */
+    private static byte[] egcd32(byte[] x, byte[] y, byte[] a, byte[] b, byte[] temp) {
+        int an, bn = 32, qn, i;
+        for (i = 0; i < 32; i++)
+            x[i] = y[i] = 0;
+        x[0] = 1;
+        an = numsize(a, 32);
+        if (an==0)
+            return y;
+        while (true) {
+            qn = bn - an + 1;
+            divmod(temp, b, bn, a, an);
+            bn = numsize(b, bn);
+            if (bn==0)
+                return x;
+            mula32(y, x, temp, qn, -1);
+
+            qn = an - bn + 1;
+            divmod(temp, a, an, b, bn);
+            an = numsize(a, an);
+            if (an==0)
+                return y;
+            mula32(x, y, temp, qn, -1);
+        }
+    }
+
+    /* See Curve25519.recip */
+    private static void recip(Scratch scratch, long10 y, long10 x, int sqrtassist) {
+        long10 t0 = scratch.recipT[0], t1 = scratch.recipT[1], t2 = scratch.recipT[2], t3 = scratch.recipT[3], t4 = scratch.recipT[4];
+        int i;
+        sqr(t1, x);
+        sqr(t2, t1);
+        sqr(t0, t2);
+        mul(t2, t0, x);
+        mul(t0, t2, t1);
+        sqr(t1, t0);
+        mul(t3, t1, t2);
+        sqr(t1, t3);
+        sqr(t2, t1);
+        sqr(t1, t2);
+        sqr(t2, t1);
+        sqr(t1, t2);
+        mul(t2, t1, t3);
+        sqr(t1, t2);
+        sqr(t3, t1);
+        for (i = 1; i < 5; i++) {
+            sqr(t1, t3);
+            sqr(t3, t1);
+        }
+        mul(t1, t3, t2);
+        sqr(t3, t1);
+        sqr(t4, t3);
+        for (i = 1; i < 10; i++) {
+            sqr(t3, t4);
+            sqr(t4, t3);
+        }
+        mul(t3, t4, t1);
+        for (i = 0; i < 5; i++) {
+            sqr(t1, t3);
+            sqr(t3, t1);
+        }
+        mul(t1, t3, t2);
+        sqr(t2, t1);
+        sqr(t3, t2);
+        for (i = 1; i < 25; i++) {
+            sqr(t2, t3);
+            sqr(t3, t2);
+        }
+        mul(t2, t3, t1);
+        sqr(t3, t2);
+        sqr(t4, t3);
+        for (i = 1; i < 50; i++) {
+            sqr(t3, t4);
+            sqr(t4, t3);
+        }
+        mul(t3, t4, t2);
+        for (i = 0; i < 25; i++) {
+            sqr(t4, t3);
+            sqr(t3, t4);
+        }
+        mul(t2, t3, t1);
+        sqr(t1, t2);
+        sqr(t2, t1);
+        if (sqrtassist!=0) {
+            mul(y, x, t2);
+        } else {
+            sqr(t1, t2);
+            sqr(t2, t1);
+            sqr(t1, t2);
+            mul(y, t1, t0);
+        }
+    }
+
+    /* See Curve25519.sqrt */
+    private static void sqrt(Scratch scratch, long10 x, long10 u) {
+        long10 v = scratch.sqrtT[0], t1 = scratch.sqrtT[1], t2 = scratch.sqrtT[2];
+        add(t1, u, u);
+        recip(scratch, v, t1, 1);
+        sqr(x, v);
+        mul(t2, t1, x);
+        t2._0--;
+        mul(t1, v, t2);
+        mul(x, u, t1);
+    }
+
+    /* See Curve25519.core */
+    private static void core(Scratch scratch, byte[] Px, byte[] s, byte[] k, byte[] Gx) {
+        long10 dx = scratch.coreT[0], t1 = scratch.coreT[1], t2 = scratch.coreT[2], t3 = scratch.coreT[3], t4 = scratch.coreT[4];
+        long10[] x = scratch.coreX, z = scratch.coreZ;
+        int i, j;
+
+        if (Gx!=null)
+            unpack(dx, Gx);
+        else
+            set(dx, 9);
+
+        set(x[0], 1);
+        set(z[0], 0);
+
+        cpy(x[1], dx);
+        set(z[1], 1);
+
+        for (i = 32; i--!=0; ) {
+            for (j = 8; j--!=0; ) {
+                int bit1 = (k[i] & 0xFF) >> j & 1;
+                int bit0 = ~(k[i] & 0xFF) >> j & 1;
+                long10 ax = x[bit0];
+                long10 az = z[bit0];
+                long10 bx = x[bit1];
+                long10 bz = z[bit1];
+
+                mont_prep(t1, t2, ax, az);
+                mont_prep(t3, t4, bx, bz);
+                mont_add(t1, t2, t3, t4, ax, az, dx);
+                mont_dbl(t1, t2, t3, t4, bx, bz);
+            }
+        }
+
+        recip(scratch, t1, z[0], 0);
+        mul(dx, x[0], t1);
+        pack(dx, Px);
+
+        if (s!=null) {
+            x_to_y2(t2, t1, dx);
+            recip(scratch, t3, z[1], 0);
+            mul(t2, x[1], t3);
+            add(t2, t2, dx);
+            t2._0 += 9 + 486662;
+            dx._0 -= 9;
+            sqr(t3, dx);
+            mul(dx, t2, t3);
+            sub(dx, dx, t1);
+            dx._0 -= 39420360;
+            mul(t1, dx, BASE_R2Y);
+            if (is_negative(t1)!=0)
+                cpy32(s, k);
+            else
+                mula_small(s, ORDER_TIMES_8, 0, k, 32, -1);
+
+            // egcd32 accumulates into the upper halves of its buffers, which must start out as zero
+            byte[] temp1 = scratch.order;
+            byte[] temp2 = scratch.egcdX;
+            byte[] temp3 = scratch.egcdY;
+            Arrays.fill(temp2, (byte) 0);
+            Arrays.fill(temp3, (byte) 0);
+            cpy32(temp1, ORDER);
+            cpy32(s, egcd32(temp2, temp3, s, temp1, scratch.egcdQuotient));
+            if ((s[31] & 0x80)!=0)
+                mula_small(s, s, 0, ORDER, 32, 1);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.crypto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies batches of signatures in parallel.
+ * <p>
+ * Signatures found to be valid are remembered by their cache key, so the same signed data
+ * is not verified again when it is seen a second time, e.g. a transaction which was verified
+ * when it was added to the unconfirmed pool and is later received as part of a block.
+ * The cache key must identify the signature, the signed message and the public key,
+ * such as the full hash of a transaction.
+ */
+public final class SignatureVerifier {
+
+    /** Maximum number of verified signatures to remember */
+    private static final int CACHE_SIZE = 50000;
+
+    /** Number of signatures verified by a single task */
+    private static final int BATCH_SIZE = 4;
+
+    /** Pool used to verify signatures */
+    private static final ForkJoinPool verifyPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Cache keys of the verified signatures */
+    private static final Map<CacheKey, Boolean> verifiedSignatures = Collections.synchronizedMap(
+            new LinkedHashMap<CacheKey, Boolean>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, Boolean> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private SignatureVerifier() {} //never
+
+    /**
+     * Signed data to be verified
+     */
+    public static final class SignedData {
+
+        private final byte[] cacheKey;
+        private final byte[] signature;
+        private final byte[] message;
+        private final byte[] publicKey;
+
+        /**
+         * Create the signed data
+         *
+         * @param   cacheKey            Key identifying the signed data or null if the result should not be cached
+         * @param   signature           Signature
+         * @param   message             Signed message
+         * @param   publicKey           Public key of the signer
+         */
+        public SignedData(byte[] cacheKey, byte[] signature, byte[] message, byte[] publicKey) {
+            this.cacheKey = cacheKey;
+            this.signature = signature;
+            this.message = message;
+            this.publicKey = publicKey;
+        }
+
+        private boolean verify() {
+            if (cacheKey != null && isVerified(cacheKey)) {
+                return true;
+            }
+            boolean verified = signature != null && Crypto.verify(signature, message, publicKey);
+            if (verified && cacheKey != null) {
+                setVerified(cacheKey);
+            }
+            return verified;
+        }
+    }
+
+    /**
+     * Verify a single signature
+     *
+     * @param   signedData          Signed data to verify
+     * @return                      TRUE if the signature is valid
+     */
+    public static boolean verify(SignedData signedData) {
+        return signedData.verify();
+    }
+
+    /**
+     * Verify a batch of signatures.  The result is the same as verifying each signature
+     * with {@link Crypto#verify(byte[], byte[], byte[])}.
+     *
+     * @param   batch               Signed data to verify
+     * @return                      Verification result for each entry in the batch
+     */
+    public static boolean[] verify(List<SignedData> batch) {
+        boolean[] results = new boolean[batch.size()];
+        if (batch.size() <= BATCH_SIZE) {
+            for (int i = 0; i < batch.size(); i++) {
+                results[i] = batch.get(i).verify();
+            }
+        } else {
+            verifyPool.invoke(new VerifyTask(batch, results, 0, batch.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Check if the signed data identified by the cache key has already been verified
+     *
+     * @param   cacheKey            Cache key
+     * @return                      TRUE if the signature is known to be valid
+     */
+    public static boolean isVerified(byte[] cacheKey) {
+        return verifiedSignatures.containsKey(new CacheKey(cacheKey));
+    }
+
+    /**
+     * Remember that the signed data identified by the cache key has a valid signature
+     *
+     * @param   cacheKey            Cache key
+     */
+    public static void setVerified(byte[] cacheKey) {
+        verifiedSignatures.put(new CacheKey(cacheKey), Boolean.TRUE);
+    }
+
+    /**
+     * Verify a range of the batch, splitting it between the pool threads
+     */
+    private static final class VerifyTask extends RecursiveAction {
+
+        private final List<SignedData> batch;
+        private final boolean[] results;
+        private final int from;
+        private final int to;
+
+        private VerifyTask(List<SignedData> batch, boolean[] results, int from, int to) {
+            this.batch = batch;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = batch.get(i).verify();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyTask(batch, results, from, middle), new VerifyTask(batch, results, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Cache key with value equality
+     */
+    private static final class CacheKey {
+
+        private final byte[] key;
+        private final int hashCode;
+
+        private CacheKey(byte[] key) {
+            this.key = key;
+            this.hashCode = Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CacheKey && Arrays.equals(key, ((CacheKey) obj).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
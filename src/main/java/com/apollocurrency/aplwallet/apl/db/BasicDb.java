@@ -24,10 +24,18 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import javax.sql.DataSource;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.PreparedStatement;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.apollocurrency.aplwallet.apl.Apl;
 import com.apollocurrency.aplwallet.apl.util.exception.DbException;
@@ -106,6 +114,10 @@ public class BasicDb implements DataSource {
         private int loginTimeout;
         private int defaultLockTimeout;
         private int maxMemoryRows;
+        private int writerConnections;
+        private int queryCacheSize;
+        private int leakedConnectionTimeout;
+        private boolean mvStore;
 
         public DbProperties maxCacheSize(int maxCacheSize) {
             this.maxCacheSize = maxCacheSize;
@@ -167,6 +179,26 @@ public class BasicDb implements DataSource {
             return this;
         }
 
+        public DbProperties writerConnections(int writerConnections) {
+            this.writerConnections = writerConnections;
+            return this;
+        }
+
+        public DbProperties queryCacheSize(int queryCacheSize) {
+            this.queryCacheSize = queryCacheSize;
+            return this;
+        }
+
+        public DbProperties leakedConnectionTimeout(int leakedConnectionTimeout) {
+            this.leakedConnectionTimeout = leakedConnectionTimeout;
+            return this;
+        }
+
+        public DbProperties mvStore(boolean mvStore) {
+            this.mvStore = mvStore;
+            return this;
+        }
+
         @Override
         public String toString() {
             return "DbProperties{" +
@@ -181,12 +213,46 @@ public class BasicDb implements DataSource {
                     ", loginTimeout=" + loginTimeout +
                     ", defaultLockTimeout=" + defaultLockTimeout +
                     ", maxMemoryRows=" + maxMemoryRows +
+                    ", writerConnections=" + writerConnections +
+                    ", queryCacheSize=" + queryCacheSize +
+                    ", leakedConnectionTimeout=" + leakedConnectionTimeout +
+                    ", mvStore=" + mvStore +
                     '}';
         }
     }
 
+    /** Database file suffix for the MVStore engine */
+    public static final String MV_STORE_SUFFIX = ".mv.db";
+
+    /** Database file suffix for the PageStore engine */
+    public static final String PAGE_STORE_SUFFIX = ".h2.db";
+
+    /** Interval between checks for leaked connections in milliseconds */
+    private static final long LEAK_CHECK_INTERVAL = 60 * 1000;
+
+    /** Statements of a pooled connection are not wrapped */
+    private static final FilteredFactory connectionFactory = new FilteredFactory() {
+        @Override
+        public Statement createStatement(Statement stmt) {
+            return stmt;
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(PreparedStatement stmt, String sql) {
+            return stmt;
+        }
+    };
+
     private JdbcConnectionPool cp;
     private volatile int maxActiveConnections;
+    /** Connections which are not reserved for database transactions or null if no connections are reserved */
+    private Semaphore readerPermits;
+    private final Set<PooledConnection> openConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong connectionRequests = new AtomicLong();
+    private final AtomicLong connectionWaitTime = new AtomicLong();
+    private volatile long maxConnectionWaitTime;
+    private volatile long leakCheckTime;
+    private volatile int leakedConnections;
     private final String dbUrl;
     private final String dbUsername;
     private final String dbPassword;
@@ -194,6 +260,8 @@ public class BasicDb implements DataSource {
     private final int loginTimeout;
     private final int defaultLockTimeout;
     private final int maxMemoryRows;
+    private final int writerConnections;
+    private final long leakedConnectionTimeout;
     private volatile boolean initialized = false;
     private volatile boolean shutdown = false;
 
@@ -203,17 +271,23 @@ public class BasicDb implements DataSource {
             maxCacheSize = Math.min(256, Math.max(16, (Runtime.getRuntime().maxMemory() / (1024 * 1024) - 128)/2)) * 1024;
         }
         String dbUrl = dbProperties.dbUrl;
+        String dbPath = null;
         if (dbUrl == null) {
             String dbDir = Apl.getDbDir(dbProperties.dbDir);
             String dbFileName = dbProperties.dbFileName;
-            dbUrl = String.format("jdbc:%s:%s;%s", dbProperties.dbType, dbDir + "/" + dbFileName, dbProperties.dbParams);
+            dbPath = dbDir + "/" + dbFileName;
+            dbUrl = String.format("jdbc:%s:%s;%s", dbProperties.dbType, dbPath, dbProperties.dbParams);
         }
         if (!dbUrl.contains("MV_STORE=")) {
-            dbUrl += ";MV_STORE=FALSE";
+            dbUrl += ";MV_STORE=" + (isMvStore(dbPath, dbProperties.mvStore) ? "TRUE" : "FALSE");
         }
-        if (!dbUrl.contains("CACHE_SIZE=")) {
+        if (!dbUrl.contains(";CACHE_SIZE=")) {
             dbUrl += ";CACHE_SIZE=" + maxCacheSize;
         }
+        // H2 reuses the parsed statement when a connection prepares the same SQL again
+        if (dbProperties.queryCacheSize > 0 && !dbUrl.contains("QUERY_CACHE_SIZE=")) {
+            dbUrl += ";QUERY_CACHE_SIZE=" + dbProperties.queryCacheSize;
+        }
         this.dbUrl = dbUrl;
         this.dbUsername = dbProperties.dbUsername;
         this.dbPassword = dbProperties.dbPassword;
@@ -221,6 +295,31 @@ public class BasicDb implements DataSource {
         this.loginTimeout = dbProperties.loginTimeout;
         this.defaultLockTimeout = dbProperties.defaultLockTimeout;
         this.maxMemoryRows = dbProperties.maxMemoryRows;
+        this.writerConnections = dbProperties.writerConnections;
+        this.leakedConnectionTimeout = dbProperties.leakedConnectionTimeout * 1000L;
+    }
+
+    /**
+     * Check if a database uses the MVStore engine.  An existing database is opened with the engine
+     * that created it, the requested engine is used for a new database.
+     *
+     * @param   dbPath              Database path without the file suffix or null if not known
+     * @param   mvStore             Use the MVStore engine for a new database
+     * @return                      TRUE if the MVStore engine is used
+     */
+    public static boolean isMvStore(String dbPath, boolean mvStore) {
+        if (dbPath != null) {
+            if (Files.exists(Paths.get(dbPath + MV_STORE_SUFFIX))) {
+                return true;
+            }
+            if (Files.exists(Paths.get(dbPath + PAGE_STORE_SUFFIX))) {
+                if (mvStore) {
+                    LOG.info("Database {} uses the PageStore engine, run the ConvertDatabase tool to convert it", dbPath);
+                }
+                return false;
+            }
+        }
+        return mvStore;
     }
 
     public void init(DbVersion dbVersion) {
@@ -229,6 +328,8 @@ public class BasicDb implements DataSource {
         cp = JdbcConnectionPool.create(dbUrl, dbUsername, dbPassword);
         cp.setMaxConnections(maxConnections);
         cp.setLoginTimeout(loginTimeout);
+        readerPermits = writerConnections > 0 && writerConnections < maxConnections ?
+                new Semaphore(maxConnections - writerConnections, true) : null;
         try (Connection con = cp.getConnection();
              Statement stmt = con.createStatement()) {
             stmt.executeUpdate("SET DEFAULT_LOCK_TIMEOUT " + defaultLockTimeout);
@@ -270,21 +371,165 @@ public class BasicDb implements DataSource {
             throw new RuntimeException(e.toString(), e);
         }
     }
+    /**
+     * Get a connection for reading the database.  The connections reserved for database
+     * transactions are not used.
+     *
+     * @return                      Database connection
+     * @throws  SQLException        Database error or no connection available within the login timeout
+     */
     @Override
     public Connection getConnection() throws SQLException {
-        Connection con = getPooledConnection();
+        Connection con = getPooledConnection(readerPermits);
         con.setAutoCommit(true);
         return con;
     }
 
+    /**
+     * Get a connection for a database transaction
+     *
+     * @return                      Database connection
+     * @throws  SQLException        Database error or no connection available within the login timeout
+     */
     protected Connection getPooledConnection() throws SQLException {
-        Connection con = cp.getConnection();
+        return getPooledConnection(null);
+    }
+
+    private Connection getPooledConnection(Semaphore permits) throws SQLException {
+        long start = System.nanoTime();
+        if (permits != null) {
+            try {
+                if (!permits.tryAcquire(loginTimeout, TimeUnit.SECONDS)) {
+                    throw new SQLException("No database connection available after " + loginTimeout + " seconds");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+        }
+        Connection con;
+        try {
+            con = cp.getConnection();
+        } catch (RuntimeException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+        long waitTime = System.nanoTime() - start;
+        connectionRequests.incrementAndGet();
+        connectionWaitTime.addAndGet(waitTime);
+        if (waitTime > maxConnectionWaitTime) {
+            maxConnectionWaitTime = waitTime;
+        }
         int activeConnections = cp.getActiveConnections();
         if (activeConnections > maxActiveConnections) {
             maxActiveConnections = activeConnections;
             LOG.debug("Database connection pool current size: " + activeConnections);
         }
-        return con;
+        if (permits == null) {
+            return con;
+        }
+        PooledConnection pooledConnection = new PooledConnection(con, permits);
+        openConnections.add(pooledConnection);
+        checkLeakedConnections(pooledConnection.openTime);
+        return pooledConnection;
+    }
+
+    /**
+     * Report the read connections held longer than the leaked connection timeout.  Connections used by
+     * database transactions are not reported since a scan holds its connection until it is complete.
+     *
+     * @param   now                 Current time in milliseconds
+     */
+    private void checkLeakedConnections(long now) {
+        if (leakedConnectionTimeout <= 0 || now - leakCheckTime < LEAK_CHECK_INTERVAL) {
+            return;
+        }
+        leakCheckTime = now;
+        int leaked = 0;
+        for (PooledConnection con : openConnections) {
+            long openTime = now - con.openTime;
+            if (openTime >= leakedConnectionTimeout) {
+                leaked++;
+                if (!con.reported) {
+                    con.reported = true;
+                    LOG.warn("Database connection opened by thread {} has been in use for {} seconds",
+                            con.threadName, openTime / 1000);
+                }
+            }
+        }
+        leakedConnections = leaked;
+    }
+
+    /**
+     * Get the number of connections in use
+     *
+     * @return                      Connections in use
+     */
+    public int getActiveConnections() {
+        requireInitialization();
+        return cp.getActiveConnections();
+    }
+
+    /**
+     * Get the average time spent waiting for a connection
+     *
+     * @return                      Average wait time in milliseconds
+     */
+    public double getAverageConnectionWaitTime() {
+        long requests = connectionRequests.get();
+        return requests == 0 ? 0 : (double)connectionWaitTime.get() / requests / 1000000.0;
+    }
+
+    /**
+     * Get the longest time spent waiting for a connection
+     *
+     * @return                      Maximum wait time in milliseconds
+     */
+    public double getMaxConnectionWaitTime() {
+        return (double)maxConnectionWaitTime / 1000000.0;
+    }
+
+    /**
+     * Get the number of read connections held longer than the leaked connection timeout when the
+     * connections were last checked
+     *
+     * @return                      Leaked connections
+     */
+    public int getLeakedConnections() {
+        return leakedConnections;
+    }
+
+    /**
+     * Pooled read connection.  The reader permit is released when the connection is closed.
+     */
+    private final class PooledConnection extends FilteredConnection {
+
+        private final Semaphore permits;
+        private final long openTime = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private volatile boolean reported;
+        private boolean closed;
+
+        private PooledConnection(Connection con, Semaphore permits) {
+            super(con, connectionFactory);
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            openConnections.remove(this);
+            try {
+                super.close();
+            } finally {
+                permits.release();
+            }
+        }
     }
 
     public String getUrl() {
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection used to write buffered entities
+ *
+ * Updates executed by a prepared statement are added to a batch instead of being executed.
+ * The same prepared statement is returned each time a SQL statement is prepared, so saving
+ * a set of entities creates one batch for each statement.  The batches are executed in the
+ * order the statements were first prepared.  Pending batches are also executed before a
+ * query is executed or another statement is created.
+ */
+final class BatchingConnection extends FilteredConnection {
+
+    /** Prepared statements by SQL statement */
+    private final Map<String, BatchingStatement> statements = new LinkedHashMap<>();
+
+    /** Statements have pending batches */
+    private boolean pending;
+
+    /**
+     * Create the connection
+     *
+     * @param   con                 Database connection
+     */
+    BatchingConnection(Connection con) {
+        super(con, new FilteredFactory() {
+            @Override
+            public Statement createStatement(Statement stmt) {
+                return stmt;
+            }
+
+            @Override
+            public PreparedStatement createPreparedStatement(PreparedStatement stmt, String sql) {
+                return stmt;
+            }
+        });
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        BatchingStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = new BatchingStatement(super.prepareStatement(sql), sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        executeBatches();
+        return super.createStatement();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        executeBatches();
+        return super.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    /**
+     * Execute the pending batches
+     *
+     * @throws  SQLException        Database error
+     */
+    void executeBatches() throws SQLException {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+        for (BatchingStatement stmt : statements.values()) {
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Close the prepared statements.  The database connection is not closed.
+     *
+     * @throws  SQLException        Database error
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException error = null;
+        for (BatchingStatement stmt : statements.values()) {
+            try {
+                stmt.closeStatement();
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        statements.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Prepared statement adding updates to a batch
+     */
+    private final class BatchingStatement extends FilteredPreparedStatement {
+
+        private BatchingStatement(PreparedStatement stmt, String sql) {
+            super(stmt, sql);
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            addBatch();
+            pending = true;
+            return 1;
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            executeUpdate();
+            return false;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            executeBatches();
+            return super.executeQuery();
+        }
+
+        /**
+         * The statement is reused and is closed with the connection
+         */
+        @Override
+        public void close() {
+        }
+
+        private void closeStatement() throws SQLException {
+            super.close();
+        }
+    }
+}
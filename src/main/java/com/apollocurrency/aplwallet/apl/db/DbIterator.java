@@ -38,6 +38,9 @@ public final class DbIterator<T> implements Iterator<T>, Iterable<T>, AutoClosea
     private final ResultSetReader<T> rsReader;
     private final ResultSet rs;
 
+    /** Source of an iterator that is not backed by a result set */
+    private final Iterator<T> source;
+
     private boolean hasNext;
     private boolean iterated;
 
@@ -54,10 +57,27 @@ public final class DbIterator<T> implements Iterator<T>, Iterable<T>, AutoClosea
             DbUtils.close(pstmt, con);
             throw new RuntimeException(e.toString(), e);
         }
+        this.source = null;
+    }
+
+    /**
+     * Create an iterator over objects held in memory
+     *
+     * @param   source              Object iterator
+     */
+    public DbIterator(Iterator<T> source) {
+        this.con = null;
+        this.pstmt = null;
+        this.rsReader = null;
+        this.rs = null;
+        this.source = source;
     }
 
     @Override
     public boolean hasNext() {
+        if (source != null) {
+            return source.hasNext();
+        }
         if (! hasNext) {
             DbUtils.close(rs, pstmt, con);
         }
@@ -66,6 +86,9 @@ public final class DbIterator<T> implements Iterator<T>, Iterable<T>, AutoClosea
 
     @Override
     public T next() {
+        if (source != null) {
+            return source.next();
+        }
         if (! hasNext) {
             DbUtils.close(rs, pstmt, con);
             throw new NoSuchElementException();
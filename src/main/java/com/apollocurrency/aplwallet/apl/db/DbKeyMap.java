@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import com.apollocurrency.aplwallet.apl.util.LongHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Map keyed by database key.  Entries with a {@link DbKey.LongKey} are stored by their
+ * primitive identifier, other keys are stored in a hash map.
+ *
+ * @param   <V>                 Value type
+ */
+final class DbKeyMap<V> {
+
+    private final LongHashMap<V> longKeys = new LongHashMap<>();
+    private final Map<DbKey, V> otherKeys = new HashMap<>();
+
+    V get(DbKey dbKey) {
+        if (dbKey instanceof DbKey.LongKey) {
+            return longKeys.get(((DbKey.LongKey) dbKey).getId());
+        }
+        return otherKeys.get(dbKey);
+    }
+
+    V put(DbKey dbKey, V value) {
+        if (dbKey instanceof DbKey.LongKey) {
+            return longKeys.put(((DbKey.LongKey) dbKey).getId(), value);
+        }
+        return otherKeys.put(dbKey, value);
+    }
+
+    V remove(DbKey dbKey) {
+        if (dbKey instanceof DbKey.LongKey) {
+            return longKeys.remove(((DbKey.LongKey) dbKey).getId());
+        }
+        return otherKeys.remove(dbKey);
+    }
+
+    int size() {
+        return longKeys.size() + otherKeys.size();
+    }
+
+    void clear() {
+        longKeys.clear();
+        otherKeys.clear();
+    }
+}
@@ -68,6 +68,13 @@ public abstract class DerivedDbTable {
         //nothing to trim
     }
 
+    /**
+     * Commit a trim chunk, see {@link TrimLock}
+     */
+    protected static void commitTrim() {
+        TrimLock.commit(db);
+    }
+
     public void createSearchIndex(Connection con) throws SQLException {
         //implemented in EntityDbTable only
     }
@@ -76,6 +83,16 @@ public abstract class DerivedDbTable {
         return false;
     }
 
+    /**
+     * Check if the table is included in a rescan snapshot.  A table that is not included is
+     * rolled back to the snapshot height from its current content when a snapshot is restored.
+     *
+     * @return                      TRUE if the table is copied to a rescan snapshot
+     */
+    public boolean supportsSnapshot() {
+        return true;
+    }
+
     @Override
     public final String toString() {
         return table;
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import org.json.simple.JSONObject;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of committed entities shared by all threads, used by {@link EntityDbTable#get(DbKey)}
+ * outside of a database transaction.
+ * <p>
+ * Each entry is tagged with the blockchain height at which it was read.  Changes made by a database
+ * transaction are recorded as they are made and applied when the transaction is committed or rolled back:
+ * inserted and deleted entities are removed, a rollback to a height removes the entries read above that
+ * height and a truncate clears the cache.  An entity read while a transaction is being committed is not
+ * added to the cache, so a stale entity can not replace the one removed by the commit.
+ * <p>
+ * The blockchain height is lowered before the derived tables are rolled back, so an entity read during a
+ * rollback can be tagged with a height below the height of its data.  The entries read at the rollback
+ * height are therefore removed as well.
+ * <p>
+ * Cached entities are shared by all threads and must not be modified outside of a database transaction.
+ * <p>
+ * The cache size of a table is set by the apl.entityCache.<i>table</i> property, the cache is disabled
+ * when the size is 0.
+ */
+public final class EntityCache<T> implements TransactionalDb.TransactionCallback {
+
+    /** Entity caches by table name */
+    private static final Map<String, EntityCache<?>> entityCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Create the entity cache for a table
+     *
+     * @param   db                  Database
+     * @param   table               Table name
+     * @return                      Entity cache or null if the cache is disabled for the table
+     */
+    static <T> EntityCache<T> create(TransactionalDb db, String table) {
+        int maxSize = Apl.getIntProperty("apl.entityCache." + table, 0);
+        if (maxSize <= 0) {
+            return null;
+        }
+        EntityCache<T> entityCache = new EntityCache<>(db, maxSize);
+        entityCaches.put(table, entityCache);
+        return entityCache;
+    }
+
+    /**
+     * Get the statistics of all entity caches
+     *
+     * @return                      JSON object with an entry for each table
+     */
+    public static JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        entityCaches.forEach((table, entityCache) -> json.put(table, entityCache.getJSONObject()));
+        return json;
+    }
+
+    /** Cached entity */
+    private static final class Entry<T> {
+
+        private final T entity;
+        private final int height;
+
+        private Entry(T entity, int height) {
+            this.entity = entity;
+            this.height = height;
+        }
+    }
+
+    /** Changes made by the current database transaction */
+    private static final class Changes {
+
+        private final Set<DbKey> keys = new HashSet<>();
+        private int rollbackHeight = Integer.MAX_VALUE;
+        private boolean truncated;
+    }
+
+    private final TransactionalDb db;
+    private final int maxSize;
+
+    /** Cached entities in access order, guarded by the cache */
+    private final LinkedHashMap<DbKey, Entry<T>> entries;
+
+    /** Incremented each time changes are applied, guarded by the cache */
+    private long generation;
+
+    private final ThreadLocal<Changes> changes = new ThreadLocal<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private EntityCache(TransactionalDb db, int maxSize) {
+        this.db = db;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<DbKey, Entry<T>>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DbKey, Entry<T>> eldest) {
+                return size() > EntityCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get a cached entity
+     *
+     * @param   dbKey               Entity key
+     * @return                      Entity or null if the entity is not cached
+     */
+    synchronized T get(DbKey dbKey) {
+        Entry<T> entry = entries.get(dbKey);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.entity;
+    }
+
+    /**
+     * Get the current generation.  The generation must be obtained before reading the entity
+     * from the database and passed to {@link #put(DbKey, Object, int, long)}.
+     *
+     * @return                      Cache generation
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Add an entity read from the database
+     *
+     * @param   dbKey               Entity key
+     * @param   entity              Entity
+     * @param   height              Blockchain height when the entity was read
+     * @param   readGeneration      Cache generation before the entity was read
+     */
+    synchronized void put(DbKey dbKey, T entity, int height, long readGeneration) {
+        if (readGeneration == generation) {
+            entries.put(dbKey, new Entry<>(entity, height));
+        }
+    }
+
+    /**
+     * Remove the entity when the current database transaction ends
+     *
+     * @param   dbKey               Entity key
+     */
+    void changed(DbKey dbKey) {
+        getChanges().keys.add(dbKey);
+    }
+
+    /**
+     * Remove the entities read at or above the height when the current database transaction ends
+     *
+     * @param   height              Rollback height
+     */
+    void rolledBack(int height) {
+        Changes pending = getChanges();
+        pending.rollbackHeight = Math.min(pending.rollbackHeight, height);
+    }
+
+    /**
+     * Remove all entities when the current database transaction ends
+     */
+    void truncated() {
+        getChanges().truncated = true;
+    }
+
+    private Changes getChanges() {
+        Changes pending = changes.get();
+        if (pending == null) {
+            pending = new Changes();
+            changes.set(pending);
+        }
+        db.registerCallback(this);
+        return pending;
+    }
+
+    @Override
+    public void commit() {
+        applyChanges();
+    }
+
+    /**
+     * The database is unchanged when a transaction is rolled back, but the changes are still
+     * applied since entities from the transaction may have been read in the meantime
+     */
+    @Override
+    public void rollback() {
+        applyChanges();
+    }
+
+    private void applyChanges() {
+        Changes pending = changes.get();
+        if (pending == null) {
+            return;
+        }
+        changes.remove();
+        synchronized (this) {
+            generation++;
+            if (pending.truncated) {
+                entries.clear();
+                return;
+            }
+            if (pending.rollbackHeight != Integer.MAX_VALUE) {
+                int height = pending.rollbackHeight;
+                entries.values().removeIf(entry -> entry.height >= height);
+            }
+            pending.keys.forEach(entries::remove);
+        }
+    }
+
+    /**
+     * Get the cache statistics
+     *
+     * @return                      JSON object
+     */
+    JSONObject getJSONObject() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        JSONObject json = new JSONObject();
+        synchronized (this) {
+            json.put("size", entries.size());
+        }
+        json.put("maxSize", maxSize);
+        json.put("hits", hitCount);
+        json.put("misses", missCount);
+        json.put("hitRatio", hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return json;
+    }
+}
@@ -28,6 +28,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -38,6 +41,10 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
     protected final DbKey.Factory<T> dbKeyFactory;
     private final String defaultSort;
     private final String fullTextSearchColumns;
+    private final EntityCache<T> entityCache;
+
+    /** Entities inserted by the current database transaction and not yet written */
+    private final ThreadLocal<InsertBuffer> insertBuffer = new ThreadLocal<>();
 
     protected EntityDbTable(String table, DbKey.Factory<T> dbKeyFactory) {
         this(table, dbKeyFactory, false, null);
@@ -53,6 +60,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         this.multiversion = multiversion;
         this.defaultSort = " ORDER BY " + (multiversion ? dbKeyFactory.getPKColumns() : " height DESC, db_id DESC ");
         this.fullTextSearchColumns = fullTextSearchColumns;
+        this.entityCache = EntityCache.create(db, table);
     }
 
      protected EntityDbTable(String table, boolean multiversion, DbKey.Factory<T> dbKeyFactory) {
@@ -61,6 +69,7 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
          this.dbKeyFactory = dbKeyFactory;
          this.defaultSort = "";
          this.fullTextSearchColumns = "";
+         this.entityCache = EntityCache.create(db, table);
     }
 
     protected abstract T load(Connection con, ResultSet rs, DbKey dbKey) throws SQLException;
@@ -114,10 +123,26 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             if (t != null) {
                 return t;
             }
+        } else if (cache && entityCache != null) {
+            T t = entityCache.get(dbKey);
+            if (t != null) {
+                return t;
+            }
+            // The generation and the height must be obtained before reading the entity
+            long generation = entityCache.getGeneration();
+            int height = Apl.getBlockchain().getHeight();
+            t = get(dbKey, false);
+            if (t != null) {
+                entityCache.put(dbKey, t, height, generation);
+            }
+            return t;
         }
+        // Buffered inserts for other keys can't change the result
+        InsertBuffer buffer = insertBuffer.get();
+        String sql = "SELECT * FROM " + table + dbKeyFactory.getPKClause() + (multiversion ? " AND latest = TRUE LIMIT 1" : "");
         try (Connection con = db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
-             + (multiversion ? " AND latest = TRUE LIMIT 1" : ""))) {
+             PreparedStatement pstmt = buffer == null || buffer.entities.containsKey(dbKey) ?
+                     con.prepareStatement(sql) : db.prepareStatementWithoutFlush(con, sql)) {
             dbKey.setPK(pstmt);
             return get(con, pstmt, cache);
         } catch (SQLException e) {
@@ -125,6 +150,24 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         }
     }
 
+    /**
+     * Get an entity within the current database transaction without reading the database.  The
+     * instance read earlier in the transaction is returned if there is one, otherwise the entity is
+     * created from a copy held in memory and is used for the rest of the transaction.
+     *
+     * @param   dbKey               Entity key
+     * @param   creator             Create the entity
+     * @return                      Entity
+     */
+    public final T get(DbKey dbKey, Function<DbKey, T> creator) {
+        T t = (T) db.getCache(table).get(dbKey);
+        if (t == null) {
+            t = creator.apply(dbKey);
+            db.getCache(table).put(dbKey, t);
+        }
+        return t;
+    }
+
     public final T get(DbKey dbKey, int height) {
         if (height < 0 || doesNotExceed(height)) {
             return get(dbKey);
@@ -435,17 +478,99 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
             throw new IllegalStateException("Different instance found in Db cache, perhaps trying to save an object "
                     + "that was read outside the current transaction");
         }
-        try (Connection con = db.getConnection()) {
-            if (multiversion) {
-                try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
-                        + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+        int bufferSize = db.getWriteBufferSize();
+        if (multiversion && bufferSize > 0) {
+            buffer(dbKey, t, bufferSize);
+        } else {
+            try (Connection con = db.getConnection()) {
+                if (multiversion) {
+                    try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
+                            + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+                        dbKey.setPK(pstmt);
+                        pstmt.executeUpdate();
+                    }
+                }
+                save(con, t);
+            } catch (SQLException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+        entityChanged(dbKey);
+        inserted(t);
+    }
+
+    /**
+     * Buffer an inserted entity until the write buffers of the database transaction are flushed.  An
+     * entity inserted again at the same height is written once with its latest state.
+     *
+     * @param   dbKey               Entity key
+     * @param   t                   Entity
+     * @param   bufferSize          Maximum number of buffered entities
+     */
+    private void buffer(DbKey dbKey, T t, int bufferSize) {
+        int height = Apl.getBlockchain().getHeight();
+        InsertBuffer buffer = insertBuffer.get();
+        if (buffer != null && (buffer.height != height || buffer.entities.size() >= bufferSize)) {
+            db.flushWriteBuffers();
+            buffer = insertBuffer.get();
+        }
+        if (buffer == null) {
+            buffer = new InsertBuffer(height);
+            insertBuffer.set(buffer);
+            db.addWriteBuffer(buffer);
+        }
+        buffer.entities.put(dbKey, t);
+    }
+
+    /**
+     * Entities inserted at a height by a database transaction.  The previous versions are marked and the
+     * new versions are saved using one batch for each statement when the buffer is flushed.
+     */
+    private final class InsertBuffer implements TransactionalDb.WriteBuffer {
+
+        private final int height;
+        private final Map<DbKey, T> entities = new LinkedHashMap<>();
+
+        private InsertBuffer(int height) {
+            this.height = height;
+        }
+
+        @Override
+        public void flush(Connection con) throws SQLException {
+            insertBuffer.remove();
+            try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
+                    + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE LIMIT 1")) {
+                for (DbKey dbKey : entities.keySet()) {
                     dbKey.setPK(pstmt);
-                    pstmt.executeUpdate();
+                    pstmt.addBatch();
                 }
+                pstmt.executeBatch();
+            }
+            try (BatchingConnection batchingCon = new BatchingConnection(con)) {
+                for (T t : entities.values()) {
+                    save(batchingCon, t);
+                }
+                batchingCon.executeBatches();
             }
-            save(con, t);
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
+        }
+
+        @Override
+        public void discard() {
+            insertBuffer.remove();
+        }
+    }
+
+    /**
+     * Called within the database transaction after an entity has been inserted
+     *
+     * @param   t                   Inserted entity
+     */
+    protected void inserted(T t) {
+    }
+
+    final void entityChanged(DbKey dbKey) {
+        if (entityCache != null) {
+            entityCache.changed(dbKey);
         }
     }
 
@@ -456,6 +581,21 @@ public abstract class EntityDbTable<T> extends DerivedDbTable {
         } else {
             super.rollback(height);
         }
+        entitiesRolledBack(height);
+    }
+
+    final void entitiesRolledBack(int height) {
+        if (entityCache != null) {
+            entityCache.rolledBack(height);
+        }
+    }
+
+    @Override
+    public void truncate() {
+        super.truncate();
+        if (entityCache != null) {
+            entityCache.truncated();
+        }
     }
 
     @Override
@@ -33,10 +33,18 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import com.apollocurrency.aplwallet.apl.Db;
@@ -49,7 +57,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexFormatTooOldException;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -59,6 +66,7 @@ import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -103,6 +111,11 @@ import org.slf4j.Logger;
  *
  * The table index trigger is defined as follows:
  *   CREATE TRIGGER trigger_name AFTER INSERT,UPDATE,DELETE ON table_name FOR EACH ROW CALL "com.apollocurrency.aplwallet.apl.db.FullTextTrigger"
+ *
+ * Row changes are held until the database transaction is committed and are then queued
+ * for a background indexer, so a rolled back change never reaches the Lucene index.  The
+ * indexer applies the queued changes in commit order, reopens the searcher after each
+ * batch of changes and commits the Lucene index at most once every COMMIT_INTERVAL.
  */
 public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCallback {
         private static final Logger LOG = getLogger(FullTextTrigger.class);
@@ -126,11 +139,8 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     /** Lucene directory */
     private static Directory directory;
 
-    /** Lucene index reader (thread-safe) */
-    private static DirectoryReader indexReader;
-
-    /** Lucene index searcher (thread-safe) */
-    private static IndexSearcher indexSearcher;
+    /** Lucene near-real-time searcher manager (thread-safe) */
+    private static SearcherManager searcherManager;
 
     /** Lucene index writer (thread-safe) */
     private static IndexWriter indexWriter;
@@ -159,6 +169,28 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     /** Pending table updates */
     private final List<TableUpdate> tableUpdates = new ArrayList<>();
 
+    /** Minimum time between Lucene index commits in milliseconds */
+    private static final long COMMIT_INTERVAL = 10 * 1000;
+
+    /** Maximum number of queued updates applied before the searcher is reopened */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /** Number of rows read by a reindex before the rows are indexed */
+    private static final int REINDEX_BATCH_SIZE = 500;
+
+    /** Number of threads used to index the rows of a table */
+    private static final int REINDEX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /** Committed table updates waiting for the indexer */
+    private static final BlockingQueue<TableUpdate> indexQueue = new LinkedBlockingQueue<>();
+
+    /** Number of updates added to the index queue and number of updates processed by the indexer */
+    private static long queuedCount;
+    private static long indexedCount;
+
+    /** Indexer thread or null if the indexer is not running */
+    private static Thread indexerThread;
+
     /**
      * This method is called by ARS initialization to indicate ARS is active.
      *
@@ -170,6 +202,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      * @param   active              TRUE to enable database triggers
      */
     public static void setActive(boolean active) {
+        if (!active) {
+            waitForIndexer();
+        }
         isActive = active;
         if (!active) {
             indexTriggers.values().forEach((trigger) -> trigger.isEnabled = false);
@@ -271,6 +306,7 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      */
     public static void reindex(Connection conn) throws SQLException {
         LOG.info("Rebuilding the Lucene search index");
+        waitForIndexer();
         try {
             //
             // Delete the current Lucene index
@@ -441,7 +477,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         // The _MODIFIED field contains the row modification time (YYYYMMDDhhmmss) in GMT
         //
         indexLock.readLock().lock();
+        IndexSearcher indexSearcher = null;
         try {
+            indexSearcher = searcherManager.acquire();
             QueryParser parser = new QueryParser("_DATA", analyzer);
             parser.setDateResolution("_MODIFIED", DateTools.Resolution.SECOND);
             parser.setDefaultOperator(QueryParser.Operator.AND);
@@ -467,6 +505,13 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             LOG.error("Unable to search Lucene index", exc);
             throw new SQLException("Unable to search Lucene index", exc);
         } finally {
+            if (indexSearcher != null) {
+                try {
+                    searcherManager.release(indexSearcher);
+                } catch (IOException exc) {
+                    LOG.error("Unable to release Lucene index searcher", exc);
+                }
+            }
             indexLock.readLock().unlock();
         }
         return result;
@@ -607,15 +652,11 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             return;
         }
         //
-        // Commit the change immediately if we are not in a transaction
+        // Queue the change immediately if we are not in a transaction
         //
+        TableUpdate update = new TableUpdate(this, Thread.currentThread(), oldRow, newRow);
         if (!Db.getDb().isInTransaction()) {
-            try {
-                commitRow(oldRow, newRow);
-                commitIndex();
-            } catch (SQLException exc) {
-                LOG.error("Unable to update the Lucene index", exc);
-            }
+            queueUpdates(Collections.singletonList(update));
             return;
         }
         //
@@ -623,7 +664,7 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         // that the current thread is the application thread performing the update operation.
         //
         synchronized(tableUpdates) {
-            tableUpdates.add(new TableUpdate(Thread.currentThread(), oldRow, newRow));
+            tableUpdates.add(update);
         }
         //
         // Register our transaction callback
@@ -637,32 +678,119 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     @Override
     public void commit() {
         Thread thread = Thread.currentThread();
-        try {
-            //
-            // Update the Lucene index.  Note that a database transaction is associated
-            // with a single thread.  So we will commit just those updates generated
-            // by the current thread.
-            //
-            boolean commit = false;
-            synchronized(tableUpdates) {
-                Iterator<TableUpdate> updateIt = tableUpdates.iterator();
-                while (updateIt.hasNext()) {
-                    TableUpdate update = updateIt.next();
-                    if (update.getThread() == thread) {
-                        commitRow(update.getOldRow(), update.getNewRow());
-                        updateIt.remove();
-                        commit = true;
+        //
+        // Queue the updates for the indexer.  Note that a database transaction is associated
+        // with a single thread.  So we will queue just those updates generated by the current
+        // thread.
+        //
+        List<TableUpdate> updates = new ArrayList<>();
+        synchronized(tableUpdates) {
+            Iterator<TableUpdate> updateIt = tableUpdates.iterator();
+            while (updateIt.hasNext()) {
+                TableUpdate update = updateIt.next();
+                if (update.getThread() == thread) {
+                    updates.add(update);
+                    updateIt.remove();
+                }
+            }
+        }
+        queueUpdates(updates);
+    }
+
+    /**
+     * Queue committed table updates for the indexer
+     *
+     * @param   updates             Table updates in commit order
+     */
+    private static void queueUpdates(List<TableUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        synchronized(indexQueue) {
+            if (indexerThread == null) {
+                indexerThread = new Thread(FullTextTrigger::runIndexer, "FullTextIndexer");
+                indexerThread.setDaemon(true);
+                indexerThread.start();
+            }
+            queuedCount += updates.size();
+            indexQueue.addAll(updates);
+        }
+    }
+
+    /**
+     * Apply the queued table updates to the Lucene index
+     */
+    private static void runIndexer() {
+        List<TableUpdate> batch = new ArrayList<>();
+        long commitTime = System.currentTimeMillis();
+        boolean uncommitted = false;
+        while (true) {
+            try {
+                TableUpdate update = indexQueue.poll(COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+                if (update != null) {
+                    batch.add(update);
+                    indexQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    indexLock.readLock().lock();
+                    try {
+                        if (indexWriter != null) {
+                            for (TableUpdate tableUpdate : batch) {
+                                FullTextTrigger trigger = tableUpdate.getTrigger();
+                                if (trigger.isEnabled) {
+                                    trigger.commitRow(tableUpdate.getOldRow(), tableUpdate.getNewRow());
+                                }
+                            }
+                            searcherManager.maybeRefresh();
+                            uncommitted = true;
+                        }
+                    } finally {
+                        indexLock.readLock().unlock();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (uncommitted && (now - commitTime >= COMMIT_INTERVAL || indexQueue.isEmpty() && update == null)) {
+                    commitIndex();
+                    commitTime = now;
+                    uncommitted = false;
+                }
+            } catch (InterruptedException exc) {
+                return;
+            } catch (IOException | SQLException | RuntimeException exc) {
+                LOG.error("Unable to update the Lucene index", exc);
+            } finally {
+                if (!batch.isEmpty()) {
+                    synchronized(indexQueue) {
+                        indexedCount += batch.size();
+                        indexQueue.notifyAll();
                     }
+                    batch.clear();
                 }
             }
-            //
-            // Commit the index updates
-            //
-            if (commit) {
-                commitIndex();
+        }
+    }
+
+    /**
+     * Wait until the indexer has processed the updates queued so far.  We do not wait
+     * if the current thread holds the index lock since the indexer needs the read lock.
+     */
+    private static void waitForIndexer() {
+        if (indexLock.readLock().hasLock() || indexLock.writeLock().hasLock()) {
+            return;
+        }
+        synchronized(indexQueue) {
+            long target = queuedCount;
+            long waitUntil = System.currentTimeMillis() + 60 * 1000;
+            try {
+                while (indexedCount < target && indexerThread != null && indexerThread.isAlive()) {
+                    long wait = waitUntil - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        LOG.warn("Queued Lucene index updates are still pending");
+                        return;
+                    }
+                    indexQueue.wait(wait);
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
             }
-        } catch (SQLException exc) {
-            LOG.error("Unable to update the Lucene index", exc);
         }
     }
 
@@ -715,20 +843,40 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
             sb.append(", ").append(columnNames.get(index));
         }
         sb.append(" FROM ").append(tableName);
-        Object[] row = new Object[columnNames.size()];
         //
-        // Index each row in the table
+        // Index each row in the table.  The rows are read in batches on the current
+        // connection and each batch is indexed by one of the reindex threads.
         //
+        ExecutorService executor = Executors.newFixedThreadPool(REINDEX_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
         try (Statement qstmt = conn.createStatement();
                 ResultSet rs = qstmt.executeQuery(sb.toString())) {
+            List<Object[]> rows = new ArrayList<>(REINDEX_BATCH_SIZE);
             while (rs.next()) {
+                Object[] row = new Object[columnNames.size()];
                 row[dbColumn] = rs.getObject(1);
                 int i = 2;
                 for (int index : indexColumns) {
                     row[index] = rs.getObject(i++);
                 }
-                indexRow(row);
+                rows.add(row);
+                if (rows.size() == REINDEX_BATCH_SIZE) {
+                    futures.add(indexRows(executor, rows));
+                    rows = new ArrayList<>(REINDEX_BATCH_SIZE);
+                    //
+                    // Limit the number of rows held in memory
+                    //
+                    if (futures.size() >= REINDEX_THREADS * 2) {
+                        getResult(futures.remove(0));
+                    }
+                }
             }
+            futures.add(indexRows(executor, rows));
+            for (Future<?> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            executor.shutdownNow();
         }
         //
         // Commit the index updates
@@ -736,6 +884,40 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         commitIndex();
     }
 
+    /**
+     * Index a batch of rows
+     *
+     * @param   executor            Reindex executor
+     * @param   rows                Rows
+     * @return                      Indexing result
+     */
+    private Future<?> indexRows(ExecutorService executor, List<Object[]> rows) {
+        return executor.submit(() -> {
+            for (Object[] row : rows) {
+                indexRow(row);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Wait for a batch of rows to be indexed
+     *
+     * @param   future              Indexing result
+     * @throws  SQLException        Unable to index a row
+     */
+    private static void getResult(Future<?> future) throws SQLException {
+        try {
+            future.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Reindex interrupted", exc);
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            throw cause instanceof SQLException ? (SQLException)cause : new SQLException("Unable to index rows", cause);
+        }
+    }
+
     /**
      * Index a row
      *
@@ -792,20 +974,17 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      * @throws  SQLException        Unable to commit index updates
      */
     private static void commitIndex() throws SQLException {
-        indexLock.writeLock().lock();
+        indexLock.readLock().lock();
         try {
-            indexWriter.commit();
-            DirectoryReader newReader = DirectoryReader.openIfChanged(indexReader);
-            if (newReader != null) {
-                indexReader.close();
-                indexReader = newReader;
-                indexSearcher = new IndexSearcher(indexReader);
+            if (indexWriter != null) {
+                indexWriter.commit();
+                searcherManager.maybeRefresh();
             }
         } catch (IOException exc) {
             LOG.error("Unable to commit Lucene index updates", exc);
             throw new SQLException("Unable to commit Lucene index updates", exc);
         } finally {
-            indexLock.writeLock().unlock();
+            indexLock.readLock().unlock();
         }
     }
 
@@ -869,8 +1048,7 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
                         document.add(new StringField("_QUERY", "_CONTROL_DOCUMENT_", Field.Store.YES));
                         indexWriter.updateDocument(new Term("_QUERY", "_CONTROL_DOCUMENT_"), document);
                         indexWriter.commit();
-                        indexReader = DirectoryReader.open(directory);
-                        indexSearcher = new IndexSearcher(indexReader);
+                        searcherManager = new SearcherManager(indexWriter, null);
                     }
                 } finally {
                     indexLock.writeLock().unlock();
@@ -896,12 +1074,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
     private static void removeIndexAccess() {
         indexLock.writeLock().lock();
         try {
-            if (indexSearcher != null) {
-                indexSearcher = null;
-            }
-            if (indexReader != null) {
-                indexReader.close();
-                indexReader = null;
+            if (searcherManager != null) {
+                searcherManager.close();
+                searcherManager = null;
             }
             if (indexWriter != null) {
                 indexWriter.close();
@@ -955,6 +1130,9 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
      */
     private static class TableUpdate {
 
+        /** Index trigger */
+        private final FullTextTrigger trigger;
+
         /** Transaction thread */
         private final Thread thread;
 
@@ -967,19 +1145,25 @@ public class FullTextTrigger implements Trigger, TransactionalDb.TransactionCall
         /**
          * Create the table update
          *
+         * @param   trigger         Index trigger
          * @param   thread          Transaction thread
          * @param   oldRow          Old table row or null
          * @param   newRow          New table row or null
          */
-        public TableUpdate(Thread thread, Object[] oldRow, Object[] newRow) {
+        public TableUpdate(FullTextTrigger trigger, Thread thread, Object[] oldRow, Object[] newRow) {
+            this.trigger = trigger;
             this.thread = thread;
             this.oldRow = oldRow;
             this.newRow = newRow;
         }
-        protected TableUpdate(Thread thread) {
-            this.thread = thread;
-            this.oldRow = new Object[]{};
-            this.newRow = new Object[] {};
+
+        /**
+         * Return the index trigger
+         *
+         * @return                  Index trigger
+         */
+        public FullTextTrigger getTrigger() {
+            return trigger;
         }
 
 
@@ -67,7 +67,7 @@ public abstract class PrunableDbTable<T> extends PersistentDbTable<T> {
                     if (deleted > 0) {
                         LOG.debug("Deleted " + deleted + " expired prunable data from " + table);
                     }
-                    db.commitTransaction();
+                    commitTrim();
                 } while (deleted >= Constants.BATCH_COMMIT_SIZE);
             } catch (SQLException e) {
                 throw new RuntimeException(e.toString(), e);
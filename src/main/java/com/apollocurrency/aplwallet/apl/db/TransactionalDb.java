@@ -25,8 +25,11 @@ import net.sf.log4jdbc.ConnectionSpy;
 import org.slf4j.Logger;
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,11 +51,12 @@ public class TransactionalDb extends BasicDb {
     }
 
     private final ThreadLocal<DbConnection> localConnection = new ThreadLocal<>();
-    private final ThreadLocal<Map<String,Map<DbKey,Object>>> transactionCaches = new ThreadLocal<>();
+    private final ThreadLocal<Map<String,DbKeyMap<Object>>> transactionCaches = new ThreadLocal<>();
     private final ThreadLocal<Set<TransactionCallback>> transactionCallback = new ThreadLocal<>();
     private volatile long txTimes = 0;
     private volatile long txCount = 0;
     private volatile long statsTime = 0;
+    private volatile int writeBufferSize = 0;
 
     public TransactionalDb(DbProperties dbProperties) {
         super(dbProperties);
@@ -75,6 +79,24 @@ public class TransactionalDb extends BasicDb {
         return getConnection();
     }
 
+    /**
+     * Set the maximum number of entity writes buffered for a table by a database transaction
+     *
+     * @param   writeBufferSize     Buffer size or 0 to write entities when they are inserted
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = Math.max(writeBufferSize, 0);
+    }
+
+    /**
+     * Get the maximum number of entity writes buffered for a table by a database transaction
+     *
+     * @return                      Buffer size or 0 if writes are not buffered
+     */
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
     public boolean isInTransaction() {
         return localConnection.get() != null;
     }
@@ -108,6 +130,7 @@ public class TransactionalDb extends BasicDb {
             throw new IllegalStateException("Not in transaction");
         }
         try {
+            con.flushWriteBuffers();
             con.doCommit();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
@@ -129,6 +152,7 @@ public class TransactionalDb extends BasicDb {
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         } finally {
+            con.discardWriteBuffers();
             transactionCaches.get().clear();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
@@ -143,6 +167,7 @@ public class TransactionalDb extends BasicDb {
         if (con == null) {
             throw new IllegalStateException("Not in transaction");
         }
+        ((DbConnection)con).discardWriteBuffers();
         localConnection.set(null);
         transactionCaches.set(null);
         long now = System.currentTimeMillis();
@@ -179,27 +204,78 @@ public class TransactionalDb extends BasicDb {
         callbacks.add(callback);
     }
 
-    Map<DbKey,Object> getCache(String tableName) {
+    /**
+     * Add a write buffer to the current database transaction
+     *
+     * @param   writeBuffer         Write buffer
+     */
+    void addWriteBuffer(WriteBuffer writeBuffer) {
+        DbConnection con = localConnection.get();
+        if (con == null) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        con.writeBuffers.add(writeBuffer);
+    }
+
+    /**
+     * Write the entities buffered by the current database transaction.  The buffers are also flushed
+     * when the transaction is committed and before a statement is created for the transaction.
+     */
+    public void flushWriteBuffers() {
+        DbConnection con = localConnection.get();
+        if (con == null) {
+            return;
+        }
+        try {
+            con.flushWriteBuffers();
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Prepare a statement without flushing the write buffers.  The caller must make sure the statement
+     * can't read rows with buffered changes.
+     *
+     * @param   con                 Database connection
+     * @param   sql                 SQL statement
+     * @return                      Prepared statement
+     * @throws  SQLException        Database error
+     */
+    PreparedStatement prepareStatementWithoutFlush(Connection con, String sql) throws SQLException {
+        DbConnection dbConnection = localConnection.get();
+        if (dbConnection == null || dbConnection.flushSuspended) {
+            return con.prepareStatement(sql);
+        }
+        dbConnection.flushSuspended = true;
+        try {
+            return con.prepareStatement(sql);
+        } finally {
+            dbConnection.flushSuspended = false;
+        }
+    }
+
+    DbKeyMap<Object> getCache(String tableName) {
         if (!isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
-        Map<DbKey,Object> cacheMap = transactionCaches.get().get(tableName);
+        DbKeyMap<Object> cacheMap = transactionCaches.get().get(tableName);
         if (cacheMap == null) {
-            cacheMap = new HashMap<>();
+            cacheMap = new DbKeyMap<>();
             transactionCaches.get().put(tableName, cacheMap);
         }
         return cacheMap;
     }
 
     void clearCache(String tableName) {
-        Map<DbKey,Object> cacheMap = transactionCaches.get().get(tableName);
+        DbKeyMap<Object> cacheMap = transactionCaches.get().get(tableName);
         if (cacheMap != null) {
             cacheMap.clear();
         }
     }
 
     public void clearCache() {
-        transactionCaches.get().values().forEach(Map::clear);
+        transactionCaches.get().values().forEach(DbKeyMap::clear);
     }
 
     private static void logThreshold(String msg) {
@@ -224,10 +300,94 @@ public class TransactionalDb extends BasicDb {
 
         long txStart = 0;
 
+        /** Write buffers of the transaction in the order they were added */
+        private final Set<WriteBuffer> writeBuffers = new LinkedHashSet<>();
+
+        /** Write buffers are not flushed while a buffer is being flushed or a statement is prepared without flushing */
+        private boolean flushSuspended;
+
         private DbConnection(Connection con) {
             super(con, factory);
         }
 
+        private void flushWriteBuffers() throws SQLException {
+            if (writeBuffers.isEmpty() || flushSuspended) {
+                return;
+            }
+            List<WriteBuffer> buffers = new ArrayList<>(writeBuffers);
+            writeBuffers.clear();
+            flushSuspended = true;
+            try {
+                for (WriteBuffer buffer : buffers) {
+                    buffer.flush(this);
+                }
+            } catch (SQLException | RuntimeException e) {
+                buffers.forEach(WriteBuffer::discard);
+                throw e;
+            } finally {
+                flushSuspended = false;
+            }
+        }
+
+        private void discardWriteBuffers() {
+            writeBuffers.forEach(WriteBuffer::discard);
+            writeBuffers.clear();
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            flushWriteBuffers();
+            return super.createStatement();
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            flushWriteBuffers();
+            return super.createStatement(resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            flushWriteBuffers();
+            return super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql, columnIndexes);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            flushWriteBuffers();
+            return super.prepareStatement(sql, columnNames);
+        }
+
         @Override
         public void setAutoCommit(boolean autoCommit) throws SQLException {
             throw new UnsupportedOperationException("Use Db.beginTransaction() to start a new transaction");
@@ -365,6 +525,25 @@ public class TransactionalDb extends BasicDb {
         }
     }
 
+    /**
+     * Writes buffered by a database transaction
+     */
+    public interface WriteBuffer {
+
+        /**
+         * Write the buffered changes
+         *
+         * @param   con                 Database connection
+         * @throws  SQLException        Database error
+         */
+        void flush(Connection con) throws SQLException;
+
+        /**
+         * Discard the buffered changes when the transaction is rolled back
+         */
+        void discard();
+    }
+
     /**
      * Transaction callback interface
      */
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.Blockchain;
+
+/**
+ * Blockchain read lock held by a background trim.
+ * <p>
+ * A derived table is trimmed in chunks and the progress is committed after each chunk.  When the
+ * trim has held the read lock for longer than the maximum lock time, the lock is released at the
+ * end of the chunk so that a waiting block push can proceed, and obtained again before the trim
+ * continues with the next chunk.
+ * <p>
+ * A trim that is not run by {@link #run(long, Runnable)}, such as the trim done during a rescan,
+ * only commits at the end of each chunk.
+ */
+public final class TrimLock {
+
+    /** Trim lock of the current thread */
+    private static final ThreadLocal<TrimLock> trimLock = new ThreadLocal<>();
+
+    private final Blockchain blockchain;
+
+    /** Maximum lock time in milliseconds, 0 if the lock is held until the trim is complete */
+    private final long maxLockTime;
+
+    /** Time the lock was obtained */
+    private long lockTime;
+
+    /** Number of times the lock was released before the trim completed */
+    private int yieldCount;
+
+    private TrimLock(Blockchain blockchain, long maxLockTime) {
+        this.blockchain = blockchain;
+        this.maxLockTime = maxLockTime;
+    }
+
+    /**
+     * Run a trim while holding the blockchain read lock.  The caller must be in a database transaction.
+     *
+     * @param   maxLockTime         Maximum time to hold the lock in milliseconds, 0 for no limit
+     * @param   trim                Trim to run
+     * @return                      Number of times the lock was released before the trim completed
+     */
+    public static int run(long maxLockTime, Runnable trim) {
+        if (trimLock.get() != null) {
+            throw new IllegalStateException("Trim already in progress");
+        }
+        TrimLock lock = new TrimLock(Apl.getBlockchain(), maxLockTime);
+        lock.blockchain.readLock();
+        lock.lockTime = System.currentTimeMillis();
+        trimLock.set(lock);
+        try {
+            trim.run();
+        } finally {
+            trimLock.remove();
+            lock.blockchain.readUnlock();
+        }
+        return lock.yieldCount;
+    }
+
+    /**
+     * Commit the current trim chunk and release the blockchain read lock if it has been held
+     * for too long
+     *
+     * @param   db                  Database
+     */
+    static void commit(TransactionalDb db) {
+        db.commitTransaction();
+        TrimLock lock = trimLock.get();
+        if (lock != null && lock.maxLockTime > 0 && System.currentTimeMillis() - lock.lockTime >= lock.maxLockTime) {
+            lock.blockchain.readUnlock();
+            // A waiting writer is queued ahead of us and obtains the lock first
+            lock.blockchain.readLock();
+            lock.lockTime = System.currentTimeMillis();
+            lock.yieldCount++;
+        }
+    }
+}
@@ -79,11 +79,16 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
                         save(con, t);
                         pstmt.executeUpdate(); // delete after the save
                     }
+                    deleted(t);
                     return true;
                 } else {
                     try (PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + table + dbKeyFactory.getPKClause())) {
                         dbKey.setPK(pstmtDelete);
-                        return pstmtDelete.executeUpdate() > 0;
+                        if (pstmtDelete.executeUpdate() > 0) {
+                            deleted(t);
+                            return true;
+                        }
+                        return false;
                     }
                 }
             }
@@ -95,9 +100,18 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
             if (!keepInCache) {
                 db.getCache(table).remove(dbKey);
             }
+            entityChanged(dbKey);
         }
     }
 
+    /**
+     * Called within the database transaction after an entity has been deleted
+     *
+     * @param   t                   Deleted entity
+     */
+    protected void deleted(T t) {
+    }
+
     static void rollback(final TransactionalDb db, final String table, final int height, final DbKey.Factory dbKeyFactory) {
         if (!db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
@@ -130,13 +144,21 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
                 LOG.trace("Rollback table {} deleting {} records", table, deletedRecordsCount);
             }
 
+            int batchSize = 0;
             for (DbKey dbKey : dbKeys) {
                 int i = 1;
                 i = dbKey.setPK(pstmtSetLatest, i);
                 i = dbKey.setPK(pstmtSetLatest, i);
-                pstmtSetLatest.executeUpdate();
+                pstmtSetLatest.addBatch();
+                if (++batchSize >= Constants.ROLLBACK_BATCH_SIZE) {
+                    pstmtSetLatest.executeBatch();
+                    batchSize = 0;
+                }
                 //Db.getCache(table).remove(dbKey);
             }
+            if (batchSize > 0) {
+                pstmtSetLatest.executeBatch();
+            }
         }
         catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -192,13 +214,12 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
                     if (!keys.isEmpty()) {
                         pstmtDeleteByIds.setObject(1, keys.toArray());
                         deleted += pstmtDeleteByIds.executeUpdate();
-                        deleteStm++;
-                        if (deleted % 100 == 0) {
-                            db.commitTransaction();
+                        if (++deleteStm % 100 == 0) {
+                            TrimLock.commit(db);
                         }
                     }
                 }
-                db.commitTransaction();
+                TrimLock.commit(db);
                 LOG.trace("Delete time {} for table {}: stm - {}, deleted - {}", System.currentTimeMillis() - startDeleteTime, table,
                         deleteStm, deleted);
                 // changed algo - select all dbkeys from query and insert to hashset, create index for height and latest and select db_key and
@@ -240,12 +261,12 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
                     pstmtDeletedById.setLong(1, candidatesRs.getLong(1));
                     pstmtDeletedById.executeUpdate();
                     if (++deleted % 100 == 0) {
-                        db.commitTransaction();
+                        TrimLock.commit(db);
                     }
                 }
             }
         }
-        db.commitTransaction();
+        TrimLock.commit(db);
         return deleted;
     }
 
@@ -257,7 +278,7 @@ public abstract class VersionedEntityDbTable<T> extends EntityDbTable<T> {
         do {
             deleted = pstm.executeUpdate();
             totalDeleted += deleted;
-            db.commitTransaction();
+            TrimLock.commit(db);
         } while (deleted >= Constants.BATCH_COMMIT_SIZE);
         return totalDeleted;
     }
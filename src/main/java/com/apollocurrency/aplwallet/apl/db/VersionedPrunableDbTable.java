@@ -55,6 +55,7 @@ public abstract class VersionedPrunableDbTable<T> extends PrunableDbTable<T> {
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
+        entitiesRolledBack(height);
     }
 
 }
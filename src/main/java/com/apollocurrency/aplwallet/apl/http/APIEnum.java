@@ -254,6 +254,7 @@ public enum APIEnum {
     FULL_RESET("fullReset", FullReset.getInstance()),
     POP_OFF("popOff", PopOff.getInstance()),
     SCAN("scan", Scan.getInstance()),
+    VERIFY_RESCAN_SNAPSHOT("verifyRescanSnapshot", VerifyRescanSnapshot.getInstance()),
     LUCENE_REINDEX("luceneReindex", LuceneReindex.getInstance()),
     ADD_PEER("addPeer", AddPeer.getInstance()),
     BLACKLIST_PEER("blacklistPeer", BlacklistPeer.getInstance()),
@@ -29,7 +29,6 @@ import org.slf4j.Logger;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -200,11 +199,17 @@ public class APIProxy {
         return true;
     }
 
+    /**
+     * Remove a peer selected at random, favoring peers with a better score
+     *
+     * @param   peers               Peers
+     * @return                      Selected peer or null if the list is empty
+     */
     private Peer getRandomAPIPeer(List<Peer> peers) {
-        if (peers.isEmpty()) {
-            return null;
+        Peer peer = Peers.getWeightedPeer(peers);
+        if (peer != null) {
+            peers.remove(peer);
         }
-        int index = ThreadLocalRandom.current().nextInt(peers.size());
-        return peers.remove(index);
+        return peer;
     }
 }
@@ -28,6 +28,7 @@ import com.apollocurrency.aplwallet.apl.AplGlobalObjects;
 import com.apollocurrency.aplwallet.apl.Block;
 import com.apollocurrency.aplwallet.apl.BlockchainProcessor;
 import com.apollocurrency.aplwallet.apl.Constants;
+import com.apollocurrency.aplwallet.apl.db.EntityCache;
 import com.apollocurrency.aplwallet.apl.peer.Peer;
 import com.apollocurrency.aplwallet.apl.peer.Peers;
 import org.json.simple.JSONArray;
@@ -63,6 +64,13 @@ public final class GetBlockchainStatus extends APIServlet.APIRequestHandler {
         response.put("lastBlockchainFeederHeight", blockchainProcessor.getLastBlockchainFeederHeight());
         response.put("isScanning", blockchainProcessor.isScanning());
         response.put("isDownloading", blockchainProcessor.isDownloading());
+        if (blockchainProcessor.isDownloading()) {
+            response.put("downloadStatistics", blockchainProcessor.getDownloadStatistics());
+        }
+        response.put("blockCache", AplGlobalObjects.getBlockDb().getBlockCache().getJSONObject());
+        response.put("entityCache", EntityCache.getStatistics());
+        response.put("unconfirmedPool", Apl.getTransactionProcessor().getUnconfirmedPoolStatistics());
+        response.put("peerBroadcast", Peers.getBroadcastStatistics());
         response.put("maxRollback", Constants.MAX_ROLLBACK);
         response.put("currentMinRollbackHeight", Apl.getBlockchainProcessor().getMinRollbackHeight());
         response.put("isTestnet", AplGlobalObjects.getChainConfig().isTestnet());
@@ -29,6 +29,7 @@ import com.apollocurrency.aplwallet.apl.Constants;
 import com.apollocurrency.aplwallet.apl.Currency;
 import com.apollocurrency.aplwallet.apl.CurrencyBuyOffer;
 import com.apollocurrency.aplwallet.apl.CurrencyTransfer;
+import com.apollocurrency.aplwallet.apl.Db;
 import com.apollocurrency.aplwallet.apl.DigitalGoodsStore;
 import com.apollocurrency.aplwallet.apl.Exchange;
 import com.apollocurrency.aplwallet.apl.ExchangeRequest;
@@ -106,6 +107,10 @@ public final class GetState extends APIServlet.APIRequestHandler {
         response.put("maxMemory", Runtime.getRuntime().maxMemory());
         response.put("totalMemory", Runtime.getRuntime().totalMemory());
         response.put("freeMemory", Runtime.getRuntime().freeMemory());
+        response.put("dbActiveConnections", Db.getDb().getActiveConnections());
+        response.put("dbAverageConnectionWaitTime", Db.getDb().getAverageConnectionWaitTime());
+        response.put("dbMaxConnectionWaitTime", Db.getDb().getMaxConnectionWaitTime());
+        response.put("dbLeakedConnections", Db.getDb().getLeakedConnections());
         response.put("peerPort", Peers.getDefaultPeerPort());
         response.put("isOffline", Constants.isOffline);
         response.put("needsAdminPassword", !API.disableAdminPassword);
@@ -606,6 +606,7 @@ public final class JSONData {
             json.put("hallmark", peer.getHallmark().getHallmarkString());
         }
         json.put("weight", peer.getWeight());
+        json.put("score", peer.getScore().getValue());
         json.put("downloadedVolume", peer.getDownloadedVolume());
         json.put("uploadedVolume", peer.getUploadedVolume());
         json.put("application", peer.getApplication());
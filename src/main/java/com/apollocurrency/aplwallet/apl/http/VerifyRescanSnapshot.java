@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.http;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.AplException;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Rescan the blockchain from a rescan snapshot and from the genesis block and compare the
+ * resulting derived tables
+ */
+public final class VerifyRescanSnapshot extends APIServlet.APIRequestHandler {
+
+    private static class VerifyRescanSnapshotHolder {
+        private static final VerifyRescanSnapshot INSTANCE = new VerifyRescanSnapshot();
+    }
+
+    public static VerifyRescanSnapshot getInstance() {
+        return VerifyRescanSnapshotHolder.INSTANCE;
+    }
+
+    private VerifyRescanSnapshot() {
+        super(new APITag[] {APITag.DEBUG}, "height");
+    }
+
+    @Override
+    protected JSONStreamAware processRequest(HttpServletRequest req) throws AplException {
+        int height = ParameterParser.getInt(req, "height", 1, Integer.MAX_VALUE, true);
+        JSONObject response;
+        try {
+            Apl.getBlockchainProcessor().setGetMoreBlocks(false);
+            response = Apl.getBlockchainProcessor().verifyRescanSnapshot(height);
+        } catch (RuntimeException e) {
+            response = new JSONObject();
+            JSONData.putException(response, e);
+        } finally {
+            Apl.getBlockchainProcessor().setGetMoreBlocks(true);
+        }
+        return response;
+    }
+
+    @Override
+    protected final boolean requirePost() {
+        return true;
+    }
+
+    @Override
+    protected boolean requirePassword() {
+        return true;
+    }
+
+    @Override
+    protected final boolean allowRequiredBlockParameters() {
+        return false;
+    }
+
+    @Override
+    protected boolean requireBlockchain() {
+        return false;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.Block;
+import com.apollocurrency.aplwallet.apl.Transaction;
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Compact block relay
+ * <p>
+ * Peers providing the COMPACT_BLOCKS service are sent the block header and the identifiers of
+ * the block transactions instead of the complete block.  The receiver rebuilds the block from
+ * the transactions in its unconfirmed pool and requests just the missing transactions from the
+ * sending peer using the getBlockTransactions request.  The rebuilt block is processed as if it
+ * had been received in a processBlock request, so the payload hash check will reject a block
+ * rebuilt using the wrong transaction.
+ */
+final class CompactBlock {
+
+    private CompactBlock() {} //never
+
+    /**
+     * Create the processCompactBlock request
+     *
+     * @param   block               Block
+     * @return                      Compact block request
+     */
+    static JSONObject create(Block block) {
+        JSONObject json = new JSONObject();
+        json.put("id", block.getStringId());
+        json.put("version", block.getVersion());
+        json.put("timestamp", block.getTimestamp());
+        json.put("previousBlock", Long.toUnsignedString(block.getPreviousBlockId()));
+        json.put("totalAmountATM", block.getTotalAmountATM());
+        json.put("totalFeeATM", block.getTotalFeeATM());
+        json.put("payloadLength", block.getPayloadLength());
+        json.put("payloadHash", Convert.toHexString(block.getPayloadHash()));
+        json.put("generatorPublicKey", Convert.toHexString(block.getGeneratorPublicKey()));
+        json.put("generationSignature", Convert.toHexString(block.getGenerationSignature()));
+        json.put("previousBlockHash", Convert.toHexString(block.getPreviousBlockHash()));
+        json.put("blockSignature", Convert.toHexString(block.getBlockSignature()));
+        json.put("timeout", block.getTimeout());
+        JSONArray transactionIds = new JSONArray();
+        block.getTransactions().forEach(transaction -> transactionIds.add(transaction.getStringId()));
+        JSONObject request = new JSONObject();
+        request.put("requestType", "processCompactBlock");
+        request.put("block", json);
+        request.put("transactionIds", transactionIds);
+        return request;
+    }
+
+    /**
+     * Rebuild the block JSON using the unconfirmed transactions.  The transactions that are
+     * not available are set to null and their indexes are added to the missing list.
+     *
+     * @param   request             Compact block request
+     * @param   transactionLookup   Return the unconfirmed transaction or null
+     * @param   missing             Indexes of the missing transactions
+     * @return                      Block JSON
+     * @throws  IllegalArgumentException    Request is not valid
+     */
+    static JSONObject rebuild(JSONObject request, LongFunction<? extends Transaction> transactionLookup, List<Long> missing) {
+        JSONObject header = (JSONObject)request.get("block");
+        Object transactionIds = request.get("transactionIds");
+        if (header == null || !(transactionIds instanceof JSONArray)) {
+            throw new IllegalArgumentException("Invalid compact block");
+        }
+        JSONObject blockData = new JSONObject();
+        blockData.putAll(header);
+        blockData.remove("id");
+        JSONArray transactionsData = new JSONArray();
+        long index = 0;
+        for (Object transactionId : (JSONArray)transactionIds) {
+            if (!(transactionId instanceof String)) {
+                throw new IllegalArgumentException("Invalid transaction identifier: " + transactionId);
+            }
+            Transaction transaction = transactionLookup.apply(Convert.parseUnsignedLong((String)transactionId));
+            if (transaction != null) {
+                transactionsData.add(transaction.getJSONObject());
+            } else {
+                transactionsData.add(null);
+                missing.add(index);
+            }
+            index++;
+        }
+        blockData.put("transactions", transactionsData);
+        return blockData;
+    }
+
+    /**
+     * Add the missing transactions to the rebuilt block
+     *
+     * @param   blockData           Rebuilt block JSON
+     * @param   missing             Indexes of the missing transactions
+     * @param   transactionsData    Missing transactions in the same order as the indexes
+     * @throws  IllegalArgumentException    Wrong number of transactions
+     */
+    static void addMissing(JSONObject blockData, List<Long> missing, List<?> transactionsData) {
+        if (transactionsData.size() != missing.size()) {
+            throw new IllegalArgumentException("Expected " + missing.size() + " block transactions, received "
+                    + transactionsData.size());
+        }
+        JSONArray blockTransactions = (JSONArray)blockData.get("transactions");
+        for (int i = 0; i < missing.size(); i++) {
+            blockTransactions.set(missing.get(i).intValue(), transactionsData.get(i));
+        }
+    }
+}
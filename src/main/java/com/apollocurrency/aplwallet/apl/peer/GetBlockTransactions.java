@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.Block;
+import com.apollocurrency.aplwallet.apl.Transaction;
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.List;
+
+/**
+ * Get the transactions of a compact block that the peer could not find in its unconfirmed pool
+ */
+final class GetBlockTransactions extends PeerServlet.PeerRequestHandler {
+
+    private static class GetBlockTransactionsHolder {
+        private static final GetBlockTransactions INSTANCE = new GetBlockTransactions();
+    }
+
+    public static GetBlockTransactions getInstance() {
+        return GetBlockTransactionsHolder.INSTANCE;
+    }
+
+    private GetBlockTransactions() {}
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        JSONArray transactionIndexes = (JSONArray)request.get("transactionIndexes");
+        String blockId = (String)request.get("block");
+        if (blockId == null || transactionIndexes == null) {
+            return JSON.emptyJSON;
+        }
+        Block block = Apl.getBlockchain().getBlock(Convert.parseUnsignedLong(blockId));
+        if (block == null) {
+            return JSON.emptyJSON;
+        }
+        List<? extends Transaction> transactions = block.getTransactions();
+        JSONArray transactionsData = new JSONArray();
+        for (Object transactionIndex : transactionIndexes) {
+            int index = ((Long)transactionIndex).intValue();
+            if (index < 0 || index >= transactions.size()) {
+                return PeerServlet.error(new IllegalArgumentException("Invalid transaction index " + index));
+            }
+            transactionsData.add(transactions.get(index).getJSONObject());
+        }
+        JSONObject response = new JSONObject();
+        response.put("transactions", transactionsData);
+        return response;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.Block;
+import com.apollocurrency.aplwallet.apl.Transaction;
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.util.List;
+
+/**
+ * Get the announced block and unconfirmed transactions
+ */
+final class GetInventory extends PeerServlet.PeerRequestHandler {
+
+    private static class GetInventoryHolder {
+        private static final GetInventory INSTANCE = new GetInventory();
+    }
+
+    public static GetInventory getInstance() {
+        return GetInventoryHolder.INSTANCE;
+    }
+
+    private GetInventory() {}
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        JSONObject response = new JSONObject();
+        try {
+            String blockId = (String)request.get("block");
+            if (blockId != null) {
+                Block block = Apl.getBlockchain().getBlock(Convert.parseUnsignedLong(blockId));
+                if (block != null) {
+                    response.put("block", block.getJSONObject());
+                }
+            }
+            List<String> fullHashes = Inventory.parseFullHashes(request.get("transactions"));
+            if (!fullHashes.isEmpty()) {
+                JSONArray transactionsData = new JSONArray();
+                for (String fullHash : fullHashes) {
+                    long transactionId = Convert.fullHashToId(Convert.parseHexString(fullHash));
+                    Transaction transaction = Apl.getTransactionProcessor().getUnconfirmedTransaction(transactionId);
+                    if (transaction != null && transaction.getFullHash().equals(fullHash)) {
+                        transactionsData.add(transaction.getJSONObject());
+                    }
+                }
+                response.put("transactions", transactionsData);
+            }
+        } catch (RuntimeException e) {
+            return PeerServlet.error(e);
+        }
+        return response;
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+}
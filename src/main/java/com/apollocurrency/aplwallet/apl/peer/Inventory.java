@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.Block;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * Inventory announcements for blocks and transactions
+ * <p>
+ * Peers providing the INVENTORY service announce new transactions by their full hash and new
+ * blocks by their identifier instead of sending the complete block or transaction.  The receiver
+ * requests just the items it doesn't have using the getInventory request.  An item requested from
+ * one peer is not requested again from another peer announcing it until the first request has
+ * completed or REQUEST_TIMEOUT has elapsed.
+ * <p>
+ * Peers not providing the INVENTORY service continue to receive the processBlock and
+ * processTransactions requests.
+ */
+final class Inventory {
+
+    /** Maximum number of transactions in an announcement or inventory request */
+    static final int MAX_TRANSACTIONS = 100;
+
+    /** Time before an item is requested again from another peer in milliseconds */
+    private static final long REQUEST_TIMEOUT = 30 * 1000;
+
+    /** Full hash length in hex characters */
+    private static final int FULL_HASH_LENGTH = 64;
+
+    /** Requested items and the time of the request */
+    private final ConcurrentMap<String, Long> requestedItems = new ConcurrentHashMap<>();
+
+    /**
+     * Create the processInventory request announcing transactions
+     *
+     * @param   fullHashes          Transaction full hashes
+     * @return                      Announcement
+     */
+    static JSONObject announceTransactions(List<String> fullHashes) {
+        JSONObject request = new JSONObject();
+        request.put("requestType", "processInventory");
+        JSONArray transactions = new JSONArray();
+        transactions.addAll(fullHashes);
+        request.put("transactions", transactions);
+        return request;
+    }
+
+    /**
+     * Create the processInventory request announcing a block.  The announcement contains the
+     * fields needed to decide if the block should be processed.
+     *
+     * @param   block               Block
+     * @return                      Announcement
+     */
+    static JSONObject announceBlock(Block block) {
+        JSONObject blockData = new JSONObject();
+        blockData.put("id", block.getStringId());
+        blockData.put("previousBlock", Long.toUnsignedString(block.getPreviousBlockId()));
+        blockData.put("timestamp", block.getTimestamp());
+        blockData.put("timeout", block.getTimeout());
+        JSONObject request = new JSONObject();
+        request.put("requestType", "processInventory");
+        request.put("block", blockData);
+        return request;
+    }
+
+    /**
+     * Create the getInventory request
+     *
+     * @param   blockId             Block identifier or null
+     * @param   fullHashes          Transaction full hashes
+     * @return                      Request
+     */
+    static JSONObject getInventoryRequest(String blockId, List<String> fullHashes) {
+        JSONObject request = new JSONObject();
+        request.put("requestType", "getInventory");
+        if (blockId != null) {
+            request.put("block", blockId);
+        }
+        if (!fullHashes.isEmpty()) {
+            JSONArray transactions = new JSONArray();
+            transactions.addAll(fullHashes);
+            request.put("transactions", transactions);
+        }
+        return request;
+    }
+
+    /**
+     * Get the transaction full hashes from a request
+     *
+     * @param   transactions        Transactions array or null
+     * @return                      Transaction full hashes
+     * @throws  IllegalArgumentException    Full hashes are not valid
+     */
+    static List<String> parseFullHashes(Object transactions) {
+        List<String> fullHashes = new ArrayList<>();
+        if (transactions == null) {
+            return fullHashes;
+        }
+        if (!(transactions instanceof JSONArray) || ((JSONArray)transactions).size() > MAX_TRANSACTIONS) {
+            throw new IllegalArgumentException("Invalid transaction inventory");
+        }
+        for (Object fullHash : (JSONArray)transactions) {
+            if (!(fullHash instanceof String) || ((String)fullHash).length() != FULL_HASH_LENGTH) {
+                throw new IllegalArgumentException("Invalid transaction full hash: " + fullHash);
+            }
+            fullHashes.add((String)fullHash);
+        }
+        return fullHashes;
+    }
+
+    /**
+     * Select the announced items that should be requested.  The selected items are
+     * marked as requested.
+     *
+     * @param   items               Announced items
+     * @param   isKnown             TRUE if we already have the item
+     * @param   now                 Current time in milliseconds
+     * @return                      Items to request
+     */
+    List<String> selectMissing(List<String> items, Predicate<String> isKnown, long now) {
+        List<String> missing = new ArrayList<>();
+        for (String item : items) {
+            Long requestTime = requestedItems.get(item);
+            if (requestTime != null && now - requestTime < REQUEST_TIMEOUT) {
+                continue;
+            }
+            if (isKnown.test(item)) {
+                continue;
+            }
+            boolean requested = (requestTime == null ? requestedItems.putIfAbsent(item, now) == null :
+                    requestedItems.replace(item, requestTime, now));
+            if (requested) {
+                missing.add(item);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Items have been received or the request has failed
+     *
+     * @param   items               Requested items
+     */
+    void requestCompleted(Collection<String> items) {
+        items.forEach(requestedItems::remove);
+    }
+}
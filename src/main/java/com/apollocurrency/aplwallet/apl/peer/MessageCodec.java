@@ -0,0 +1,542 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.util.CountingInputReader;
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Peer message encoder and decoder.
+ * <p>
+ * Messages keep the JSON wire format, optionally compressed using GZIP.  A message is encoded by
+ * writing the JSON text directly into a reusable buffer and compressing it into a second reusable
+ * buffer, leaving room for the WebSocket frame header so the frame can be sent without another copy.
+ * A message is decoded by parsing the JSON text directly from the received bytes, decompressing them
+ * while they are parsed, so a message is not copied into an intermediate string or byte array.
+ * <p>
+ * Each thread has its own codec with a JSON parser, deflater and inflater that are reused for every
+ * message.  An encoded message refers to the codec buffers of the encoding thread and is only valid
+ * until that thread encodes the next message.
+ * <p>
+ * Peers supporting WebSocket message version 2 compress messages using raw DEFLATE with a preset
+ * dictionary containing the JSON names and values found in most peer messages, followed by a CRC-32
+ * of the message text.  Every message starts with the same dictionary, so small messages such as
+ * transaction announcements and getNextBlocks requests are compressed as well as large messages.
+ * The dictionary is part of the protocol and must not be changed without a new message version.
+ */
+final class MessageCodec {
+
+    /** Number of bytes reserved for the WebSocket frame header */
+    static final int FRAME_HEADER_LENGTH = 20;
+
+    /** Buffers larger than this are released after use */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    /** Initial buffer size */
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    /** GZIP header written by GZIPOutputStream */
+    private static final byte[] GZIP_HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /** GZIP header flags */
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /** GZIP trailer length */
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    /** Dictionary message trailer length */
+    private static final int DICTIONARY_TRAILER_LENGTH = 4;
+
+    /** Preset compression dictionary.  The most common strings are at the end of the dictionary. */
+    private static final byte[] DICTIONARY = ("" +
+            "{\"requestType\":\"getInfo\",\"announcedAddress\":\"\",\"application\":\"Apollo\"," +
+            "\"platform\":\"\",\"shareAddress\":true,\"services\":\"\",\"apiPort\":\"apiSSLPort\":" +
+            "\"blockchainState\":\"UP_TO_DATE\",\"disabledAPIs\":\"apiServerIdleTimeout\":" +
+            "{\"requestType\":\"getPeers\",\"peers\":[],\"services\":[]}" +
+            "{\"requestType\":\"getCumulativeDifficulty\",\"cumulativeDifficulty\":\"\",\"blockchainHeight\":" +
+            "{\"requestType\":\"getMilestoneBlockIds\",\"lastBlockId\":\"\",\"lastMilestoneBlockId\":\"\"," +
+            "\"milestoneBlockIds\":[\"\"],\"last\":true}" +
+            "{\"requestType\":\"getNextBlockIds\",\"nextBlockIds\":[\"\"],\"limit\":" +
+            "{\"requestType\":\"getUnconfirmedTransactions\",\"unconfirmedTransactions\":[],\"exclude\":[]}" +
+            "{\"requestType\":\"processInventory\",\"block\":{\"id\":\"\"},\"transactions\":[\"\"]}" +
+            "{\"requestType\":\"getInventory\",\"requestType\":\"processCompactBlock\",\"transactionIds\":[\"\"]}" +
+            "{\"requestType\":\"getBlockTransactions\",\"transactionIndexes\":[]}" +
+            "\"attachment\":{\"version.Message\":1,\"message\":\"\",\"messageIsText\":true," +
+            "\"version.EncryptedMessage\":1,\"encryptedMessage\":{\"data\":\"\",\"nonce\":\"\",\"isText\":true,\"isCompressed\":true}," +
+            "\"version.PublicKeyAnnouncement\":1,\"recipientPublicKey\":\"\",\"version.OrdinaryPayment\":0}," +
+            "{\"previousBlockHash\":\"\",\"payloadLength\":0,\"totalAmountATM\":0,\"generationSignature\":\"\"," +
+            "\"generatorPublicKey\":\"\",\"baseTarget\":\"\",\"payloadHash\":\"\",\"blockSignature\":\"\"," +
+            "\"totalFeeATM\":0,\"previousBlock\":\"\",\"timeout\":0,\"version\":3,\"timestamp\":" +
+            "{\"requestType\":\"processBlock\",\"requestType\":\"getNextBlocks\",\"nextBlocks\":[{" +
+            "\"blockId\":\"\",\"blockIds\":[\"\"],\"transactions\":[{\"senderPublicKey\":\"\"," +
+            "\"signature\":\"\",\"feeATM\":100000000,\"type\":0,\"version\":1,\"ecBlockId\":\"\"," +
+            "\"referencedTransactionFullHash\":\"\",\"attachment\":{},\"subtype\":0,\"amountATM\":0," +
+            "\"recipient\":\"\",\"ecBlockHeight\":0,\"deadline\":1440,\"timestamp\":}]," +
+            "{\"requestType\":\"processTransactions\",\"transactions\":[{\"chainId\":\"\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    /** Codec of the current thread */
+    private static final ThreadLocal<MessageCodec> codec = ThreadLocal.withInitial(MessageCodec::new);
+
+    private final JSONParser parser = new JSONParser();
+    private final OutputBuffer textBuffer = new OutputBuffer();
+    private Writer textWriter = new OutputStreamWriter(textBuffer, StandardCharsets.UTF_8);
+    private final OutputBuffer gzipBuffer = new OutputBuffer();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 deflaterCrc = new CRC32();
+    private final CRC32 inflaterCrc = new CRC32();
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encode a message.  The message is compressed if its length is at least the minimum compress size.
+     *
+     * @param   message             JSON message
+     * @param   minCompressSize     Minimum length of a compressed message or -1 to never compress
+     * @return                      Encoded message
+     * @throws  IOException         Unable to encode the message
+     */
+    static Message encode(JSONStreamAware message, int minCompressSize) throws IOException {
+        return codec.get().doEncode(message, minCompressSize, false);
+    }
+
+    /**
+     * Encode a message.  The message is compressed if its length is at least the minimum compress size.
+     *
+     * @param   message             JSON message
+     * @param   minCompressSize     Minimum length of a compressed message or -1 to never compress
+     * @param   useDictionary       TRUE to compress using the preset dictionary instead of GZIP
+     * @return                      Encoded message
+     * @throws  IOException         Unable to encode the message
+     */
+    static Message encode(JSONStreamAware message, int minCompressSize, boolean useDictionary) throws IOException {
+        return codec.get().doEncode(message, minCompressSize, useDictionary);
+    }
+
+    /**
+     * Parse a JSON object
+     *
+     * @param   reader              JSON text reader
+     * @return                      JSON object
+     * @throws  IOException         I/O error
+     * @throws  ParseException      Invalid JSON text
+     */
+    static JSONObject parse(Reader reader) throws IOException, ParseException {
+        Object object = codec.get().parser.parse(reader);
+        if (!(object instanceof JSONObject)) {
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, object);
+        }
+        return (JSONObject) object;
+    }
+
+    private Message doEncode(JSONStreamAware message, int minCompressSize, boolean useDictionary) throws IOException {
+        textBuffer.reset(FRAME_HEADER_LENGTH);
+        try {
+            JSON.writeJSONString(message, textWriter);
+            textWriter.flush();
+        } catch (IOException | RuntimeException e) {
+            // Discard the characters buffered by the writer
+            textWriter = new OutputStreamWriter(textBuffer, StandardCharsets.UTF_8);
+            throw e;
+        }
+        byte[] text = textBuffer.buffer();
+        int length = textBuffer.size() - FRAME_HEADER_LENGTH;
+        if (minCompressSize < 0 || length < minCompressSize) {
+            return new Message(text, FRAME_HEADER_LENGTH, length, length, false);
+        }
+        gzipBuffer.reset(FRAME_HEADER_LENGTH);
+        if (!useDictionary) {
+            gzipBuffer.write(GZIP_HEADER);
+        }
+        deflater.reset();
+        if (useDictionary) {
+            deflater.setDictionary(DICTIONARY);
+        }
+        deflater.setInput(text, FRAME_HEADER_LENGTH, length);
+        deflater.finish();
+        gzipBuffer.deflate(deflater);
+        deflaterCrc.reset();
+        deflaterCrc.update(text, FRAME_HEADER_LENGTH, length);
+        gzipBuffer.writeIntLE((int) deflaterCrc.getValue());
+        if (!useDictionary) {
+            gzipBuffer.writeIntLE(length);
+        }
+        return new Message(gzipBuffer.buffer(), FRAME_HEADER_LENGTH, gzipBuffer.size() - FRAME_HEADER_LENGTH, length, true,
+                useDictionary);
+    }
+
+    /**
+     * Peer message
+     */
+    static final class Message {
+        private final byte[] bytes;
+        private final int offset;
+        private final int size;
+        private final int length;
+        private final boolean compressed;
+        private final boolean dictionary;
+
+        /**
+         * Create a message
+         *
+         * @param   bytes           Message bytes
+         * @param   offset          Offset of the message in the byte array
+         * @param   size            Number of message bytes
+         * @param   length          Length of the uncompressed message
+         * @param   compressed      TRUE if the message is compressed using GZIP
+         */
+        Message(byte[] bytes, int offset, int size, int length, boolean compressed) {
+            this(bytes, offset, size, length, compressed, false);
+        }
+
+        /**
+         * Create a message
+         *
+         * @param   bytes           Message bytes
+         * @param   offset          Offset of the message in the byte array
+         * @param   size            Number of message bytes
+         * @param   length          Length of the uncompressed message
+         * @param   compressed      TRUE if the message is compressed
+         * @param   dictionary      TRUE if the message is compressed using the preset dictionary
+         */
+        Message(byte[] bytes, int offset, int size, int length, boolean compressed, boolean dictionary) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.size = size;
+            this.length = length;
+            this.compressed = compressed || dictionary;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Return the length of the uncompressed message
+         *
+         * @return                  Message length
+         */
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * Check if the message is compressed
+         *
+         * @return                  TRUE if the message is compressed
+         */
+        boolean isCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Check if the message is compressed using the preset dictionary
+         *
+         * @return                  TRUE if the message uses the dictionary
+         */
+        boolean usesDictionary() {
+            return dictionary;
+        }
+
+        /**
+         * Return the WebSocket frame for an encoded message.  The caller fills in the frame header.
+         * <p>
+         * The frame is in the thread-local encoding buffer unless the message is a copy, so it must
+         * have been written before the next message is encoded on the same thread.  Use
+         * {@link #copyFrame()} for a frame that is written asynchronously.
+         *
+         * @return                  Frame buffer positioned at the frame header
+         */
+        ByteBuffer getFrame() {
+            if (offset != FRAME_HEADER_LENGTH) {
+                throw new IllegalStateException("No room for the frame header");
+            }
+            return ByteBuffer.wrap(bytes, 0, FRAME_HEADER_LENGTH + size);
+        }
+
+        /**
+         * Return a new WebSocket frame containing a copy of the message.  The caller fills in the frame header.
+         *
+         * @return                  Frame buffer positioned at the frame header
+         */
+        ByteBuffer copyFrame() {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + size);
+            frame.position(FRAME_HEADER_LENGTH);
+            frame.put(bytes, offset, size);
+            frame.position(0);
+            return frame;
+        }
+
+        /**
+         * Return a copy of the message that does not share the codec buffers of the current thread
+         *
+         * @return                  Message copy
+         */
+        Message copy() {
+            byte[] copy = new byte[FRAME_HEADER_LENGTH + size];
+            System.arraycopy(bytes, offset, copy, FRAME_HEADER_LENGTH, size);
+            return new Message(copy, FRAME_HEADER_LENGTH, size, length, compressed, dictionary);
+        }
+
+        /**
+         * Return a reader for the message text.  The message is decompressed while it is read
+         * using the inflater of the current thread, so the reader must be used by the current thread
+         * and must not be used after another compressed message is read.
+         *
+         * @return                  Message reader
+         * @throws  IOException     Message is not in GZIP format
+         */
+        Reader getReader() throws IOException {
+            InputStream in = dictionary ? codec.get().inflateDictionary(bytes, offset, size, length)
+                    : compressed ? codec.get().inflate(bytes, offset, size)
+                    : new ByteArrayInputStream(bytes, offset, size);
+            return new InputStreamReader(in, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parse the message
+         *
+         * @param   maxLength       Maximum message length
+         * @return                  JSON object
+         * @throws  IOException     I/O error or the message is too long
+         * @throws  ParseException  Invalid JSON text
+         */
+        JSONObject parse(int maxLength) throws IOException, ParseException {
+            try (CountingInputReader reader = new CountingInputReader(getReader(), maxLength)) {
+                return MessageCodec.parse(reader);
+            }
+        }
+
+        /**
+         * Return the message text
+         *
+         * @return                  Message text
+         */
+        @Override
+        public String toString() {
+            if (!compressed) {
+                return new String(bytes, offset, size, StandardCharsets.UTF_8);
+            }
+            StringBuilder sb = new StringBuilder(length);
+            char[] chars = new char[1024];
+            try (Reader reader = getReader()) {
+                int count;
+                while ((count = reader.read(chars)) > 0) {
+                    sb.append(chars, 0, count);
+                }
+            } catch (IOException e) {
+                sb.append(" >>> ").append(e.toString());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Create a stream decompressing a GZIP message
+     *
+     * @param   bytes               Message bytes
+     * @param   offset              Offset of the message in the byte array
+     * @param   size                Number of message bytes
+     * @return                      Input stream
+     * @throws  IOException         Message is not in GZIP format
+     */
+    private InputStream inflate(byte[] bytes, int offset, int size) throws IOException {
+        int headerLength = gzipHeaderLength(bytes, offset, size);
+        inflater.reset();
+        inflater.setInput(bytes, offset + headerLength, size - headerLength);
+        inflaterCrc.reset();
+        return new InflaterStream(bytes, offset + size - GZIP_TRAILER_LENGTH, -1);
+    }
+
+    /**
+     * Create a stream decompressing a message compressed using the preset dictionary
+     *
+     * @param   bytes               Message bytes
+     * @param   offset              Offset of the message in the byte array
+     * @param   size                Number of message bytes
+     * @param   length              Length of the uncompressed message
+     * @return                      Input stream
+     * @throws  IOException         Message is too short
+     */
+    private InputStream inflateDictionary(byte[] bytes, int offset, int size, int length) throws IOException {
+        if (size < DICTIONARY_TRAILER_LENGTH) {
+            throw new ZipException("Invalid compressed message");
+        }
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(bytes, offset, size - DICTIONARY_TRAILER_LENGTH);
+        inflaterCrc.reset();
+        return new InflaterStream(bytes, offset + size - DICTIONARY_TRAILER_LENGTH, length);
+    }
+
+    /**
+     * Get the length of a GZIP header
+     *
+     * @param   bytes               Message bytes
+     * @param   offset              Offset of the message in the byte array
+     * @param   size                Number of message bytes
+     * @return                      Header length
+     * @throws  ZipException        Message is not in GZIP format
+     */
+    private static int gzipHeaderLength(byte[] bytes, int offset, int size) throws ZipException {
+        int end = offset + size - GZIP_TRAILER_LENGTH;
+        if (size < GZIP_HEADER.length + GZIP_TRAILER_LENGTH || bytes[offset] != GZIP_HEADER[0]
+                || bytes[offset + 1] != GZIP_HEADER[1] || bytes[offset + 2] != GZIP_HEADER[2]) {
+            throw new ZipException("Not in GZIP format");
+        }
+        int flags = bytes[offset + 3] & 0xff;
+        int pos = offset + GZIP_HEADER.length;
+        if ((flags & FEXTRA) != 0) {
+            if (pos + 2 > end) {
+                throw new ZipException("Invalid GZIP header");
+            }
+            pos += 2 + ((bytes[pos] & 0xff) | ((bytes[pos + 1] & 0xff) << 8));
+        }
+        for (int flag : new int[] {FNAME, FCOMMENT}) {
+            if ((flags & flag) != 0) {
+                while (pos < end && bytes[pos] != 0) {
+                    pos++;
+                }
+                pos++;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+        if (pos > end) {
+            throw new ZipException("Invalid GZIP header");
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Input stream returning the output of the inflater and checking the message trailer.  A GZIP
+     * trailer contains the CRC-32 and length of the text, while a dictionary message trailer
+     * contains the CRC-32 and the length is provided by the frame header.
+     */
+    private final class InflaterStream extends InputStream {
+        private final byte[] bytes;
+        private final int trailerOffset;
+        private final int length;
+        private final byte[] single = new byte[1];
+
+        private InflaterStream(byte[] bytes, int trailerOffset, int length) {
+            this.bytes = bytes;
+            this.trailerOffset = trailerOffset;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                int count;
+                while ((count = inflater.inflate(b, off, len)) == 0) {
+                    if (inflater.finished()) {
+                        checkTrailer();
+                        return -1;
+                    }
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new ZipException("Unexpected end of compressed data");
+                    }
+                }
+                inflaterCrc.update(b, off, count);
+                return count;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid compressed data");
+            }
+        }
+
+        private void checkTrailer() throws ZipException {
+            int pos = trailerOffset;
+            long expectedCrc = readIntLE(bytes, pos) & 0xffffffffL;
+            long expectedSize = (length >= 0 ? length : readIntLE(bytes, pos + 4)) & 0xffffffffL;
+            if (expectedCrc != inflaterCrc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt message trailer");
+            }
+        }
+    }
+
+    private static int readIntLE(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) | ((bytes[pos + 1] & 0xff) << 8) | ((bytes[pos + 2] & 0xff) << 16) | ((bytes[pos + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Reusable output buffer with direct access to the buffer array
+     */
+    private static final class OutputBuffer extends ByteArrayOutputStream {
+
+        private OutputBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        /**
+         * Discard the buffer content and reserve space at the start of the buffer
+         *
+         * @param   reserved        Number of bytes to reserve
+         */
+        private void reset(int reserved) {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[INITIAL_SIZE];
+            }
+            count = reserved;
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+
+        private void writeIntLE(int value) {
+            write(value);
+            write(value >>> 8);
+            write(value >>> 16);
+            write(value >>> 24);
+        }
+
+        /**
+         * Write the output of a finished deflater
+         *
+         * @param   deflater        Deflater
+         */
+        private void deflate(Deflater deflater) {
+            while (!deflater.finished()) {
+                if (count == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                count += deflater.deflate(buf, count, buf.length - count);
+            }
+        }
+    }
+}
@@ -39,7 +39,9 @@ public interface Peer extends Comparable<Peer> {
         PRUNABLE(2),                    // Stores expired prunable messages
         API(4),                         // Provides open API access over http
         API_SSL(8),                     // Provides open API access over https
-        CORS(16);                       // API CORS enabled
+        CORS(16),                       // API CORS enabled
+        INVENTORY(32),                  // Accepts block and transaction announcements
+        COMPACT_BLOCKS(64);             // Accepts compact blocks
 
         private final long code;        // Service code - must be a power of 2
 
@@ -93,6 +95,8 @@ public interface Peer extends Comparable<Peer> {
 
     int getWeight();
 
+    PeerScore getScore();
+
     boolean shareAddress();
 
     boolean isBlacklisted();
@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Broadcast of blocks or transactions to some peers
+ * <p>
+ * The broadcast requests are encoded once and written to the WebSocket session of each peer
+ * without waiting for the responses.  The broadcast is sent to sendToPeersLimit peers and is
+ * sent to the next peer each time a peer fails to accept it, until sendToPeersLimit peers have
+ * accepted it or there are no more peers.  A peer without a WebSocket session is sent the requests
+ * over HTTP by the peers service.
+ * <p>
+ * The completion latency is the time from the start of the broadcast until sendToPeersLimit peers
+ * have accepted it or all peers have been tried.  The latency percentiles are calculated from the
+ * most recent broadcasts.
+ */
+final class PeerBroadcast {
+    private static final Logger LOG = getLogger(PeerBroadcast.class);
+
+    /** Number of broadcast latencies used to calculate the percentiles */
+    private static final int LATENCY_SAMPLES = 1000;
+
+    /** Recent broadcast latencies in nanoseconds */
+    private static final long[] latencies = new long[LATENCY_SAMPLES];
+
+    /** Next latency sample */
+    private static int latencyIndex;
+
+    /** Number of broadcasts */
+    private static long broadcastCount;
+
+    /** Number of broadcasts not accepted by sendToPeersLimit peers */
+    private static long incompleteCount;
+
+    /** Peers that have not been sent the broadcast */
+    private final Iterator<? extends Peer> candidates;
+
+    /** Number of peers that must accept the broadcast */
+    private final int limit;
+
+    /** Chain identifier */
+    private final UUID chainId;
+
+    /** Select the requests to send to a peer */
+    private final Function<Peer, Payload> payloadSelector;
+
+    /** Broadcast start time */
+    private final long startTime = System.nanoTime();
+
+    /** Number of peers that have accepted the broadcast */
+    private int successful;
+
+    /** Number of peers sending the broadcast */
+    private int pending;
+
+    /** Broadcast is complete */
+    private boolean done;
+
+    /**
+     * Create a broadcast
+     *
+     * @param   candidates          Peers to receive the broadcast in order of preference
+     * @param   limit               Number of peers that must accept the broadcast
+     * @param   chainId             Chain identifier
+     * @param   payloadSelector     Select the requests to send to a peer
+     */
+    PeerBroadcast(List<? extends Peer> candidates, int limit, UUID chainId, Function<Peer, Payload> payloadSelector) {
+        this.candidates = candidates.iterator();
+        this.limit = limit;
+        this.chainId = chainId;
+        this.payloadSelector = payloadSelector;
+    }
+
+    /**
+     * Start the broadcast.  This method does not wait for the peers to accept the broadcast.
+     */
+    void start() {
+        List<Peer> peers = new ArrayList<>(limit);
+        synchronized(this) {
+            while (peers.size() < limit && candidates.hasNext()) {
+                peers.add(candidates.next());
+            }
+            pending = peers.size();
+            done = peers.isEmpty();
+        }
+        peers.forEach(this::sendTo);
+    }
+
+    /**
+     * Send the broadcast to a peer
+     *
+     * @param   peer                Peer
+     */
+    private void sendTo(Peer peer) {
+        Payload payload = payloadSelector.apply(peer);
+        CompletableFuture<Boolean> result;
+        try {
+            if (payload.messages != null && peer instanceof PeerImpl && ((PeerImpl)peer).canSendAsync()) {
+                PeerImpl peerImpl = (PeerImpl)peer;
+                result = peerImpl.sendAsync(peerImpl.useMessageDictionary() ? payload.dictionaryMessages : payload.messages, chainId);
+            } else {
+                result = CompletableFuture.supplyAsync(() -> send(peer, payload.jsonRequests), Peers.peersService);
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to send broadcast to peer " + peer.getHost(), e);
+            result = CompletableFuture.completedFuture(false);
+        }
+        result.whenComplete((accepted, exc) -> completed(exc == null && accepted != null && accepted));
+    }
+
+    /**
+     * Send the requests to a peer and wait for the responses
+     *
+     * @param   peer                Peer
+     * @param   requests            Requests
+     * @return                      TRUE if the peer accepted the requests
+     */
+    private boolean send(Peer peer, List<JSONStreamAware> requests) {
+        for (JSONStreamAware request : requests) {
+            JSONObject response = peer.send(request, chainId);
+            if (response == null || response.get("error") != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A peer has accepted or failed to accept the broadcast
+     *
+     * @param   accepted            TRUE if the peer accepted the broadcast
+     */
+    private void completed(boolean accepted) {
+        Peer nextPeer = null;
+        boolean finished = false;
+        synchronized(this) {
+            pending--;
+            if (done) {
+                return;
+            }
+            if (accepted) {
+                successful++;
+            }
+            if (successful >= limit) {
+                done = true;
+            } else if (candidates.hasNext()) {
+                nextPeer = candidates.next();
+                pending++;
+            } else if (pending == 0) {
+                done = true;
+            }
+            finished = done;
+        }
+        if (finished) {
+            addLatency(System.nanoTime() - startTime, successful >= limit);
+        }
+        if (nextPeer != null) {
+            sendTo(nextPeer);
+        }
+    }
+
+    /**
+     * Add a broadcast latency
+     *
+     * @param   latency             Latency in nanoseconds
+     * @param   complete            TRUE if sendToPeersLimit peers accepted the broadcast
+     */
+    private static synchronized void addLatency(long latency, boolean complete) {
+        latencies[latencyIndex] = latency;
+        latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+        broadcastCount++;
+        if (!complete) {
+            incompleteCount++;
+        }
+    }
+
+    /**
+     * Return the broadcast statistics
+     *
+     * @return                      Broadcast count and latency percentiles in milliseconds
+     */
+    static JSONObject getStatistics() {
+        long[] samples;
+        JSONObject json = new JSONObject();
+        synchronized(PeerBroadcast.class) {
+            samples = Arrays.copyOf(latencies, (int)Math.min(broadcastCount, LATENCY_SAMPLES));
+            json.put("broadcasts", broadcastCount);
+            json.put("incompleteBroadcasts", incompleteCount);
+        }
+        Arrays.sort(samples);
+        json.put("latency50th", percentile(samples, 50) / 1000000.0);
+        json.put("latency90th", percentile(samples, 90) / 1000000.0);
+        json.put("latency99th", percentile(samples, 99) / 1000000.0);
+        json.put("latencyMax", (samples.length > 0 ? samples[samples.length - 1] : 0) / 1000000.0);
+        return json;
+    }
+
+    /**
+     * Return a percentile using the nearest rank
+     *
+     * @param   samples             Sorted samples
+     * @param   percent             Percentile
+     * @return                      Sample value or 0 if there are no samples
+     */
+    static long percentile(long[] samples, int percent) {
+        if (samples.length == 0) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(percent / 100.0 * samples.length);
+        return samples[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Broadcast requests prepared for sending
+     */
+    static final class Payload {
+
+        /** Requests sent over HTTP */
+        private final List<JSONStreamAware> jsonRequests;
+
+        /** Encoded requests sent over WebSocket or null if the requests could not be encoded */
+        private final List<MessageCodec.Message> messages;
+
+        /** Requests encoded using the preset compression dictionary */
+        private final List<MessageCodec.Message> dictionaryMessages;
+
+        private Payload(List<JSONStreamAware> jsonRequests, List<MessageCodec.Message> messages,
+                        List<MessageCodec.Message> dictionaryMessages) {
+            this.jsonRequests = jsonRequests;
+            this.messages = messages;
+            this.dictionaryMessages = dictionaryMessages;
+        }
+
+        /**
+         * Prepare the requests.  The chain identifier is added to each request.  The requests are
+         * encoded once for peers supporting dictionary compression and once for earlier peers.
+         *
+         * @param   requests            Requests
+         * @param   chainId             Chain identifier
+         * @return                      Prepared requests
+         */
+        static Payload create(List<JSONObject> requests, UUID chainId) {
+            List<JSONStreamAware> jsonRequests = new ArrayList<>(requests.size());
+            List<MessageCodec.Message> messages = null;
+            List<MessageCodec.Message> dictionaryMessages = null;
+            for (JSONObject request : requests) {
+                request.put("chainId", chainId);
+                jsonRequests.add(JSON.prepareRequest(request));
+            }
+            if (Peers.useWebSockets) {
+                messages = new ArrayList<>(requests.size());
+                dictionaryMessages = new ArrayList<>(requests.size());
+                int minCompressSize = Peers.isGzipEnabled ? Peers.MIN_COMPRESS_SIZE : -1;
+                try {
+                    for (JSONStreamAware request : jsonRequests) {
+                        messages.add(MessageCodec.encode(request, minCompressSize, false).copy());
+                        dictionaryMessages.add(MessageCodec.encode(request, minCompressSize, true).copy());
+                    }
+                } catch (IOException e) {
+                    LOG.debug("Unable to encode broadcast request", e);
+                    messages = null;
+                    dictionaryMessages = null;
+                }
+            }
+            return new Payload(jsonRequests, messages, dictionaryMessages);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -36,11 +37,17 @@ final class PeerDb {
         private final String address;
         private final long services;
         private final int lastUpdated;
+        private final PeerScore score;
 
         Entry(String address, long services, int lastUpdated) {
+            this(address, services, lastUpdated, null);
+        }
+
+        Entry(String address, long services, int lastUpdated, PeerScore score) {
             this.address = address;
             this.services = services;
             this.lastUpdated = lastUpdated;
+            this.score = score;
         }
 
         public String getAddress() {
@@ -55,6 +62,10 @@ final class PeerDb {
             return lastUpdated;
         }
 
+        public PeerScore getScore() {
+            return score;
+        }
+
         @Override
         public int hashCode() {
             return address.hashCode();
@@ -81,7 +92,13 @@ final class PeerDb {
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM peer");
              ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-                peers.add(new Entry(rs.getString("address"), rs.getLong("services"), rs.getInt("last_updated")));
+                PeerScore score = null;
+                double errorRate = rs.getDouble("error_rate");
+                if (!rs.wasNull()) {
+                    score = new PeerScore(getDouble(rs, "latency"), getDouble(rs, "throughput"), errorRate,
+                            rs.getDouble("fork_penalty"));
+                }
+                peers.add(new Entry(rs.getString("address"), rs.getLong("services"), rs.getInt("last_updated"), score));
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -89,6 +106,11 @@ final class PeerDb {
         return peers;
     }
 
+    private static double getDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? -1 : value;
+    }
+
     static void deletePeers(Collection<Entry> peers) {
         try (Connection con = Db.getDb().getConnection();
              PreparedStatement pstmt = con.prepareStatement("DELETE FROM peer WHERE address = ?")) {
@@ -128,4 +150,30 @@ final class PeerDb {
             throw new RuntimeException(e.toString(), e);
         }
     }
+
+    static void updateScores(Collection<PeerImpl> peers) {
+        try (Connection con = Db.getDb().getConnection();
+                PreparedStatement pstmt = con.prepareStatement("UPDATE peer SET latency = ?, throughput = ?, "
+                        + "error_rate = ?, fork_penalty = ? WHERE address = ?")) {
+            for (PeerImpl peer : peers) {
+                PeerScore score = peer.getScore();
+                setDouble(pstmt, 1, score.getLatency());
+                setDouble(pstmt, 2, score.getThroughput());
+                pstmt.setDouble(3, score.getErrorRate());
+                pstmt.setDouble(4, score.getForkPenalty());
+                pstmt.setString(5, peer.getAnnouncedAddress());
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    private static void setDouble(PreparedStatement pstmt, int index, double value) throws SQLException {
+        if (value < 0) {
+            pstmt.setNull(index, Types.DOUBLE);
+        } else {
+            pstmt.setDouble(index, value);
+        }
+    }
 }
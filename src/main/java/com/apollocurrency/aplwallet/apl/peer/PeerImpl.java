@@ -30,7 +30,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.io.StringReader;
 import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
@@ -42,11 +42,14 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPInputStream;
 
 import com.apollocurrency.aplwallet.apl.Account;
@@ -65,13 +68,20 @@ import com.apollocurrency.aplwallet.apl.util.CountingOutputWriter;
 import com.apollocurrency.aplwallet.apl.util.JSON;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
-import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 
 final class PeerImpl implements Peer {
     private static final Logger LOG = getLogger(PeerImpl.class);
 
+    /** Maximum number of broadcasts sent to the peer at the same time */
+    private static final int MAX_BROADCASTS_IN_FLIGHT = 4;
+
+    /** Error responses that don't affect the peer score since the peer is working normally */
+    private static final Set<String> BENIGN_ERRORS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Errors.DOWNLOADING, Errors.LIGHT_CLIENT, Errors.UPDATING, Errors.MAX_INBOUND_CONNECTIONS,
+            Errors.TOO_MANY_BLOCKS_REQUESTED, Errors.SEQUENCE_ERROR)));
+
     private final String host;
     private final PeerWebSocket webSocket;
     private volatile PeerWebSocket inboundSocket;
@@ -102,6 +112,8 @@ final class PeerImpl implements Peer {
     private volatile long services;
     private volatile BlockchainState blockchainState;
     private volatile UUID chainId;
+    private final PeerScore score = new PeerScore();
+    private final PeerOutboundQueue outboundQueue = new PeerOutboundQueue(Peers.outboundQueueSize, MAX_BROADCASTS_IN_FLIGHT);
 
     PeerImpl(String host, String announcedAddress) {
         this.host = host;
@@ -332,6 +344,11 @@ final class PeerImpl implements Peer {
         return port <= 0 ? Peers.getDefaultPeerPort() : port;
     }
 
+    @Override
+    public PeerScore getScore() {
+        return score;
+    }
+
     @Override
     public Hallmark getHallmark() {
         return hallmark;
@@ -489,36 +506,42 @@ final class PeerImpl implements Peer {
         boolean showLog = false;
         HttpURLConnection connection = null;
         int communicationLoggingMask = Peers.communicationLoggingMask;
+        long startTime = System.currentTimeMillis();
+        long responseLength = 0;
 
         try {
             //
-            // Create a new WebSocket session if we don't have one
+            // Create a new WebSocket session if we don't have one.  The request is sent using HTTP
+            // if the session can't be created, but the session will be created again for a later
+            // request unless the peer doesn't accept WebSocket connections.
             //
-            if (useWebSocket && !webSocket.isOpen())
-                useWebSocket = webSocket.startClient(URI.create("ws://" + host + ":" + getPort() + "/apl"));
+            boolean sendWebSocket = useWebSocket &&
+                    (webSocket.isOpen() || webSocket.startClient(URI.create("ws://" + host + ":" + getPort() + "/apl")));
+            if (useWebSocket && !sendWebSocket && !webSocket.isSupported())
+                useWebSocket = false;
             //
             // Send the request and process the response
             //
-            if (useWebSocket) {
+            if (sendWebSocket) {
                 //
                 // Send the request using the WebSocket session
                 //
-                StringWriter wsWriter = new StringWriter(1000);
-                request.writeJSONString(wsWriter);
-                String wsRequest = wsWriter.toString();
+                MessageCodec.Message wsRequest = MessageCodec.encode(request, Peers.isGzipEnabled ? Peers.MIN_COMPRESS_SIZE : -1,
+                        webSocket.useDictionary());
                 if (communicationLoggingMask != 0)
                     log = "WebSocket " + host + ": " + wsRequest;
-                String wsResponse = webSocket.doPost(wsRequest);
-                updateUploadedVolume(wsRequest.length());
+                MessageCodec.Message wsResponse = webSocket.doPost(wsRequest);
+                updateUploadedVolume(wsRequest.getLength());
                 if (maxResponseSize > 0) {
                     if ((communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
                         log += " >>> " + wsResponse;
                         showLog = true;
                     }
-                    if (wsResponse.length() > maxResponseSize)
-                        throw new AplException.AplIOException("Maximum size exceeded: " + wsResponse.length());
-                    response = (JSONObject)JSONValue.parseWithException(wsResponse);
-                    updateDownloadedVolume(wsResponse.length());
+                    if (wsResponse.getLength() > maxResponseSize)
+                        throw new AplException.AplIOException("Maximum size exceeded: " + wsResponse.getLength());
+                    response = wsResponse.parse(maxResponseSize);
+                    updateDownloadedVolume(wsResponse.getLength());
+                    responseLength = wsResponse.getLength();
                 }
             } else {
                 //
@@ -559,16 +582,18 @@ final class PeerImpl implements Peer {
                                               cis.getCount(), (double)cis.getCount()/(double) responseValue.length());
                             log += " >>> " + responseValue;
                             showLog = true;
-                            response = (JSONObject) JSONValue.parseWithException(responseValue);
+                            response = MessageCodec.parse(new StringReader(responseValue));
                             updateDownloadedVolume(responseValue.length());
+                            responseLength = responseValue.length();
                         } else {
                             InputStream responseStream = connection.getInputStream();
                             if ("gzip".equals(connection.getHeaderField("Content-Encoding")))
                                 responseStream = new GZIPInputStream(responseStream);
                             try (Reader reader = new BufferedReader(new InputStreamReader(responseStream, "UTF-8"))) {
                                 CountingInputReader cir = new CountingInputReader(reader, maxResponseSize);
-                                response = (JSONObject)JSONValue.parseWithException(cir);
+                                response = MessageCodec.parse(cir);
                                 updateDownloadedVolume(cir.getCount());
+                                responseLength = cir.getCount();
                             }
                         }
                     }
@@ -619,6 +644,16 @@ final class PeerImpl implements Peer {
                 connection.disconnect();
             }
         }
+        //
+        // Update the peer score.  A peer returning a benign error such as a blockchain download
+        // in progress is not penalized, only transport failures and invalid responses are.
+        //
+        Object error = response != null ? response.get("error") : null;
+        if (response != null && error == null) {
+            score.responseReceived(System.currentTimeMillis() - startTime, responseLength);
+        } else if (maxResponseSize > 0 && !BENIGN_ERRORS.contains(error)) {
+            score.requestFailed();
+        }
         if (showLog) {
             LOG.info(log + "\n");
         }
@@ -626,6 +661,90 @@ final class PeerImpl implements Peer {
         return response;
     }
 
+    /**
+     * Return the outbound broadcast queue
+     *
+     * @return                      Outbound queue
+     */
+    PeerOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    /**
+     * Check if broadcasts can be sent to the peer without blocking
+     *
+     * @return                      TRUE if the outbound WebSocket session is open
+     */
+    boolean canSendAsync() {
+        return useWebSocket && webSocket.isOpen();
+    }
+
+    /**
+     * Check if broadcasts sent to the peer can be compressed using the preset dictionary
+     *
+     * @return                      TRUE if the outbound WebSocket session supports dictionary compression
+     */
+    boolean useMessageDictionary() {
+        return webSocket.useDictionary();
+    }
+
+    /**
+     * Send broadcast requests using the outbound WebSocket session without waiting for the responses.
+     * The broadcast waits in the outbound queue if the peer has too many broadcasts in progress.
+     *
+     * @param   requests            Encoded requests
+     * @param   targetChainId       Chain identifier
+     * @return                      TRUE if the peer accepted all of the requests
+     */
+    CompletableFuture<Boolean> sendAsync(List<MessageCodec.Message> requests, UUID targetChainId) {
+        if (!targetChainId.equals(this.chainId)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return outboundQueue.submit(() -> {
+            CompletableFuture<Boolean> result = CompletableFuture.completedFuture(true);
+            for (MessageCodec.Message request : requests) {
+                result = result.thenCompose(accepted -> !accepted ? CompletableFuture.completedFuture(false) :
+                        webSocket.postAsync(request, Peers.broadcastTimeout)
+                                .thenApply(response -> checkBroadcastResponse(request, response)));
+            }
+            return result.exceptionally(exc -> {
+                Throwable cause = (exc.getCause() != null ? exc.getCause() : exc);
+                if (!(cause instanceof SocketTimeoutException || cause instanceof SocketException)) {
+                    LOG.debug(String.format("Error sending broadcast to peer %s: %s", host, cause.toString()));
+                }
+                deactivate();
+                return false;
+            });
+        });
+    }
+
+    /**
+     * Check the response to a broadcast request
+     *
+     * @param   request             Request message
+     * @param   response            Response message
+     * @return                      TRUE if the peer accepted the request
+     */
+    private boolean checkBroadcastResponse(MessageCodec.Message request, MessageCodec.Message response) {
+        updateUploadedVolume(request.getLength());
+        updateDownloadedVolume(response.getLength());
+        JSONObject json;
+        try {
+            json = response.parse(Peers.MAX_RESPONSE_SIZE);
+        } catch (IOException | ParseException e) {
+            LOG.debug(String.format("Invalid broadcast response from peer %s: %s", host, e.toString()));
+            deactivate();
+            return false;
+        }
+        if (json.get("error") != null) {
+            LOG.debug("Peer " + host + " version " + version + " returned error: " +
+                    json.toJSONString() + " for broadcast, disconnecting");
+            deactivate();
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public int compareTo(Peer o) {
         if (getWeight() > o.getWeight()) {
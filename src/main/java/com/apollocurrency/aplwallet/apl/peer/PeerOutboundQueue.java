@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Outbound broadcast queue for a peer
+ * <p>
+ * At most maxInFlight broadcasts are sent to the peer at the same time.  Additional broadcasts
+ * wait in the queue and are sent as earlier broadcasts complete.  When the queue is full, the
+ * oldest waiting broadcast is dropped to make room for the new broadcast, so a slow peer falls
+ * behind on older blocks and transactions instead of delaying the newest ones.  A dropped
+ * broadcast completes with FALSE.
+ */
+final class PeerOutboundQueue {
+
+    /** Maximum number of waiting broadcasts */
+    private final int capacity;
+
+    /** Maximum number of broadcasts in progress */
+    private final int maxInFlight;
+
+    /** Waiting broadcasts */
+    private final Deque<Entry> queue = new ArrayDeque<>();
+
+    /** Number of broadcasts in progress */
+    private int inFlight;
+
+    /** Number of dropped broadcasts */
+    private long dropped;
+
+    /**
+     * Create the queue
+     *
+     * @param   capacity            Maximum number of waiting broadcasts
+     * @param   maxInFlight         Maximum number of broadcasts in progress
+     */
+    PeerOutboundQueue(int capacity, int maxInFlight) {
+        this.capacity = capacity;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Queue a broadcast
+     *
+     * @param   send                Start sending the broadcast, returning TRUE when the peer has accepted it
+     * @return                      Broadcast result
+     */
+    CompletableFuture<Boolean> submit(Supplier<CompletableFuture<Boolean>> send) {
+        Entry entry = new Entry(send);
+        Entry droppedEntry = null;
+        boolean startNow;
+        synchronized(this) {
+            startNow = (inFlight < maxInFlight);
+            if (startNow) {
+                inFlight++;
+            } else {
+                if (queue.size() >= capacity) {
+                    droppedEntry = queue.pollFirst();
+                    dropped++;
+                }
+                queue.addLast(entry);
+            }
+        }
+        if (droppedEntry != null) {
+            droppedEntry.result.complete(false);
+        }
+        if (startNow) {
+            start(entry);
+        }
+        return entry.result;
+    }
+
+    /**
+     * Start sending a broadcast.  The next waiting broadcast is started when it completes.
+     *
+     * @param   entry               Broadcast
+     */
+    private void start(Entry entry) {
+        CompletableFuture<Boolean> future;
+        try {
+            future = entry.send.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.completedFuture(false);
+        }
+        future.whenComplete((result, exc) -> {
+            entry.result.complete(exc == null && result != null && result);
+            Entry next;
+            synchronized(this) {
+                next = queue.pollFirst();
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            if (next != null) {
+                start(next);
+            }
+        });
+    }
+
+    /**
+     * Return the number of waiting broadcasts
+     *
+     * @return                      Queue size
+     */
+    synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Return the number of dropped broadcasts
+     *
+     * @return                      Dropped broadcasts
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Queued broadcast
+     */
+    private static final class Entry {
+        private final Supplier<CompletableFuture<Boolean>> send;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Entry(Supplier<CompletableFuture<Boolean>> send) {
+            this.send = send;
+        }
+    }
+}
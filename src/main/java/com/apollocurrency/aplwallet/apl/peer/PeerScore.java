@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+/**
+ * Peer quality score
+ * <p>
+ * The score combines the response latency, the download throughput, the error rate and the
+ * fork behaviour of a peer.  Latency, throughput and error rate are exponential moving averages,
+ * so a peer recovers as it returns good responses.  A peer is penalized each time it advertises a
+ * chain we don't accept and the penalty decays with a one hour half-life.
+ * <p>
+ * The score is between MIN_SCORE and 1 and is used as a selection weight, so a slow or distant peer
+ * is selected less often but is never excluded, while a peer feeding us a bad fork is quickly demoted
+ * without being blacklisted.
+ */
+public final class PeerScore {
+
+    /** Weight of a new sample in the moving averages */
+    private static final double ALPHA = 0.1;
+
+    /** Latency in milliseconds giving a latency factor of 0.5 */
+    private static final double REFERENCE_LATENCY = 1000;
+
+    /** Throughput in bytes per second giving a throughput factor of 0.5 */
+    private static final double REFERENCE_THROUGHPUT = 256 * 1024;
+
+    /** Responses at least this long are throughput samples, shorter responses are latency samples */
+    static final int THROUGHPUT_MIN_LENGTH = 64 * 1024;
+
+    /** Fork penalty half-life in milliseconds */
+    private static final long FORK_HALF_LIFE = 60 * 60 * 1000;
+
+    /** Minimum score */
+    static final double MIN_SCORE = 0.01;
+
+    /** Average latency in milliseconds or -1 if there are no samples */
+    private double latency = -1;
+
+    /** Average throughput in bytes per second or -1 if there are no samples */
+    private double throughput = -1;
+
+    /** Average error rate */
+    private double errorRate;
+
+    /** Fork penalty at forkTime */
+    private double forkPenalty;
+
+    /** Time of the last fork penalty */
+    private long forkTime;
+
+    /**
+     * Create a score for a new peer
+     */
+    PeerScore() {
+    }
+
+    /**
+     * Create a saved score
+     *
+     * @param   latency             Average latency in milliseconds or -1
+     * @param   throughput          Average throughput in bytes per second or -1
+     * @param   errorRate           Average error rate
+     * @param   forkPenalty         Fork penalty
+     */
+    PeerScore(double latency, double throughput, double errorRate, double forkPenalty) {
+        this.latency = latency;
+        this.throughput = throughput;
+        this.errorRate = errorRate;
+        this.forkPenalty = forkPenalty;
+        this.forkTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Restore a saved score
+     *
+     * @param   score               Saved score
+     */
+    synchronized void restore(PeerScore score) {
+        synchronized(score) {
+            latency = score.latency;
+            throughput = score.throughput;
+            errorRate = score.errorRate;
+            forkPenalty = score.forkPenalty;
+            forkTime = score.forkTime;
+        }
+    }
+
+    /**
+     * A response has been received
+     *
+     * @param   time                Response time in milliseconds
+     * @param   length              Response length
+     */
+    synchronized void responseReceived(long time, long length) {
+        if (length >= THROUGHPUT_MIN_LENGTH) {
+            double sample = length * 1000.0 / Math.max(time, 1);
+            throughput = throughput < 0 ? sample : throughput + ALPHA * (sample - throughput);
+        } else {
+            latency = latency < 0 ? time : latency + ALPHA * (time - latency);
+        }
+        errorRate -= ALPHA * errorRate;
+    }
+
+    /**
+     * A request failed
+     */
+    synchronized void requestFailed() {
+        errorRate += ALPHA * (1 - errorRate);
+    }
+
+    /**
+     * The peer advertised a chain that we did not accept or returned blocks from a different fork
+     */
+    public synchronized void forkDetected() {
+        long now = System.currentTimeMillis();
+        forkPenalty = getForkPenalty(now) + 1;
+        forkTime = now;
+    }
+
+    /**
+     * Return the score
+     *
+     * @return                      Score between MIN_SCORE and 1
+     */
+    public synchronized double getValue() {
+        double latencyFactor = latency < 0 ? 0.5 : REFERENCE_LATENCY / (REFERENCE_LATENCY + latency);
+        double throughputFactor = throughput < 0 ? 0.5 : throughput / (throughput + REFERENCE_THROUGHPUT);
+        double score = (latencyFactor + throughputFactor) / 2 * (1 - errorRate)
+                / (1 + getForkPenalty(System.currentTimeMillis()));
+        return Math.max(score, MIN_SCORE);
+    }
+
+    /**
+     * Return the average latency
+     *
+     * @return                      Latency in milliseconds or -1 if there are no samples
+     */
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    /**
+     * Return the average throughput
+     *
+     * @return                      Throughput in bytes per second or -1 if there are no samples
+     */
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Return the average error rate
+     *
+     * @return                      Error rate between 0 and 1
+     */
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Return the current fork penalty
+     *
+     * @return                      Fork penalty
+     */
+    public synchronized double getForkPenalty() {
+        return getForkPenalty(System.currentTimeMillis());
+    }
+
+    private double getForkPenalty(long now) {
+        if (forkPenalty == 0) {
+            return 0;
+        }
+        return forkPenalty * Math.pow(0.5, (double)Math.max(now - forkTime, 0) / FORK_HALF_LIFE);
+    }
+}
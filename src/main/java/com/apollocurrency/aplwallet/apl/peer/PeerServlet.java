@@ -27,8 +27,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,7 +45,6 @@ import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
-import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 
@@ -69,8 +66,10 @@ public final class PeerServlet extends WebSocketServlet {
     static {
         Map<String,PeerRequestHandler> map = new HashMap<>();
         map.put("addPeers", AddPeers.getInstance());
+        map.put("getBlockTransactions", GetBlockTransactions.getInstance());
         map.put("getCumulativeDifficulty", GetCumulativeDifficulty.getInstance());
         map.put("getInfo", GetInfo.getInstance());
+        map.put("getInventory", GetInventory.getInstance());
         map.put("getMilestoneBlockIds", GetMilestoneBlockIds.getInstance());
         map.put("getNextBlockIds", GetNextBlockIds.getInstance());
         map.put("getNextBlocks", GetNextBlocks.getInstance());
@@ -78,6 +77,8 @@ public final class PeerServlet extends WebSocketServlet {
         map.put("getTransactions", GetTransactions.getInstance());
         map.put("getUnconfirmedTransactions", GetUnconfirmedTransactions.getInstance());
         map.put("processBlock", ProcessBlock.getInstance());
+        map.put("processCompactBlock", ProcessCompactBlock.getInstance());
+        map.put("processInventory", ProcessInventory.getInstance());
         map.put("processTransactions", ProcessTransactions.getInstance());
         peerRequestHandlers = Collections.unmodifiableMap(map);
     }
@@ -224,7 +225,7 @@ public final class PeerServlet extends WebSocketServlet {
      * @param   requestId           Request identifier
      * @param   request             Request message
      */
-    void doPost(PeerWebSocket webSocket, long requestId, String request) {
+    void doPost(PeerWebSocket webSocket, long requestId, MessageCodec.Message request) {
         JSONStreamAware jsonResponse;
         //
         // Process the peer request
@@ -239,7 +240,13 @@ public final class PeerServlet extends WebSocketServlet {
             jsonResponse = UNKNOWN_PEER;
         } else {
             peer.setInboundWebSocket(webSocket);
-            jsonResponse = process(peer, new StringReader(request));
+            try {
+                jsonResponse = process(peer, request.getReader());
+            } catch (IOException e) {
+                LOG.debug("Error processing POST request: " + e.toString());
+                peer.blacklist(e);
+                jsonResponse = error(e);
+            }
             if (chainIdProtected()) {
 
             }
@@ -249,12 +256,11 @@ public final class PeerServlet extends WebSocketServlet {
         //
 
         try {
-            StringWriter writer = new StringWriter(1000);
-            JSON.writeJSONString(jsonResponse, writer);
-            String response = writer.toString();
+            MessageCodec.Message response = MessageCodec.encode(jsonResponse, Peers.isGzipEnabled ? Peers.MIN_COMPRESS_SIZE : -1,
+                    webSocket.useDictionary());
             webSocket.sendResponse(requestId, response);
             if (peer != null) {
-                peer.updateUploadedVolume(response.length());
+                peer.updateUploadedVolume(response.getLength());
             }
         } catch (RuntimeException | IOException e) {
             processException(peer, e);
@@ -283,7 +289,7 @@ public final class PeerServlet extends WebSocketServlet {
         // Process the request
         //
         try (CountingInputReader cr = new CountingInputReader(inputReader, Peers.MAX_REQUEST_SIZE)) {
-            JSONObject request = (JSONObject)JSONValue.parseWithException(cr);
+            JSONObject request = MessageCodec.parse(cr);
             peer.updateDownloadedVolume(cr.getCount());
             if (request.get("protocol") == null || ((Number)request.get("protocol")).intValue() != 1) {
                 LOG.debug("Unsupported protocol " + request.get("protocol"));
@@ -22,9 +22,6 @@ package com.apollocurrency.aplwallet.apl.peer;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ProtocolException;
@@ -34,21 +31,23 @@ import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import com.apollocurrency.aplwallet.apl.util.QueuedThreadPool;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.UpgradeException;
 import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
@@ -59,6 +58,16 @@ import org.slf4j.Logger;
 
 /**
  * PeerWebSocket represents an HTTP/HTTPS upgraded connection
+ * <p>
+ * Each binary WebSocket message contains a 20-byte header followed by the encoded JSON message.
+ * The header contains the message version supported by the sender, the request identifier used
+ * to match a response to its request, the message flags and the length of the uncompressed
+ * message.  Requests are not serialized, so multiple requests can be in progress at the same time
+ * and the responses can be returned in any order.
+ * <p>
+ * Version 2 adds messages compressed using the preset dictionary.  A peer uses version 1 until it
+ * receives a message showing the other peer supports version 2, so a connection to an earlier version
+ * continues to use GZIP compression.
  */
 @WebSocket
 public class PeerWebSocket {
@@ -67,10 +76,16 @@ public class PeerWebSocket {
     /** Compressed message flag */
     private static final int FLAG_COMPRESSED = 1;
 
+    /** Dictionary compressed message flag */
+    private static final int FLAG_DICTIONARY = 2;
+
     private static final int FLAG_NOT_COMPRESSED = 0;
 
     /** Our WebSocket message version */
-    private static final int VERSION = 1;
+    private static final int VERSION = 2;
+
+    /** First WebSocket message version supporting dictionary compression */
+    private static final int DICTIONARY_VERSION = 2;
 
     /** Create the WebSocket client */
     private static WebSocketClient peerClient;
@@ -88,7 +103,10 @@ public class PeerWebSocket {
     }
 
     /** Negotiated WebSocket message version */
-    private int version = VERSION;
+    private volatile int version = 1;
+
+    /** Peer accepts WebSocket connections */
+    private volatile boolean supported = true;
 
     /** Thread pool for server request processing */
     private static final ExecutorService threadPool = new QueuedThreadPool(
@@ -104,6 +122,13 @@ public class PeerWebSocket {
     /** WebSocket lock */
     private final ReentrantLock lock = new ReentrantLock();
 
+    /** Scheduler for POST response timeouts */
+    private static final ScheduledExecutorService timeoutService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Peers websocket timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /** Pending POST request map */
     private final ConcurrentHashMap<Long, PostRequest> requestMap = new ConcurrentHashMap<>();
 
@@ -163,6 +188,7 @@ public class PeerWebSocket {
         } catch (ExecutionException exc) {
             if (exc.getCause() instanceof UpgradeException) {
                 // We will use HTTP
+                supported = false;
             } else if (exc.getCause() instanceof IOException) {
                 // Report I/O exception
                 throw (IOException)exc.getCause();
@@ -197,6 +223,7 @@ public class PeerWebSocket {
     @OnWebSocketConnect
     public void onConnect(Session session) {
         this.session = session;
+        this.version = 1;
         if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
             LOG.debug(String.format("%s WebSocket connection with %s completed",
                     peerServlet != null ? "Inbound" : "Outbound",
@@ -214,6 +241,25 @@ public class PeerWebSocket {
         return ((s=session) != null && s.isOpen());
     }
 
+    /**
+     * Check if the peer accepts WebSocket connections.  This is FALSE if the peer
+     * rejected the connection upgrade, so we should continue to use HTTP.
+     *
+     * @return                      TRUE if WebSocket connections are supported
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Check if messages can be compressed using the preset dictionary
+     *
+     * @return                      TRUE if the peer supports dictionary compression
+     */
+    public boolean useDictionary() {
+        return version >= DICTIONARY_VERSION;
+    }
+
     /**
      * Return the remote address for this connection
      *
@@ -233,55 +279,100 @@ public class PeerWebSocket {
      * @return                      Response message
      * @throws  IOException         I/O error occurred
      */
-    public String doPost(String request) throws IOException {
+    public MessageCodec.Message doPost(MessageCodec.Message request) throws IOException {
+        CompletableFuture<MessageCodec.Message> response = post(request.getFrame(), request, Peers.readTimeout, true);
+        try {
+            return response.get();
+        } catch (InterruptedException exc) {
+            throw new SocketTimeoutException("WebSocket POST interrupted");
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof IOException) {
+                throw (IOException)exc.getCause();
+            }
+            throw new IOException(exc.getCause().toString(), exc.getCause());
+        }
+    }
+
+    /**
+     * Send a POST request without waiting for the response.  The request is sent using a
+     * copy of the message, so the same message can be sent to multiple peers.  This method
+     * is used by the connection originator.
+     *
+     * @param   request             Request message
+     * @param   timeout             Response timeout in milliseconds
+     * @return                      Response message
+     */
+    public CompletableFuture<MessageCodec.Message> postAsync(MessageCodec.Message request, long timeout) {
+        return post(request.copyFrame(), request, timeout, false);
+    }
+
+    /**
+     * Send a POST request.  The returned future is completed when the response is received,
+     * the write fails or the response timeout expires.
+     *
+     * A frame in the thread-local encoding buffer must be written before returning, since the
+     * buffer is reused by the next encode on the same thread.  A copied frame is written
+     * asynchronously.
+     *
+     * @param   frame               Frame buffer for the request
+     * @param   request             Request message
+     * @param   timeout             Response timeout in milliseconds
+     * @param   blocking            TRUE to wait until the request has been written
+     * @return                      Response message
+     */
+    private CompletableFuture<MessageCodec.Message> post(ByteBuffer frame, MessageCodec.Message request, long timeout,
+                                                         boolean blocking) {
+        CompletableFuture<MessageCodec.Message> response = new CompletableFuture<>();
         long requestId;
-        //
-        // Send the POST request
-        //
         lock.lock();
         try {
             if (session == null || !session.isOpen()) {
                 throw new IOException("WebSocket session is not open");
             }
             requestId = nextRequestId++;
-            byte[] requestBytes = request.getBytes("UTF-8");
-            int requestLength = requestBytes.length;
-            int flags = 0;
-            if (Peers.isGzipEnabled && requestLength >= Peers.MIN_COMPRESS_SIZE) {
-                flags |= FLAG_COMPRESSED;
-                ByteArrayOutputStream outStream = new ByteArrayOutputStream(requestLength);
-                try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                    gzipStream.write(requestBytes);
+            setFrameHeader(frame, requestId, request);
+            requestMap.put(requestId, new PostRequest(response));
+            try {
+                if (blocking) {
+                    session.getRemote().sendBytes(frame);
+                } else {
+                    session.getRemote().sendBytes(frame, new WriteCallback() {
+                        @Override
+                        public void writeFailed(Throwable exc) {
+                            PostRequest postRequest = requestMap.remove(requestId);
+                            if (postRequest != null) {
+                                postRequest.complete(new SocketException(exc.getMessage()));
+                            }
+                        }
+
+                        @Override
+                        public void writeSuccess() {
+                        }
+                    });
                 }
-                requestBytes = outStream.toByteArray();
-            }
-            ByteBuffer buf = ByteBuffer.allocate(requestBytes.length + 20);
-            buf.putInt(version)
-               .putLong(requestId)
-               .putInt(flags)
-               .putInt(requestLength)
-               .put(requestBytes)
-               .flip();
-            if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                throw new ProtocolException("POST request length exceeds max message size");
+            } catch (WebSocketException | IOException exc) {
+                requestMap.remove(requestId);
+                throw exc;
             }
-            session.getRemote().sendBytes(buf);
         } catch (WebSocketException exc) {
-            throw new SocketException(exc.getMessage());
+            response.completeExceptionally(new SocketException(exc.getMessage()));
+            return response;
+        } catch (IOException exc) {
+            response.completeExceptionally(exc);
+            return response;
         } finally {
             lock.unlock();
         }
         //
-        // Get the response
+        // Complete the request if the response is not received in time
         //
-        String response;
-        try {
-            PostRequest postRequest = new PostRequest();
-            requestMap.put(requestId, postRequest);
-            response = postRequest.get(Peers.readTimeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException exc) {
-            throw new SocketTimeoutException("WebSocket POST interrupted");
-        }
+        ScheduledFuture<?> timer = timeoutService.schedule(() -> {
+            PostRequest postRequest = requestMap.remove(requestId);
+            if (postRequest != null) {
+                postRequest.complete(new SocketTimeoutException("WebSocket read timeout exceeded"));
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        response.whenComplete((message, exc) -> timer.cancel(false));
         return response;
     }
 
@@ -294,32 +385,11 @@ public class PeerWebSocket {
      * @param   response            Response message
      * @throws  IOException         I/O error occurred
      */
-    public void sendResponse(long requestId, String response) throws IOException {
+    public void sendResponse(long requestId, MessageCodec.Message response) throws IOException {
         lock.lock();
         try {
             if (session != null && session.isOpen()) {
-                byte[] responseBytes = response.getBytes("UTF-8");
-                int responseLength = responseBytes.length;
-                int flags = 0;
-                if (Peers.isGzipEnabled && responseLength >= Peers.MIN_COMPRESS_SIZE) {
-                    flags |= FLAG_COMPRESSED;
-                    ByteArrayOutputStream outStream = new ByteArrayOutputStream(responseLength);
-                    try (GZIPOutputStream gzipStream = new GZIPOutputStream(outStream)) {
-                        gzipStream.write(responseBytes);
-                    }
-                    responseBytes = outStream.toByteArray();
-                }
-                ByteBuffer buf = ByteBuffer.allocate(responseBytes.length + 20);
-                buf.putInt(version)
-                   .putLong(requestId)
-                   .putInt(flags)
-                   .putInt(responseLength)
-                   .put(responseBytes)
-                   .flip();
-                if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
-                    throw new ProtocolException("POST response length exceeds max message size");
-                }
-                session.getRemote().sendBytes(buf);
+                sendMessage(requestId, response);
             }
         } catch (WebSocketException exc) {
             throw new SocketException(exc.getMessage());
@@ -328,6 +398,44 @@ public class PeerWebSocket {
         }
     }
 
+    /**
+     * Send a message.  The frame header is written into the space reserved by the encoded message,
+     * so the message is sent without being copied.
+     *
+     * The caller must hold the WebSocket lock
+     *
+     * @param   requestId           Request identifier
+     * @param   message             Encoded message
+     * @throws  IOException         I/O error occurred
+     */
+    private void sendMessage(long requestId, MessageCodec.Message message) throws IOException {
+        ByteBuffer buf = message.getFrame();
+        setFrameHeader(buf, requestId, message);
+        session.getRemote().sendBytes(buf);
+    }
+
+    /**
+     * Set the frame header
+     *
+     * @param   buf                 Frame buffer
+     * @param   requestId           Request identifier
+     * @param   message             Encoded message
+     * @throws  IOException         Message is too long
+     */
+    private void setFrameHeader(ByteBuffer buf, long requestId, MessageCodec.Message message) throws IOException {
+        if (buf.limit() > Peers.MAX_MESSAGE_SIZE) {
+            throw new ProtocolException("POST " + (peerServlet != null ? "response" : "request") + " length exceeds max message size");
+        }
+        if (message.usesDictionary() && !useDictionary()) {
+            throw new ProtocolException("Peer does not support dictionary compression");
+        }
+        buf.putInt(0, VERSION)
+           .putLong(4, requestId)
+           .putInt(12, message.usesDictionary() ? FLAG_DICTIONARY :
+                        message.isCompressed() ? FLAG_COMPRESSED : FLAG_NOT_COMPRESSED)
+           .putInt(16, message.getLength());
+    }
+
     /**
      * Process a socket message
      *
@@ -337,6 +445,8 @@ public class PeerWebSocket {
      */
     @OnWebSocketMessage
     public void onMessage(byte[] inbuf, int off, int len) {
+        PostRequest postRequest = null;
+        MessageCodec.Message message = null;
         lock.lock();
         try {
             ByteBuffer buf = ByteBuffer.wrap(inbuf, off, len);
@@ -344,36 +454,32 @@ public class PeerWebSocket {
             Long requestId = buf.getLong();
             int flags = buf.getInt();
             int length = buf.getInt();
+            //
+            // The message is copied since the buffer is reused once we return.  A compressed message
+            // is kept compressed and is decompressed while it is parsed.
+            //
             byte[] msgBytes = new byte[buf.remaining()];
             buf.get(msgBytes);
-            if ((flags&FLAG_COMPRESSED) != 0) {
-                ByteArrayInputStream inStream = new ByteArrayInputStream(msgBytes);
-                try (GZIPInputStream gzipStream = new GZIPInputStream(inStream, 1024)) {
-                    msgBytes = new byte[length];
-                    int offset = 0;
-                    while (offset < msgBytes.length) {
-                        int count = gzipStream.read(msgBytes, offset, msgBytes.length - offset);
-                        if (count < 0) {
-                            throw new EOFException("End-of-data reading compressed data");
-                        }
-                        offset += count;
-                    }
-                }
-            }
-            String message = new String(msgBytes, "UTF-8");
+            message = new MessageCodec.Message(msgBytes, 0, msgBytes.length, length,
+                    (flags&FLAG_COMPRESSED) != 0, (flags&FLAG_DICTIONARY) != 0);
             if (peerServlet != null) {
-                threadPool.execute(() -> peerServlet.doPost(this, requestId, message));
+                MessageCodec.Message request = message;
+                threadPool.execute(() -> peerServlet.doPost(this, requestId, request));
             } else {
-                PostRequest postRequest = requestMap.remove(requestId);
-                if (postRequest != null) {
-                    postRequest.complete(message);
-                }
+                postRequest = requestMap.remove(requestId);
             }
         } catch (Exception exc) {
             LOG.debug("Exception while processing WebSocket message", exc);
         } finally {
             lock.unlock();
         }
+        //
+        // The response is processed without holding the lock since the completion
+        // of an asynchronous request may send the next request
+        //
+        if (postRequest != null) {
+            postRequest.complete(message);
+        }
     }
 
     /**
@@ -422,66 +528,36 @@ public class PeerWebSocket {
     /**
      * POST request
      */
-    private class PostRequest {
-
-        /** Request latch */
-        private final CountDownLatch latch = new CountDownLatch(1);
+    private static class PostRequest {
 
-        /** Response message */
-        private volatile String response;
-
-        /** Socket exception */
-        private volatile IOException exception;
+        /** Response future */
+        private final CompletableFuture<MessageCodec.Message> response;
 
         /**
          * Create a post request
-         */
-        public PostRequest() {
-        }
-
-        /**
-         * Wait for the response
          *
-         * The caller must hold the lock for the request condition
-         *
-         * @param   timeout                 Wait timeout
-         * @param   unit                    Time unit
-         * @return                          Response message
-         * @throws  InterruptedException    Wait interrupted
-         * @throws  IOException             I/O error occurred
+         * @param   response                Response future
          */
-        public String get(long timeout, TimeUnit unit) throws InterruptedException, IOException {
-            if (!latch.await(timeout, unit)) {
-                throw new SocketTimeoutException("WebSocket read timeout exceeded");
-            }
-            if (exception != null) {
-                throw exception;
-            }
-            return response;
+        public PostRequest(CompletableFuture<MessageCodec.Message> response) {
+            this.response = response;
         }
 
         /**
          * Complete the request with a response message
          *
-         * The caller must hold the lock for the request condition
-         *
-         * @param   response                Response message
+         * @param   message                 Response message
          */
-        public void complete(String response) {
-            this.response = response;
-            latch.countDown();
+        public void complete(MessageCodec.Message message) {
+            response.complete(message);
         }
 
         /**
          * Complete the request with an exception
          *
-         * The caller must hold the lock for the request condition
-         *
          * @param   exception             I/O exception
          */
         public void complete(IOException exception) {
-            this.exception = exception;
-            latch.countDown();
+            response.completeExceptionally(exception);
         }
     }
 }
@@ -33,6 +33,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -132,6 +133,10 @@ public final class Peers {
     private static final int pushThreshold;
     private static final int pullThreshold;
     private static final int sendToPeersLimit;
+    static final int broadcastTimeout;
+    static final int outboundQueueSize;
+    private static final boolean enableInventoryGossip;
+    private static final boolean enableCompactBlocks;
     private static final boolean usePeersDb;
     private static final boolean savePeers;
     static final boolean ignorePeerAnnouncedAddress;
@@ -240,6 +245,14 @@ public final class Peers {
             }
         }
         List<Peer.Service> servicesList = new ArrayList<>();
+        enableInventoryGossip = Apl.getBooleanProperty("apl.enableInventoryGossip");
+        if (enableInventoryGossip) {
+            servicesList.add(Peer.Service.INVENTORY);
+        }
+        enableCompactBlocks = Apl.getBooleanProperty("apl.enableCompactBlocks");
+        if (enableCompactBlocks) {
+            servicesList.add(Peer.Service.COMPACT_BLOCKS);
+        }
         JSONObject json = new JSONObject();
         if (myAddress != null) {
             try {
@@ -346,6 +359,8 @@ public final class Peers {
         blacklistingPeriod = Apl.getIntProperty("apl.blacklistingPeriod") / 1000;
         communicationLoggingMask = Apl.getIntProperty("apl.communicationLoggingMask");
         sendToPeersLimit = Apl.getIntProperty("apl.sendToPeersLimit");
+        broadcastTimeout = Apl.getIntProperty("apl.peerBroadcastTimeout", 10000);
+        outboundQueueSize = Apl.getIntProperty("apl.peerOutboundQueueSize", 32);
         usePeersDb = Apl.getBooleanProperty("apl.usePeersDb") && ! Constants.isOffline;
         savePeers = usePeersDb && Apl.getBooleanProperty("apl.savePeers");
         getMorePeers = Apl.getBooleanProperty("apl.getMorePeers");
@@ -386,6 +401,9 @@ public final class Peers {
                             if (peer != null) {
                                 peer.setLastUpdated(entry.getLastUpdated());
                                 peer.setServices(entry.getServices());
+                                if (entry.getScore() != null) {
+                                    peer.getScore().restore(entry.getScore());
+                                }
                                 Peers.addPeer(peer);
                                 return null;
                             }
@@ -507,6 +525,45 @@ public final class Peers {
 
     };
 
+    private static final Runnable peerScoreSavingThread = () -> {
+
+        try {
+            try {
+
+                saveScores();
+
+            } catch (Exception e) {
+                LOG.debug("Error saving peer scores", e);
+            }
+        } catch (Throwable t) {
+            LOG.error("CRITICAL ERROR. PLEASE REPORT TO THE DEVELOPERS", t);
+            System.exit(1);
+        }
+
+    };
+
+    /**
+     * Save the peer scores in the peer database
+     */
+    private static void saveScores() {
+        List<PeerImpl> scoredPeers = new ArrayList<>();
+        peers.values().forEach(peer -> {
+            if (peer.getAnnouncedAddress() != null) {
+                scoredPeers.add(peer);
+            }
+        });
+        try {
+            Db.getDb().beginTransaction();
+            PeerDb.updateScores(scoredPeers);
+            Db.getDb().commitTransaction();
+        } catch (Exception e) {
+            Db.getDb().rollbackTransaction();
+            throw e;
+        } finally {
+            Db.getDb().endTransaction();
+        }
+    }
+
     private static final Runnable peerConnectingThread = new Runnable() {
 
         @Override
@@ -794,6 +851,9 @@ public final class Peers {
         if (! Constants.isOffline) {
             ThreadPool.scheduleThread("PeerConnecting", Peers.peerConnectingThread, 20);
             ThreadPool.scheduleThread("PeerUnBlacklisting", Peers.peerUnBlacklistingThread, 60);
+            if (Peers.savePeers) {
+                ThreadPool.scheduleThread("PeerScoreSaving", Peers.peerScoreSavingThread, 600);
+            }
             if (Peers.getMorePeers) {
                 ThreadPool.scheduleThread("GetMorePeers", Peers.getMorePeersThread, 20);
             }
@@ -822,6 +882,13 @@ public final class Peers {
         }
         ThreadPool.shutdownExecutor("sendingService", sendingService, 2);
         ThreadPool.shutdownExecutor("peersService", peersService, 5);
+        if (savePeers) {
+            try {
+                saveScores();
+            } catch (RuntimeException e) {
+                LOG.info("Failed to save peer scores", e);
+            }
+        }
     }
 
     public static void suspend() {
@@ -1047,12 +1114,14 @@ public final class Peers {
     public static void sendToSomePeers(Block block) {
         JSONObject request = block.getJSONObject();
         request.put("requestType", "processBlock");
-        sendToSomePeers(request);
+        sendToSomePeers(Collections.singletonList(request), Collections.singletonList(Inventory.announceBlock(block)),
+                Collections.singletonList(CompactBlock.create(block)));
     }
 
     private static final int sendTransactionsBatchSize = 10;
 
     public static void sendToSomePeers(List<? extends Transaction> transactions) {
+        List<JSONObject> requests = new ArrayList<>();
         int nextBatchStart = 0;
         while (nextBatchStart < transactions.size()) {
             JSONObject request = new JSONObject();
@@ -1062,23 +1131,46 @@ public final class Peers {
             }
             request.put("requestType", "processTransactions");
             request.put("transactions", transactionsData);
-            sendToSomePeers(request);
+            requests.add(request);
             nextBatchStart += sendTransactionsBatchSize;
         }
+        List<JSONObject> announcements = new ArrayList<>();
+        for (int i = 0; i < transactions.size(); i += Inventory.MAX_TRANSACTIONS) {
+            List<String> fullHashes = new ArrayList<>();
+            transactions.subList(i, Math.min(i + Inventory.MAX_TRANSACTIONS, transactions.size()))
+                    .forEach(transaction -> fullHashes.add(transaction.getFullHash()));
+            announcements.add(Inventory.announceTransactions(fullHashes));
+        }
+        sendToSomePeers(requests, announcements, null);
     }
 
-    private static void sendToSomePeers(final JSONObject request) {
+    /**
+     * Send requests to some peers.  Peers providing the COMPACT_BLOCKS service are sent the compact
+     * blocks, peers providing the INVENTORY service are sent the announcements and the remaining
+     * peers are sent the complete requests.
+     *
+     * @param   requests            Requests containing the blocks or transactions
+     * @param   announcements       Announcements for the same blocks or transactions
+     * @param   compactBlocks       Compact blocks or null
+     */
+    private static void sendToSomePeers(final List<JSONObject> requests, final List<JSONObject> announcements,
+                                        final List<JSONObject> compactBlocks) {
         if (shutdown || suspend) {
             String errorMessage = String.format("Cannot send request to peers. Peer server was %s", suspend ? "suspended" : "shutdown");
             LOG.error(errorMessage);
             throw new RuntimeException(errorMessage);
         }
+        if (requests.isEmpty()) {
+            return;
+        }
         sendingService.submit(() -> {
-            request.put("chainId", AplGlobalObjects.getChainConfig().getChain().getChainId());
-            final JSONStreamAware jsonRequest = JSON.prepareRequest(request);
-
-            int successful = 0;
-            List<Future<JSONObject>> expectedResponses = new ArrayList<>();
+            final UUID chainId = AplGlobalObjects.getChainConfig().getChain().getChainId();
+            final PeerBroadcast.Payload fullPayload = PeerBroadcast.Payload.create(requests, chainId);
+            final PeerBroadcast.Payload announcementPayload = enableInventoryGossip ?
+                    PeerBroadcast.Payload.create(announcements, chainId) : fullPayload;
+            final PeerBroadcast.Payload compactPayload = enableCompactBlocks && compactBlocks != null ?
+                    PeerBroadcast.Payload.create(compactBlocks, chainId) : null;
+            List<Peer> candidates = new ArrayList<>();
             for (final Peer peer : peers.values()) {
 
                 if (Peers.enableHallmarkProtection && peer.getWeight() < Peers.pushThreshold) {
@@ -1087,33 +1179,36 @@ public final class Peers {
 
                 if (!peer.isBlacklisted() && peer.getState() == Peer.State.CONNECTED && peer.getAnnouncedAddress() != null
                         && peer.getBlockchainState() != Peer.BlockchainState.LIGHT_CLIENT) {
-                    Future<JSONObject> futureResponse = peersService.submit(() -> peer.send(jsonRequest,
-                            AplGlobalObjects.getChainConfig().getChain().getChainId()));
-                    expectedResponses.add(futureResponse);
-                }
-                if (expectedResponses.size() >= Peers.sendToPeersLimit - successful) {
-                    for (Future<JSONObject> future : expectedResponses) {
-                        try {
-                            JSONObject response = future.get();
-                            if (response != null && response.get("error") == null) {
-                                successful += 1;
-                            }
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                        } catch (ExecutionException e) {
-                            LOG.debug("Error in sendToSomePeers", e);
-                        }
-
-                    }
-                    expectedResponses.clear();
-                }
-                if (successful >= Peers.sendToPeersLimit) {
-                    return;
+                    candidates.add(peer);
                 }
             }
+            new PeerBroadcast(candidates, Peers.sendToPeersLimit, chainId, peer -> {
+                if (compactPayload != null && peer.providesService(Peer.Service.COMPACT_BLOCKS)) {
+                    return compactPayload;
+                } else if (enableInventoryGossip && peer.providesService(Peer.Service.INVENTORY)) {
+                    return announcementPayload;
+                } else {
+                    return fullPayload;
+                }
+            }).start();
         });
     }
 
+    /**
+     * Return the broadcast statistics
+     *
+     * @return                      Broadcast count, dropped broadcasts and latency percentiles
+     */
+    public static JSONObject getBroadcastStatistics() {
+        JSONObject json = PeerBroadcast.getStatistics();
+        long dropped = 0;
+        for (PeerImpl peer : peers.values()) {
+            dropped += peer.getOutboundQueue().getDropped();
+        }
+        json.put("droppedBroadcasts", dropped);
+        return json;
+    }
+
     public static Peer getAnyPeer(final Peer.State state, final boolean applyPullThreshold) {
         return getWeightedPeer(getPublicPeers(state, applyPullThreshold));
     }
@@ -1124,32 +1219,50 @@ public final class Peers {
                 && (!applyPullThreshold || !Peers.enableHallmarkProtection || peer.getWeight() >= Peers.pullThreshold));
     }
 
+    /**
+     * Select a peer at random.  The chance of selecting a peer is proportional to its score and,
+     * when hallmark protection is enabled, two out of three selections also use the hallmark weight.
+     *
+     * @param   selectedPeers       Peers
+     * @return                      Selected peer or null if the list is empty
+     */
     public static Peer getWeightedPeer(List<Peer> selectedPeers) {
         if (selectedPeers.isEmpty()) {
             return null;
         }
-        if (! Peers.enableHallmarkProtection || ThreadLocalRandom.current().nextInt(3) == 0) {
-            return selectedPeers.get(ThreadLocalRandom.current().nextInt(selectedPeers.size()));
-        }
-        long totalWeight = 0;
-        for (Peer peer : selectedPeers) {
-            long weight = peer.getWeight();
-            if (weight == 0) {
-                weight = 1;
+        boolean useHallmark = Peers.enableHallmarkProtection && ThreadLocalRandom.current().nextInt(3) != 0;
+        double[] weights = new double[selectedPeers.size()];
+        double totalWeight = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Peer peer = selectedPeers.get(i);
+            double weight = peer.getScore().getValue();
+            if (useHallmark) {
+                weight *= Math.max(peer.getWeight(), 1);
             }
+            weights[i] = weight;
             totalWeight += weight;
         }
-        long hit = ThreadLocalRandom.current().nextLong(totalWeight);
-        for (Peer peer : selectedPeers) {
-            long weight = peer.getWeight();
-            if (weight == 0) {
-                weight = 1;
-            }
-            if ((hit -= weight) < 0) {
-                return peer;
+        double hit = ThreadLocalRandom.current().nextDouble(totalWeight);
+        for (int i = 0; i < weights.length; i++) {
+            if ((hit -= weights[i]) < 0) {
+                return selectedPeers.get(i);
             }
         }
-        return null;
+        return selectedPeers.get(weights.length - 1);
+    }
+
+    /**
+     * Sort peers by descending score.  The scores are read once before sorting since they
+     * are updated by other threads and decay over time.
+     *
+     * @param   peers               Peers
+     * @return                      The sorted list
+     */
+    public static List<Peer> sortByScore(List<Peer> peers) {
+        Map<Peer, Double> scores = new HashMap<>(peers.size() * 2);
+        peers.forEach(peer -> scores.put(peer, peer.getScore().getValue()));
+        peers.sort(Comparator.comparingDouble((Peer peer) -> scores.get(peer)).reversed());
+        return peers;
     }
 
     static String addressWithPort(String address) {
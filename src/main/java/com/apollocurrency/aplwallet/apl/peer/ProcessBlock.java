@@ -46,15 +46,7 @@ final class ProcessBlock extends PeerServlet.PeerRequestHandler {
 
     @Override
     JSONStreamAware processRequest(final JSONObject request, final Peer peer) {
-        String previousBlockId = (String)request.get("previousBlock");
-        Block lastBlock = Apl.getBlockchain().getLastBlock();
-        long peerBlockTimestamp = Convert.parseLong(request.get("timestamp"));
-        Object timeoutJsonValue = request.get("timeout");
-        int peerBlockTimeout =  timeoutJsonValue == null ? 0 : ((Long)timeoutJsonValue).intValue();
-        if (lastBlock.getStringId().equals(previousBlockId) ||
-                (Convert.parseUnsignedLong(previousBlockId) == lastBlock.getPreviousBlockId()
-                        && (lastBlock.getTimestamp() > peerBlockTimestamp ||
-                        peerBlockTimestamp == lastBlock.getTimestamp() && peerBlockTimeout > lastBlock.getTimeout()))) {
+        if (acceptBlock(request)) {
             Peers.peersService.submit(() -> {
                 try {
                     LOG.debug("API: need to process better peer block");
@@ -69,6 +61,25 @@ final class ProcessBlock extends PeerServlet.PeerRequestHandler {
         return JSON.emptyJSON;
     }
 
+    /**
+     * Check if a peer block should be processed.  The block must extend our last block
+     * or replace our last block with a better block.
+     *
+     * @param   blockData           Block JSON containing the previousBlock, timestamp and timeout fields
+     * @return                      TRUE if the block should be processed
+     */
+    static boolean acceptBlock(JSONObject blockData) {
+        String previousBlockId = (String)blockData.get("previousBlock");
+        Block lastBlock = Apl.getBlockchain().getLastBlock();
+        long peerBlockTimestamp = Convert.parseLong(blockData.get("timestamp"));
+        Object timeoutJsonValue = blockData.get("timeout");
+        int peerBlockTimeout =  timeoutJsonValue == null ? 0 : ((Long)timeoutJsonValue).intValue();
+        return lastBlock.getStringId().equals(previousBlockId) ||
+                (Convert.parseUnsignedLong(previousBlockId) == lastBlock.getPreviousBlockId()
+                        && (lastBlock.getTimestamp() > peerBlockTimestamp ||
+                        peerBlockTimestamp == lastBlock.getTimestamp() && peerBlockTimeout > lastBlock.getTimeout()));
+    }
+
     @Override
     boolean rejectWhileDownloading() {
         return true;
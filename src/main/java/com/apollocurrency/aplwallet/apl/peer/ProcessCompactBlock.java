@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.AplException;
+import com.apollocurrency.aplwallet.apl.AplGlobalObjects;
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Process a compact block.  The block is rebuilt from our unconfirmed transactions and the
+ * missing transactions are requested from the sending peer.
+ */
+final class ProcessCompactBlock extends PeerServlet.PeerRequestHandler {
+    private static final Logger LOG = getLogger(ProcessCompactBlock.class);
+
+    private static class ProcessCompactBlockHolder {
+        private static final ProcessCompactBlock INSTANCE = new ProcessCompactBlock();
+    }
+
+    public static ProcessCompactBlock getInstance() {
+        return ProcessCompactBlockHolder.INSTANCE;
+    }
+
+    private ProcessCompactBlock() {}
+
+    @Override
+    JSONStreamAware processRequest(final JSONObject request, final Peer peer) {
+        JSONObject header = (JSONObject)request.get("block");
+        if (header == null || !ProcessBlock.acceptBlock(header)) {
+            return JSON.emptyJSON;
+        }
+        //
+        // Blocks and announced blocks share the list of requested items, so a block received
+        // from several peers is processed once
+        //
+        String blockId = (String)header.get("id");
+        List<String> blockIds = ProcessInventory.getInstance().getInventory().selectMissing(Collections.singletonList(blockId),
+                id -> Apl.getBlockchain().hasBlock(Convert.parseUnsignedLong(id)), System.currentTimeMillis());
+        if (!blockIds.isEmpty()) {
+            Peers.peersService.submit(() -> {
+                try {
+                    processCompactBlock(request, peer);
+                } finally {
+                    ProcessInventory.getInstance().getInventory().requestCompleted(blockIds);
+                }
+            });
+        }
+        return JSON.emptyJSON;
+    }
+
+    /**
+     * Rebuild and process the block
+     *
+     * @param   request             Compact block request
+     * @param   peer                Sending peer
+     */
+    private static void processCompactBlock(JSONObject request, Peer peer) {
+        UUID chainId = AplGlobalObjects.getChainConfig().getChain().getChainId();
+        String blockId = (String)((JSONObject)request.get("block")).get("id");
+        JSONObject blockData;
+        boolean usedPool;
+        try {
+            List<Long> missing = new ArrayList<>();
+            blockData = CompactBlock.rebuild(request, Apl.getTransactionProcessor()::getUnconfirmedTransaction, missing);
+            usedPool = missing.size() < ((JSONArray)blockData.get("transactions")).size();
+            if (!missing.isEmpty()) {
+                LOG.debug("Requesting {} missing transactions for compact block {}", missing.size(), blockId);
+                JSONObject transactionsRequest = new JSONObject();
+                transactionsRequest.put("requestType", "getBlockTransactions");
+                transactionsRequest.put("block", blockId);
+                JSONArray transactionIndexes = new JSONArray();
+                transactionIndexes.addAll(missing);
+                transactionsRequest.put("transactionIndexes", transactionIndexes);
+                transactionsRequest.put("chainId", chainId);
+                JSONObject response = peer.send(JSON.prepareRequest(transactionsRequest), chainId, Peers.MAX_MESSAGE_SIZE, false);
+                if (response == null || response.get("transactions") == null) {
+                    return;
+                }
+                CompactBlock.addMissing(blockData, missing, (JSONArray)response.get("transactions"));
+            }
+        } catch (RuntimeException e) {
+            peer.blacklist(e);
+            return;
+        }
+        try {
+            Apl.getBlockchainProcessor().processPeerBlock(blockData);
+        } catch (AplException | RuntimeException e) {
+            if (!usedPool) {
+                peer.blacklist(e);
+                return;
+            }
+            //
+            // A transaction from our pool may not be the transaction included in the block
+            // if the identifiers are the same, so get the complete block before blaming the peer
+            //
+            LOG.debug("Unable to process rebuilt block {}, requesting the complete block: {}", blockId, e.toString());
+            try {
+                JSONObject blockRequest = Inventory.getInventoryRequest(blockId, Collections.emptyList());
+                blockRequest.put("chainId", chainId);
+                JSONObject response = peer.send(JSON.prepareRequest(blockRequest), chainId, Peers.MAX_MESSAGE_SIZE, false);
+                if (response != null && response.get("block") != null) {
+                    Apl.getBlockchainProcessor().processPeerBlock((JSONObject)response.get("block"));
+                }
+            } catch (AplException | RuntimeException exc) {
+                peer.blacklist(exc);
+            }
+        }
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+}
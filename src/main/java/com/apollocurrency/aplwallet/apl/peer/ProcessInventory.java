@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.AplException;
+import com.apollocurrency.aplwallet.apl.AplGlobalObjects;
+import com.apollocurrency.aplwallet.apl.Transaction;
+import com.apollocurrency.aplwallet.apl.util.Convert;
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Process a block and transaction announcement.  The block and transactions we don't have
+ * are requested from the announcing peer using the getInventory request.
+ */
+final class ProcessInventory extends PeerServlet.PeerRequestHandler {
+    private static final Logger LOG = getLogger(ProcessInventory.class);
+
+    private static class ProcessInventoryHolder {
+        private static final ProcessInventory INSTANCE = new ProcessInventory();
+    }
+
+    public static ProcessInventory getInstance() {
+        return ProcessInventoryHolder.INSTANCE;
+    }
+
+    /** Requested blocks and transactions */
+    private final Inventory inventory = new Inventory();
+
+    private ProcessInventory() {}
+
+    /**
+     * Return the requested blocks and transactions
+     *
+     * @return                      Requested items
+     */
+    Inventory getInventory() {
+        return inventory;
+    }
+
+    @Override
+    JSONStreamAware processRequest(JSONObject request, Peer peer) {
+        List<String> blockIds;
+        List<String> fullHashes;
+        try {
+            long now = System.currentTimeMillis();
+            JSONObject blockData = (JSONObject)request.get("block");
+            if (blockData != null && ProcessBlock.acceptBlock(blockData)) {
+                blockIds = inventory.selectMissing(Collections.singletonList((String)blockData.get("id")),
+                        blockId -> Apl.getBlockchain().hasBlock(Convert.parseUnsignedLong(blockId)), now);
+            } else {
+                blockIds = Collections.emptyList();
+            }
+            fullHashes = inventory.selectMissing(Inventory.parseFullHashes(request.get("transactions")),
+                    ProcessInventory::hasTransaction, now);
+        } catch (RuntimeException e) {
+            peer.blacklist(e);
+            return PeerServlet.error(e);
+        }
+        if (!blockIds.isEmpty() || !fullHashes.isEmpty()) {
+            Peers.peersService.submit(() -> getInventory(peer, blockIds.isEmpty() ? null : blockIds.get(0), fullHashes));
+        }
+        return JSON.emptyJSON;
+    }
+
+    /**
+     * Check if we have a transaction
+     *
+     * @param   fullHash            Transaction full hash
+     * @return                      TRUE if the transaction is unconfirmed or in the blockchain
+     */
+    private static boolean hasTransaction(String fullHash) {
+        long transactionId = Convert.fullHashToId(Convert.parseHexString(fullHash));
+        Transaction transaction = Apl.getTransactionProcessor().getUnconfirmedTransaction(transactionId);
+        if (transaction != null) {
+            return transaction.getFullHash().equals(fullHash);
+        }
+        return Apl.getBlockchain().hasTransactionByFullHash(fullHash);
+    }
+
+    /**
+     * Request the block and transactions from the announcing peer
+     *
+     * @param   peer                Announcing peer
+     * @param   blockId             Block identifier or null
+     * @param   fullHashes          Transaction full hashes
+     */
+    private void getInventory(Peer peer, String blockId, List<String> fullHashes) {
+        try {
+            UUID chainId = AplGlobalObjects.getChainConfig().getChain().getChainId();
+            JSONObject request = Inventory.getInventoryRequest(blockId, fullHashes);
+            request.put("chainId", chainId);
+            JSONObject response = peer.send(JSON.prepareRequest(request), chainId, Peers.MAX_MESSAGE_SIZE, false);
+            if (response == null || response.get("error") != null) {
+                return;
+            }
+            JSONObject blockData = (JSONObject)response.get("block");
+            if (blockData != null && ProcessBlock.acceptBlock(blockData)) {
+                Apl.getBlockchainProcessor().processPeerBlock(blockData);
+            }
+            if (response.get("transactions") != null) {
+                Apl.getTransactionProcessor().processPeerTransactions(response);
+            }
+        } catch (AplException | RuntimeException e) {
+            LOG.debug("Unable to process inventory from peer " + peer.getHost(), e);
+            peer.blacklist(e);
+        } finally {
+            List<String> items = new ArrayList<>(fullHashes);
+            if (blockId != null) {
+                items.add(blockId);
+            }
+            inventory.requestCompleted(items);
+        }
+    }
+
+    @Override
+    boolean rejectWhileDownloading() {
+        return true;
+    }
+
+}
@@ -31,6 +31,7 @@ import java.sql.Statement;
 
 import com.apollocurrency.aplwallet.apl.Apl;
 import com.apollocurrency.aplwallet.apl.AplGlobalObjects;
+import com.apollocurrency.aplwallet.apl.db.BasicDb;
 import org.slf4j.Logger;
 
 /**
@@ -64,18 +65,17 @@ public class CompactDatabase {
     }
 
     /**
-     * Compact the database
+     * Get the database URL
+     *
+     * @return                      Database URL without the MV_STORE parameter unless it is configured
+     *                              or null if the database type is not supported
      */
-    private static int compactDatabase() {
-        int exitCode = 0;
-        //
-        // Get the database URL
-        //
-        String dbPrefix = AplGlobalObjects.getChainConfig().isTestnet() ? "apl.testDb" : "apl.db";
+    static String getDbUrl() {
+        String dbPrefix = getDbPrefix();
         String dbType = Apl.getStringProperty(dbPrefix + "Type");
         if (!"h2".equals(dbType)) {
             LOG.error("Database type must be 'h2'");
-            return 1;
+            return null;
         }
         String dbUrl = Apl.getStringProperty(dbPrefix + "Url");
         if (dbUrl == null) {
@@ -84,22 +84,33 @@ public class CompactDatabase {
         }
         String dbParams = Apl.getStringProperty(dbPrefix + "Params");
         dbUrl += ";" + dbParams;
-        if (!dbUrl.contains("MV_STORE=")) {
-            dbUrl += ";MV_STORE=FALSE";
-        }
-        String dbUsername = Apl.getStringProperty(dbPrefix + "Username", "sa");
-        String dbPassword = Apl.getStringProperty(dbPrefix + "Password", "sa", true);
-        //
-        // Get the database path.  This is the third colon-separated operand and is
-        // terminated by a semi-colon or by the end of the string.
-        //
+        return dbUrl;
+    }
+
+    /**
+     * Get the property prefix for the database properties
+     *
+     * @return                      Property prefix
+     */
+    static String getDbPrefix() {
+        return AplGlobalObjects.getChainConfig().isTestnet() ? "apl.testDb" : "apl.db";
+    }
+
+    /**
+     * Get the database directory.  The database path is the third colon-separated operand
+     * of the database URL and is terminated by a semi-colon or by the end of the string.
+     *
+     * @param   dbUrl               Database URL
+     * @return                      Database directory or null if the URL is malformed
+     */
+    static String getDbDir(String dbUrl) {
         int pos = dbUrl.indexOf(':');
         if (pos >= 0) {
             pos = dbUrl.indexOf(':', pos+1);
         }
         if (pos < 0) {
             LOG.error("Malformed database URL: " + dbUrl);
-            return 1;
+            return null;
         }
         String dbDir;
         int startPos = pos + 1;
@@ -130,9 +141,30 @@ public class CompactDatabase {
         }
         if (endPos < 0) {
             LOG.error("Malformed database URL: " + dbUrl);
+            return null;
+        }
+        return dbDir.substring(0, endPos);
+    }
+
+    /**
+     * Compact the database
+     */
+    private static int compactDatabase() {
+        int exitCode = 0;
+        //
+        // Get the database URL and directory
+        //
+        String dbUrl = getDbUrl();
+        if (dbUrl == null) {
+            return 1;
+        }
+        String dbPrefix = getDbPrefix();
+        String dbUsername = Apl.getStringProperty(dbPrefix + "Username", "sa");
+        String dbPassword = Apl.getStringProperty(dbPrefix + "Password", "sa", true);
+        String dbDir = getDbDir(dbUrl);
+        if (dbDir == null) {
             return 1;
         }
-        dbDir = dbDir.substring(0, endPos);
         LOG.info("Database directory is '" + dbDir + '"');
         //
         // Create our files
@@ -147,6 +179,12 @@ public class CompactDatabase {
                 return 1;
             }
         }
+        //
+        // The new database uses the same engine
+        //
+        if (!dbUrl.contains("MV_STORE=")) {
+            dbUrl += ";MV_STORE=" + (dbFile.getName().endsWith(BasicDb.MV_STORE_SUFFIX) ? "TRUE" : "FALSE");
+        }
         File oldFile = new File(dbFile.getPath() + ".bak");
         try {
             //
@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.tools;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.apollocurrency.aplwallet.apl.Apl;
+import com.apollocurrency.aplwallet.apl.crypto.Crypto;
+import com.apollocurrency.aplwallet.apl.db.BasicDb;
+import org.slf4j.Logger;
+
+/**
+ * Convert the ARS database from the H2 PageStore engine to the MVStore engine.
+ * The ARS application must not be running.
+ *
+ * The PageStore database is exported to a SQL script which is then loaded into a
+ * new MVStore database.  The conversion is checked by comparing the row count of
+ * each table and a checksum of the blocks and transactions in both databases.  The
+ * PageStore database is kept as apl.h2.db.bak if the conversion succeeds and is
+ * restored if the conversion fails.
+ *
+ * To run the database conversion tool on Linux or Mac:
+ *
+ *   java -cp "classes:lib/*:conf" com.apollocurrency.aplwallet.apl.tools.ConvertDatabase
+ *
+ * To run the database conversion tool on Windows:
+ *
+ *   java -cp "classes;lib/*;conf" -Dapl.runtime.mode=desktop com.apollocurrency.aplwallet.apl.tools.ConvertDatabase
+ */
+public class ConvertDatabase {
+    private static final Logger LOG = getLogger(ConvertDatabase.class);
+
+    /**
+     * Convert the ARS database
+     *
+     * @param   args                Command line arguments
+     */
+    public static void main(String[] args) {
+        Apl.main(null);
+        //
+        // Stop the server so the database files are closed
+        //
+        Apl.shutdown();
+        //
+        // Convert the database
+        //
+        int exitCode = convertDatabase();
+
+        System.exit(exitCode);
+    }
+
+    /**
+     * Convert the database
+     */
+    private static int convertDatabase() {
+        int exitCode = 0;
+        //
+        // Get the database URL and directory
+        //
+        String dbUrl = CompactDatabase.getDbUrl();
+        if (dbUrl == null) {
+            return 1;
+        }
+        String dbPrefix = CompactDatabase.getDbPrefix();
+        String dbUsername = Apl.getStringProperty(dbPrefix + "Username", "sa");
+        String dbPassword = Apl.getStringProperty(dbPrefix + "Password", "sa", true);
+        String dbDir = CompactDatabase.getDbDir(dbUrl);
+        if (dbDir == null) {
+            return 1;
+        }
+        LOG.info("Database directory is '" + dbDir + '"');
+        File dbFile = new File(dbDir, "apl" + BasicDb.PAGE_STORE_SUFFIX);
+        File newFile = new File(dbDir, "apl" + BasicDb.MV_STORE_SUFFIX);
+        if (newFile.exists()) {
+            LOG.error("ARS database already uses the MVStore engine");
+            return 1;
+        }
+        if (!dbFile.exists()) {
+            LOG.error("ARS database not found");
+            return 1;
+        }
+        String pageStoreUrl = setMvStore(dbUrl, false);
+        String mvStoreUrl = setMvStore(dbUrl, true);
+        //
+        // Create our files
+        //
+        int phase = 0;
+        File sqlFile = new File(dbDir, "convert.sql.gz");
+        File oldFile = new File(dbFile.getPath() + ".bak");
+        try {
+            if (oldFile.exists()) {
+                throw new IOException(String.format("'%s' already exists", oldFile.getPath()));
+            }
+            //
+            // Create the SQL script
+            //
+            LOG.info("Creating the SQL script");
+            if (sqlFile.exists()) {
+                if (!sqlFile.delete()) {
+                    throw new IOException(String.format("Unable to delete '%s'", sqlFile.getPath()));
+                }
+            }
+            DbContents oldContents;
+            try (Connection conn = CompactDatabase.getConnection(pageStoreUrl, dbUsername, dbPassword);
+                 Statement s = conn.createStatement()) {
+                oldContents = new DbContents(conn);
+                s.execute("SCRIPT TO '" + sqlFile.getPath() + "' COMPRESSION GZIP CHARSET 'UTF-8'");
+                s.execute("SHUTDOWN");
+            }
+            //
+            // Create the new database
+            //
+            LOG.info("Creating the MVStore database");
+            if (!dbFile.renameTo(oldFile)) {
+                throw new IOException(String.format("Unable to rename '%s' to '%s'",
+                                                    dbFile.getPath(), oldFile.getPath()));
+            }
+            phase = 1;
+            try (Connection conn = CompactDatabase.getConnection(mvStoreUrl, dbUsername, dbPassword);
+                 Statement s = conn.createStatement()) {
+                s.execute("RUNSCRIPT FROM '" + sqlFile.getPath() + "' COMPRESSION GZIP CHARSET 'UTF-8'");
+                s.execute("ANALYZE");
+                //
+                // Check the new database
+                //
+                LOG.info("Checking the MVStore database");
+                DbContents newContents = new DbContents(conn);
+                List<String> differences = oldContents.compare(newContents);
+                if (!differences.isEmpty()) {
+                    differences.forEach(LOG::error);
+                    throw new SQLException("The converted database does not match the PageStore database");
+                }
+                s.execute("SHUTDOWN");
+            }
+            //
+            // New database has been created
+            //
+            phase = 2;
+            LOG.info(String.format("Database successfully converted at height %d, the PageStore database is saved as '%s'",
+                                   oldContents.height, oldFile.getPath()));
+        } catch (Throwable exc) {
+            LOG.error("Unable to convert the database", exc);
+            exitCode = 1;
+        } finally {
+            switch (phase) {
+                case 0:
+                    //
+                    // We failed while creating the SQL file
+                    //
+                    if (sqlFile.exists()) {
+                        if (!sqlFile.delete()) {
+                            LOG.error(String.format("Unable to delete '%s'", sqlFile.getPath()));
+                        }
+                    }
+                    break;
+                case 1:
+                    //
+                    // We failed while creating or checking the new database
+                    //
+                    if (newFile.exists()) {
+                        if (!newFile.delete()) {
+                            LOG.error(String.format("Unable to delete '%s'", newFile.getPath()));
+                        }
+                    }
+                    if (!oldFile.renameTo(dbFile)) {
+                        LOG.error(String.format("Unable to rename '%s' to '%s'",
+                                                             oldFile.getPath(), dbFile.getPath()));
+                    }
+                    break;
+                case 2:
+                    //
+                    // New database created
+                    //
+                    if (!sqlFile.delete()) {
+                        LOG.error(String.format("Unable to delete '%s'", sqlFile.getPath()));
+                    }
+                    break;
+            }
+        }
+        return exitCode;
+    }
+
+    /**
+     * Set the database engine in the database URL
+     *
+     * @param   dbUrl               Database URL
+     * @param   mvStore             TRUE to use the MVStore engine
+     * @return                      Database URL
+     */
+    private static String setMvStore(String dbUrl, boolean mvStore) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : dbUrl.split(";")) {
+            if (!part.isEmpty() && !part.toUpperCase().startsWith("MV_STORE=")) {
+                if (sb.length() > 0) {
+                    sb.append(';');
+                }
+                sb.append(part);
+            }
+        }
+        return sb.append(";MV_STORE=").append(mvStore ? "TRUE" : "FALSE").toString();
+    }
+
+    /**
+     * Table row counts and the blockchain checksum of a database
+     */
+    private static final class DbContents {
+
+        private final Map<String, Long> rowCounts = new TreeMap<>();
+        private final int height;
+        private final byte[] checksum;
+
+        private DbContents(Connection conn) throws SQLException {
+            try (Statement s = conn.createStatement()) {
+                List<String> tables = new ArrayList<>();
+                try (ResultSet rs = s.executeQuery("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES "
+                        + "WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_TYPE = 'TABLE'")) {
+                    while (rs.next()) {
+                        tables.add(rs.getString(1));
+                    }
+                }
+                for (String table : tables) {
+                    try (ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM \"" + table + "\"")) {
+                        rs.next();
+                        rowCounts.put(table, rs.getLong(1));
+                    }
+                }
+                MessageDigest digest = Crypto.sha256();
+                ByteBuffer buffer = ByteBuffer.allocate(12);
+                int lastHeight = 0;
+                try (ResultSet rs = s.executeQuery("SELECT id, height, payload_hash, block_signature FROM block ORDER BY height")) {
+                    while (rs.next()) {
+                        lastHeight = rs.getInt("height");
+                        buffer.clear();
+                        buffer.putLong(rs.getLong("id")).putInt(lastHeight);
+                        digest.update(buffer.array());
+                        digest.update(rs.getBytes("payload_hash"));
+                        digest.update(rs.getBytes("block_signature"));
+                    }
+                }
+                try (ResultSet rs = s.executeQuery("SELECT id, full_hash FROM transaction ORDER BY height, transaction_index")) {
+                    while (rs.next()) {
+                        buffer.clear();
+                        buffer.putLong(rs.getLong("id")).putInt(0);
+                        digest.update(buffer.array());
+                        digest.update(rs.getBytes("full_hash"));
+                    }
+                }
+                height = lastHeight;
+                checksum = digest.digest();
+            }
+        }
+
+        /**
+         * Compare the database contents
+         *
+         * @param   other               Contents of the other database
+         * @return                      Differences or an empty list if the contents match
+         */
+        private List<String> compare(DbContents other) {
+            List<String> differences = new ArrayList<>();
+            rowCounts.forEach((table, count) -> {
+                Long otherCount = other.rowCounts.get(table);
+                if (otherCount == null) {
+                    differences.add(String.format("Table %s is missing", table));
+                } else if (otherCount.longValue() != count) {
+                    differences.add(String.format("Table %s has %d rows instead of %d", table, otherCount, count));
+                }
+            });
+            other.rowCounts.keySet().stream()
+                    .filter(table -> !rowCounts.containsKey(table))
+                    .forEach(table -> differences.add(String.format("Table %s was added", table)));
+            if (other.height != height) {
+                differences.add(String.format("Blockchain height is %d instead of %d", other.height, height));
+            }
+            if (!Arrays.equals(other.checksum, checksum)) {
+                differences.add("Blockchain checksum does not match");
+            }
+            return differences;
+        }
+    }
+}
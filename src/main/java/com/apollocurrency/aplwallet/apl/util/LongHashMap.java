@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive long keys.
+ * <p>
+ * The entries are stored in parallel key and value arrays using open addressing with linear probing,
+ * so adding an entry does not allocate a node or box the key.  A zero key marks a free slot and the
+ * entry for the zero key is kept outside of the arrays.  Removed entries are closed up by shifting
+ * the following entries of the probe sequence, so there are no tombstones.
+ * <p>
+ * The map is not synchronized.
+ *
+ * @param   <V>                 Value type
+ */
+public final class LongHashMap<V> {
+
+    /** Entry consumer */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Process a map entry
+         *
+         * @param   key             Entry key
+         * @param   value           Entry value
+         */
+        void accept(long key, V value);
+    }
+
+    /** Maximum load factor */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Minimum table capacity */
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+
+    /** Entry for the zero key */
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    /**
+     * Create an empty map
+     */
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty map
+     *
+     * @param   expectedSize        Number of entries the map can hold without being resized
+     */
+    public LongHashMap(int expectedSize) {
+        allocate(LongHashSet.tableSize(expectedSize, LOAD_FACTOR, MIN_CAPACITY));
+    }
+
+    /**
+     * Return the number of entries in the map
+     *
+     * @return                      Number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the map is empty
+     *
+     * @return                      TRUE if the map is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the value for a key
+     *
+     * @param   key                 Key
+     * @return                      Value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        long[] keys = this.keys;
+        int pos = LongHashSet.hash(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0) {
+            if (k == key) {
+                return (V) values[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Check if the map contains a key
+     *
+     * @param   key                 Key
+     * @return                      TRUE if the key is in the map
+     */
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+     * Add an entry to the map
+     *
+     * @param   key                 Key
+     * @param   value               Value
+     * @return                      Previous value or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            V oldValue = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return oldValue;
+        }
+        int pos = LongHashSet.hash(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0) {
+            if (k == key) {
+                V oldValue = (V) values[pos];
+                values[pos] = value;
+                return oldValue;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size >= threshold) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove an entry from the map
+     *
+     * @param   key                 Key
+     * @return                      Removed value or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            V oldValue = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                size--;
+            }
+            return oldValue;
+        }
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        V oldValue = (V) values[pos];
+        size--;
+        shiftKeys(pos);
+        return oldValue;
+    }
+
+    /**
+     * Remove all entries from the map
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Process each entry in the map.  The map must not be modified by the consumer.
+     *
+     * @param   consumer            Entry consumer
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        long[] keys = this.keys;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Return the keys in the map
+     *
+     * @return                      Array of keys in no particular order
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        if (hasZeroKey) {
+            index++;
+        }
+        for (long k : keys) {
+            if (k != 0) {
+                result[index++] = k;
+            }
+        }
+        return result;
+    }
+
+    private int find(long key) {
+        long[] keys = this.keys;
+        int pos = LongHashSet.hash(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Close up the probe sequence after removing the entry at a slot
+     *
+     * @param   pos                 Slot of the removed entry
+     */
+    private void shiftKeys(int pos) {
+        long[] keys = this.keys;
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                if ((k = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+                int slot = LongHashSet.hash(k) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != 0) {
+                int pos = LongHashSet.hash(k) & mask;
+                while (keys[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+}
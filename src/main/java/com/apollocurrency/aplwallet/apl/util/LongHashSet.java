@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hash set of primitive long values.
+ * <p>
+ * The values are stored in an array using open addressing with linear probing, so adding a value
+ * does not allocate a node or box the value.  A zero entry marks a free slot and the zero value is
+ * tracked outside of the array.  Removed values are closed up by shifting the following values of
+ * the probe sequence, so there are no tombstones.
+ * <p>
+ * The set is not synchronized.
+ */
+public final class LongHashSet {
+
+    /** Maximum load factor */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Minimum table capacity */
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+
+    /** Zero value is in the set */
+    private boolean hasZero;
+
+    /**
+     * Create an empty set
+     */
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty set
+     *
+     * @param   expectedSize        Number of values the set can hold without being resized
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(tableSize(expectedSize, LOAD_FACTOR, MIN_CAPACITY));
+    }
+
+    /**
+     * Create a set containing the values of an array
+     *
+     * @param   array               Values
+     */
+    public LongHashSet(long[] array) {
+        this(array.length);
+        for (long value : array) {
+            add(value);
+        }
+    }
+
+    /**
+     * Return the number of values in the set
+     *
+     * @return                      Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the set is empty
+     *
+     * @return                      TRUE if the set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check if the set contains a value
+     *
+     * @param   value               Value
+     * @return                      TRUE if the value is in the set
+     */
+    public boolean contains(long value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        long[] values = this.values;
+        int pos = hash(value) & mask;
+        long v;
+        while ((v = values[pos]) != 0) {
+            if (v == value) {
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Add a value to the set
+     *
+     * @param   value               Value
+     * @return                      TRUE if the value was not already in the set
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int pos = hash(value) & mask;
+        long v;
+        while ((v = values[pos]) != 0) {
+            if (v == value) {
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        values[pos] = value;
+        if (++size >= threshold) {
+            rehash(values.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Remove a value from the set
+     *
+     * @param   value               Value
+     * @return                      TRUE if the value was in the set
+     */
+    public boolean remove(long value) {
+        if (value == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        long[] values = this.values;
+        int pos = hash(value) & mask;
+        long v;
+        while ((v = values[pos]) != 0) {
+            if (v == value) {
+                size--;
+                shiftValues(pos);
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Remove all values from the set
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(values, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Process each value in the set.  The set must not be modified by the consumer.
+     *
+     * @param   consumer            Value consumer
+     */
+    public void forEach(LongConsumer consumer) {
+        if (hasZero) {
+            consumer.accept(0);
+        }
+        for (long v : values) {
+            if (v != 0) {
+                consumer.accept(v);
+            }
+        }
+    }
+
+    /**
+     * Return the values in the set
+     *
+     * @return                      Array of values in no particular order
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int index = 0;
+        if (hasZero) {
+            index++;
+        }
+        for (long v : values) {
+            if (v != 0) {
+                result[index++] = v;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Close up the probe sequence after removing the value at a slot
+     *
+     * @param   pos                 Slot of the removed value
+     */
+    private void shiftValues(int pos) {
+        long[] values = this.values;
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            long v;
+            while (true) {
+                if ((v = values[pos]) == 0) {
+                    values[last] = 0;
+                    return;
+                }
+                int slot = hash(v) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            values[last] = v;
+        }
+    }
+
+    private void allocate(int capacity) {
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldValues = values;
+        allocate(capacity);
+        for (long v : oldValues) {
+            if (v != 0) {
+                int pos = hash(v) & mask;
+                while (values[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                values[pos] = v;
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of a key.  Identifiers are already random, but sequential keys such as
+     * heights would otherwise form long probe sequences.
+     *
+     * @param   key                 Key
+     * @return                      Hash code
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Return the power of two table size needed for a number of entries
+     *
+     * @param   expectedSize        Expected number of entries
+     * @param   loadFactor          Maximum load factor
+     * @param   minCapacity         Minimum table size
+     * @return                      Table size
+     */
+    static int tableSize(int expectedSize, float loadFactor, int minCapacity) {
+        long needed = (long) Math.ceil(expectedSize / loadFactor) + 1;
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        int capacity = minCapacity;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
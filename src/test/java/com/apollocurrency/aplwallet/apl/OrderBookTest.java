@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl;
+
+import com.apollocurrency.aplwallet.apl.db.BasicDb;
+import com.apollocurrency.aplwallet.apl.db.DbUtils;
+import com.apollocurrency.aplwallet.apl.db.DbVersion;
+import com.apollocurrency.aplwallet.apl.db.TransactionalDb;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Check that the {@link OrderBook} returns the orders and fills of the SQL queries it replaces
+ */
+public class OrderBookTest {
+
+    private static final String ASK_SORT = " ORDER BY price ASC, creation_height ASC, transaction_height ASC, transaction_index ASC ";
+    private static final String BID_SORT = " ORDER BY price DESC, creation_height ASC, transaction_height ASC, transaction_index ASC ";
+
+    private static final long ASSET_ID = 1;
+    private static final long OTHER_ASSET_ID = 2;
+
+    private static final long LARGE_BID_ID = 1;
+
+    private static final TransactionalDb db = new TransactionalDb(new BasicDb.DbProperties().dbUrl("jdbc:h2:mem:orderbook")
+            .dbPassword("").dbUsername("sa").maxConnections(10).loginTimeout(10).maxMemoryRows(100000).defaultLockTimeout(10 * 1000));
+
+    private long nextOrderId;
+    private int nextTransactionIndex;
+
+    @BeforeClass
+    public static void init() throws SQLException {
+        db.init(new DbVersion() {
+            @Override
+            protected void update(int nextUpdate) {
+                // tables are created by the test
+            }
+        });
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement()) {
+            for (String table : new String[] {"ask_order", "bid_order"}) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (db_id IDENTITY, id BIGINT NOT NULL, "
+                        + "account_id BIGINT NOT NULL, asset_id BIGINT NOT NULL, price BIGINT NOT NULL, "
+                        + "transaction_index SMALLINT NOT NULL, transaction_height INT NOT NULL, "
+                        + "quantity BIGINT NOT NULL, creation_height INT NOT NULL, height INT NOT NULL, "
+                        + "latest BOOLEAN NOT NULL DEFAULT TRUE)");
+            }
+            con.commit();
+        }
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        db.shutdown();
+    }
+
+    /**
+     * Resting orders with few distinct prices and heights, so most orders are ordered by time priority
+     */
+    @Before
+    public void setUp() throws SQLException {
+        nextOrderId = 1000;
+        nextTransactionIndex = 0;
+        Random random = new Random(1);
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("DELETE FROM ask_order");
+            stmt.executeUpdate("DELETE FROM bid_order");
+            for (int i = 0; i < 300; i++) {
+                long assetId = i % 5 == 0 ? OTHER_ASSET_ID : ASSET_ID;
+                int height = 100 + random.nextInt(5);
+                insertOrder(con, "ask_order", assetId, 100 + random.nextInt(10), 1 + random.nextInt(50), height);
+                insertOrder(con, "bid_order", assetId, 90 + random.nextInt(10), 1 + random.nextInt(50), height);
+            }
+            con.commit();
+        }
+    }
+
+    private long insertOrder(Connection con, String table, long assetId, long priceATM, long quantityATU, int height)
+            throws SQLException {
+        return insertOrder(con, table, nextOrderId++, assetId, priceATM, quantityATU, height);
+    }
+
+    private long insertOrder(Connection con, String table, long id, long assetId, long priceATM, long quantityATU, int height)
+            throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO " + table + " (id, account_id, asset_id, price, "
+                + "transaction_index, transaction_height, quantity, creation_height, height) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            int i = 0;
+            pstmt.setLong(++i, id);
+            pstmt.setLong(++i, id * 7);
+            pstmt.setLong(++i, assetId);
+            pstmt.setLong(++i, priceATM);
+            pstmt.setShort(++i, (short) nextTransactionIndex++);
+            pstmt.setInt(++i, height + 1);
+            pstmt.setLong(++i, quantityATU);
+            pstmt.setInt(++i, height);
+            pstmt.setInt(++i, height + 1);
+            pstmt.executeUpdate();
+        }
+        return id;
+    }
+
+    private static List<Long> getSqlOrderIds(String table, String sort, int from, int to) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT id FROM " + table + " WHERE asset_id = ? AND latest = TRUE"
+                     + sort + DbUtils.limitsClause(from, to))) {
+            pstmt.setLong(1, ASSET_ID);
+            DbUtils.setLimits(2, pstmt, from, to);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static List<Long> getBookOrderIds(OrderBook orderBook, int from, int to) {
+        List<Long> ids = new ArrayList<>();
+        orderBook.getOrders(ASSET_ID, from, to).forEach(entry -> ids.add(entry.getId()));
+        return ids;
+    }
+
+    private static void assertSameOrders(OrderBook askOrderBook, OrderBook bidOrderBook) throws SQLException {
+        Assert.assertEquals(getSqlOrderIds("ask_order", ASK_SORT, 0, -1), getBookOrderIds(askOrderBook, 0, -1));
+        Assert.assertEquals(getSqlOrderIds("bid_order", BID_SORT, 0, -1), getBookOrderIds(bidOrderBook, 0, -1));
+    }
+
+    @Test
+    public void testSortedOrders() throws SQLException {
+        OrderBook askOrderBook = new OrderBook(db, "ask_order", OrderBook.ASK_ORDER_COMPARATOR, OrderBook.ASK_ORDER_SORT);
+        OrderBook bidOrderBook = new OrderBook(db, "bid_order", OrderBook.BID_ORDER_COMPARATOR, OrderBook.BID_ORDER_SORT);
+        int[][] limits = {{0, -1}, {0, 0}, {0, 9}, {10, 19}, {5, -1}, {200, 300}, {20, 10}, {-1, 5}};
+        for (int[] limit : limits) {
+            Assert.assertEquals(getSqlOrderIds("ask_order", ASK_SORT, limit[0], limit[1]), getBookOrderIds(askOrderBook, limit[0], limit[1]));
+            Assert.assertEquals(getSqlOrderIds("bid_order", BID_SORT, limit[0], limit[1]), getBookOrderIds(bidOrderBook, limit[0], limit[1]));
+        }
+        Assert.assertTrue(askOrderBook.getOrders(-ASSET_ID, 0, -1).isEmpty());
+    }
+
+    /**
+     * A large bid crossing the resting asks is matched by {@link Order#match(long, java.util.function.LongFunction,
+     * java.util.function.LongFunction, java.util.function.BiConsumer)}, first reading the next orders from the order
+     * tables and then from the order book, in separate database transactions that are rolled back.  The trades and
+     * the remaining orders must be the same.
+     */
+    @Test
+    public void testMatchingFills() throws SQLException {
+        OrderBook askOrderBook = new OrderBook(db, "ask_order", OrderBook.ASK_ORDER_COMPARATOR, OrderBook.ASK_ORDER_SORT);
+        OrderBook bidOrderBook = new OrderBook(db, "bid_order", OrderBook.BID_ORDER_COMPARATOR, OrderBook.BID_ORDER_SORT);
+
+        List<String> sqlFills = new ArrayList<>();
+        Map<Long, Long> sqlAskOrders;
+        Map<Long, Long> sqlBidOrders;
+        db.beginTransaction();
+        try {
+            placeLargeBid();
+            Order.match(ASSET_ID, askOrderBook::getFirstFromTable, bidOrderBook::getFirstFromTable,
+                    (ask, bid) -> sqlFills.add(fill(ask, bid, null, null)));
+            sqlAskOrders = getSqlQuantities("ask_order");
+            sqlBidOrders = getSqlQuantities("bid_order");
+        } finally {
+            db.rollbackTransaction();
+            db.endTransaction();
+        }
+
+        assertSameOrders(askOrderBook, bidOrderBook);
+        List<String> bookFills = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            bidOrderBook.put(getEntry("bid_order", placeLargeBid()));
+            Order.match(ASSET_ID, askOrderBook::getFirst, bidOrderBook::getFirst,
+                    (ask, bid) -> bookFills.add(fill(ask, bid, askOrderBook, bidOrderBook)));
+            Assert.assertEquals(sqlAskOrders, getSqlQuantities("ask_order"));
+            Assert.assertEquals(sqlBidOrders, getSqlQuantities("bid_order"));
+            // The book matches the tables after the fills
+            assertSameOrders(askOrderBook, bidOrderBook);
+            Assert.assertEquals(sqlAskOrders, getBookQuantities(askOrderBook));
+            Assert.assertEquals(sqlBidOrders, getBookQuantities(bidOrderBook));
+        } finally {
+            db.rollbackTransaction();
+            db.endTransaction();
+        }
+
+        Assert.assertTrue(sqlFills.size() > 100);
+        Assert.assertEquals(sqlFills, bookFills);
+        // The rolled back fills are removed from the order book
+        assertSameOrders(askOrderBook, bidOrderBook);
+    }
+
+    /**
+     * The order book is reloaded when it is invalidated and restored when the transaction is rolled back
+     */
+    @Test
+    public void testReloadAndRollback() throws SQLException {
+        OrderBook askOrderBook = new OrderBook(db, "ask_order", OrderBook.ASK_ORDER_COMPARATOR, OrderBook.ASK_ORDER_SORT);
+        OrderBook bidOrderBook = new OrderBook(db, "bid_order", OrderBook.BID_ORDER_COMPARATOR, OrderBook.BID_ORDER_SORT);
+        assertSameOrders(askOrderBook, bidOrderBook);
+        List<Long> askIds = getBookOrderIds(askOrderBook, 0, -1);
+        db.beginTransaction();
+        try {
+            try (Connection con = db.getConnection();
+                 Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("DELETE FROM ask_order WHERE price < 105");
+            }
+            askOrderBook.invalidate();
+            assertSameOrders(askOrderBook, bidOrderBook);
+            Assert.assertNotEquals(askIds, getBookOrderIds(askOrderBook, 0, -1));
+            askOrderBook.remove(askOrderBook.getFirst(ASSET_ID));
+        } finally {
+            db.rollbackTransaction();
+            db.endTransaction();
+        }
+        Assert.assertEquals(askIds, getBookOrderIds(askOrderBook, 0, -1));
+        assertSameOrders(askOrderBook, bidOrderBook);
+    }
+
+    private long placeLargeBid() throws SQLException {
+        try (Connection con = db.getConnection()) {
+            return insertOrder(con, "bid_order", LARGE_BID_ID, ASSET_ID, 120, 5000, 110);
+        }
+    }
+
+    private static OrderBook.Entry getEntry(String table, long id) throws SQLException {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + " WHERE id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                return new OrderBook.Entry(rs.getLong("id"), rs.getLong("account_id"), rs.getLong("asset_id"),
+                        rs.getLong("price"), rs.getLong("quantity"), rs.getInt("creation_height"),
+                        rs.getShort("transaction_index"), rs.getInt("transaction_height"));
+            }
+        }
+    }
+
+    private static Map<Long, Long> getSqlQuantities(String table) throws SQLException {
+        Map<Long, Long> quantities = new HashMap<>();
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT id, quantity FROM " + table + " WHERE asset_id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, ASSET_ID);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    quantities.put(rs.getLong(1), rs.getLong(2));
+                }
+            }
+        }
+        return quantities;
+    }
+
+    private static Map<Long, Long> getBookQuantities(OrderBook orderBook) {
+        Map<Long, Long> quantities = new HashMap<>();
+        orderBook.getOrders(ASSET_ID, 0, -1).forEach(entry -> quantities.put(entry.getId(), entry.getQuantityATU()));
+        return quantities;
+    }
+
+    /**
+     * Fill the orders as the trade does: the quantity is the smaller order quantity, the order rows are updated
+     * or deleted and the order book, if any, is updated as the order table hooks do
+     */
+    private static String fill(OrderBook.Entry ask, OrderBook.Entry bid, OrderBook askOrderBook, OrderBook bidOrderBook) {
+        long quantityATU = Math.min(ask.getQuantityATU(), bid.getQuantityATU());
+        try {
+            updateSqlOrder("ask_order", ask.getId(), ask.getQuantityATU() - quantityATU);
+            updateSqlOrder("bid_order", bid.getId(), bid.getQuantityATU() - quantityATU);
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        if (askOrderBook != null) {
+            updateBookOrder(askOrderBook, ask, ask.getQuantityATU() - quantityATU);
+            updateBookOrder(bidOrderBook, bid, bid.getQuantityATU() - quantityATU);
+        }
+        return Long.toUnsignedString(ask.getId()) + ":" + Long.toUnsignedString(bid.getId()) + ":" + quantityATU;
+    }
+
+    private static void updateSqlOrder(String table, long id, long quantityATU) throws SQLException {
+        try (Connection con = db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(quantityATU > 0 ?
+                     "UPDATE " + table + " SET quantity = ? WHERE id = ?" : "DELETE FROM " + table + " WHERE id = ?")) {
+            int i = 0;
+            if (quantityATU > 0) {
+                pstmt.setLong(++i, quantityATU);
+            }
+            pstmt.setLong(++i, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void updateBookOrder(OrderBook orderBook, OrderBook.Entry entry, long quantityATU) {
+        if (quantityATU > 0) {
+            orderBook.put(new OrderBook.Entry(entry.getId(), entry.getAccountId(), entry.getAssetId(), entry.getPriceATM(),
+                    quantityATU, entry.getCreationHeight(), entry.getTransactionIndex(), entry.getTransactionHeight()));
+        } else {
+            orderBook.remove(entry);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.crypto;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Differential test of the {@link Curve25519Backend#OPTIMIZED} backend against the reference {@link Curve25519}
+ */
+public class Curve25519BackendTest {
+
+    private static final int CORPUS_SIZE = 200;
+
+    private final Random random = new Random(25519);
+
+    @After
+    public void tearDown() {
+        Crypto.setCurve25519Backend(Curve25519Backend.REFERENCE);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testKeygen() {
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] k = randomBytes(32);
+            byte[] k1 = k.clone();
+            byte[] k2 = k.clone();
+            byte[] p1 = new byte[32], s1 = new byte[32];
+            byte[] p2 = new byte[32], s2 = new byte[32];
+            Curve25519.keygen(p1, s1, k1);
+            FastCurve25519.keygen(p2, s2, k2);
+            Assert.assertArrayEquals(p1, p2);
+            Assert.assertArrayEquals(s1, s2);
+            Assert.assertArrayEquals(k1, k2);
+        }
+    }
+
+    @Test
+    public void testCurve() {
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] k = randomBytes(32);
+            Curve25519.clamp(k);
+            byte[] publicKey = i % 2 == 0 ? randomBytes(32) : Crypto.getPublicKey(randomBytes(32));
+            byte[] z1 = new byte[32], z2 = new byte[32];
+            Curve25519.curve(z1, k, publicKey);
+            FastCurve25519.curve(z2, k, publicKey);
+            Assert.assertArrayEquals(z1, z2);
+        }
+    }
+
+    @Test
+    public void testSignAndVerify() {
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] keySeed = randomBytes(32);
+            byte[] publicKey = new byte[32], s = new byte[32];
+            Curve25519.keygen(publicKey, s, keySeed.clone());
+            byte[] h = randomBytes(32);
+            byte[] x = randomBytes(32);
+            byte[] v1 = new byte[32], v2 = new byte[32];
+            Assert.assertEquals(Curve25519.sign(v1, h, x, s), FastCurve25519.sign(v2, h, x, s));
+            Assert.assertArrayEquals(v1, v2);
+
+            byte[] y1 = new byte[32], y2 = new byte[32];
+            Curve25519.verify(y1, v1, h, publicKey);
+            FastCurve25519.verify(y2, v2, h, publicKey);
+            Assert.assertArrayEquals(y1, y2);
+
+            byte[] v = randomBytes(32);
+            Curve25519.verify(y1, v, h, publicKey);
+            FastCurve25519.verify(y2, v, h, publicKey);
+            Assert.assertArrayEquals(y1, y2);
+        }
+    }
+
+    @Test
+    public void testCanonicalChecks() {
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] signature = randomBytes(64);
+            if (i % 2 == 0) {
+                signature[31] &= 0x0F;
+            }
+            Assert.assertEquals(Curve25519.isCanonicalSignature(signature), FastCurve25519.isCanonicalSignature(signature));
+            byte[] publicKey = randomBytes(32);
+            if (i % 2 == 0) {
+                publicKey[31] |= 0x80;
+            }
+            Assert.assertEquals(Curve25519.isCanonicalPublicKey(publicKey), FastCurve25519.isCanonicalPublicKey(publicKey));
+        }
+        byte[] prime = Curve25519.PRIME.clone();
+        Assert.assertEquals(Curve25519.isCanonicalPublicKey(prime), FastCurve25519.isCanonicalPublicKey(prime));
+        byte[] order = Arrays.copyOf(Curve25519.ORDER, 64);
+        Assert.assertEquals(Curve25519.isCanonicalSignature(order), FastCurve25519.isCanonicalSignature(order));
+    }
+
+    @Test
+    public void testCryptoApi() {
+        for (int i = 0; i < CORPUS_SIZE / 4; i++) {
+            byte[] keySeed = randomBytes(32);
+            byte[] message = randomBytes(1 + random.nextInt(512));
+
+            Crypto.setCurve25519Backend(Curve25519Backend.REFERENCE);
+            byte[] publicKey1 = Crypto.getPublicKey(keySeed);
+            byte[] signature1 = Crypto.sign(message, keySeed);
+            byte[] invalidSignature = signature1.clone();
+            invalidSignature[i % 32] ^= 1;
+            boolean valid1 = Crypto.verify(signature1, message, publicKey1);
+            boolean invalid1 = Crypto.verify(invalidSignature, message, publicKey1);
+
+            Crypto.setCurve25519Backend(Curve25519Backend.OPTIMIZED);
+            byte[] publicKey2 = Crypto.getPublicKey(keySeed);
+            byte[] signature2 = Crypto.sign(message, keySeed);
+            boolean valid2 = Crypto.verify(signature2, message, publicKey2);
+            boolean invalid2 = Crypto.verify(invalidSignature, message, publicKey2);
+
+            Assert.assertArrayEquals(publicKey1, publicKey2);
+            Assert.assertArrayEquals(signature1, signature2);
+            Assert.assertTrue(valid1);
+            Assert.assertTrue(valid2);
+            Assert.assertEquals(invalid1, invalid2);
+        }
+    }
+}
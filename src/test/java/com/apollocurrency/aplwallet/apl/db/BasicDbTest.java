@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.db;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BasicDbTest {
+
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int WRITER_CONNECTIONS = 1;
+
+    private final BasicDb db = new BasicDb(new BasicDb.DbProperties().dbUrl("jdbc:h2:mem:basicdb").dbPassword("").dbUsername("sa")
+            .maxConnections(MAX_CONNECTIONS).writerConnections(WRITER_CONNECTIONS).queryCacheSize(64)
+            .loginTimeout(1).maxMemoryRows(100000).defaultLockTimeout(10 * 1000));
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        db.init(new DbVersion() {
+            @Override
+            protected void update(int nextUpdate) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (Connection con : connections) {
+            con.close();
+        }
+        db.shutdown();
+    }
+
+    @Test
+    public void testReservedWriterConnection() throws SQLException {
+        for (int i = 0; i < MAX_CONNECTIONS - WRITER_CONNECTIONS; i++) {
+            connections.add(db.getConnection());
+        }
+        Assert.assertEquals(MAX_CONNECTIONS - WRITER_CONNECTIONS, db.getActiveConnections());
+        try {
+            connections.add(db.getConnection());
+            Assert.fail("Reader connection allocated from the reserved connections");
+        } catch (SQLException e) {
+            // expected
+        }
+        Connection writer = db.getPooledConnection();
+        connections.add(writer);
+        Assert.assertEquals(MAX_CONNECTIONS, db.getActiveConnections());
+        // Closing a reader connection makes it available again
+        connections.remove(0).close();
+        connections.add(db.getConnection());
+        Assert.assertEquals(MAX_CONNECTIONS, db.getActiveConnections());
+        Assert.assertTrue(db.getMaxConnectionWaitTime() >= db.getAverageConnectionWaitTime());
+        Assert.assertEquals(0, db.getLeakedConnections());
+    }
+
+    @Test
+    public void testQueryCacheSize() throws SQLException {
+        Assert.assertTrue(db.getUrl().contains(";QUERY_CACHE_SIZE=64"));
+        try (Connection con = db.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'QUERY_CACHE_SIZE'")) {
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("64", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void testMvStoreDetection() throws IOException {
+        Path dir = Files.createTempDirectory("basicdb");
+        String dbPath = dir.resolve("apl").toString();
+        try {
+            Assert.assertFalse(BasicDb.isMvStore(dbPath, false));
+            Assert.assertTrue(BasicDb.isMvStore(dbPath, true));
+            Assert.assertTrue(BasicDb.isMvStore(null, true));
+            Path pageStoreFile = Files.createFile(dir.resolve("apl" + BasicDb.PAGE_STORE_SUFFIX));
+            Assert.assertFalse(BasicDb.isMvStore(dbPath, true));
+            Files.delete(pageStoreFile);
+            Files.createFile(dir.resolve("apl" + BasicDb.MV_STORE_SUFFIX));
+            Assert.assertTrue(BasicDb.isMvStore(dbPath, false));
+        } finally {
+            Files.deleteIfExists(dir.resolve("apl" + BasicDb.PAGE_STORE_SUFFIX));
+            Files.deleteIfExists(dir.resolve("apl" + BasicDb.MV_STORE_SUFFIX));
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.Transaction;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompactBlockTest {
+
+    private static JSONObject transactionJSON(long id) {
+        JSONObject json = new JSONObject();
+        json.put("id", Long.toUnsignedString(id));
+        return json;
+    }
+
+    private static JSONObject compactBlock(long... transactionIds) {
+        JSONObject header = new JSONObject();
+        header.put("id", "1234");
+        header.put("previousBlock", "5678");
+        header.put("timestamp", 1000L);
+        JSONArray ids = new JSONArray();
+        for (long transactionId : transactionIds) {
+            ids.add(Long.toUnsignedString(transactionId));
+        }
+        JSONObject request = new JSONObject();
+        request.put("requestType", "processCompactBlock");
+        request.put("block", header);
+        request.put("transactionIds", ids);
+        return request;
+    }
+
+    @Test
+    public void testRebuild() {
+        Map<Long, Transaction> pool = new HashMap<>();
+        for (long id : new long[] {1, 3, -1}) {
+            Transaction transaction = Mockito.mock(Transaction.class);
+            Mockito.when(transaction.getJSONObject()).thenReturn(transactionJSON(id));
+            pool.put(id, transaction);
+        }
+        List<Long> missing = new ArrayList<>();
+        JSONObject blockData = CompactBlock.rebuild(compactBlock(1, 2, 3, -1, 5), pool::get, missing);
+        Assert.assertEquals(Arrays.asList(1L, 4L), missing);
+        Assert.assertNull(blockData.get("id"));
+        Assert.assertEquals("5678", blockData.get("previousBlock"));
+        CompactBlock.addMissing(blockData, missing, Arrays.asList(transactionJSON(2), transactionJSON(5)));
+        JSONArray transactions = (JSONArray)blockData.get("transactions");
+        Assert.assertEquals(5, transactions.size());
+        long[] expected = {1, 2, 3, -1, 5};
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(transactionJSON(expected[i]), transactions.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingTransactionCount() {
+        List<Long> missing = new ArrayList<>();
+        JSONObject blockData = CompactBlock.rebuild(compactBlock(1, 2), id -> null, missing);
+        CompactBlock.addMissing(blockData, missing, Collections.singletonList(transactionJSON(1)));
+    }
+}
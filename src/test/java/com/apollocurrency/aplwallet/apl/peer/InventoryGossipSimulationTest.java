@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Simulate transaction gossip between local nodes and compare the bytes sent by the
+ * processTransactions push with the bytes sent by inventory announcements.  Each node relays
+ * a new transaction to the first SEND_TO_PEERS_LIMIT of its peers, as Peers.sendToSomePeers does.
+ * The byte counts are the sizes of the JSON messages and do not include the HTTP or WebSocket framing.
+ */
+public class InventoryGossipSimulationTest {
+    private static final Logger LOG = getLogger(InventoryGossipSimulationTest.class);
+
+    private static final int NODE_COUNT = 100;
+    private static final int CONNECTIONS_PER_NODE = 8;
+    private static final int SEND_TO_PEERS_LIMIT = 10;
+    private static final int TRANSACTION_COUNT = 500;
+    private static final int TRANSACTIONS_PER_ROUND = 10;
+    private static final int TRANSACTIONS_PER_REQUEST = 10;
+
+    private final Random random = new Random(42);
+    private final List<List<Integer>> peers = new ArrayList<>();
+    private final Map<String, JSONObject> transactions = new LinkedHashMap<>();
+
+    public InventoryGossipSimulationTest() {
+        for (int i = 0; i < NODE_COUNT; i++) {
+            peers.add(new ArrayList<>());
+        }
+        for (int i = 0; i < NODE_COUNT; i++) {
+            while (peers.get(i).size() < CONNECTIONS_PER_NODE) {
+                int peer = random.nextInt(NODE_COUNT);
+                if (peer != i && !peers.get(i).contains(peer)) {
+                    peers.get(i).add(peer);
+                    peers.get(peer).add(i);
+                }
+            }
+        }
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            JSONObject transaction = createTransaction();
+            transactions.put((String)transaction.get("fullHash"), transaction);
+        }
+    }
+
+    private String randomHex(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Create the JSON for an ordinary payment with a message attachment
+     */
+    private JSONObject createTransaction() {
+        JSONObject transaction = new JSONObject();
+        transaction.put("type", 0);
+        transaction.put("subtype", 0);
+        transaction.put("timestamp", 30000000 + random.nextInt(1000000));
+        transaction.put("deadline", 1440);
+        transaction.put("senderPublicKey", randomHex(32));
+        transaction.put("recipient", Long.toUnsignedString(random.nextLong()));
+        transaction.put("amountATM", 100000000L * (1 + random.nextInt(1000)));
+        transaction.put("feeATM", 100000000L);
+        transaction.put("ecBlockHeight", 1000000);
+        transaction.put("ecBlockId", Long.toUnsignedString(random.nextLong()));
+        transaction.put("signature", randomHex(64));
+        transaction.put("version", 1);
+        JSONObject attachment = new JSONObject();
+        attachment.put("version.Message", 1);
+        attachment.put("message", "Payment " + random.nextInt());
+        attachment.put("messageIsText", true);
+        transaction.put("attachment", attachment);
+        transaction.put("fullHash", randomHex(32));
+        return transaction;
+    }
+
+    private static int size(JSONObject message) {
+        return JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private JSONObject processTransactionsRequest(List<String> fullHashes) {
+        JSONObject request = new JSONObject();
+        request.put("requestType", "processTransactions");
+        JSONArray transactionsData = new JSONArray();
+        fullHashes.forEach(fullHash -> transactionsData.add(transactions.get(fullHash)));
+        request.put("transactions", transactionsData);
+        return request;
+    }
+
+    private static <T> List<List<T>> split(List<T> list, int size) {
+        List<List<T>> result = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            result.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return result;
+    }
+
+    /**
+     * Run the simulation
+     *
+     * @param   useInventory        TRUE to announce the transactions, FALSE to push the transactions
+     * @param   known               Transactions known by each node
+     * @return                      Number of bytes sent
+     */
+    private long simulate(boolean useInventory, List<Set<String>> known) {
+        List<Inventory> inventories = new ArrayList<>();
+        List<List<String>> relay = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            known.add(new HashSet<>());
+            inventories.add(new Inventory());
+            relay.add(new ArrayList<>());
+        }
+        List<String> pending = new ArrayList<>(transactions.keySet());
+        long bytes = 0;
+        long now = 0;
+        while (!pending.isEmpty() || relay.stream().anyMatch(list -> !list.isEmpty())) {
+            //
+            // New transactions are submitted to random nodes
+            //
+            for (String fullHash : pending.subList(0, Math.min(TRANSACTIONS_PER_ROUND, pending.size()))) {
+                int node = random.nextInt(NODE_COUNT);
+                known.get(node).add(fullHash);
+                relay.get(node).add(fullHash);
+            }
+            pending = pending.subList(Math.min(TRANSACTIONS_PER_ROUND, pending.size()), pending.size());
+            //
+            // Each node relays the transactions it received in the previous round
+            //
+            Map<Integer, List<String>> received = new HashMap<>();
+            for (int node = 0; node < NODE_COUNT; node++) {
+                List<String> fullHashes = relay.get(node);
+                if (fullHashes.isEmpty()) {
+                    continue;
+                }
+                for (int peer : peers.get(node).subList(0, Math.min(SEND_TO_PEERS_LIMIT, peers.get(node).size()))) {
+                    Set<String> peerKnown = known.get(peer);
+                    if (useInventory) {
+                        for (List<String> batch : split(fullHashes, Inventory.MAX_TRANSACTIONS)) {
+                            bytes += size(Inventory.announceTransactions(batch));
+                            List<String> missing = inventories.get(peer).selectMissing(batch, peerKnown::contains, now);
+                            if (!missing.isEmpty()) {
+                                bytes += size(Inventory.getInventoryRequest(null, missing));
+                                JSONObject response = processTransactionsRequest(missing);
+                                response.remove("requestType");
+                                bytes += size(response);
+                                received.computeIfAbsent(peer, k -> new ArrayList<>()).addAll(missing);
+                            }
+                        }
+                    } else {
+                        for (List<String> batch : split(fullHashes, TRANSACTIONS_PER_REQUEST)) {
+                            bytes += size(processTransactionsRequest(batch));
+                            for (String fullHash : batch) {
+                                if (!peerKnown.contains(fullHash)) {
+                                    received.computeIfAbsent(peer, k -> new ArrayList<>()).add(fullHash);
+                                }
+                            }
+                        }
+                    }
+                }
+                relay.set(node, new ArrayList<>());
+            }
+            //
+            // Received transactions are added to the unconfirmed pool and relayed in the next round
+            //
+            for (Map.Entry<Integer, List<String>> entry : received.entrySet()) {
+                int node = entry.getKey();
+                for (String fullHash : entry.getValue()) {
+                    if (known.get(node).add(fullHash)) {
+                        relay.get(node).add(fullHash);
+                    }
+                }
+                inventories.get(node).requestCompleted(entry.getValue());
+            }
+            now += 1000;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testBandwidthSaved() {
+        List<Set<String>> pushKnown = new ArrayList<>();
+        List<Set<String>> inventoryKnown = new ArrayList<>();
+        long pushBytes = simulate(false, pushKnown);
+        long inventoryBytes = simulate(true, inventoryKnown);
+        //
+        // Every node must receive every transaction using either protocol
+        //
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Assert.assertEquals(transactions.keySet(), pushKnown.get(i));
+            Assert.assertEquals(transactions.keySet(), inventoryKnown.get(i));
+        }
+        long payloadBytes = 0;
+        for (JSONObject transaction : transactions.values()) {
+            payloadBytes += size(transaction);
+        }
+        LOG.info(String.format("%d nodes, %d transactions (%d bytes): push sent %d bytes, inventory sent %d bytes, %.1f%% saved",
+                NODE_COUNT, TRANSACTION_COUNT, payloadBytes, pushBytes, inventoryBytes,
+                100.0 * (pushBytes - inventoryBytes) / pushBytes));
+        Assert.assertTrue(inventoryBytes < pushBytes / 2);
+    }
+
+    @Test
+    public void testRequestedOnce() {
+        Inventory inventory = new Inventory();
+        List<String> fullHashes = new ArrayList<>(transactions.keySet()).subList(0, 3);
+        Assert.assertEquals(fullHashes, inventory.selectMissing(fullHashes, fullHash -> false, 0));
+        // Not requested again from another peer while the first request is outstanding
+        Assert.assertEquals(Collections.emptyList(), inventory.selectMissing(fullHashes, fullHash -> false, 1000));
+        // Requested again once the first request has timed out
+        Assert.assertEquals(fullHashes, inventory.selectMissing(fullHashes, fullHash -> false, 60 * 1000));
+        inventory.requestCompleted(fullHashes);
+        // Known items are not requested
+        Assert.assertEquals(fullHashes.subList(1, 3),
+                inventory.selectMissing(fullHashes, fullHash -> fullHash.equals(fullHashes.get(0)), 60 * 1000));
+    }
+}
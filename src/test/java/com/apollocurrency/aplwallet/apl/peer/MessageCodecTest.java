@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import com.apollocurrency.aplwallet.apl.util.JSON;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Check that {@link MessageCodec} is compatible with the GZIP streams used by earlier versions
+ */
+public class MessageCodecTest {
+
+    private static final int MIN_COMPRESS_SIZE = 256;
+
+    private static JSONObject createMessage(int transactionCount) {
+        JSONObject message = new JSONObject();
+        message.put("requestType", "processTransactions");
+        JSONArray transactions = new JSONArray();
+        for (int i = 0; i < transactionCount; i++) {
+            JSONObject transaction = new JSONObject();
+            transaction.put("id", Long.toUnsignedString(i * 0x9E3779B97F4A7C15L));
+            transaction.put("message", "Message é中 " + i);
+            transactions.add(transaction);
+        }
+        message.put("transactions", transactions);
+        return message;
+    }
+
+    /**
+     * Get the message payload sent in the WebSocket frame
+     */
+    private static byte[] getPayload(MessageCodec.Message message) {
+        ByteBuffer frame = message.getFrame();
+        frame.position(MessageCodec.FRAME_HEADER_LENGTH);
+        byte[] payload = new byte[frame.remaining()];
+        frame.get(payload);
+        return payload;
+    }
+
+    @Test
+    public void testUncompressed() throws Exception {
+        JSONObject message = createMessage(1);
+        MessageCodec.Message encoded = MessageCodec.encode(message, -1);
+        Assert.assertFalse(encoded.isCompressed());
+        byte[] payload = getPayload(encoded);
+        Assert.assertEquals(JSON.toJSONString(message), new String(payload, StandardCharsets.UTF_8));
+        Assert.assertEquals(payload.length, encoded.getLength());
+        MessageCodec.Message received = new MessageCodec.Message(payload, 0, payload.length, encoded.getLength(), false);
+        Assert.assertEquals(message, received.parse(payload.length));
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        JSONObject message = createMessage(1000);
+        byte[] text = JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+        MessageCodec.Message encoded = MessageCodec.encode(message, MIN_COMPRESS_SIZE);
+        Assert.assertTrue(encoded.isCompressed());
+        Assert.assertEquals(text.length, encoded.getLength());
+        byte[] payload = getPayload(encoded);
+        // Decompressed by an earlier version
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+        Assert.assertArrayEquals(text, out.toByteArray());
+        // Compressed by an earlier version
+        out.reset();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text);
+        }
+        byte[] compressed = out.toByteArray();
+        MessageCodec.Message received = new MessageCodec.Message(compressed, 0, compressed.length, text.length, true);
+        Assert.assertEquals(message, received.parse(text.length));
+        received = new MessageCodec.Message(payload, 0, payload.length, text.length, true);
+        Assert.assertEquals(message, received.parse(text.length));
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        JSONObject message = createMessage(5);
+        int length = JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8).length;
+        MessageCodec.Message gzip = MessageCodec.encode(message, 0, false);
+        int gzipSize = getPayload(gzip).length;
+        MessageCodec.Message encoded = MessageCodec.encode(message, 0, true);
+        Assert.assertTrue(encoded.isCompressed());
+        Assert.assertTrue(encoded.usesDictionary());
+        byte[] payload = getPayload(encoded);
+        Assert.assertTrue(payload.length < gzipSize);
+        MessageCodec.Message received = new MessageCodec.Message(payload, 0, payload.length, length, true, true);
+        Assert.assertEquals(message, received.parse(length));
+        Assert.assertEquals(message, new MessageCodec.Message(payload, 0, payload.length, length, false, true).copy().parse(length));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptDictionaryMessage() throws Exception {
+        JSONObject message = createMessage(5);
+        MessageCodec.Message encoded = MessageCodec.encode(message, 0, true);
+        byte[] payload = getPayload(encoded);
+        new MessageCodec.Message(payload, 0, payload.length, encoded.getLength() + 1, true, true).parse(Integer.MAX_VALUE);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptMessage() throws Exception {
+        byte[] payload = getPayload(MessageCodec.encode(createMessage(100), MIN_COMPRESS_SIZE));
+        payload[payload.length - 5] ^= 1;
+        new MessageCodec.Message(payload, 0, payload.length, payload.length, true).parse(Integer.MAX_VALUE);
+    }
+}
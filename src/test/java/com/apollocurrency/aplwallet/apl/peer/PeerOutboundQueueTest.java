@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class PeerOutboundQueueTest {
+
+    @Test
+    public void testMaxInFlight() {
+        PeerOutboundQueue queue = new PeerOutboundQueue(10, 2);
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(queue.submit(() -> {
+                CompletableFuture<Boolean> send = new CompletableFuture<>();
+                sends.add(send);
+                return send;
+            }));
+        }
+        Assert.assertEquals(2, sends.size());
+        Assert.assertEquals(2, queue.size());
+        sends.get(0).complete(true);
+        Assert.assertTrue(results.get(0).join());
+        Assert.assertEquals(3, sends.size());
+        sends.get(1).completeExceptionally(new RuntimeException());
+        Assert.assertFalse(results.get(1).join());
+        Assert.assertEquals(4, sends.size());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testDropOldest() {
+        PeerOutboundQueue queue = new PeerOutboundQueue(2, 1);
+        CompletableFuture<Boolean> send = new CompletableFuture<>();
+        CompletableFuture<Boolean> first = queue.submit(() -> send);
+        List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(queue.submit(() -> CompletableFuture.completedFuture(true)));
+        }
+        Assert.assertTrue(waiting.get(0).isDone());
+        Assert.assertFalse(waiting.get(0).join());
+        Assert.assertEquals(1, queue.getDropped());
+        Assert.assertEquals(2, queue.size());
+        send.complete(true);
+        Assert.assertTrue(first.join());
+        Assert.assertTrue(waiting.get(1).join());
+        Assert.assertTrue(waiting.get(2).join());
+        Assert.assertEquals(0, queue.size());
+    }
+
+}
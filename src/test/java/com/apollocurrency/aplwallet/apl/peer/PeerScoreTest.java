@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.peer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeerScoreTest {
+
+    private static PeerScore createScore(long latency, long downloadTime) {
+        PeerScore score = new PeerScore();
+        for (int i = 0; i < 20; i++) {
+            score.responseReceived(latency, 1000);
+            score.responseReceived(downloadTime, 1024 * 1024);
+        }
+        return score;
+    }
+
+    @Test
+    public void testDistantPeer() {
+        PeerScore near = createScore(50, 1000);
+        PeerScore distant = createScore(800, 4000);
+        Assert.assertTrue(near.getValue() > distant.getValue());
+        Assert.assertTrue(distant.getValue() > 0.2);
+        Assert.assertEquals(800, distant.getLatency(), 1);
+        Assert.assertEquals(256 * 1024, distant.getThroughput(), 1);
+    }
+
+    @Test
+    public void testErrors() {
+        PeerScore score = createScore(50, 1000);
+        double value = score.getValue();
+        for (int i = 0; i < 10; i++) {
+            score.requestFailed();
+        }
+        Assert.assertTrue(score.getValue() < value / 2);
+        for (int i = 0; i < 100; i++) {
+            score.responseReceived(50, 1000);
+        }
+        Assert.assertEquals(value, score.getValue(), 0.01);
+    }
+
+    @Test
+    public void testFork() {
+        PeerScore score = createScore(50, 1000);
+        double value = score.getValue();
+        score.forkDetected();
+        score.forkDetected();
+        Assert.assertEquals(2, score.getForkPenalty(), 0.01);
+        Assert.assertEquals(value / 3, score.getValue(), 0.01);
+        for (int i = 0; i < 1000; i++) {
+            score.forkDetected();
+        }
+        Assert.assertEquals(PeerScore.MIN_SCORE, score.getValue(), 0);
+    }
+
+    @Test
+    public void testRestore() {
+        PeerScore saved = new PeerScore(100, -1, 0.5, 1);
+        PeerScore score = new PeerScore();
+        score.restore(saved);
+        Assert.assertEquals(100, score.getLatency(), 0);
+        Assert.assertEquals(-1, score.getThroughput(), 0);
+        Assert.assertEquals(0.5, score.getErrorRate(), 0);
+        Assert.assertEquals(saved.getValue(), score.getValue(), 0.0001);
+    }
+}
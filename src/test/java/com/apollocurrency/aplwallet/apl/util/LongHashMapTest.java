@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2018 Apollo Foundation
+ */
+
+package com.apollocurrency.aplwallet.apl.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Differential test of {@link LongHashMap} and {@link LongHashSet} against the JDK collections
+ */
+public class LongHashMapTest {
+
+    private static final int OPERATIONS = 100000;
+
+    private final Random random = new Random(25519);
+
+    /**
+     * Keys are drawn from a small range so that lookups, replacements and removals hit existing
+     * entries, and the zero key is included
+     */
+    private long randomKey() {
+        return random.nextInt(2000) - 1000;
+    }
+
+    @Test
+    public void testMap() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            long key = randomKey();
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Assert.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 2:
+                    Assert.assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    Assert.assertEquals(expected.get(key), map.get(key));
+                    Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        Assert.assertEquals(expected, actual);
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(0));
+        Assert.assertNull(map.get(keys[keys.length - 1]));
+    }
+
+    @Test
+    public void testMapGrowth() {
+        LongHashMap<Integer> map = new LongHashMap<>(4);
+        for (int i = 0; i < OPERATIONS; i++) {
+            map.put(random.nextLong(), i);
+        }
+        Assert.assertEquals(OPERATIONS, map.size());
+        long[] keys = map.keys();
+        for (long key : keys) {
+            Assert.assertNotNull(map.remove(key));
+        }
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSet() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            long value = randomKey();
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(expected.add(value), set.add(value));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.remove(value), set.remove(value));
+                    break;
+                default:
+                    Assert.assertEquals(expected.contains(value), set.contains(value));
+            }
+            Assert.assertEquals(expected.size(), set.size());
+        }
+        Set<Long> actual = new HashSet<>();
+        set.forEach(actual::add);
+        Assert.assertEquals(expected, actual);
+        long[] values = set.toArray();
+        Assert.assertEquals(expected.size(), values.length);
+        Assert.assertEquals(expected, new HashSet<>(Arrays.asList(Arrays.stream(values).boxed().toArray(Long[]::new))));
+        set.clear();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertFalse(set.contains(0));
+    }
+}